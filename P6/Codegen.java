@@ -19,14 +19,19 @@ import java.io.*;
 //     genLabel
 // and a method nextLabel to create and return a new label.
 //
+// The gen methods under CODE SEQUENCES write the code of the constructs
+// of the language (function entry and exit, operators, ...), for the AST
+// nodes and FlatCodegen alike.
+//
+// A Codegen writes the code of one compilation to one file; it keeps the
+// label counter, and counts the instructions for the --stats report of
+// the compilation that created it.
+//
 // **********************************************************************
 
 
 
 public class Codegen {
-    // file into which generated code is written
-    public static PrintWriter p = null;
-
     // values of true and false
     public static final String TRUE = "1";
     public static final String FALSE = "0";
@@ -46,10 +51,18 @@ public class Codegen {
     private static final int MAXLEN = 6;
 
 
+    // the file into which code is written
+    private final PrintWriter p;
+
     // for generating labels
-    private static int currLabel = 0;
+    private int currLabel = 0;
+
+    private final Stats stats;
 
-    public Codegen (PrintWriter out) { p = out; }
+    public Codegen (PrintWriter out) {
+        p = out;
+        stats = Compilation.current().stats;
+    }
 
 
     // **********************************************************************
@@ -63,8 +76,9 @@ public class Codegen {
     //    given:  op code, comment, and 0 to 3 string args
     //    do:     write nicely formatted code (ending with new line)
     // **********************************************************************
-    public static void generateWithComment(String opcode, String comment,
-                                        String arg1, String arg2, String arg3) {
+    public void generateWithComment(String opcode, String comment,
+                                 String arg1, String arg2, String arg3) {
+        PrintWriter p = out(opcode);
         int space = MAXLEN - opcode.length() + 2;
     
         p.print("\t" + opcode);
@@ -83,17 +97,17 @@ public class Codegen {
         p.println();
     }
 
-    public static void generateWithComment(String opcode, String comment,
-                                           String arg1, String arg2) {
+    public void generateWithComment(String opcode, String comment,
+                                    String arg1, String arg2) {
         generateWithComment(opcode, comment, arg1, arg2, "");
     }
 
-    public static void generateWithComment(String opcode, String comment,
-                                           String arg1) {
+    public void generateWithComment(String opcode, String comment,
+                                    String arg1) {
         generateWithComment(opcode, comment, arg1, "", "");
     }
 
-    public static void generateWithComment(String opcode, String comment) {
+    public void generateWithComment(String opcode, String comment) {
         generateWithComment(opcode, comment, "", "", "");
     }
 
@@ -102,8 +116,9 @@ public class Codegen {
     //    given:  op code, and 0 to 3 string args
     //    do:     write nicely formatted code (ending with new line)
     // **********************************************************************
-    public static void generate(String opcode, String arg1, String arg2,
-                                String arg3) {
+    public void generate(String opcode, String arg1, String arg2,
+                         String arg3) {
+        PrintWriter p = out(opcode);
         int space = MAXLEN - opcode.length() + 2;
 
         p.print("\t" + opcode);
@@ -120,15 +135,15 @@ public class Codegen {
         p.println();
     }
 
-    public static void generate(String opcode, String arg1, String arg2) {
+    public void generate(String opcode, String arg1, String arg2) {
         generate(opcode, arg1, arg2, "");
     }
 
-    public static void generate(String opcode, String arg1) {
+    public void generate(String opcode, String arg1) {
         generate(opcode, arg1, "", "");
     }
 
-    public static void generate(String opcode) {
+    public void generate(String opcode) {
         generate(opcode, "", "", "");
     }
 
@@ -137,8 +152,9 @@ public class Codegen {
     //    given:  op code and args
     //    do:     write nicely formatted code (ending with new line)
     // **********************************************************************
-    public static void generate(String opcode, String arg1, String arg2,
-                                int arg3) {
+    public void generate(String opcode, String arg1, String arg2,
+                         int arg3) {
+        PrintWriter p = out(opcode);
         int space = MAXLEN - opcode.length() + 2;
     
         p.print("\t" + opcode);
@@ -152,7 +168,8 @@ public class Codegen {
     //    given:  op code and args
     //    do:     write nicely formatted code (ending with new line)
     // **********************************************************************
-    public static void generate(String opcode, String arg1, int arg2) {
+    public void generate(String opcode, String arg1, int arg2) {
+        PrintWriter p = out(opcode);
         int space = MAXLEN - opcode.length() + 2;
     
         p.print("\t" + opcode);
@@ -168,8 +185,9 @@ public class Codegen {
     //    do:     write nicely formatted code (ending with new line):
     //                 op T1, xx(T2) #comment
     // **********************************************************************
-    public static void generateIndexed(String opcode, String arg1, String arg2,
-                                       int arg3, String comment) {
+    public void generateIndexed(String opcode, String arg1, String arg2,
+                                int arg3, String comment) {
+        PrintWriter p = out(opcode);
         int space = MAXLEN - opcode.length() + 2;
     
         p.print("\t" + opcode);
@@ -181,8 +199,8 @@ public class Codegen {
         p.println();
     }
     
-    public static void generateIndexed(String opcode, String arg1, String arg2,
-                                       int arg3) {
+    public void generateIndexed(String opcode, String arg1, String arg2,
+                                int arg3) {
         generateIndexed(opcode, arg1, arg2, arg3, "");
     }
 
@@ -191,8 +209,9 @@ public class Codegen {
     //    given:  label, op code, comment, and arg
     //    do:     write nicely formatted code (ending with new line)
     // **********************************************************************
-    public static void generateLabeled(String label, String opcode,
-                                       String comment, String arg1) {
+    public void generateLabeled(String label, String opcode,
+                                String comment, String arg1) {
+        PrintWriter p = out(opcode);
         int space = MAXLEN - opcode.length() + 2;
     
         p.print(label + ":");
@@ -207,8 +226,8 @@ public class Codegen {
         p.println();
     }
 
-    public static void generateLabeled(String label, String opcode,
-                                       String comment) {
+    public void generateLabeled(String label, String opcode,
+                                String comment) {
         generateLabeled(label, opcode, comment, "");
     }
 
@@ -216,7 +235,7 @@ public class Codegen {
     // genPush
     //    generate code to push the given value onto the stack
     // **********************************************************************
-    public static void genPush(String s) {
+    public void genPush(String s) {
         generateIndexed("sw", s, SP, 0, "PUSH");
         generate("subu", SP, SP, 4);
     }
@@ -225,7 +244,7 @@ public class Codegen {
     // genPop
     //    generate code to pop into the given register
     // **********************************************************************
-    public static void genPop(String s) {
+    public void genPop(String s) {
         generateIndexed("lw", s, SP, 4, "POP");
         generate("addu", SP, SP, 4);
     }
@@ -235,22 +254,294 @@ public class Codegen {
     //   given:    label L and comment (comment may be empty)
     //   generate: L:    # comment
     // **********************************************************************
-    public static void genLabel(String label, String comment) {
+    public void genLabel(String label, String comment) {
         p.print(label + ":");
         if (comment != "") 
             p.print("\t\t" + "# " + comment);
         p.println();
     }
     
-    public static void genLabel(String label) {
+    public void genLabel(String label) {
         genLabel(label, "");
     }
-    
+
+
+    // **********************************************************************
+    // **********************************************************************
+    // CODE SEQUENCES
+    //    the code of each construct, shared by the codeGen methods of the
+    //    AST nodes and by FlatCodegen; an expression leaves its value on
+    //    the stack
+    // **********************************************************************
+    // **********************************************************************
+
+    // **********************************************************************
+    // fnLabel
+    //    return the label of the function with the given name
+    // **********************************************************************
+    public static String fnLabel(String name) {
+        return name.equals("main") ? "main" : "_" + name;
+    }
+
+    // **********************************************************************
+    // genGlobal
+    //    reserve the space of a global variable
+    // **********************************************************************
+    public void genGlobal(String name) {
+        generate(".data");
+        generate(".align", "2");
+        String label = nextLabel();
+        generateLabeled(label, ".space", name, "4");
+    }
+
+    // **********************************************************************
+    // genFnEntry, genFnExit
+    //    the entry and the exit of the function with the given label (see
+    //    fnLabel), around its body
+    // **********************************************************************
+    public void genFnEntry(String label, int paramSize, int localSize) {
+        generate(".text");
+        if (label.equals("main")) {
+            generate(".globl", "main");
+            genLabel("main", "METHOD ENTRY");
+            genLabel("__start", "add __start label for main only");
+        } else {
+            genLabel(label, "METHOD ENTRY");
+        }
+        genPush(RA);
+        genPush(FP);
+        generateWithComment("addu", "set the FP", FP, SP,
+                            Integer.toString(paramSize+8));
+        generateWithComment("subu", "push space for locals", SP, SP,
+                            Integer.toString(localSize));
+    }
+
+    public void genFnExit(String label, int paramSize) {
+        generateIndexed("lw", RA, FP, -paramSize, "load return address");
+        generateWithComment("move", "save control link", T0, FP);
+        generateIndexed("lw", FP, FP, -(paramSize+4), "restore FP");
+        generateWithComment("move", "restore SP", SP, T0);
+        if (label.equals("main")) {
+            generateWithComment("li", "load exit code for syscall", V0, "10");
+            generateWithComment("syscall", "only do this for main");
+        } else {
+            generateWithComment("jr", "return", RA);
+        }
+    }
+
+    // **********************************************************************
+    // genBranchIfFalse
+    //    pop the condition of an if or a loop, and branch to label if it
+    //    is false
+    // **********************************************************************
+    public void genBranchIfFalse(String label) {
+        generateIndexed("lw", T1, SP, 4, "get condition result in $t1");
+        generate("li", T0, "0");
+        generate("beq", T1, T0, label);
+    }
+
+    // **********************************************************************
+    // genWrite
+    //    write the string literal whose text is at strLabel, or if
+    //    strLabel is null the int on the stack
+    // **********************************************************************
+    public void genWrite(String strLabel) {
+        int li = 1;
+        if (strLabel != null) {
+            generateWithComment("la", " [string] for write", A0, strLabel);
+            li = 4;
+        } else {
+            generateIndexed("lw", A0, SP, 4, " load content for write");
+        }
+        generateWithComment("li", " system call number", V0,
+                            Integer.toString(li));
+        generate("syscall");
+    }
+
+    // **********************************************************************
+    // genReturn
+    //    pop the returned value into $v0
+    // **********************************************************************
+    public void genReturn() {
+        generateIndexed("lw", V0, SP, 4, "save return value");
+        generate("addu", SP, SP, 4);
+    }
+
+    // **********************************************************************
+    // genLoad
+    //    push an int (or bool) literal
+    // **********************************************************************
+    public void genLoad(String value) {
+        generateWithComment("li", "load integer value", T0, value);
+        genPushValue();
+    }
+
+    // **********************************************************************
+    // genStringLit
+    //    put the text of a string literal in the data segment; return its
+    //    label
+    // **********************************************************************
+    public String genStringLit(String text) {
+        String label = nextLabel();
+        generate(".data");
+        generateLabeled(label, ".asciiz", text);
+        return label;
+    }
+
+    // **********************************************************************
+    // genId
+    //    push the value, or if addr is true the address, of the variable
+    //    called name
+    // **********************************************************************
+    public void genId(Sym sym, String name, boolean addr) {
+        if (!addr) {
+            if (sym.isGlobal())
+                generateWithComment("lw", "load value of Id", T0, name);
+            else
+                generateIndexed("lw", T0, FP, sym.getOffset(),
+                                "load value of Id");
+        }
+        else { // load addr of Id
+            generateIndexed("la", T0, FP, sym.getOffset(), "load addr of Id");
+        }
+        genPushValue();
+    }
+
+    // **********************************************************************
+    // genAssign
+    //    pop an address, then a value, and store the value at the address
+    // **********************************************************************
+    public void genAssign() {
+        generateIndexed("lw", T1, SP, 4, "pop LHS into $t1");
+        generate("addu", SP, SP, "4");
+        generateIndexed("lw", T0, SP, 4, "pop RHS into $t0");
+        generate("addu", SP, SP, "4");
+        generateIndexed("sw", T0, T1, 0, "Store value $t0 at address $t1");
+    }
+
+    // **********************************************************************
+    // genCall
+    //    jump to the function with the given label, its actuals on the
+    //    stack
+    // **********************************************************************
+    public void genCall(String label) {
+        generateWithComment("jal", "jump into function", label);
+    }
+
+    // **********************************************************************
+    // genUnary
+    //    apply unary minus or not (kind) to the value on the stack
+    // **********************************************************************
+    public void genUnary(NodeKind kind) {
+        String op = (kind == NodeKind.NOT) ? "not" : "neg";
+        generateIndexed("lw", T1, SP, 4, "[" + op + "] pop exp into $t1");
+        generate("addu", SP, SP, "4");
+        generate(op, T1, T1);
+        genPushResult();
+    }
+
+    // **********************************************************************
+    // genBinary
+    //    apply an arithmetic, equality or relational operator (kind) to
+    //    the two values on the stack, the left operand on top
+    // **********************************************************************
+    public void genBinary(NodeKind kind) {
+        generateIndexed("lw", T1, SP, 4, "pop exp1 into $t1");
+        generate("addu", SP, SP, "4");
+        generateIndexed("lw", T0, SP, 4, "pop exp2 into $t0");
+        generate("addu", SP, SP, "4");
+        switch (kind) {
+        case PLUS:
+            generate("add", T1, T1, T0);
+            break;
+        case MINUS:
+            generate("sub", T1, T1, T0);
+            break;
+        case TIMES:
+            generate("mult", T1, T0);
+            break;
+        case DIVIDE:
+            generate("div", T1, T0);
+            break;
+        case EQUALS:
+            generate("seq", T1, T1, T0);
+            break;
+        case NOT_EQUALS:
+            generate("sne", T1, T1, T0);
+            break;
+        case LESS:
+            generate("slt", T1, T1, T0);
+            break;
+        case GREATER:
+            generate("sgt", T1, T1, T0);
+            break;
+        case LESS_EQ:
+            generate("sle", T1, T1, T0);
+            break;
+        case GREATER_EQ:
+            generate("gle", T1, T1, T0);
+            break;
+        default:
+            System.err.println("Unexpected " + kind + " in Codegen.genBinary");
+            System.exit(-1);
+        }
+        genPushResult();
+    }
+
+    // **********************************************************************
+    // genLogicalLeft, genLogicalRight
+    //    and or or (kind): after the left operand, branch to exit with it
+    //    in $t1 if it decides the result; after the right operand, combine
+    //    the two, and at exit push the result
+    // **********************************************************************
+    public void genLogicalLeft(NodeKind kind, String exit) {
+        generateIndexed("lw", T1, SP, 4, "pop exp1 into $t1");
+        generate("addu", SP, SP, "4");
+        generate("li", T0, (kind == NodeKind.AND) ? "0" : "1");
+        generate("beq", T1, T0, exit);
+    }
+
+    public void genLogicalRight(NodeKind kind, String exit) {
+        generateIndexed("lw", T0, SP, 4, "pop exp2 into $t0");
+        generate("addu", SP, SP, "4");
+        generate((kind == NodeKind.AND) ? "and" : "or", T1, T1, T0);
+        genLabel(exit);
+        genPushResult();
+    }
+
+    // **********************************************************************
+    // genPushValue, genPushResult
+    //    push $t0 holding a loaded value, or $t1 holding the result of an
+    //    operator
+    // **********************************************************************
+    public void genPushValue() {
+        generateIndexed("sw", T0, SP, 0);
+        generate("subu", SP, SP, "4");
+    }
+
+    public void genPushResult() {
+        generateIndexed("sw", T1, SP, 0, "save result on stack");
+        generate("subu", SP, SP, "4");
+    }
+
+    // **********************************************************************
+    // out
+    //    return the file into which code is written, counting an
+    //    instruction for the --stats report (see Stats); an opcode
+    //    starting with '.' is a directive
+    // **********************************************************************
+    private PrintWriter out(String opcode) {
+        if (!opcode.startsWith(".")) {
+            stats.instructions++;
+        }
+        return p;
+    }
+
     // **********************************************************************
     // Return a different label each time:
     //        L0 L1 L2, etc.
     // **********************************************************************
-    public static String nextLabel() {
+    public String nextLabel() {
         Integer k = new Integer(currLabel++);
         String tmp = ".L" + k;
         return tmp;
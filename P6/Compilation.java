@@ -0,0 +1,56 @@
+import java.io.*;
+
+/**
+ * Compilation
+ *
+ * The state of one compilation: the err flag and the stream that ErrMsg
+ * reports to, the symbol table engine, the IdPool of the identifiers read,
+ * and the Stats.  (The line index of the scanner is kept by the scanner
+ * itself, and the output file and label counter by the Codegen.)  Any
+ * number of compilations can run in one JVM as long as each thread has
+ * entered the one it is working for.  The scanner, the parsers, the
+ * symbol tables and Codegen look the compilation up once, when they are
+ * created, and keep what they need of it; only ErrMsg and the entry
+ * points of the passes look it up as they go.
+ *
+ * A thread that never calls enter has a compilation of its own, created
+ * the first time it is needed.  Code that hands part of a compilation to
+ * another thread (such as SemanticPass in parallel mode) must enter the
+ * compilation there as well.
+ */
+class Compilation {
+	private static final ThreadLocal<Compilation> current =
+		new ThreadLocal<Compilation>() {
+			protected Compilation initialValue() {
+				return new Compilation();
+			}
+		};
+
+	// ErrMsg
+	boolean err = false;
+	PrintStream errStream = System.err;
+
+	// SymTable.create
+	String engine = "list";
+
+	final IdPool ids = new IdPool();
+	final Stats stats = new Stats();
+
+	/**
+	 * Returns the compilation of the current thread.
+	 */
+	static Compilation current() {
+		return current.get();
+	}
+
+	/**
+	 * Makes c the compilation of the current thread, until the next call.
+	 * Returns the previous one, to be entered again when the thread is
+	 * done with c.
+	 */
+	static Compilation enter(Compilation c) {
+		Compilation prev = current.get();
+		current.set(c);
+		return prev;
+	}
+}
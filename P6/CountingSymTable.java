@@ -0,0 +1,68 @@
+/**
+ * CountingSymTable
+ *
+ * A SymTable that passes every operation on to another one and counts
+ * the declarations and lookups for the --stats report (see Stats).  A
+ * lookup is counted under the number of scopes in the table when it is
+ * made.  Used only while stats are on; see Stats.counted.
+ */
+public class CountingSymTable extends SymTable {
+    private final SymTable table;
+    private int depth;      // number of scopes in table
+    private final Stats stats;
+
+    /**
+     * Counts the operations on table, which has depth scopes, in stats.
+     */
+    public CountingSymTable(SymTable table, int depth, Stats stats) {
+        this.table = table;
+        this.depth = depth;
+        this.stats = stats;
+    }
+
+    public Sym declare(String name, Sym sym)
+        throws EmptySymTableException, WrongArgumentException {
+        stats.declared();
+        return table.declare(name, sym);
+    }
+
+    public Sym declare(int id, Sym sym)
+        throws EmptySymTableException, WrongArgumentException {
+        stats.declared();
+        return table.declare(id, sym);
+    }
+
+    public void addScope() {
+        table.addScope();
+        depth++;
+    }
+
+    public Sym lookupLocal(String name) {
+        stats.lookedUp(depth);
+        return table.lookupLocal(name);
+    }
+
+    public Sym lookupLocal(int id) {
+        stats.lookedUp(depth);
+        return table.lookupLocal(id);
+    }
+
+    public Sym lookupGlobal(String name) {
+        stats.lookedUp(depth);
+        return table.lookupGlobal(name);
+    }
+
+    public Sym lookupGlobal(int id) {
+        stats.lookedUp(depth);
+        return table.lookupGlobal(id);
+    }
+
+    public void removeScope() throws EmptySymTableException {
+        table.removeScope();
+        depth--;
+    }
+
+    public void print() {
+        table.print();
+    }
+}
@@ -0,0 +1,126 @@
+import java.util.*;
+
+/**
+ * ErrBuffer
+ *
+ * Where the type checking rules of the AST nodes send their error
+ * messages.  ErrBuffer.NOW reports each message through ErrMsg as soon as
+ * it is added, which is what the separate typeCheck pass uses.  A new
+ * ErrBuffer keeps the messages, in the order they were added, until
+ * flush() reports them; ErrBuffer.NONE drops them.  Warnings can be
+ * buffered too (the batch scanner, see TokenBuffer, holds back all of its
+ * messages), and keep their place among the errors.
+ */
+class ErrBuffer {
+	static final ErrBuffer NOW = new ErrBuffer(true, false);
+	static final ErrBuffer NONE = new ErrBuffer(false, true);
+
+	private final boolean now;
+	private final boolean drop;
+
+	// buffered messages
+	private int[] lineNums = new int[8];
+	private int[] charNums = new int[8];
+	private String[] msgs = new String[8];
+	private boolean[] warnings = new boolean[8];
+	private int size;
+
+	ErrBuffer() {
+		this(false, false);
+	}
+
+	private ErrBuffer(boolean now, boolean drop) {
+		this.now = now;
+		this.drop = drop;
+	}
+
+	/**
+	 * Adds a fatal error message (see ErrMsg.fatal).
+	 */
+	void fatal(int lineNum, int charNum, String msg) {
+		if (now) {
+			ErrMsg.fatal(lineNum, charNum, msg);
+			return;
+		}
+		add(lineNum, charNum, msg, false);
+	}
+
+	/**
+	 * Adds a warning message (see ErrMsg.warn).
+	 */
+	void warn(int lineNum, int charNum, String msg) {
+		if (now) {
+			ErrMsg.warn(lineNum, charNum, msg);
+			return;
+		}
+		add(lineNum, charNum, msg, true);
+	}
+
+	private void add(int lineNum, int charNum, String msg, boolean warning) {
+		if (drop) {
+			return;
+		}
+		if (size == msgs.length) {
+			lineNums = Arrays.copyOf(lineNums, size * 2);
+			charNums = Arrays.copyOf(charNums, size * 2);
+			msgs = Arrays.copyOf(msgs, size * 2);
+			warnings = Arrays.copyOf(warnings, size * 2);
+		}
+		lineNums[size] = lineNum;
+		charNums[size] = charNum;
+		msgs[size] = msg;
+		warnings[size] = warning;
+		size++;
+	}
+
+	/**
+	 * Returns the number of buffered messages.
+	 */
+	int size() {
+		return size;
+	}
+
+	/**
+	 * Reports the buffered messages through ErrMsg, in order, and empties
+	 * the buffer.
+	 */
+	void flush() {
+		flush(NOW);
+	}
+
+	/**
+	 * Adds the buffered messages to errs, in order, and empties the
+	 * buffer.
+	 */
+	void flush(ErrBuffer errs) {
+		flush(errs, size, 0);
+	}
+
+	/**
+	 * Adds the buffered messages to errs, in order, each lineShift lines
+	 * further down, and empties the buffer.
+	 */
+	void flush(ErrBuffer errs, int lineShift) {
+		flush(errs, size, lineShift);
+	}
+
+	/**
+	 * Reports the first count buffered messages through ErrMsg, in order,
+	 * drops the others, and empties the buffer.
+	 */
+	void flush(int count) {
+		flush(NOW, count, 0);
+	}
+
+	private void flush(ErrBuffer errs, int count, int lineShift) {
+		for (int i = 0; i < size; i++) {
+			if (i < count && warnings[i]) {
+				errs.warn(lineNums[i] + lineShift, charNums[i], msgs[i]);
+			} else if (i < count) {
+				errs.fatal(lineNums[i] + lineShift, charNums[i], msgs[i]);
+			}
+			msgs[i] = null;
+		}
+		size = 0;
+	}
+}
@@ -2,9 +2,13 @@
  * ErrMsg
  *
  * This class is used to generate warning and fatal error messages.
+ * They go to the error stream of the current Compilation, which also
+ * holds the err flag.
  */
 class ErrMsg {
-	private static boolean err = false;
+	// where the messages of the current thread go instead, if set
+	private static final ThreadLocal<ErrBuffer> redirect =
+		new ThreadLocal<ErrBuffer>();
 
 	/**
 	 * Generates a fatal error message.
@@ -13,8 +17,14 @@ class ErrMsg {
 	 * @param msg associated message for error
 	 */
 	static void fatal(int lineNum, int charNum, String msg) {
-		err = true;
-		System.err.println(lineNum + ":" + charNum + " ***ERROR*** " + msg);
+		ErrBuffer errs = redirect.get();
+		if (errs != null) {
+			errs.fatal(lineNum, charNum, msg);
+			return;
+		}
+		Compilation c = Compilation.current();
+		c.err = true;
+		c.errStream.println(lineNum + ":" + charNum + " ***ERROR*** " + msg);
 	}
 
 	/**
@@ -24,14 +34,32 @@ class ErrMsg {
 	 * @param msg associated message for warning
 	 */
 	static void warn(int lineNum, int charNum, String msg) {
-		System.err.println(lineNum + ":" + charNum + " ***WARNING*** " + msg);
+		ErrBuffer errs = redirect.get();
+		if (errs != null) {
+			errs.warn(lineNum, charNum, msg);
+			return;
+		}
+		Compilation.current().errStream.println(lineNum + ":" + charNum
+			+ " ***WARNING*** " + msg);
+	}
+
+	/**
+	 * Sends the messages of the current thread to errs (a buffering
+	 * ErrBuffer, not ErrBuffer.NOW), or back to the error stream if errs is
+	 * null, until the next call.  Returns the previous setting.
+	 * The err flag is set only when the errors reach the error stream.
+	 */
+	static ErrBuffer redirect(ErrBuffer errs) {
+		ErrBuffer prev = redirect.get();
+		redirect.set(errs);
+		return prev;
 	}
 
 	/**
 	 * Returns the err flag.
 	 */
 	static boolean getErr() {
-		return err;
+		return Compilation.current().err;
 	}
 
 }
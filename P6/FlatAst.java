@@ -0,0 +1,382 @@
+import java.util.*;
+
+/**
+ * FlatAst
+ *
+ * An abstract-syntax tree kept in an arena of parallel arrays instead of
+ * one object per node.  Nodes are numbered from 0; node n has
+ *     a kind             (the ordinal of a NodeKind)
+ *     a line/char number (of the token, for IDs and literals; 0 otherwise)
+ *     an int payload     (the value of an int literal, the index of a
+ *                         string literal's text, the size field of a
+ *                         variable declaration; 0 otherwise)
+ *     a name id          (the IdPool id of an ID; -1 otherwise)
+ *     a symbol           (the Sym name analysis linked to an ID; null
+ *                         otherwise)
+ *     a range of kids    (kids[firstKid[n]] .. kids[firstKid[n]+numKids[n]-1])
+ * Kids are in the same order as the fields of the matching ASTnode class
+ * (see the table at the top of ast.java); a kid of NONE is a missing
+ * child, e.g. the expression of "return;".
+ *
+ * Nodes are numbered in the order they are completed, so every node comes
+ * after its kids and the root is the last node.  FlatParser (generated
+ * from FlatCarrot.cup) builds the arena bottom-up, through a stack of
+ * nodes that do not have a parent yet: leaf pushes a node, node pops the
+ * kids of a new node and pushes it, and the elements of a list stay on
+ * the stack from beginList until endList collects them.
+ *
+ * Cursor and its subclasses are typed views of one node at a time; they
+ * move with at() and so can walk the whole tree without allocating.
+ * Name analysis and type checking (FlatPass) and code generation
+ * (FlatCodegen) run over the arena through them.
+ */
+public class FlatAst {
+    public static final int NONE = -1;
+    private static final int INITIAL_CAPACITY = 1024;
+
+    // per node
+    private byte[] kinds;
+    private int[] lineNums;
+    private int[] charNums;
+    private int[] payloads;
+    private int[] nameIds;
+    private int[] firstKids;
+    private int[] numKids;
+    private int numNodes;
+
+    // the kids of every node, each node's kids together
+    private int[] kids;
+    private int numKidSlots;
+
+    // text of string literals, indexed by the payload of STRING_LIT nodes
+    private List<String> strings;
+
+    // the Sym linked to each ID by name analysis (null for other nodes)
+    private Sym[] syms;
+
+    // the names of the compilation that builds the tree
+    private final IdPool ids = Compilation.current().ids;
+
+    // while building: nodes without a parent yet, and the stack position
+    // at which each unfinished list starts
+    private int[] stack;
+    private int stackSize;
+    private int[] listStarts;
+    private int numLists;
+
+    public FlatAst() {
+        kinds = new byte[INITIAL_CAPACITY];
+        lineNums = new int[INITIAL_CAPACITY];
+        charNums = new int[INITIAL_CAPACITY];
+        payloads = new int[INITIAL_CAPACITY];
+        nameIds = new int[INITIAL_CAPACITY];
+        syms = new Sym[INITIAL_CAPACITY];
+        firstKids = new int[INITIAL_CAPACITY];
+        numKids = new int[INITIAL_CAPACITY];
+        kids = new int[INITIAL_CAPACITY];
+        strings = new ArrayList<String>();
+        stack = new int[64];
+        listStarts = new int[16];
+    }
+
+    // **********************************************************************
+    // building (called from the actions of FlatCarrot.cup)
+    // **********************************************************************
+
+    /**
+     * Adds a node with no kids and pushes it.
+     */
+    public void leaf(NodeKind kind, int lineNum, int charNum,
+                     int payload, int nameId) {
+        push(newNode(kind, lineNum, charNum, payload, nameId, 0));
+    }
+
+    /**
+     * Adds a string literal node for the given text and pushes it.
+     */
+    public void stringLit(int lineNum, int charNum, String strVal) {
+        strings.add(strVal);
+        leaf(NodeKind.STRING_LIT, lineNum, charNum, strings.size() - 1, -1);
+    }
+
+    /**
+     * Pushes NONE, for a child that is not there.
+     */
+    public void none() {
+        push(NONE);
+    }
+
+    /**
+     * Adds a node whose kids are the top count nodes on the stack, in the
+     * order they were pushed; pops them and pushes the new node.
+     */
+    public void node(NodeKind kind, int count) {
+        node(kind, 0, count);
+    }
+
+    /**
+     * Same as node(kind, count), with the given payload.
+     */
+    public void node(NodeKind kind, int payload, int count) {
+        int n = newNode(kind, 0, 0, payload, -1, count);
+        stackSize -= count;
+        System.arraycopy(stack, stackSize, kids, firstKids[n], count);
+        push(n);
+    }
+
+    /**
+     * Starts a list whose first count elements are already on the stack.
+     */
+    public void beginList(int count) {
+        if (numLists == listStarts.length) {
+            listStarts = Arrays.copyOf(listStarts, numLists * 2);
+        }
+        listStarts[numLists++] = stackSize - count;
+    }
+
+    /**
+     * Ends the innermost unfinished list: adds a node of the given kind
+     * whose kids are everything pushed since its beginList.
+     */
+    public void endList(NodeKind kind) {
+        node(kind, stackSize - listStarts[--numLists]);
+    }
+
+    private int newNode(NodeKind kind, int lineNum, int charNum,
+                        int payload, int nameId, int count) {
+        if (numNodes == kinds.length) {
+            int capacity = numNodes * 2;
+            kinds = Arrays.copyOf(kinds, capacity);
+            lineNums = Arrays.copyOf(lineNums, capacity);
+            charNums = Arrays.copyOf(charNums, capacity);
+            payloads = Arrays.copyOf(payloads, capacity);
+            nameIds = Arrays.copyOf(nameIds, capacity);
+            syms = Arrays.copyOf(syms, capacity);
+            firstKids = Arrays.copyOf(firstKids, capacity);
+            numKids = Arrays.copyOf(numKids, capacity);
+        }
+        if (numKidSlots + count > kids.length) {
+            kids = Arrays.copyOf(kids, Math.max(kids.length * 2,
+                                                numKidSlots + count));
+        }
+
+        int n = numNodes++;
+        kinds[n] = (byte)kind.ordinal();
+        lineNums[n] = lineNum;
+        charNums[n] = charNum;
+        payloads[n] = payload;
+        nameIds[n] = nameId;
+        firstKids[n] = numKidSlots;
+        numKids[n] = count;
+        numKidSlots += count;
+        return n;
+    }
+
+    private void push(int n) {
+        if (stackSize == stack.length) {
+            stack = Arrays.copyOf(stack, stackSize * 2);
+        }
+        stack[stackSize++] = n;
+    }
+
+    // **********************************************************************
+    // reading
+    // **********************************************************************
+
+    /**
+     * Returns the root of the tree: the last node added.
+     */
+    public int root() {
+        return numNodes - 1;
+    }
+
+    public int size() {
+        return numNodes;
+    }
+
+    public NodeKind kind(int n) {
+        return NodeKind.of(kinds[n]);
+    }
+
+    public int lineNum(int n) {
+        return lineNums[n];
+    }
+
+    public int charNum(int n) {
+        return charNums[n];
+    }
+
+    public int payload(int n) {
+        return payloads[n];
+    }
+
+    public int nameId(int n) {
+        return nameIds[n];
+    }
+
+    public int numKids(int n) {
+        return numKids[n];
+    }
+
+    /**
+     * Returns kid i of node n (NONE if that child is missing).
+     */
+    public int kid(int n, int i) {
+        return kids[firstKids[n] + i];
+    }
+
+    public String string(int index) {
+        return strings.get(index);
+    }
+
+    /**
+     * Returns the name of ID node n.
+     */
+    public String name(int n) {
+        return ids.name(nameIds[n]);
+    }
+
+    /**
+     * Links the given symbol to ID node n (see IdNode.link).
+     */
+    public void link(int n, Sym sym) {
+        syms[n] = sym;
+    }
+
+    /**
+     * Returns the symbol linked to ID node n, null if there is none.
+     */
+    public Sym sym(int n) {
+        return syms[n];
+    }
+
+    // **********************************************************************
+    // cursors
+    // **********************************************************************
+
+    /**
+     * A view of one node.
+     */
+    public static class Cursor {
+        protected final FlatAst ast;
+        protected int node;
+
+        public Cursor(FlatAst ast) {
+            this.ast = ast;
+        }
+
+        public Cursor at(int n) {
+            node = n;
+            return this;
+        }
+
+        public int node() { return node; }
+
+        public NodeKind kind() { return ast.kind(node); }
+
+        public int lineNum() { return ast.lineNums[node]; }
+
+        public int charNum() { return ast.charNums[node]; }
+
+        public int numKids() { return ast.numKids[node]; }
+
+        public int kid(int i) { return ast.kid(node, i); }
+    }
+
+    /**
+     * DECL_LIST, FORMALS_LIST, STMT_LIST, EXP_LIST: the elements.
+     */
+    public static class ListView extends Cursor {
+        public ListView(FlatAst ast) { super(ast); }
+
+        public ListView at(int n) { node = n; return this; }
+
+        public int length() { return numKids(); }
+
+        public int get(int i) { return kid(i); }
+    }
+
+    /**
+     * VAR_DECL, FN_DECL, FORMAL_DECL: type and id; for VAR_DECL, the size
+     * field of VarDeclNode; for FN_DECL, the formals and the body.
+     * STRUCT_DECL: id and fields.
+     */
+    public static class DeclView extends Cursor {
+        public DeclView(FlatAst ast) { super(ast); }
+
+        public DeclView at(int n) { node = n; return this; }
+
+        public int type() { return kid(0); }
+
+        public int id() { return kind() == NodeKind.STRUCT_DECL ? kid(0) : kid(1); }
+
+        public int size() { return ast.payloads[node]; }
+
+        public int formals() { return kid(2); }
+
+        public int body() { return kid(3); }
+
+        public int fields() { return kid(1); }
+    }
+
+    /**
+     * FN_BODY: declarations and statements.  The statement kinds: the
+     * expression (or assignment, or call), and for loops and ifs, the
+     * declarations and statements of the body and of the else part.
+     */
+    public static class StmtView extends Cursor {
+        public StmtView(FlatAst ast) { super(ast); }
+
+        public StmtView at(int n) { node = n; return this; }
+
+        public int exp() { return kid(0); }
+
+        public int decls() { return kind() == NodeKind.FN_BODY ? kid(0) : kid(1); }
+
+        public int stmts() { return kind() == NodeKind.FN_BODY ? kid(1) : kid(2); }
+
+        public int elseDecls() { return kid(3); }
+
+        public int elseStmts() { return kid(4); }
+    }
+
+    /**
+     * The expression kinds, and STRUCT (whose id is its name).
+     */
+    public static class ExpView extends Cursor {
+        public ExpView(FlatAst ast) { super(ast); }
+
+        public ExpView at(int n) { node = n; return this; }
+
+        public int intVal() { return ast.payloads[node]; }
+
+        public String strVal() { return ast.string(ast.payloads[node]); }
+
+        public int nameId() { return ast.nameIds[node]; }
+
+        public String name() { return ast.name(node); }
+
+        public Sym sym() { return ast.sym(node); }
+
+        // unary operators
+        public int operand() { return kid(0); }
+
+        // binary operators and ASSIGN
+        public int lhs() { return kid(0); }
+
+        public int rhs() { return kid(1); }
+
+        // DOT_ACCESS
+        public int loc() { return kid(0); }
+
+        public int field() { return kid(1); }
+
+        // CALL_EXP
+        public int callee() { return kid(0); }
+
+        public int actuals() { return kid(1); }
+
+        // STRUCT
+        public int id() { return kid(0); }
+    }
+}
@@ -0,0 +1,248 @@
+/**
+ * FlatCodegen
+ *
+ * Code generation for a FlatAst that FlatPass has analyzed without
+ * errors: the codeGen methods of the ASTnode classes, over the arena
+ * through its cursors.  The code of each construct is written by the same
+ * Codegen sequences codeGen uses, with the same labels in the same order,
+ * so the two ASTs produce the same .s file.
+ *
+ * Usage: new FlatCodegen(ast, new Codegen(outFile)).run()
+ */
+public class FlatCodegen {
+    private final FlatAst ast;
+    private final Codegen cg;
+
+    // cursors; a method reads what it needs from a cursor before it calls
+    // another method, which may move it
+    private final FlatAst.ListView list;
+    private final FlatAst.DeclView decl;
+    private final FlatAst.StmtView stmt;
+    private final FlatAst.ExpView exp;
+
+    public FlatCodegen(FlatAst ast, Codegen cg) {
+        this.ast = ast;
+        this.cg = cg;
+        list = new FlatAst.ListView(ast);
+        decl = new FlatAst.DeclView(ast);
+        stmt = new FlatAst.StmtView(ast);
+        exp = new FlatAst.ExpView(ast);
+    }
+
+    /**
+     * run
+     * Generate the code of the globals and the functions of the program
+     * (see ProgramNode.codeGen).
+     */
+    public void run() {
+        int decls = ast.kid(ast.root(), 0);
+        int n = list.at(decls).length();
+        for (int i = 0; i < n; i++) {
+            int d = ast.kid(decls, i);
+            if (ast.kind(d) == NodeKind.VAR_DECL) {
+                varDecl(d);
+            } else if (ast.kind(d) == NodeKind.FN_DECL) {
+                fnDecl(d);
+            }
+        }
+    }
+
+    /**
+     * varDecl
+     * Reserve the space of a global (see VarDeclNode.codeGen).
+     */
+    private void varDecl(int n) {
+        int id = decl.at(n).id();
+        if (ast.sym(id).isGlobal()) {
+            cg.genGlobal(exp.at(id).name());
+        }
+    }
+
+    /**
+     * fnDecl
+     * Generate a function: entry, body, and exit (see FnDeclNode.codeGen).
+     */
+    private void fnDecl(int n) {
+        int id = decl.at(n).id();
+        int body = decl.body();
+        String label = Codegen.fnLabel(exp.at(id).name());
+        FnSym sym = (FnSym)ast.sym(id);
+
+        cg.genFnEntry(label, sym.getParamSize(), sym.getLocalSize());
+        stmtList(stmt.at(body).stmts());
+        cg.genFnExit(label, sym.getParamSize());
+    }
+
+    private void stmtList(int stmts) {
+        int n = list.at(stmts).length();
+        for (int i = 0; i < n; i++) {
+            stmt(ast.kid(stmts, i));
+        }
+    }
+
+    // **********************************************************************
+    // statements
+    // **********************************************************************
+
+    private void stmt(int n) {
+        NodeKind kind = ast.kind(n);
+        int e = stmt.at(n).exp();
+        switch (kind) {
+        case ASSIGN_STMT:
+        case CALL_STMT:
+            exp(e);
+            break;
+        case POST_INC_STMT:
+        case POST_DEC_STMT:
+        case READ_STMT:
+            break;
+        case WRITE_STMT:
+            cg.genWrite(exp(e));
+            break;
+        case IF_STMT: {
+            int stmts = stmt.stmts();
+            String l_entry = cg.nextLabel() + "_Entry";
+            String l_true = cg.nextLabel() + "_True";
+            String l_exit = cg.nextLabel() + "_Exit";
+            cg.genLabel(l_entry);
+            exp(e);
+            cg.genBranchIfFalse(l_exit);
+            cg.genLabel(l_true);
+            stmtList(stmts);
+            cg.genLabel(l_exit);
+            break;
+        }
+        case IF_ELSE_STMT: {
+            int stmts = stmt.stmts();
+            int elseStmts = stmt.elseStmts();
+            String l_entry = cg.nextLabel() + "_Entry";
+            String l_if = cg.nextLabel() + "_If";
+            String l_else = cg.nextLabel() + "_Else";
+            cg.genLabel(l_entry);
+            exp(e);
+            cg.genBranchIfFalse(l_else);
+            cg.genLabel(l_if);
+            stmtList(stmts);
+            cg.genLabel(l_else);
+            stmtList(elseStmts);
+            break;
+        }
+        case WHILE_STMT:
+        case REPEAT_STMT: {
+            int stmts = stmt.stmts();
+            String l_entry = cg.nextLabel() + "_Entry";
+            String l_loop = cg.nextLabel() + "_Loop";
+            String l_exit = cg.nextLabel() + "_exit";
+            cg.genLabel(l_entry);
+            exp(e);
+            cg.genBranchIfFalse(l_exit);
+            cg.genLabel(l_loop);
+            stmtList(stmts);
+            cg.genLabel(l_exit);
+            break;
+        }
+        case RETURN_STMT:
+            if (e != FlatAst.NONE) {
+                exp(e);
+            }
+            cg.genReturn();
+            break;
+        default:
+            System.err.println("Unexpected " + kind + " in FlatCodegen.stmt");
+            System.exit(-1);
+        }
+    }
+
+    // **********************************************************************
+    // expressions
+    // **********************************************************************
+
+    /**
+     * exp
+     * Generate an expression; return the label of its text if it is a
+     * string literal, null otherwise.
+     */
+    private String exp(int n) {
+        NodeKind kind = ast.kind(n);
+        switch (kind) {
+        case INT_LIT:
+            cg.genLoad(Integer.toString(exp.at(n).intVal()));
+            return null;
+        case STRING_LIT:
+            return cg.genStringLit(exp.at(n).strVal());
+        case TRUE:
+            cg.genLoad(Codegen.TRUE);
+            return null;
+        case FALSE:
+            cg.genLoad(Codegen.FALSE);
+            return null;
+        case ID:
+            cg.genId(ast.sym(n), exp.at(n).name(), false);
+            return null;
+        case DOT_ACCESS:
+            return null;
+        case ASSIGN: {
+            int lhs = exp.at(n).lhs();
+            exp(exp.rhs());
+            if (ast.kind(lhs) == NodeKind.ID) {
+                cg.genId(ast.sym(lhs), exp.at(lhs).name(), true);
+            }
+            cg.genAssign();
+            return null;
+        }
+        case CALL_EXP: {
+            String name = exp.at(exp.at(n).callee()).name();
+            int actuals = exp.at(n).actuals();
+            for (int i = list.at(actuals).length(); i-- > 0;) {
+                exp(ast.kid(actuals, i));
+            }
+            cg.genCall(Codegen.fnLabel(name));
+            return null;
+        }
+        case UNARY_MINUS:
+        case NOT:
+            exp(exp.at(n).operand());
+            cg.genUnary(kind);
+            return null;
+        case AND:
+        case OR:
+            logical(n, kind);
+            return null;
+        default:
+            binary(n, kind);
+            return null;
+        }
+    }
+
+    /**
+     * logical
+     * Generate an and or an or, which does not evaluate its right operand
+     * when its left operand decides it (see AndNode.codeGen).
+     */
+    private void logical(int n, NodeKind kind) {
+        int exp2 = exp.at(n).rhs();
+        int exp1 = exp.lhs();
+        String l_first = cg.nextLabel() + "_First";
+        String l_second = cg.nextLabel() + "_Second";
+        String l_exit = cg.nextLabel() + "_Exit";
+        cg.genLabel(l_first);
+        exp(exp1);
+        cg.genLogicalLeft(kind, l_exit);
+        cg.genLabel(l_second);
+        exp(exp2);
+        cg.genLogicalRight(kind, l_exit);
+    }
+
+    /**
+     * binary
+     * Generate an arithmetic, equality or relational operator: the right
+     * operand, then the left, then the operation (see BinaryExpNode.codeGen).
+     */
+    private void binary(int n, NodeKind kind) {
+        int exp2 = exp.at(n).rhs();
+        int exp1 = exp.lhs();
+        exp(exp2);
+        exp(exp1);
+        cg.genBinary(kind);
+    }
+}
@@ -0,0 +1,762 @@
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * FlatPass
+ *
+ * Name analysis and type checking of a FlatAst, in a single traversal of
+ * the arena through its cursors: SemanticPass for --ast=flat.  It applies
+ * the rules of Semantics, as the ASTnode classes do, in the same order,
+ * so a program gets the same messages whichever AST it is parsed into.  The
+ * symbol of each ID is linked in the FlatAst (FlatAst.link), for
+ * FlatCodegen.
+ *
+ * Name errors are reported as they are found; type errors are kept in an
+ * ErrBuffer and reported at the end only if there were no name errors.
+ * In parallel mode each function body is analyzed by its own task, as in
+ * SemanticPass: the tasks see the globals through snapshots of a
+ * PersistentSymTable and their messages are reported in source order.
+ *
+ * Usage: new FlatPass(ast, parallel).run(), then nameErrors() tells which
+ * of the two passes failed if ErrMsg.getErr() is set.
+ */
+public class FlatPass {
+    private final FlatAst ast;
+    private final boolean parallel;
+    private SymTable symTab;
+    private ErrBuffer typeErrs;
+    private boolean nameErrors;
+
+    // cursors; a method reads what it needs from a cursor before it calls
+    // another method, which may move it
+    private final FlatAst.ListView list;
+    private final FlatAst.DeclView decl;
+    private final FlatAst.StmtView stmt;
+    private final FlatAst.ExpView exp;
+
+    // the result of dotAccess, for the dot-access that contains it (see
+    // the fields of DotAccessExpNode)
+    private boolean badAccess;
+    private StructDefSym accessSym;
+
+    public FlatPass(FlatAst ast, boolean parallel) {
+        this.ast = ast;
+        this.parallel = parallel;
+        list = new FlatAst.ListView(ast);
+        decl = new FlatAst.DeclView(ast);
+        stmt = new FlatAst.StmtView(ast);
+        exp = new FlatAst.ExpView(ast);
+    }
+
+    /**
+     * run
+     * Process all of the globals, struct definitions, and functions in the
+     * program.
+     */
+    public void run() {
+        PersistentSymTable globals = null;
+        if (parallel) {
+            globals = new PersistentSymTable();
+            symTab = Compilation.current().stats.counted(globals, 1);
+        } else {
+            symTab = SymTable.create();
+        }
+        typeErrs = new ErrBuffer();
+        boolean main = false;
+
+        // parallel mode: as in SemanticPass.run
+        List<ErrBuffer> nameErrs = new ArrayList<ErrBuffer>();
+        List<ErrBuffer> bodyTypeErrs = new ArrayList<ErrBuffer>();
+        List<FnTask> tasks = new ArrayList<FnTask>();
+        ErrBuffer globalErrs = null;
+        ErrBuffer prevErrs = null;
+        if (parallel) {
+            globalErrs = new ErrBuffer();
+            nameErrs.add(globalErrs);
+            prevErrs = ErrMsg.redirect(globalErrs);
+        }
+
+        int decls = ast.kid(ast.root(), 0);
+        int n = list.at(decls).length();
+        for (int i = 0; i < n; i++) {
+            int d = ast.kid(decls, i);
+            switch (ast.kind(d)) {
+            case VAR_DECL:
+                varDecl(d, symTab, symTab, 0);
+                break;
+            case FN_DECL: {
+                FnSym sym = fnHeader(d);
+                if (ast.name(decl.at(d).id()).equals("main")) {
+                    main = true;
+                }
+                if (parallel) {
+                    FnTask task = new FnTask(ast, d, sym,
+                        Compilation.current().stats.counted(
+                            globals.snapshot(), 2));
+                    tasks.add(task);
+                    nameErrs.add(task.nameErrs);
+                    bodyTypeErrs.add(task.typeErrs);
+                    globalErrs = new ErrBuffer();
+                    nameErrs.add(globalErrs);
+                    ErrMsg.redirect(globalErrs);
+                } else {
+                    fnBody(d, sym);
+                }
+                removeScope();
+                break;
+            }
+            default:
+                structDecl(d, symTab);
+                break;
+            }
+        }
+
+        if (parallel) {
+            ErrMsg.redirect(prevErrs);
+            ForkJoinTask.invokeAll(tasks);
+            for (ErrBuffer errs : nameErrs) {
+                errs.flush();
+            }
+            for (ErrBuffer errs : bodyTypeErrs) {
+                errs.flush(typeErrs);
+            }
+        }
+
+        nameErrors = ErrMsg.getErr();
+        if (!nameErrors) {
+            typeErrs.flush();
+            Semantics.program(main);
+        }
+    }
+
+    /**
+     * Return whether name analysis found errors.
+     */
+    public boolean nameErrors() {
+        return nameErrors;
+    }
+
+    /**
+     * FnTask
+     * Process the body of one function in parallel mode.
+     */
+    private static class FnTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        final ErrBuffer nameErrs = new ErrBuffer();
+        final ErrBuffer typeErrs = new ErrBuffer();
+        private final Compilation compilation = Compilation.current();
+        private final FlatAst ast;
+        private final int fn;
+        private final FnSym sym;
+        private final SymTable symTab;
+
+        FnTask(FlatAst ast, int fn, FnSym sym, SymTable symTab) {
+            this.ast = ast;
+            this.fn = fn;
+            this.sym = sym;
+            this.symTab = symTab;
+        }
+
+        protected void compute() {
+            FlatPass pass = new FlatPass(ast, false);
+            pass.symTab = symTab;
+            pass.typeErrs = typeErrs;
+            long[] mark = compilation.stats.taskBegin();
+            Compilation prev = Compilation.enter(compilation);
+            ErrBuffer prevErrs = ErrMsg.redirect(nameErrs);
+            try {
+                pass.fnBody(fn, sym);
+            } finally {
+                ErrMsg.redirect(prevErrs);
+                Compilation.enter(prev);
+                compilation.stats.taskEnd(mark);
+            }
+        }
+    }
+
+    // **********************************************************************
+    // declarations
+    // **********************************************************************
+
+    /**
+     * varDecl
+     * Process a variable declaration at the given offset, its struct type
+     * looked up in globalTab; return its Sym, null if there was an error
+     * (see VarDeclNode.nameAnalysis).
+     */
+    private Sym varDecl(int n, SymTable symTab, SymTable globalTab,
+                        int offset) {
+        int type = decl.at(n).type();
+        int id = decl.id();
+        boolean badDecl = false;
+        StructDefSym structSym = null;
+
+        if (ast.kind(type) == NodeKind.VOID) {
+            Semantics.declaredVoid(ast.lineNum(id), ast.charNum(id));
+            badDecl = true;
+        } else if (ast.kind(type) == NodeKind.STRUCT) {
+            int structId = exp.at(type).id();
+            structSym = Semantics.structType(globalTab, ast.nameId(structId),
+                                             ast.lineNum(structId),
+                                             ast.charNum(structId));
+            if (structSym == null) {
+                badDecl = true;
+            } else {
+                ast.link(structId, structSym);
+            }
+        }
+
+        if (badDecl) {
+            Semantics.declared(symTab, ast.nameId(id),
+                               ast.lineNum(id), ast.charNum(id));
+            return null;
+        }
+
+        Sym sym;
+        if (structSym != null) {
+            sym = new StructSym(structSym);
+        } else {
+            sym = new Sym(type(type), offset);
+        }
+        return declare(symTab, id, sym) ? sym : null;
+    }
+
+    /**
+     * fnHeader
+     * Declare a function and enter its scope, with its formals declared
+     * (see FnDeclNode.nameAnalysis); return its FnSym, null if it is
+     * multiply declared.
+     */
+    private FnSym fnHeader(int fn) {
+        int type = decl.at(fn).type();
+        int id = decl.id();
+        int formals = decl.formals();
+
+        FnSym sym = new FnSym(type(type), ast.numKids(formals));
+        if (!declare(symTab, id, sym)) {
+            sym = null;
+        }
+
+        symTab.addScope();
+        List<Type> typeList = new LinkedList<Type>();
+        int offset = 4;
+        int n = list.at(formals).length();
+        for (int i = 0; i < n; i++) {
+            Sym formal = formalDecl(ast.kid(formals, i), offset);
+            if (formal != null) {
+                typeList.add(formal.getType());
+            }
+            offset += 4;
+        }
+        if (sym != null) {
+            sym.addFormals(typeList);
+        }
+        return sym;
+    }
+
+    /**
+     * formalDecl
+     * Process a formal at the given offset; return its Sym, null if there
+     * was an error (see FormalDeclNode.nameAnalysis).
+     */
+    private Sym formalDecl(int n, int offset) {
+        int type = decl.at(n).type();
+        int id = decl.id();
+
+        if (ast.kind(type) == NodeKind.VOID) {
+            Semantics.declaredVoid(ast.lineNum(id), ast.charNum(id));
+            Semantics.declared(symTab, ast.nameId(id),
+                               ast.lineNum(id), ast.charNum(id));
+            return null;
+        }
+
+        Sym sym = new Sym(type(type), offset);
+        return declare(symTab, id, sym) ? sym : null;
+    }
+
+    /**
+     * structDecl
+     * Process a struct definition: its fields, in a table of their own,
+     * then its name (see StructDeclNode.nameAnalysis).
+     */
+    private void structDecl(int n, SymTable symTab) {
+        int id = decl.at(n).id();
+        int fields = decl.fields();
+        String name = ast.name(id);
+        boolean badDecl = false;
+
+        if (Semantics.declared(symTab, ast.nameId(id),
+                               ast.lineNum(id), ast.charNum(id))) {
+            badDecl = true;
+        }
+
+        SymTable fieldSymTab = SymTable.create();
+        int count = list.at(fields).length();
+        int[] nameIds = new int[count];
+        Sym[] syms = new Sym[count];
+        int numFields = 0;
+        for (int i = 0; i < count; i++) {
+            int field = ast.kid(fields, i);
+            Sym sym = varDecl(field, fieldSymTab, symTab, 0);
+            if (sym != null) {
+                nameIds[numFields] = ast.nameId(decl.at(field).id());
+                syms[numFields] = sym;
+                numFields++;
+            }
+        }
+        StructLayout layout =
+            new StructLayout(Arrays.copyOf(nameIds, numFields),
+                             Arrays.copyOf(syms, numFields));
+
+        if (!badDecl) {
+            try {
+                StructDefSym sym = new StructDefSym(name, layout);
+                symTab.addDecl(ast.nameId(id), sym);
+                ast.link(id, sym);
+            } catch (DuplicateSymException ex) {
+                throw new IllegalStateException(
+                    "Unexpected DuplicateSymException in FlatPass.structDecl",
+                    ex);
+            } catch (EmptySymTableException ex) {
+                throw new IllegalStateException(
+                    "Unexpected EmptySymTableException in FlatPass.structDecl",
+                    ex);
+            } catch (WrongArgumentException ex) {
+                throw new IllegalStateException(
+                    "Unexpected WrongArgumentException in FlatPass.structDecl",
+                    ex);
+            }
+        }
+    }
+
+    /**
+     * declare
+     * Declare the name of ID id as sym in symTab and link it, unless the
+     * name is already declared in the innermost scope; return whether it
+     * was declared.
+     */
+    private boolean declare(SymTable symTab, int id, Sym sym) {
+        if (!Semantics.declare(symTab, ast.nameId(id), sym,
+                               ast.lineNum(id), ast.charNum(id))) {
+            return false;
+        }
+        ast.link(id, sym);
+        return true;
+    }
+
+    /**
+     * type
+     * The Type of a type node (see TypeNode.type).
+     */
+    private Type type(int n) {
+        switch (ast.kind(n)) {
+        case INT:
+            return Type.INT;
+        case BOOL:
+            return Type.BOOL;
+        case VOID:
+            return Type.VOID;
+        default: {
+            Sym sym = ast.sym(exp.at(n).id());
+            if (!(sym instanceof StructDefSym)) {
+                return Type.ERROR;
+            }
+            return ((StructDefSym)sym).getStructType();
+        }
+        }
+    }
+
+    // **********************************************************************
+    // function bodies
+    // **********************************************************************
+
+    /**
+     * fnBody
+     * Process the body of a function, in the scope of its formals.
+     */
+    private void fnBody(int fn, FnSym sym) {
+        Type retType = type(decl.at(fn).type());
+        int body = decl.body();
+        int decls = stmt.at(body).decls();
+        int stmts = stmt.stmts();
+        int offset = declList(decls, -8);
+        offset = stmtList(stmts, offset, retType);
+        if (sym != null) {
+            sym.setLocalSize(-8 - offset);
+        }
+    }
+
+    /**
+     * declList
+     * Process the local decls in a list, the first at the given offset;
+     * return the offset after the last one.
+     */
+    private int declList(int decls, int offset) {
+        int n = list.at(decls).length();
+        for (int i = 0; i < n; i++) {
+            int d = ast.kid(decls, i);
+            if (ast.kind(d) == NodeKind.VAR_DECL) {
+                varDecl(d, symTab, symTab, offset);
+                offset -= 4;
+            } else {
+                structDecl(d, symTab);
+            }
+        }
+        return offset;
+    }
+
+    /**
+     * stmtList
+     * Process the stmts in a list, in a function with the given return
+     * type; return the offset after the last local declared in them.
+     */
+    private int stmtList(int stmts, int offset, Type retType) {
+        int n = list.at(stmts).length();
+        for (int i = 0; i < n; i++) {
+            offset = stmt(ast.kid(stmts, i), offset, retType);
+        }
+        return offset;
+    }
+
+    /**
+     * block
+     * Process the decls and stmts of a nested block in a new scope.
+     */
+    private int block(int decls, int stmts, int offset, Type retType) {
+        symTab.addScope();
+        offset = declList(decls, offset);
+        offset = stmtList(stmts, offset, retType);
+        removeScope();
+        return offset;
+    }
+
+    private int stmt(int n, int offset, Type retType) {
+        NodeKind kind = ast.kind(n);
+        int e = stmt.at(n).exp();
+        switch (kind) {
+        case ASSIGN_STMT:
+        case CALL_STMT:
+            exp(e);
+            break;
+        case POST_INC_STMT:
+        case POST_DEC_STMT:
+            Semantics.incDec(exp(e), lineNum(e), charNum(e), typeErrs);
+            break;
+        case READ_STMT:
+            Semantics.read(exp(e), lineNum(e), charNum(e), typeErrs);
+            break;
+        case WRITE_STMT:
+            Semantics.write(exp(e), lineNum(e), charNum(e), typeErrs);
+            break;
+        case IF_STMT:
+        case WHILE_STMT:
+        case REPEAT_STMT: {
+            int decls = stmt.decls();
+            int stmts = stmt.stmts();
+            condition(kind, e);
+            offset = block(decls, stmts, offset, retType);
+            break;
+        }
+        case IF_ELSE_STMT: {
+            int decls = stmt.decls();
+            int stmts = stmt.stmts();
+            int elseDecls = stmt.elseDecls();
+            int elseStmts = stmt.elseStmts();
+            condition(kind, e);
+            offset = block(decls, stmts, offset, retType);
+            offset = block(elseDecls, elseStmts, offset, retType);
+            break;
+        }
+        case RETURN_STMT:
+            returnStmt(e, retType);
+            break;
+        default:
+            throw new IllegalStateException("Unexpected " + kind +
+                                            " in FlatPass.stmt");
+        }
+        return offset;
+    }
+
+    /**
+     * condition
+     * Check the condition of an if, while or repeat statement.
+     */
+    private void condition(NodeKind kind, int e) {
+        Type type = exp(e);
+        if (kind == NodeKind.REPEAT_STMT) {
+            Semantics.repeatClause(type, lineNum(e), charNum(e), typeErrs);
+        } else if (kind == NodeKind.WHILE_STMT) {
+            Semantics.whileCondition(type, lineNum(e), charNum(e), typeErrs);
+        } else {
+            Semantics.ifCondition(type, lineNum(e), charNum(e), typeErrs);
+        }
+    }
+
+    /**
+     * returnStmt
+     * Check a return statement (e is NONE if it has no expression) in a
+     * function with the given return type.
+     */
+    private void returnStmt(int e, Type retType) {
+        if (e == FlatAst.NONE) {
+            Semantics.returnStmt(null, retType, 0, 0, typeErrs);
+        } else {
+            Semantics.returnStmt(exp(e), retType, lineNum(e), charNum(e),
+                                 typeErrs);
+        }
+    }
+
+    // **********************************************************************
+    // expressions
+    // **********************************************************************
+
+    /**
+     * exp
+     * Process an expression; return its type.
+     */
+    private Type exp(int n) {
+        NodeKind kind = ast.kind(n);
+        switch (kind) {
+        case INT_LIT:
+            return Type.INT;
+        case STRING_LIT:
+            return Type.STRING;
+        case TRUE:
+        case FALSE:
+            return Type.BOOL;
+        case ID:
+            id(n);
+            return symType(n);
+        case DOT_ACCESS:
+            dotAccess(n);
+            return symType(exp.at(n).field());
+        case CALL_EXP:
+            return call(n);
+        case UNARY_MINUS: {
+            int operand = exp.at(n).operand();
+            return Semantics.unaryMinus(exp(operand), lineNum(operand),
+                                        charNum(operand), typeErrs);
+        }
+        case NOT: {
+            int operand = exp.at(n).operand();
+            return Semantics.not(exp(operand), lineNum(operand),
+                                 charNum(operand), typeErrs);
+        }
+        default:
+            break;
+        }
+
+        // ASSIGN and the binary operators
+        int lhs = exp.at(n).lhs();
+        int rhs = exp.rhs();
+        Type type1 = exp(lhs);
+        Type type2 = exp(rhs);
+        switch (kind) {
+        case ASSIGN:
+            return Semantics.assign(type1, type2, lineNum(lhs), charNum(lhs),
+                                    typeErrs);
+        case PLUS:
+        case MINUS:
+        case TIMES:
+        case DIVIDE:
+            return Semantics.arithmetic(type1, lineNum(lhs), charNum(lhs),
+                                        type2, lineNum(rhs), charNum(rhs),
+                                        typeErrs);
+        case AND:
+        case OR:
+            return Semantics.logical(type1, lineNum(lhs), charNum(lhs),
+                                     type2, lineNum(rhs), charNum(rhs),
+                                     typeErrs);
+        case LESS:
+        case GREATER:
+        case LESS_EQ:
+        case GREATER_EQ:
+            return Semantics.relational(type1, lineNum(lhs), charNum(lhs),
+                                        type2, lineNum(rhs), charNum(rhs),
+                                        typeErrs);
+        case EQUALS:
+        case NOT_EQUALS:
+            return Semantics.equality(type1, type2, lineNum(lhs),
+                                      charNum(lhs), typeErrs);
+        default:
+            throw new IllegalStateException("Unexpected " + kind +
+                                            " in FlatPass.exp");
+        }
+    }
+
+    /**
+     * id
+     * Link a use of a name to its symbol (see IdNode.nameAnalysis).
+     */
+    private void id(int n) {
+        Sym sym = Semantics.use(symTab, ast.nameId(n),
+                                ast.lineNum(n), ast.charNum(n));
+        if (sym != null) {
+            ast.link(n, sym);
+        }
+    }
+
+    /**
+     * dotAccess
+     * Process a dot-access, setting badAccess and accessSym
+     * for the one that contains it (see DotAccessExpNode.nameAnalysis).
+     */
+    private void dotAccess(int n) {
+        int loc = exp.at(n).loc();
+        int field = exp.field();
+        StructLayout layout = null;
+        boolean bad = false;
+
+        if (ast.kind(loc) == NodeKind.ID) {
+            id(loc);
+            Sym sym = ast.sym(loc);
+            if (sym == null) {
+                bad = true;
+            } else if (sym instanceof StructSym) {
+                layout = ((StructSym)sym).getStructDef().getLayout();
+            } else {
+                Semantics.nonStructAccess(ast.lineNum(loc), ast.charNum(loc));
+                bad = true;
+            }
+        } else {
+            dotAccess(loc);
+            if (badAccess) {
+                bad = true;
+            } else if (accessSym == null) {
+                int locField = exp.at(loc).field();
+                Semantics.nonStructAccess(ast.lineNum(locField),
+                                          ast.charNum(locField));
+                bad = true;
+            } else {
+                layout = accessSym.getLayout();
+            }
+        }
+
+        accessSym = null;
+        if (!bad) {
+            int index = Semantics.field(layout, ast.nameId(field),
+                                        ast.lineNum(field), ast.charNum(field));
+            if (index < 0) {
+                bad = true;
+            } else {
+                Sym sym = layout.fieldSym(index);
+                ast.link(field, sym);
+                if (sym instanceof StructSym) {
+                    accessSym = ((StructSym)sym).getStructDef();
+                }
+            }
+        }
+        badAccess = bad;
+    }
+
+    /**
+     * call
+     * Process a function call (see SemanticPass.call).
+     */
+    private Type call(int n) {
+        int callee = exp.at(n).callee();
+        int actuals = exp.actuals();
+        id(callee);
+
+        if (!Semantics.callee(symType(callee), lineNum(callee),
+                              charNum(callee), typeErrs)) {
+            actuals(actuals, ErrBuffer.NONE);
+            return Type.ERROR;
+        }
+        FnSym fnSym = (FnSym)ast.sym(callee);
+        int numActuals = list.at(actuals).length();
+        if (!Semantics.numArgs(numActuals, fnSym, lineNum(callee),
+                               charNum(callee), typeErrs)) {
+            actuals(actuals, ErrBuffer.NONE);
+            return fnSym.getReturnType();
+        }
+
+        // a formal with a name error has no type; skip its actual's check
+        List<Type> formalTypes = fnSym.getParamTypes();
+        Iterator<Type> formals = formalTypes.iterator();
+        for (int i = 0; i < numActuals; i++) {
+            int actual = ast.kid(actuals, i);
+            Type actualType = exp(actual);
+            if (formals.hasNext()) {
+                Semantics.actual(actualType, formals.next(), lineNum(actual),
+                                 charNum(actual), typeErrs);
+            }
+        }
+        return fnSym.getReturnType();
+    }
+
+    /**
+     * actuals
+     * Process the actuals of a call, sending their type errors to errs.
+     */
+    private void actuals(int actuals, ErrBuffer errs) {
+        ErrBuffer saved = typeErrs;
+        typeErrs = errs;
+        int n = list.at(actuals).length();
+        for (int i = 0; i < n; i++) {
+            exp(ast.kid(actuals, i));
+        }
+        typeErrs = saved;
+    }
+
+    private Type symType(int id) {
+        Sym sym = ast.sym(id);
+        if (sym == null) {
+            return Type.ERROR;
+        }
+        return sym.getType();
+    }
+
+    /**
+     * The line number of an expression: that of its leftmost leaf, or for
+     * a dot-access or a call, of its name (see the lineNum methods of the
+     * ExpNode classes).
+     */
+    private int lineNum(int n) {
+        return ast.lineNum(position(n));
+    }
+
+    private int charNum(int n) {
+        return ast.charNum(position(n));
+    }
+
+    private int position(int n) {
+        for (;;) {
+            switch (ast.kind(n)) {
+            case DOT_ACCESS:
+                return ast.kid(n, 1);
+            case ASSIGN:
+            case CALL_EXP:
+            case UNARY_MINUS:
+            case NOT:
+            case PLUS:
+            case MINUS:
+            case TIMES:
+            case DIVIDE:
+            case AND:
+            case OR:
+            case EQUALS:
+            case NOT_EQUALS:
+            case LESS:
+            case GREATER:
+            case LESS_EQ:
+            case GREATER_EQ:
+                n = ast.kid(n, 0);
+                break;
+            default:
+                return n;
+            }
+        }
+    }
+
+    private void removeScope() {
+        try {
+            symTab.removeScope();
+        } catch (EmptySymTableException ex) {
+            throw new IllegalStateException(
+                "Unexpected EmptySymTableException in FlatPass.removeScope",
+                ex);
+        }
+    }
+}
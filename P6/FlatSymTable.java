@@ -0,0 +1,187 @@
+import java.util.*;
+
+/**
+ * FlatSymTable
+ *
+ * A SymTable that keeps all of its scopes in one open-addressing hash
+ * table instead of one HashMap per scope.  Each slot holds a name and the
+ * chain of its bindings, innermost first: declaring a name in an inner
+ * scope pushes a binding onto the front of the chain, shadowing the outer
+ * ones.  Every declaration is also recorded in an undo log, and removeScope
+ * pops the log back to the mark saved by the matching addScope, unlinking
+ * each binding from its chain.
+ *
+ * lookupLocal, lookupGlobal and declare are one probe regardless of how
+ * deeply scopes are nested, addScope is O(1), and removeScope is O(1) per
+ * declaration it removes.
+ */
+public class FlatSymTable extends SymTable {
+    private static final int INITIAL_CAPACITY = 32;  // must be a power of 2
+
+    // open-addressing table of names, linear probing
+    private Entry[] table;
+    private int numEntries;
+
+    // undo log: entries declared, in order, and the log size at each scope
+    private Entry[] log;
+    private int logSize;
+    private int[] marks;
+    private int depth;      // number of scopes; 0 if the table is empty
+
+    /**
+     * One slot of the hash table: a name and its bindings, innermost first.
+     * A slot stays in the table after its last binding is removed.
+     */
+    private static class Entry {
+        final String name;
+        final int hash;
+        Binding top;
+
+        Entry(String name, int hash) {
+            this.name = name;
+            this.hash = hash;
+        }
+    }
+
+    /**
+     * A declaration of a name in scope number depth (outermost is 0).
+     */
+    private static class Binding {
+        final Sym sym;
+        final int depth;
+        final Binding shadowed;
+
+        Binding(Sym sym, int depth, Binding shadowed) {
+            this.sym = sym;
+            this.depth = depth;
+            this.shadowed = shadowed;
+        }
+    }
+
+    public FlatSymTable() {
+        table = new Entry[INITIAL_CAPACITY];
+        log = new Entry[INITIAL_CAPACITY];
+        marks = new int[8];
+        depth = 1;
+    }
+
+    public Sym declare(String name, Sym sym)
+        throws EmptySymTableException, WrongArgumentException {
+        checkArgs(name, sym);
+
+        if (depth == 0) {
+            throw new EmptySymTableException();
+        }
+
+        Entry e = findOrInsert(name);
+        Binding top = e.top;
+        if (top != null && top.depth == depth - 1)
+            return top.sym;
+
+        e.top = new Binding(sym, depth - 1, top);
+        if (logSize == log.length)
+            log = Arrays.copyOf(log, logSize * 2);
+        log[logSize++] = e;
+        return null;
+    }
+
+    public void addScope() {
+        if (depth == marks.length)
+            marks = Arrays.copyOf(marks, depth * 2);
+        marks[depth++] = logSize;
+    }
+
+    public Sym lookupLocal(String name) {
+        Entry e = find(name);
+        if (e == null || e.top == null || e.top.depth != depth - 1)
+            return null;
+        return e.top.sym;
+    }
+
+    public Sym lookupGlobal(String name) {
+        Entry e = find(name);
+        if (e == null || e.top == null)
+            return null;
+        return e.top.sym;
+    }
+
+    public void removeScope() throws EmptySymTableException {
+        if (depth == 0)
+            throw new EmptySymTableException();
+        int mark = marks[--depth];
+        while (logSize > mark) {
+            Entry e = log[--logSize];
+            log[logSize] = null;
+            e.top = e.top.shadowed;
+        }
+    }
+
+    public void print() {
+        System.out.print("\n=== Sym Table ===\n");
+        for (int d = depth - 1; d >= 0; d--) {
+            int end = (d == depth - 1) ? logSize : marks[d + 1];
+            HashMap<String, Sym> symTab = new HashMap<String, Sym>();
+            for (int k = marks[d]; k < end; k++) {
+                Binding b = log[k].top;
+                while (b.depth != d)
+                    b = b.shadowed;
+                symTab.put(log[k].name, b.sym);
+            }
+            System.out.println(symTab.toString());
+        }
+        System.out.println();
+    }
+
+    // names like x1, x2, ... have nearby hash codes; scatter them so that
+    // linear probing does not build long runs
+    private static int hash(String name) {
+        int h = name.hashCode() * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private Entry find(String name) {
+        if (name == null)
+            return null;
+        int h = hash(name);
+        int mask = table.length - 1;
+        for (int i = h & mask; ; i = (i + 1) & mask) {
+            Entry e = table[i];
+            if (e == null)
+                return null;
+            if (e.hash == h && (e.name == name || e.name.equals(name)))
+                return e;
+        }
+    }
+
+    private Entry findOrInsert(String name) {
+        int h = hash(name);
+        int mask = table.length - 1;
+        int i = h & mask;
+        for (Entry e = table[i]; e != null; e = table[i]) {
+            if (e.hash == h && (e.name == name || e.name.equals(name)))
+                return e;
+            i = (i + 1) & mask;
+        }
+
+        Entry e = new Entry(name, h);
+        table[i] = e;
+        if (++numEntries * 2 > table.length)
+            grow();
+        return e;
+    }
+
+    // double the table; keeps the load factor at or below 1/2
+    private void grow() {
+        Entry[] old = table;
+        table = new Entry[old.length * 2];
+        int mask = table.length - 1;
+        for (Entry e : old) {
+            if (e == null)
+                continue;
+            int i = e.hash & mask;
+            while (table[i] != null)
+                i = (i + 1) & mask;
+            table[i] = e;
+        }
+    }
+}
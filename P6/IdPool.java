@@ -0,0 +1,185 @@
+/**
+ * IdPool
+ *
+ * This class interns identifier names.  The scanner puts every identifier
+ * it reads into the pool, and each distinct name gets a dense int id
+ * (0, 1, 2, ...).  The id travels with the IdTokenVal into the IdNode, so
+ * name analysis can key symbol tables on the int instead of hashing and
+ * comparing the String again for every use of the identifier.
+ *
+ * Each Compilation has a pool of its own (Compilation.ids).  The scanner,
+ * the parsers and the symbol tables take the pool of their compilation
+ * when they are created and keep it, rather than look it up for every
+ * name.  A pool is not thread-safe; once the scanner is done, every name
+ * is in it and the pool is only read.
+ */
+class IdPool {
+	private static final int INITIAL_CAPACITY = 256;  // must be a power of 2
+
+	// names[id] is the canonical String for id
+	private String[] names = new String[INITIAL_CAPACITY];
+	private int[] hashes = new int[INITIAL_CAPACITY];
+	private int size = 0;
+
+	// open-addressing table, linear probing; holds id+1, 0 if the slot is free
+	private int[] slots = new int[INITIAL_CAPACITY * 2];
+
+	/**
+	 * Returns the id of name, adding name to the pool if it is new.
+	 * @param name identifier text
+	 */
+	int intern(String name) {
+		int h = name.hashCode();
+		int mask = slots.length - 1;
+		int i = spread(h) & mask;
+		for (int s = slots[i]; s != 0; s = slots[i]) {
+			if (hashes[s - 1] == h && names[s - 1].equals(name)) {
+				return s - 1;
+			}
+			i = (i + 1) & mask;
+		}
+		return add(name, h, i);
+	}
+
+	/**
+	 * Returns the id of the name in buf[offset] to buf[offset+length-1],
+	 * adding it to the pool if it is new.  A String is made only for a new
+	 * name, so the scanner can intern straight from its buffer.
+	 */
+	int intern(char[] buf, int offset, int length) {
+		int h = 0;    // as String.hashCode
+		for (int k = 0; k < length; k++) {
+			h = 31 * h + buf[offset + k];
+		}
+		int mask = slots.length - 1;
+		int i = spread(h) & mask;
+		for (int s = slots[i]; s != 0; s = slots[i]) {
+			if (hashes[s - 1] == h && equal(names[s - 1], buf, offset, length)) {
+				return s - 1;
+			}
+			i = (i + 1) & mask;
+		}
+		return add(new String(buf, offset, length), h, i);
+	}
+
+	/**
+	 * As intern(char[], ...), for the name in bytes, each byte being the
+	 * char of the same value.
+	 */
+	int intern(byte[] buf, int offset, int length) {
+		int h = 0;    // as String.hashCode
+		for (int k = 0; k < length; k++) {
+			h = 31 * h + (buf[offset + k] & 0xff);
+		}
+		int mask = slots.length - 1;
+		int i = spread(h) & mask;
+		for (int s = slots[i]; s != 0; s = slots[i]) {
+			if (hashes[s - 1] == h && equal(names[s - 1], buf, offset, length)) {
+				return s - 1;
+			}
+			i = (i + 1) & mask;
+		}
+		char[] name = new char[length];
+		for (int k = 0; k < length; k++) {
+			name[k] = (char)(buf[offset + k] & 0xff);
+		}
+		return add(new String(name), h, i);
+	}
+
+	/**
+	 * Interns the names of other, in the order of their ids, in this pool;
+	 * returns the id here of each id of other.
+	 */
+	int[] intern(IdPool other) {
+		int[] ids = new int[other.size];
+		for (int id = 0; id < other.size; id++) {
+			ids[id] = intern(other.names[id]);
+		}
+		return ids;
+	}
+
+	/**
+	 * Returns the id of name, or -1 if name has never been interned.
+	 * @param name identifier text
+	 */
+	int lookup(String name) {
+		int h = name.hashCode();
+		int mask = slots.length - 1;
+		for (int i = spread(h) & mask; slots[i] != 0; i = (i + 1) & mask) {
+			int id = slots[i] - 1;
+			if (hashes[id] == h && names[id].equals(name)) {
+				return id;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the canonical String for id.
+	 */
+	String name(int id) {
+		return names[id];
+	}
+
+	/**
+	 * Returns the number of distinct names; ids are 0 to size()-1.
+	 */
+	int size() {
+		return size;
+	}
+
+	private int add(String name, int h, int slot) {
+		if (size == names.length) {
+			names = java.util.Arrays.copyOf(names, size * 2);
+			hashes = java.util.Arrays.copyOf(hashes, size * 2);
+		}
+		int id = size++;
+		names[id] = name;
+		hashes[id] = h;
+		slots[slot] = id + 1;
+		if (size * 2 > slots.length) {
+			rehash();
+		}
+		return id;
+	}
+
+	private void rehash() {
+		slots = new int[slots.length * 2];
+		int mask = slots.length - 1;
+		for (int id = 0; id < size; id++) {
+			int i = spread(hashes[id]) & mask;
+			while (slots[i] != 0) {
+				i = (i + 1) & mask;
+			}
+			slots[i] = id + 1;
+		}
+	}
+
+	private static boolean equal(String name, char[] buf, int offset, int length) {
+		if (name.length() != length) {
+			return false;
+		}
+		for (int k = 0; k < length; k++) {
+			if (name.charAt(k) != buf[offset + k]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean equal(String name, byte[] buf, int offset, int length) {
+		if (name.length() != length) {
+			return false;
+		}
+		for (int k = 0; k < length; k++) {
+			if (name.charAt(k) != (buf[offset + k] & 0xff)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static int spread(int h) {
+		return h ^ (h >>> 16);
+	}
+}
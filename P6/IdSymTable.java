@@ -0,0 +1,138 @@
+import java.util.*;
+
+/**
+ * IdSymTable
+ *
+ * A SymTable keyed by the int ids that IdPool gives identifier names.
+ * Declarations are kept on one stack, in order, in parallel arrays; the
+ * stack doubles as the undo log for removeScope, since the declarations
+ * of a scope are exactly the entries pushed after its addScope.
+ * top[id] is the stack index of the innermost declaration of id, and each
+ * entry records the index of the declaration it shadows.
+ *
+ * Lookups by id are an array index and one comparison: no hashing, no
+ * String.equals, and declare allocates nothing once the arrays are big
+ * enough.  The String versions of the methods go through IdPool first;
+ * they do not add names to it, so declare(String, Sym) only takes a name
+ * that is already there (every identifier the scanner returns is).
+ */
+public class IdSymTable extends SymTable {
+    private static final int INITIAL_CAPACITY = 64;
+
+    // top[id] is the stack index of the innermost declaration of id, or -1
+    private int[] top;
+
+    // the declaration stack
+    private int[] stackId;
+    private Sym[] stackSym;
+    private int[] stackShadowed;
+    private int stackSize;
+
+    // stack size at each addScope
+    private int[] marks;
+    private int depth;      // number of scopes; 0 if the table is empty
+
+    public IdSymTable() {
+        top = new int[Math.max(ids.size(), INITIAL_CAPACITY)];
+        Arrays.fill(top, -1);
+        stackId = new int[INITIAL_CAPACITY];
+        stackSym = new Sym[INITIAL_CAPACITY];
+        stackShadowed = new int[INITIAL_CAPACITY];
+        marks = new int[8];
+        depth = 1;
+    }
+
+    public Sym declare(String name, Sym sym)
+        throws EmptySymTableException, WrongArgumentException {
+        checkArgs(name, sym);
+        int id = ids.lookup(name);
+        if (id < 0) {
+            throw new WrongArgumentException("Name " + name +
+                                             " is not in the IdPool.");
+        }
+        return declare(id, sym);
+    }
+
+    public Sym declare(int id, Sym sym)
+        throws EmptySymTableException, WrongArgumentException {
+        if (sym == null) {
+            throw new WrongArgumentException("Argument sym is null.");
+        }
+        if (depth == 0) {
+            throw new EmptySymTableException();
+        }
+
+        if (id >= top.length) {
+            int oldLength = top.length;
+            top = Arrays.copyOf(top, Math.max(id + 1, oldLength * 2));
+            Arrays.fill(top, oldLength, top.length, -1);
+        }
+
+        int k = top[id];
+        if (k >= marks[depth - 1])
+            return stackSym[k];
+
+        if (stackSize == stackId.length) {
+            stackId = Arrays.copyOf(stackId, stackSize * 2);
+            stackSym = Arrays.copyOf(stackSym, stackSize * 2);
+            stackShadowed = Arrays.copyOf(stackShadowed, stackSize * 2);
+        }
+        stackId[stackSize] = id;
+        stackSym[stackSize] = sym;
+        stackShadowed[stackSize] = k;
+        top[id] = stackSize++;
+        return null;
+    }
+
+    public void addScope() {
+        if (depth == marks.length)
+            marks = Arrays.copyOf(marks, depth * 2);
+        marks[depth++] = stackSize;
+    }
+
+    public Sym lookupLocal(String name) {
+        return (name == null) ? null : lookupLocal(ids.lookup(name));
+    }
+
+    public Sym lookupLocal(int id) {
+        if (id < 0 || id >= top.length || depth == 0)
+            return null;
+        int k = top[id];
+        return (k >= marks[depth - 1]) ? stackSym[k] : null;
+    }
+
+    public Sym lookupGlobal(String name) {
+        return (name == null) ? null : lookupGlobal(ids.lookup(name));
+    }
+
+    public Sym lookupGlobal(int id) {
+        if (id < 0 || id >= top.length)
+            return null;
+        int k = top[id];
+        return (k >= 0) ? stackSym[k] : null;
+    }
+
+    public void removeScope() throws EmptySymTableException {
+        if (depth == 0)
+            throw new EmptySymTableException();
+        int mark = marks[--depth];
+        while (stackSize > mark) {
+            stackSize--;
+            top[stackId[stackSize]] = stackShadowed[stackSize];
+            stackSym[stackSize] = null;
+        }
+    }
+
+    public void print() {
+        System.out.print("\n=== Sym Table ===\n");
+        for (int d = depth - 1; d >= 0; d--) {
+            int end = (d == depth - 1) ? stackSize : marks[d + 1];
+            HashMap<String, Sym> symTab = new HashMap<String, Sym>();
+            for (int k = marks[d]; k < end; k++) {
+                symTab.put(ids.name(stackId[k]), stackSym[k]);
+            }
+            System.out.println(symTab.toString());
+        }
+        System.out.println();
+    }
+}
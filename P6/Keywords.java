@@ -0,0 +1,107 @@
+/**
+ * Keywords
+ *
+ * The keywords of Carrot.  The scanner matches keywords with the rule for
+ * identifiers and then looks the text up here, rather than giving each
+ * keyword a rule of its own (which would make the DFA and its tables
+ * larger, by a few states per keyword).
+ *
+ * The lookup is a perfect hash on the first char, the last char and the
+ * length of the text: no two keywords share a slot, so a lookup is one
+ * probe and at most one comparison.  The two multipliers of the hash are
+ * found when the class is loaded, so a keyword is added by adding it to
+ * the list below.
+ */
+class Keywords {
+    private static final String[] WORDS = {
+        "bool", "int", "void", "true", "false", "struct", "cin", "cout",
+        "if", "else", "while", "return", "repeat"
+    };
+    private static final int[] KINDS = {
+        sym.BOOL, sym.INT, sym.VOID, sym.TRUE, sym.FALSE, sym.STRUCT,
+        sym.CIN, sym.COUT, sym.IF, sym.ELSE, sym.WHILE, sym.RETURN,
+        sym.REPEAT
+    };
+
+    private static final int SIZE = 32;  // a power of 2, > WORDS.length
+    private static final int MAX_MULTIPLIER = 256;
+
+    private static int mulFirst;
+    private static int mulLast;
+    private static final char[][] table = new char[SIZE][];
+    private static final int[] kinds = new int[SIZE];
+
+    static {
+        if (!findHash()) {
+            throw new Error("no perfect hash for the keywords; make SIZE larger");
+        }
+    }
+
+    /**
+     * Returns the sym constant of the keyword in buf[offset] to
+     * buf[offset+length-1], or -1 if it is not a keyword.
+     */
+    static int kind(char[] buf, int offset, int length) {
+        int slot = hash(buf[offset], buf[offset + length - 1], length);
+        char[] word = table[slot];
+        if (word == null || word.length != length) {
+            return -1;
+        }
+        for (int k = 0; k < length; k++) {
+            if (word[k] != buf[offset + k]) {
+                return -1;
+            }
+        }
+        return kinds[slot];
+    }
+
+    /**
+     * As kind(char[], ...), for the text in bytes, each byte being the
+     * char of the same value.
+     */
+    static int kind(byte[] buf, int offset, int length) {
+        int slot = hash((char)(buf[offset] & 0xff),
+                        (char)(buf[offset + length - 1] & 0xff), length);
+        char[] word = table[slot];
+        if (word == null || word.length != length) {
+            return -1;
+        }
+        for (int k = 0; k < length; k++) {
+            if (word[k] != (buf[offset + k] & 0xff)) {
+                return -1;
+            }
+        }
+        return kinds[slot];
+    }
+
+    private static int hash(char first, char last, int length) {
+        return (first * mulFirst + last * mulLast + length) & (SIZE - 1);
+    }
+
+    // tries the multipliers in order until the keywords all hash to
+    // different slots, and fills the table with them
+    private static boolean findHash() {
+        for (mulFirst = 1; mulFirst < MAX_MULTIPLIER; mulFirst++) {
+            for (mulLast = 1; mulLast < MAX_MULTIPLIER; mulLast++) {
+                if (fill()) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static boolean fill() {
+        java.util.Arrays.fill(table, null);
+        for (int i = 0; i < WORDS.length; i++) {
+            String w = WORDS[i];
+            int slot = hash(w.charAt(0), w.charAt(w.length() - 1), w.length());
+            if (table[slot] != null) {
+                return false;
+            }
+            table[slot] = w.toCharArray();
+            kinds[slot] = KINDS[i];
+        }
+        return true;
+    }
+}
@@ -0,0 +1,66 @@
+import java.util.*;
+
+/**
+ * ListSymTable
+ *
+ * The default symbol table: a list of HashMaps, one per scope, innermost
+ * scope first.
+ */
+public class ListSymTable extends SymTable {
+    private List<HashMap<String, Sym>> list;
+    
+    public ListSymTable() {
+        list = new LinkedList<HashMap<String, Sym>>();
+        list.add(new HashMap<String, Sym>());
+    }
+
+    public Sym declare(String name, Sym sym)
+	throws EmptySymTableException, WrongArgumentException {
+        checkArgs(name, sym);
+        
+        if (list.isEmpty()) {
+            throw new EmptySymTableException();
+        }
+	
+        HashMap<String, Sym> symTab = list.get(0);
+        return symTab.putIfAbsent(name, sym);
+    }
+    
+    public void addScope() {
+        list.add(0, new HashMap<String, Sym>());
+    }
+    
+    public Sym lookupLocal(String name) {
+        if (list.isEmpty())
+            return null;
+        
+        HashMap<String, Sym> symTab = list.get(0); 
+        return symTab.get(name);
+    }
+    
+    public Sym lookupGlobal(String name) {
+        if (list.isEmpty())
+            return null;
+        
+        for (HashMap<String, Sym> symTab : list) {
+            Sym sym = symTab.get(name);
+            if (sym != null)
+                return sym;
+        }
+        return null;
+    }
+    
+    public void removeScope() throws EmptySymTableException {
+        if (list.isEmpty())
+            throw new EmptySymTableException();
+        list.remove(0);
+    }
+    
+    public void print() {
+        System.out.print("\n=== Sym Table ===\n");
+        for (HashMap<String, Sym> symTab : list) {
+            System.out.println(symTab.toString());
+        }
+        System.out.println();
+    }
+}
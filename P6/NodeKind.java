@@ -0,0 +1,69 @@
+/**
+ * NodeKind
+ *
+ * The kinds of AST nodes, one for each concrete subclass of ASTnode (see
+ * the table at the top of ast.java).  FlatAst stores a node's kind as the
+ * ordinal of its NodeKind.
+ */
+public enum NodeKind {
+    PROGRAM,            // ProgramNode
+    DECL_LIST,          // DeclListNode
+    FORMALS_LIST,       // FormalsListNode
+    FN_BODY,            // FnBodyNode
+    STMT_LIST,          // StmtListNode
+    EXP_LIST,           // ExpListNode
+
+    VAR_DECL,           // VarDeclNode
+    FN_DECL,            // FnDeclNode
+    FORMAL_DECL,        // FormalDeclNode
+    STRUCT_DECL,        // StructDeclNode
+
+    INT,                // IntNode
+    BOOL,               // BoolNode
+    VOID,               // VoidNode
+    STRUCT,             // StructNode
+
+    ASSIGN_STMT,        // AssignStmtNode
+    POST_INC_STMT,      // PostIncStmtNode
+    POST_DEC_STMT,      // PostDecStmtNode
+    READ_STMT,          // ReadStmtNode
+    WRITE_STMT,         // WriteStmtNode
+    IF_STMT,            // IfStmtNode
+    IF_ELSE_STMT,       // IfElseStmtNode
+    WHILE_STMT,         // WhileStmtNode
+    REPEAT_STMT,        // RepeatStmtNode
+    CALL_STMT,          // CallStmtNode
+    RETURN_STMT,        // ReturnStmtNode
+
+    INT_LIT,            // IntLitNode
+    STRING_LIT,         // StringLitNode
+    TRUE,               // TrueNode
+    FALSE,              // FalseNode
+    ID,                 // IdNode
+    DOT_ACCESS,         // DotAccessExpNode
+    ASSIGN,             // AssignNode
+    CALL_EXP,           // CallExpNode
+    UNARY_MINUS,        // UnaryMinusNode
+    NOT,                // NotNode
+    PLUS,               // PlusNode
+    MINUS,              // MinusNode
+    TIMES,              // TimesNode
+    DIVIDE,             // DivideNode
+    AND,                // AndNode
+    OR,                 // OrNode
+    EQUALS,             // EqualsNode
+    NOT_EQUALS,         // NotEqualsNode
+    LESS,               // LessNode
+    GREATER,            // GreaterNode
+    LESS_EQ,            // LessEqNode
+    GREATER_EQ;         // GreaterEqNode
+
+    private static final NodeKind[] VALUES = values();
+
+    /**
+     * Returns the kind whose ordinal is k.
+     */
+    public static NodeKind of(int k) {
+        return VALUES[k];
+    }
+}
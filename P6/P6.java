@@ -1,4 +1,11 @@
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.*;
 
 import java_cup.runtime.*;
 
@@ -8,16 +15,76 @@ import java_cup.runtime.*;
  * There should be 2 command-line arguments:
  *    1. the file to be parsed
  *    2. the output MIPS file
+ * optionally followed by:
+ *    --symtab=list|flat|id|persistent
+ *                         symbol table engine used by name analysis
+ *    --ast=tree|flat      how the parser stores the AST: as ASTnode
+ *                         objects, or in a FlatAst arena (FlatCarrot.cup)
+ *                         that the fused pass (FlatPass) and codegen
+ *                         (FlatCodegen) then walk in place
+ *    --passes=separate|fused|parallel
+ *                         run name analysis and type checking as two
+ *                         traversals, or as one (SemanticPass), or as one
+ *                         with the function bodies analyzed in parallel
+ *    --stats[=file]       report the time, allocation and work of each
+ *                         phase as JSON (see Stats), to file or stdout
+ *    --scan=stream|batch|parallel
+ *                         let the CUP parser pull one token at a time from
+ *                         the scanner, or scan the whole file into a
+ *                         TokenBuffer first and parse that with
+ *                         TokenParser (which always builds a tree AST);
+ *                         parallel is batch with large sources scanned in
+ *                         chunks at once (ParallelScanner)
+ *    --input=bytes|chars  map the input file and, if it is all ASCII, scan
+ *                         its bytes in place; or decode it into chars
+ *                         first (the default charset), as for any file
+ *                         that is not ASCII
  *
  * The program opens the two files, creates a scanner and a parser, and
  * calls the parser.  If the parse is successful, then it will call name
  * analysis and type checking routines. If there is no error at the end,
  * it will generate MIPS code to the output file.
+ *
+ * In batch mode,
+ *    --batch [options] file.crrt ...
+ * each file is compiled to file.s, all of them in parallel on the common
+ * fork-join pool, in one Compilation each.  The messages for each file are
+ * kept until all the files are done, then written in the order of the
+ * files, each line prefixed with the path of its file and followed by one
+ * line with the result for that file; --stats writes a JSON array of the
+ * reports, in the same order.  A file may be named only once.  The exit
+ * status is 0 if every file compiled without error.
+ *
+ * In server mode,
+ *    --server[=port] [options]
+ * the program keeps running and compiles the sources sent to it over a
+ * local socket, and
+ *    --client[=port] <infile> <outfile> [options]
+ * compiles a file with such a server, writing the same output and
+ * exiting with the same status as a compilation in its own JVM (see
+ * P6Server).
+ *
+ * Nothing here calls System.exit but main: an error that ends a
+ * compilation (pukeAndDie) throws an AbortException, so it ends only
+ * that compilation.
  */
 public class P6 {
-	FileReader inFile;
+	Reader inFile;
+	private CharBuffer source;    // the input, if it is in memory
+	private ByteBuffer bytes;     // the input file, mapped, if it is ASCII
+	private String inFileName;
 	private PrintWriter outFile;
-	private static PrintStream outStream = System.err;
+	private final Compilation compilation = new Compilation();
+	private boolean flatAst = false;
+	private boolean fusedPasses = false;
+	private boolean parallelPasses = false;
+	private boolean batchScan = false;
+	private boolean parallelScan = false;
+	private boolean byteInput = true;
+	private String statsFile = null;    // "" for stdout
+
+	// the parse ended on a syntax error that the parser has reported
+	private boolean syntaxReported = false;
 
 	public static final int RESULT_CORRECT = 0;
 	public static final int RESULT_SYNTAX_ERROR = 1;
@@ -47,6 +114,10 @@ public class P6 {
 			pukeAndDie(msg);
 		}
 
+		for (int i = 2; i < args.length; i++) {
+			setOption(args[i]);
+		}
+
 		try {
 			setInfile(args[0]);
 			setOutfile(args[1]);
@@ -57,18 +128,148 @@ public class P6 {
 		}
 	}
 
+	/**
+	 * Handles one command-line option of the form --name=value
+	 * @param option the option as given on the command line
+	 */
+	void setOption(String option) {
+		if (option.startsWith("--symtab=")) {
+			String engine = option.substring("--symtab=".length());
+			if (!SymTable.setEngine(compilation, engine)) {
+				pukeAndDie("unknown symbol table engine: " + engine);
+			}
+		} else if (option.equals("--ast=tree")) {
+			flatAst = false;
+		} else if (option.equals("--ast=flat")) {
+			flatAst = true;
+		} else if (option.equals("--passes=separate")) {
+			fusedPasses = false;
+			parallelPasses = false;
+		} else if (option.equals("--passes=fused")) {
+			fusedPasses = true;
+			parallelPasses = false;
+		} else if (option.equals("--passes=parallel")) {
+			fusedPasses = true;
+			parallelPasses = true;
+		} else if (option.equals("--scan=stream")) {
+			batchScan = false;
+			parallelScan = false;
+		} else if (option.equals("--scan=batch")) {
+			batchScan = true;
+			parallelScan = false;
+		} else if (option.equals("--scan=parallel")) {
+			batchScan = true;
+			parallelScan = true;
+		} else if (option.equals("--input=bytes")) {
+			byteInput = true;
+		} else if (option.equals("--input=chars")) {
+			byteInput = false;
+		} else if (option.equals("--stats")) {
+			statsFile = "";
+		} else if (option.startsWith("--stats=")) {
+			statsFile = option.substring("--stats=".length());
+		} else {
+			pukeAndDie("unknown option: " + option);
+		}
+	}
+
 	/**
 	 * Source code file path
 	 * @param filename path to source file
 	 */
 	public void setInfile(String filename) throws BadInfileException{
 		try {
-			inFile = new FileReader(filename);
-		} catch (FileNotFoundException ex) {
+			// map the whole file, so that the scanner works on the
+			// bytes (or the chars decoded from them) in place rather
+			// than through a Reader
+			ByteBuffer mapped;
+			try (FileChannel in = FileChannel.open(Paths.get(filename))) {
+				mapped = in.map(FileChannel.MapMode.READ_ONLY, 0, in.size());
+			}
+			setInput(mapped, filename);
+		} catch (IOException ex) {
 			throw new BadInfileException(ex, filename);
 		}
 	}
 
+	/**
+	 * Source code as the bytes of a file: scanned as they are if they
+	 * are all ASCII (and --input=chars is not given), decoded with the
+	 * default charset otherwise.  Set the options first.
+	 * @param in the bytes of the source, from index 0 to the limit
+	 * @param name name of the source, for the stats report
+	 */
+	public void setInput(ByteBuffer in, String name) {
+		if (byteInput && isAscii(in)) {
+			bytes = in;
+			source = null;
+		} else {
+			bytes = null;
+			source = Charset.defaultCharset().decode(in);
+		}
+		inFileName = name;
+	}
+
+	/**
+	 * Whether all the bytes of buf are ASCII, in which case they are the
+	 * chars they decode to
+	 */
+	private static boolean isAscii(ByteBuffer buf) {
+		int n = buf.limit();
+		int i = 0;
+		for (; i + 8 <= n; i += 8) {
+			if ((buf.getLong(i) & 0x8080808080808080L) != 0) {
+				return false;
+			}
+		}
+		for (; i < n; i++) {
+			if (buf.get(i) < 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Source code already in memory
+	 * @param in the source
+	 * @param name name of the source, for the stats report
+	 */
+	public void setInput(CharBuffer in, String name) {
+		source = in;
+		bytes = null;
+		inFileName = name;
+	}
+
+	/**
+	 * Source code read from a Reader
+	 * @param in the source
+	 * @param name name of the source, for the stats report
+	 */
+	public void setInput(Reader in, String name) {
+		inFile = in;
+		source = null;
+		bytes = null;
+		inFileName = name;
+	}
+
+	/**
+	 * Output to a Writer
+	 * @param out destination of the MIPS code
+	 */
+	public void setOutput(Writer out) {
+		outFile = new PrintWriter(out);
+	}
+
+	/**
+	 * Stream to which the messages of this compilation are written
+	 * (System.err by default)
+	 * @param err the stream
+	 */
+	public void setErrStream(PrintStream err) {
+		compilation.errStream = err;
+	}
+
 	/**
 	 * Text file output
 	 * @param filename path to destination file
@@ -113,14 +314,43 @@ public class P6 {
 	}
 
 	/**
-	 * Private error handling method. Prints an error message
-	 * @link pukeAndDie(String, int) with a default error code
-	 * @param error message to print on exit
+	 * Private error handling method. Prints an error message and ends
+	 * the compilation by throwing an AbortException; when P6 is run
+	 * from the command line, main then exits with status -1
+	 * @param error message to print on exit, or null if it has already
+	 *        been reported
+	 * @param retCode result code of the compilation
 	 */
 	private void pukeAndDie(String error, int retCode) {
-		outStream.println(error);
+		if (error != null) {
+			compilation.errStream.println(error);
+		}
 		cleanup();
-		System.exit(-1);
+		throw new AbortException(retCode);
+	}
+
+	/**
+	 * Thrown by pukeAndDie
+	 */
+	static class AbortException extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+		final int resultCode;
+
+		AbortException(int resultCode) {
+			super("compilation ended with result " + resultCode);
+			this.resultCode = resultCode;
+		}
+	}
+
+	/**
+	 * The scanner for the input: over the bytes or chars in memory if we
+	 * have them, else over the Reader
+	 */
+	private Yylex scanner() {
+		if (bytes != null) {
+			return new Yylex(bytes);
+		}
+		return (source != null) ? new Yylex(source) : new Yylex(inFile);
 	}
 
 	/** the parser will return a Symbol whose value
@@ -130,27 +360,100 @@ public class P6 {
 	 */
 	private Symbol parseCFG() {
 		try {
-			parser P = new parser(new Yylex(inFile));
+			parser P = new parser(compilation.stats.counted(scanner()));
 			return P.parse();
 		} catch (Exception e) {
 			return null;
 		}
 	}
 
+	/** parses into a FlatAst
+	 * @return the FlatAst
+	 */
+	private FlatAst parseFlat() {
+		try {
+			FlatParser P = new FlatParser(compilation.stats.counted(scanner()));
+			P.parse();
+			return P.ast;
+		} catch (Exception e) {
+			return null;
+		}
+	}
+
+	/** scans the whole input into a TokenBuffer, then parses that
+	 * @return root of the AST
+	 */
+	private ProgramNode parseTokens() {
+		TokenBuffer tokens = new TokenBuffer();
+		try {
+			if (parallelScan && (bytes != null || source != null)) {
+				ParallelScanner.scanAll((bytes != null) ? bytes : source, tokens);
+			} else {
+				scanner().scanAll(tokens);
+			}
+		} catch (IOException e) {
+			return null;
+		}
+		compilation.stats.scanned(tokens.size());
+		return TokenParser.parse(tokens);
+	}
+
+	/**
+	 * Compiles the input file to the output file, in the Compilation of
+	 * this P6
+	 * @return result code
+	 */
 	public int process() {
-		Symbol cfgRoot = parseCFG();
+		Compilation prev = Compilation.enter(compilation);
+		try {
+			return compile();
+		} finally {
+			Compilation.enter(prev);
+		}
+	}
 
-		ProgramNode astRoot = (ProgramNode)cfgRoot.value;
-		if (ErrMsg.getErr()) {
-			return P6.RESULT_SYNTAX_ERROR;
+	private int compile() {
+		if (flatAst && !batchScan) {
+			return compileFlat();
 		}
 
-		astRoot.nameAnalysis();	 // perform name analysis
-		if (ErrMsg.getErr()) {
-			return P6.RESULT_NAME_ANALYSIS_ERROR;
+		Stats stats = compilation.stats;
+		ProgramNode astRoot = null;
+		stats.begin("parse");
+		if (batchScan) {
+			astRoot = parseTokens();
+		} else {
+			Symbol cfgRoot = parseCFG();
+			if (cfgRoot != null) {
+				astRoot = (ProgramNode)cfgRoot.value;
+			}
 		}
+		stats.end();
+		if (astRoot == null || ErrMsg.getErr()) {
+			syntaxReported = (astRoot == null && ErrMsg.getErr());
+			return P6.RESULT_SYNTAX_ERROR;
+		}
+
+		if (fusedPasses) {
+			stats.begin("semanticAnalysis");
+			SemanticPass pass = new SemanticPass(parallelPasses);
+			pass.run(astRoot);
+			stats.end();
+			if (pass.nameErrors()) {
+				return P6.RESULT_NAME_ANALYSIS_ERROR;
+			}
+		} else {
+			stats.begin("nameAnalysis");
+			astRoot.nameAnalysis();	 // perform name analysis
+			stats.end();
+			if (ErrMsg.getErr()) {
+				return P6.RESULT_NAME_ANALYSIS_ERROR;
+			}
 
-		astRoot.typeCheck();
+			stats.begin("typeCheck");
+			astRoot.typeCheck();
+			stats.end();
+		}
 		if (ErrMsg.getErr()) {
 			return P6.RESULT_TYPE_ERROR;
 		}
@@ -159,28 +462,319 @@ public class P6 {
 		// TODO: Calling codeGen
 		//////////////////////////
 
-		Codegen.p = outFile;
-		astRoot.codeGen();
+		stats.begin("codeGen");
+		astRoot.codeGen(new Codegen(outFile));
+		stats.end();
+
+		return P6.RESULT_CORRECT;
+	}
+
+	/**
+	 * compile for --ast=flat: the passes run over the FlatAst itself
+	 * (FlatPass and FlatCodegen); no ASTnode is built
+	 */
+	private int compileFlat() {
+		Stats stats = compilation.stats;
+		stats.begin("parse");
+		FlatAst ast = parseFlat();
+		if (ast != null) {
+			stats.astNodes += ast.size();
+		}
+		stats.end();
+		if (ast == null || ErrMsg.getErr()) {
+			syntaxReported = (ast == null && ErrMsg.getErr());
+			return P6.RESULT_SYNTAX_ERROR;
+		}
+
+		stats.begin("semanticAnalysis");
+		FlatPass pass = new FlatPass(ast, parallelPasses);
+		pass.run();
+		stats.end();
+		if (pass.nameErrors()) {
+			return P6.RESULT_NAME_ANALYSIS_ERROR;
+		}
+		if (ErrMsg.getErr()) {
+			return P6.RESULT_TYPE_ERROR;
+		}
+
+		stats.begin("codeGen");
+		new FlatCodegen(ast, new Codegen(outFile)).run();
+		stats.end();
 
 		return P6.RESULT_CORRECT;
 	}
 
 	public void run() {
+		if (statsFile != null) {
+			compilation.stats.enable();
+		}
 		int resultCode = process();
+		if (statsFile != null) {
+			reportStats(resultCode);
+		}
 		if (resultCode == RESULT_CORRECT) {
 			cleanup();
 			return;
 		}
 
+		pukeAndDie(resultReport(resultCode), resultCode);
+	}
+
+	/**
+	 * Compiles without ending the program, for batch and server mode, with
+	 * stats on if asked for: the messages go to the error stream of the
+	 * compilation, followed by the message for the result if there is
+	 * one (see resultReport), or the stack trace if the compiler crashed
+	 * @return result code
+	 */
+	int processAndReport() {
+		return processAndReport(true);
+	}
+
+	/**
+	 * processAndReport, without the message for the result if withResult
+	 * is false (batch mode writes its own result line)
+	 * @param withResult whether to write the message for the result
+	 * @return result code
+	 */
+	private int processAndReport(boolean withResult) {
+		int resultCode;
+		if (statsFile != null) {
+			compilation.stats.enable();
+		}
+		try {
+			resultCode = process();
+		} catch (AbortException e) {
+			return e.resultCode;    // already reported, and cleaned up
+		} catch (Throwable e) {
+			e.printStackTrace(compilation.errStream);
+			resultCode = RESULT_OTHER_ERROR;
+		}
+		String report = resultReport(resultCode);
+		if (withResult && report != null) {
+			compilation.errStream.println(report);
+		}
+		cleanup();
+		return resultCode;
+	}
+
+	/**
+	 * The message to write for the result of process(), or null if there
+	 * is none: the compilation succeeded, or it ended on a syntax error
+	 * whose message the parser has already written
+	 * @param resultCode result of process()
+	 */
+	private String resultReport(int resultCode) {
+		if (resultCode == RESULT_CORRECT || syntaxReported) {
+			return null;
+		}
+		return resultMessage(resultCode);
+	}
+
+	/**
+	 * The message for a compilation that failed
+	 * @param resultCode result of process()
+	 */
+	private static String resultMessage(int resultCode) {
+		switch(resultCode) {
+		case RESULT_SYNTAX_ERROR:
+			return "Syntax error";
+		case RESULT_TYPE_ERROR:
+			return "Type checking error";
+		case RESULT_NAME_ANALYSIS_ERROR:
+			return "Name analysis error";
+		default:
+			return "Type checking error";
+		}
+	}
+
+	/**
+	 * The --stats report, if stats are on
+	 * @param resultCode result of process()
+	 * @return the JSON report, or null if there is no --stats option
+	 */
+	String statsReport(int resultCode) {
+		if (statsFile == null) {
+			return null;
+		}
+		ByteArrayOutputStream report = new ByteArrayOutputStream();
+		compilation.stats.report(new PrintStream(report, true),
+		                         inFileName, resultCode);
+		return report.toString();
+	}
+
+	/**
+	 * Writes the --stats report to statsFile, or to stdout if it is ""
+	 * @param resultCode result of process()
+	 */
+	private void reportStats(int resultCode) {
+		if (statsFile.equals("")) {
+			compilation.stats.report(System.out, inFileName, resultCode);
+			return;
+		}
+		try {
+			PrintStream out = new PrintStream(statsFile);
+			compilation.stats.report(out, inFileName, resultCode);
+			out.close();
+		} catch (FileNotFoundException ex) {
+			compilation.errStream.println("cannot write stats file " + statsFile);
+		}
+	}
+
+	/**
+	 * One file of a batch: its P6, and the messages and stats report
+	 * written for it
+	 */
+	private static class BatchFile extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		final String file;
+		final P6 p6 = new P6();
+		final ByteArrayOutputStream messages = new ByteArrayOutputStream();
+		String stats;
+		int resultCode = RESULT_OTHER_ERROR;
+
+		BatchFile(String file, List<String> options) {
+			this.file = file;
+			p6.compilation.errStream = new PrintStream(messages, true);
+			for (String option : options) {
+				p6.setOption(option);
+			}
+		}
+
+		/**
+		 * compiles the file; whatever it throws is reported as its
+		 * result, so that it cannot cut the other files of the batch
+		 * short
+		 */
+		protected void compute() {
+			try {
+				compile();
+			} catch (Throwable e) {
+				e.printStackTrace(p6.compilation.errStream);
+				resultCode = RESULT_OTHER_ERROR;
+			}
+		}
+
+		private void compile() {
+			PrintStream err = p6.compilation.errStream;
+			try {
+				String outName = file.endsWith(".crrt")
+					? file.substring(0, file.length() - ".crrt".length())
+					: file;
+				p6.setInfile(file);
+				p6.setOutfile(outName + ".s");
+			} catch (BadInfileException e) {
+				err.println(e.getMessage());
+				return;
+			} catch (BadOutfileException e) {
+				err.println(e.getMessage());
+				p6.cleanup();
+				return;
+			}
+
+			resultCode = p6.processAndReport(false);
+			if (p6.statsFile != null) {
+				stats = p6.statsReport(resultCode).trim();
+			}
+		}
+	}
+
+	/**
+	 * Batch mode: compiles each file named in args to a .s file, in
+	 * parallel
+	 * @param args command line args array for [--batch options files]
+	 * @return exit status
+	 */
+	private static int batch(String[] args) {
+		List<String> options = new ArrayList<String>();
+		List<BatchFile> files = new ArrayList<BatchFile>();
+		P6 check = new P6();
+		for (int i = 1; i < args.length; i++) {
+			if (args[i].startsWith("--")) {
+				check.setOption(args[i]);   // dies if unknown
+				options.add(args[i]);
+			}
+		}
+		Set<String> paths = new HashSet<String>();
+		for (int i = 1; i < args.length; i++) {
+			if (!args[i].startsWith("--")) {
+				if (!paths.add(canonicalPath(args[i]))) {
+					check.pukeAndDie("input file given twice: " + args[i]);
+				}
+				files.add(new BatchFile(args[i], options));
+			}
+		}
+		if (files.isEmpty()) {
+			check.pukeAndDie("please supply the names of the input files.");
+		}
+
+		ForkJoinTask.invokeAll(files);
+
+		int status = 0;
+		StringBuilder stats = new StringBuilder();
+		for (BatchFile f : files) {
+			String messages = f.messages.toString();
+			if (!messages.isEmpty()) {
+				for (String line : messages.split("\r?\n")) {
+					System.err.println(f.file + ": " + line);
+				}
+			}
+			System.err.println(f.file + ": " + batchResult(f.resultCode));
+			if (f.resultCode != RESULT_CORRECT) {
+				status = -1;
+			}
+			if (f.stats != null) {
+				stats.append((stats.length() == 0) ? "[\n" : ",\n");
+				stats.append(f.stats);
+			}
+		}
+		System.err.flush();
+		if (check.statsFile != null) {
+			stats.append((stats.length() == 0) ? "[]" : "\n]");
+			if (check.statsFile.equals("")) {
+				System.out.println(stats);
+			} else {
+				try {
+					PrintStream out = new PrintStream(check.statsFile);
+					out.println(stats);
+					out.close();
+				} catch (FileNotFoundException ex) {
+					System.err.println("cannot write stats file " + check.statsFile);
+					status = -1;
+				}
+			}
+		}
+		return status;
+	}
+
+	/**
+	 * The path of a batch input file with "." and ".." and symbolic links
+	 * resolved, so that two names of the same file compare equal
+	 * @param file the file as named on the command line
+	 */
+	private static String canonicalPath(String file) {
+		try {
+			return new File(file).getCanonicalPath();
+		} catch (IOException e) {
+			return new File(file).getAbsolutePath();
+		}
+	}
+
+	/**
+	 * The result line for a file of a batch
+	 * @param resultCode result of compiling the file
+	 */
+	private static String batchResult(int resultCode) {
 		switch(resultCode) {
+		case RESULT_CORRECT:
+			return "ok";
 		case RESULT_SYNTAX_ERROR:
-			pukeAndDie("Syntax error", resultCode);
 		case RESULT_TYPE_ERROR:
-			pukeAndDie("Type checking error", resultCode);
 		case RESULT_NAME_ANALYSIS_ERROR:
-			pukeAndDie("Name analysis error", resultCode);
+			return resultMessage(resultCode);
 		default:
-			pukeAndDie("Type checking error", RESULT_OTHER_ERROR);
+			return "failed";
 		}
 	}
 
@@ -215,7 +809,23 @@ public class P6 {
 	}
 
 	public static void main(String[] args) {
-		P6 instance = new P6(args);
-		instance.run();
+		try {
+			if (args.length > 0 && args[0].equals("--batch")) {
+				System.exit(batch(args));
+			}
+			if (args.length > 0 && (args[0].equals("--server")
+			                        || args[0].startsWith("--server="))) {
+				P6Server.serve(args);
+				return;
+			}
+			if (args.length > 0 && (args[0].equals("--client")
+			                        || args[0].startsWith("--client="))) {
+				System.exit(P6Server.client(args));
+			}
+			P6 instance = new P6(args);
+			instance.run();
+		} catch (AbortException e) {
+			System.exit(-1);
+		}
 	}
 }
@@ -0,0 +1,290 @@
+import java.io.*;
+import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * P6Server
+ *
+ * Server mode of the P6 driver.  The server keeps one JVM running (so
+ * the compiler classes are loaded and compiled by the JIT only once) and
+ * compiles the sources sent to it over a socket on the loopback
+ * interface, each request on a thread of its own, in a Compilation of its
+ * own.  The client sends a source file to the server and writes back what
+ * a compilation in its own JVM would have written.
+ *
+ * A request is
+ *    int      number of options, then each option (writeUTF)
+ *    UTF      name of the source file (for the stats report)
+ *    int      length, then the bytes of the source file
+ * and the response
+ *    int      result code (P6.RESULT_*)
+ *    int      length, then the bytes of the messages (stderr)
+ *    int      length, then the bytes of the MIPS code
+ *    int      length, then the bytes of the --stats report (-1 if none)
+ * all written with DataOutputStream.  One request per connection.  The
+ * source is read, and the code written, with the default charset, as by
+ * a compilation in the client's JVM.
+ */
+class P6Server {
+	static final int DEFAULT_PORT = 5600;
+
+	// requests with a larger source are refused
+	private static final int MAX_SOURCE = 64 << 20;
+
+	// a client that sends nothing for this long (in ms) is dropped
+	private static final int READ_TIMEOUT = 30000;
+
+	/**
+	 * Runs the server until it is killed
+	 * @param args [--server[=port] options], the options being the
+	 *             defaults for every request
+	 */
+	static void serve(String[] args) {
+		int port = port(args[0], "--server");
+		List<String> defaults = new ArrayList<String>();
+		P6 check = new P6();
+		for (int i = 1; i < args.length; i++) {
+			check.setOption(args[i]);   // dies if unknown
+			defaults.add(args[i]);
+		}
+
+		ServerSocket server;
+		try {
+			server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+		} catch (IOException e) {
+			System.err.println("cannot listen on port " + port + ": "
+			                   + e.getMessage());
+			throw new P6.AbortException(P6.RESULT_OTHER_ERROR);
+		}
+		System.err.println("listening on " + server.getLocalSocketAddress());
+
+		ExecutorService requests = newThreadPerTaskExecutor();
+		while (true) {
+			final Socket socket;
+			try {
+				socket = server.accept();
+			} catch (IOException e) {
+				System.err.println("accept failed: " + e.getMessage());
+				continue;
+			}
+			requests.execute(new Runnable() {
+				public void run() {
+					handle(socket, defaults);
+				}
+			});
+		}
+	}
+
+	/**
+	 * An executor that runs each task on a new virtual thread, or, if the
+	 * JVM has none (before Java 21), on a thread of a cached pool
+	 */
+	private static ExecutorService newThreadPerTaskExecutor() {
+		try {
+			return (ExecutorService)Executors.class
+				.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (ReflectiveOperationException e) {
+			return Executors.newCachedThreadPool();
+		}
+	}
+
+	/**
+	 * Reads one request from socket, compiles it and writes the response
+	 */
+	private static void handle(Socket socket, List<String> defaults) {
+		try {
+			socket.setSoTimeout(READ_TIMEOUT);
+			DataInputStream in = new DataInputStream(
+				new BufferedInputStream(socket.getInputStream()));
+			DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream(socket.getOutputStream()));
+
+			List<String> options = new ArrayList<String>(defaults);
+			int n = in.readInt();
+			for (int i = 0; i < n; i++) {
+				options.add(in.readUTF());
+			}
+			String name = in.readUTF();
+			int length = in.readInt();
+			if (length < 0 || length > MAX_SOURCE) {
+				throw new IOException("bad source length " + length);
+			}
+			byte[] source = new byte[length];
+			in.readFully(source);
+
+			ByteArrayOutputStream messages = new ByteArrayOutputStream();
+			ByteArrayOutputStream code = new ByteArrayOutputStream();
+			String stats = null;
+			int resultCode;
+			PrintStream err = new PrintStream(messages, true);
+			P6 p6 = new P6();
+			p6.setErrStream(err);
+			p6.setOutput(new OutputStreamWriter(code));
+			try {
+				for (String option : options) {
+					p6.setOption(option);
+				}
+				p6.setInput(ByteBuffer.wrap(source), name);
+				resultCode = p6.processAndReport();
+				stats = p6.statsReport(resultCode);
+			} catch (P6.AbortException e) {
+				resultCode = e.resultCode;
+			} catch (Throwable e) {
+				// the client gets the trace, and the server goes on
+				e.printStackTrace(err);
+				resultCode = P6.RESULT_OTHER_ERROR;
+			}
+
+			out.writeInt(resultCode);
+			writeBytes(out, messages.toByteArray());
+			writeBytes(out, code.toByteArray());
+			if (stats == null) {
+				out.writeInt(-1);
+			} else {
+				writeBytes(out, stats.getBytes(StandardCharsets.UTF_8));
+			}
+			out.flush();
+		} catch (IOException e) {
+			System.err.println("request failed: " + e.getMessage());
+		} finally {
+			try {
+				socket.close();
+			} catch (IOException e) {
+			}
+		}
+	}
+
+	/**
+	 * Compiles a file with a running server
+	 * @param args [--client[=port] infile outfile options]
+	 * @return exit status, as for a compilation in this JVM
+	 */
+	static int client(String[] args) {
+		int port = port(args[0], "--client");
+		if (args.length < 3) {
+			System.err.println("please supply name of the input file "
+			                   + "and name of file for assembly output.");
+			return -1;
+		}
+		String inName = args[1];
+		String outName = args[2];
+		String statsFile = null;    // "" for stdout
+		for (int i = 3; i < args.length; i++) {
+			if (args[i].equals("--stats")) {
+				statsFile = "";
+			} else if (args[i].startsWith("--stats=")) {
+				statsFile = args[i].substring("--stats=".length());
+			}
+		}
+
+		byte[] source;
+		try {
+			source = readAll(new FileInputStream(inName));
+		} catch (IOException e) {
+			System.err.println("Could not open " + inName + " for reading");
+			return -1;
+		}
+
+		int resultCode;
+		byte[] messages;
+		byte[] code;
+		byte[] stats;
+		try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+			DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream(socket.getOutputStream()));
+			out.writeInt(args.length - 3);
+			for (int i = 3; i < args.length; i++) {
+				out.writeUTF(args[i]);
+			}
+			out.writeUTF(inName);
+			writeBytes(out, source);
+			out.flush();
+
+			DataInputStream in = new DataInputStream(
+				new BufferedInputStream(socket.getInputStream()));
+			resultCode = in.readInt();
+			messages = readBytes(in);
+			code = readBytes(in);
+			stats = readBytes(in);
+		} catch (IOException e) {
+			System.err.println("cannot reach the server on port " + port
+			                   + ": " + e.getMessage());
+			return -1;
+		}
+
+		System.err.write(messages, 0, messages.length);
+		System.err.flush();
+		try (OutputStream out = new FileOutputStream(outName)) {
+			out.write(code);
+		} catch (IOException e) {
+			System.err.println("Could not open " + outName + " for reading");
+			return -1;
+		}
+		if (stats != null && statsFile != null) {
+			if (statsFile.equals("")) {
+				System.out.write(stats, 0, stats.length);
+				System.out.flush();
+			} else {
+				try (OutputStream out = new FileOutputStream(statsFile)) {
+					out.write(stats);
+				} catch (IOException e) {
+					System.err.println("cannot write stats file " + statsFile);
+				}
+			}
+		}
+		return (resultCode == P6.RESULT_CORRECT) ? 0 : -1;
+	}
+
+	/**
+	 * The port of an option --name or --name=port
+	 */
+	private static int port(String option, String name) {
+		if (option.equals(name)) {
+			return DEFAULT_PORT;
+		}
+		String value = option.substring(name.length() + 1);
+		try {
+			return Integer.parseInt(value);
+		} catch (NumberFormatException e) {
+			System.err.println("bad port: " + value);
+			throw new P6.AbortException(P6.RESULT_OTHER_ERROR);
+		}
+	}
+
+	private static void writeBytes(DataOutputStream out, byte[] bytes)
+		throws IOException {
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	// null if the length is -1
+	private static byte[] readBytes(DataInputStream in) throws IOException {
+		int length = in.readInt();
+		if (length == -1) {
+			return null;
+		}
+		if (length < 0) {
+			throw new IOException("bad length " + length);
+		}
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return bytes;
+	}
+
+	private static byte[] readAll(InputStream in) throws IOException {
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			byte[] buf = new byte[8192];
+			for (int n = in.read(buf); n != -1; n = in.read(buf)) {
+				bytes.write(buf, 0, n);
+			}
+			return bytes.toByteArray();
+		} finally {
+			in.close();
+		}
+	}
+}
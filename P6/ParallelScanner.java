@@ -0,0 +1,137 @@
+import java.io.*;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * ParallelScanner
+ *
+ * Scans a source in memory, chars or bytes, into a TokenBuffer with
+ * several scanners at once.  In Carrot no token spans a newline (string
+ * literals stop at the end of the line, and comments run to it), so every
+ * line starts in the initial state of the scanner.  The source is cut
+ * into chunks that end just after a newline, each chunk is scanned on the
+ * common fork-join pool by a Yylex of its own, and the tokens of the
+ * chunks are appended to the buffer in order (see TokenBuffer.append),
+ * with the line numbers moved down by the lines of the chunks before.
+ *
+ * Each chunk is scanned in a Compilation of its own, so that the scanners
+ * do not share an IdPool; the ids of a chunk are mapped to ids of the
+ * current compilation as it is appended.  Since the chunks are appended
+ * in order, every name gets the same id as in a scan from start to end,
+ * and the buffer ends up as that scan would have filled it.
+ */
+class ParallelScanner {
+    // sources shorter than this are scanned in one go
+    private static final int MIN_CHUNK = 1 << 16;
+
+    /**
+     * Scans source into tokens, ending with an EOF token.
+     */
+    static void scanAll(Buffer source, TokenBuffer tokens)
+        throws IOException {
+        int length = source.remaining();
+        int chunks = Math.min(length / MIN_CHUNK,
+                              ForkJoinPool.getCommonPoolParallelism());
+        if (chunks <= 1) {
+            scanner(source).scanAll(tokens);
+            return;
+        }
+
+        List<Chunk> tasks = new ArrayList<Chunk>();
+        int start = 0;
+        for (int k = 1; k <= chunks && start < length; k++) {
+            int cut = (int)((long)length * k / chunks);
+            int end = (k == chunks) ? length : lineEnd(source, cut);
+            if (end > start) {
+                tasks.add(new Chunk(source, start, end));
+                start = end;
+            }
+        }
+        ForkJoinTask.invokeAll(tasks);
+
+        IdPool ids = Compilation.current().ids;
+        int lineBase = 0;
+        for (Chunk chunk : tasks) {
+            if (chunk.failure != null) {
+                throw chunk.failure;
+            }
+            tokens.append(chunk.tokens, chunk.start,
+                          lineBase, ids.intern(chunk.compilation.ids));
+            lineBase += chunk.lines;
+        }
+        tokens.add(sym.EOF, length, 0, 0);
+    }
+
+    // the offset just after the first newline at or after from; the end
+    // of source if there is none
+    private static int lineEnd(Buffer source, int from) {
+        int length = source.remaining();
+        int base = source.position();
+        if (source instanceof ByteBuffer) {
+            ByteBuffer bytes = (ByteBuffer)source;
+            for (int i = from; i < length; i++) {
+                if (bytes.get(base + i) == '\n') {
+                    return i + 1;
+                }
+            }
+        } else {
+            CharBuffer chars = (CharBuffer)source;
+            for (int i = from; i < length; i++) {
+                if (chars.get(base + i) == '\n') {
+                    return i + 1;
+                }
+            }
+        }
+        return length;
+    }
+
+    private static Yylex scanner(Buffer text) {
+        if (text instanceof ByteBuffer) {
+            return new Yylex((ByteBuffer)text);
+        }
+        return new Yylex((CharBuffer)text);
+    }
+
+    /**
+     * Chunk
+     * Scans source[start, end) into a TokenBuffer of its own.
+     */
+    private static class Chunk extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        final Compilation compilation = new Compilation();
+        final TokenBuffer tokens = new TokenBuffer();
+        final int start;
+        int lines;                  // the number of line breaks in it
+        IOException failure = null;
+        private final Buffer text;
+        // the stats of the compilation that scans the source
+        private final Stats stats = Compilation.current().stats;
+
+        Chunk(Buffer source, int start, int end) {
+            this.start = start;
+            Buffer text = source.duplicate();
+            text.limit(source.position() + end);
+            text.position(source.position() + start);
+            this.text = text.slice();
+        }
+
+        protected void compute() {
+            long[] mark = stats.taskBegin();
+            Compilation prev = Compilation.enter(compilation);
+            try {
+                Yylex scanner = scanner(text);
+                scanner.scanAll(tokens);
+                lines = scanner.yylineof(text.remaining());
+            } catch (IOException e) {
+                failure = e;
+            } finally {
+                Compilation.enter(prev);
+                stats.taskEnd(mark);
+            }
+        }
+    }
+}
@@ -0,0 +1,210 @@
+import java.util.*;
+
+/**
+ * PersistentSymTable
+ *
+ * A SymTable whose scopes are immutable values.  Each scope holds two
+ * persistent hash tries (HAMTs): the names declared in that scope, and all
+ * names visible from it.  Declaring a name copies only the trie paths to
+ * that name; everything else is shared with the previous version, and the
+ * scope that is replaced stays valid.  So snapshot() is O(1) and the
+ * snapshot never changes, whatever is later done to either table.
+ *
+ * declare, lookupLocal and lookupGlobal are O(log n) in the number of
+ * names, independent of nesting depth; addScope and removeScope are O(1).
+ *
+ * The scopes can be shared between threads freely (all their fields are
+ * final).  A PersistentSymTable object itself is not thread-safe; give
+ * each thread its own snapshot().
+ */
+public class PersistentSymTable extends SymTable {
+    private Scope scopes;   // innermost scope; null if the table is empty
+
+    /**
+     * An immutable scope: its own names, all visible names, and the
+     * enclosing scope.
+     */
+    private static final class Scope {
+        final Node local;
+        final Node visible;
+        final Scope outer;
+
+        Scope(Node local, Node visible, Scope outer) {
+            this.local = local;
+            this.visible = visible;
+            this.outer = outer;
+        }
+    }
+
+    public PersistentSymTable() {
+        scopes = new Scope(Node.EMPTY, Node.EMPTY, null);
+    }
+
+    private PersistentSymTable(Scope scopes) {
+        this.scopes = scopes;
+    }
+
+    /**
+     * Returns a table with the current scopes of this one.  Later changes
+     * to either table are not seen by the other.
+     */
+    public PersistentSymTable snapshot() {
+        return new PersistentSymTable(scopes);
+    }
+
+    public Sym declare(String name, Sym sym)
+        throws EmptySymTableException, WrongArgumentException {
+        checkArgs(name, sym);
+
+        if (scopes == null) {
+            throw new EmptySymTableException();
+        }
+
+        int hash = hash(name);
+        Sym old = scopes.local.get(hash, 0, name);
+        if (old != null)
+            return old;
+
+        scopes = new Scope(scopes.local.put(hash, 0, name, sym),
+                           scopes.visible.put(hash, 0, name, sym),
+                           scopes.outer);
+        return null;
+    }
+
+    public void addScope() {
+        Node visible = (scopes == null) ? Node.EMPTY : scopes.visible;
+        scopes = new Scope(Node.EMPTY, visible, scopes);
+    }
+
+    public Sym lookupLocal(String name) {
+        if (scopes == null || name == null)
+            return null;
+        return scopes.local.get(hash(name), 0, name);
+    }
+
+    public Sym lookupGlobal(String name) {
+        if (scopes == null || name == null)
+            return null;
+        return scopes.visible.get(hash(name), 0, name);
+    }
+
+    public void removeScope() throws EmptySymTableException {
+        if (scopes == null)
+            throw new EmptySymTableException();
+        scopes = scopes.outer;
+    }
+
+    public void print() {
+        System.out.print("\n=== Sym Table ===\n");
+        for (Scope s = scopes; s != null; s = s.outer) {
+            HashMap<String, Sym> symTab = new HashMap<String, Sym>();
+            s.local.addTo(symTab);
+            System.out.println(symTab.toString());
+        }
+        System.out.println();
+    }
+
+    private static int hash(String name) {
+        int h = name.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * A node of a persistent hash array mapped trie from String to Sym.
+     * Each level consumes 5 bits of the hash.  array holds a key/value
+     * pair for each bit set in bitmap; a null key means the value is a
+     * child Node.  Below the last level (shift > 30) a node is a plain
+     * list of pairs whose keys all have the same hash.
+     */
+    private static final class Node {
+        static final Node EMPTY = new Node(0, new Object[0]);
+
+        final int bitmap;
+        final Object[] array;
+
+        Node(int bitmap, Object[] array) {
+            this.bitmap = bitmap;
+            this.array = array;
+        }
+
+        Sym get(int hash, int shift, String key) {
+            Node n = this;
+            while (shift <= 30) {
+                int bit = 1 << ((hash >>> shift) & 31);
+                if ((n.bitmap & bit) == 0)
+                    return null;
+                int i = 2 * Integer.bitCount(n.bitmap & (bit - 1));
+                Object k = n.array[i];
+                if (k != null)
+                    return key.equals(k) ? (Sym)n.array[i + 1] : null;
+                n = (Node)n.array[i + 1];
+                shift += 5;
+            }
+            for (int i = 0; i < n.array.length; i += 2) {
+                if (key.equals(n.array[i]))
+                    return (Sym)n.array[i + 1];
+            }
+            return null;
+        }
+
+        /**
+         * Returns a trie with key bound to val; this trie is unchanged.
+         */
+        Node put(int hash, int shift, String key, Sym val) {
+            if (shift > 30) {
+                for (int i = 0; i < array.length; i += 2) {
+                    if (key.equals(array[i]))
+                        return new Node(0, with(array, i + 1, val));
+                }
+                Object[] a = Arrays.copyOf(array, array.length + 2);
+                a[array.length] = key;
+                a[array.length + 1] = val;
+                return new Node(0, a);
+            }
+
+            int bit = 1 << ((hash >>> shift) & 31);
+            int i = 2 * Integer.bitCount(bitmap & (bit - 1));
+            if ((bitmap & bit) == 0) {
+                Object[] a = new Object[array.length + 2];
+                System.arraycopy(array, 0, a, 0, i);
+                a[i] = key;
+                a[i + 1] = val;
+                System.arraycopy(array, i, a, i + 2, array.length - i);
+                return new Node(bitmap | bit, a);
+            }
+
+            Object k = array[i];
+            if (k == null) {
+                Node child = ((Node)array[i + 1]).put(hash, shift + 5, key, val);
+                return new Node(bitmap, with(array, i + 1, child));
+            }
+            if (key.equals(k)) {
+                return new Node(bitmap, with(array, i + 1, val));
+            }
+
+            // two keys in one slot: push both down a level
+            String oldKey = (String)k;
+            Node child = EMPTY.put(PersistentSymTable.hash(oldKey), shift + 5,
+                                   oldKey, (Sym)array[i + 1])
+                              .put(hash, shift + 5, key, val);
+            Object[] a = with(array, i + 1, child);
+            a[i] = null;
+            return new Node(bitmap, a);
+        }
+
+        void addTo(Map<String, Sym> map) {
+            for (int i = 0; i < array.length; i += 2) {
+                if (array[i] == null)
+                    ((Node)array[i + 1]).addTo(map);
+                else
+                    map.put((String)array[i], (Sym)array[i + 1]);
+            }
+        }
+
+        private static Object[] with(Object[] array, int i, Object x) {
+            Object[] a = array.clone();
+            a[i] = x;
+            return a;
+        }
+    }
+}
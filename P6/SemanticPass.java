@@ -0,0 +1,477 @@
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * SemanticPass
+ *
+ * Name analysis and type checking in a single traversal of the AST.  The
+ * traversal dispatches on the NodeKind of each node; the per-node work is
+ * done by the same code the separate passes use (nameAnalysis of the
+ * declarations and names, and the type rules of Semantics for the
+ * statements and expressions), so both modes apply the same rules.
+ *
+ * Name errors are reported as they are found.  Type errors are kept in an
+ * ErrBuffer and reported at the end only if there were no name errors, so
+ * the messages are exactly those of ProgramNode.nameAnalysis followed by
+ * ProgramNode.typeCheck.  While there are name errors, a node with no
+ * symbol has type Type.ERROR.
+ *
+ * In parallel mode the global declarations are still processed in order,
+ * but each function body is analyzed by its own task on the common
+ * fork-join pool.  A task sees the globals declared before its function
+ * through a snapshot of a PersistentSymTable (whatever engine is
+ * selected: its scopes are the ones that can be shared between threads)
+ * and sends its errors to buffers of its own, redirecting ErrMsg (it
+ * enters the Compilation of the pass on the worker thread); the
+ * buffers are reported in source order once all the tasks are done, so
+ * the output is the same as the sequential pass'.
+ *
+ * Usage: new SemanticPass().run(astRoot), then nameErrors() tells which of
+ * the two passes failed if ErrMsg.getErr() is set.
+ */
+public class SemanticPass {
+    private final boolean parallel;
+    private SymTable symTab;
+    private ErrBuffer typeErrs;
+    private boolean nameErrors;
+
+    public SemanticPass() {
+        this(false);
+    }
+
+    public SemanticPass(boolean parallel) {
+        this.parallel = parallel;
+    }
+
+    /**
+     * run
+     * Process all of the globals, struct definitions, and functions in the
+     * program.
+     */
+    public void run(ProgramNode program) {
+        PersistentSymTable globals = null;
+        if (parallel) {
+            globals = new PersistentSymTable();
+            symTab = Compilation.current().stats.counted(globals, 1);
+        } else {
+            symTab = SymTable.create();
+        }
+        typeErrs = new ErrBuffer();
+        boolean main = false;
+
+        // parallel mode: name errors of the globals and of each body, and
+        // type errors of each body, in source order
+        List<ErrBuffer> nameErrs = new ArrayList<ErrBuffer>();
+        List<ErrBuffer> bodyTypeErrs = new ArrayList<ErrBuffer>();
+        List<FnTask> tasks = new ArrayList<FnTask>();
+        ErrBuffer globalErrs = null;
+        ErrBuffer prevErrs = null;
+        if (parallel) {
+            globalErrs = new ErrBuffer();
+            nameErrs.add(globalErrs);
+            prevErrs = ErrMsg.redirect(globalErrs);
+        }
+
+        for (DeclNode decl : program.declList().decls()) {
+            switch (decl.kind()) {
+            case VAR_DECL:
+                ((VarDeclNode)decl).nameAnalysis(symTab, symTab, 0);
+                break;
+            case FN_DECL: {
+                FnDeclNode fn = (FnDeclNode)decl;
+                FnSym sym = fnHeader(fn);
+                if (fn.setLabel()) {
+                    main = true;
+                }
+                if (parallel) {
+                    FnTask task = new FnTask(fn, sym,
+                        Compilation.current().stats.counted(
+                            globals.snapshot(), 2));
+                    tasks.add(task);
+                    nameErrs.add(task.nameErrs);
+                    bodyTypeErrs.add(task.typeErrs);
+                    globalErrs = new ErrBuffer();
+                    nameErrs.add(globalErrs);
+                    ErrMsg.redirect(globalErrs);
+                } else {
+                    fnBody(fn, sym);
+                }
+                removeScope();
+                break;
+            }
+            default:
+                decl.nameAnalysis(symTab);
+                break;
+            }
+        }
+
+        if (parallel) {
+            ErrMsg.redirect(prevErrs);
+            ForkJoinTask.invokeAll(tasks);
+            for (ErrBuffer errs : nameErrs) {
+                errs.flush();
+            }
+            for (ErrBuffer errs : bodyTypeErrs) {
+                errs.flush(typeErrs);
+            }
+        }
+
+        nameErrors = ErrMsg.getErr();
+        if (!nameErrors) {
+            typeErrs.flush();
+            Semantics.program(main);
+        }
+    }
+
+    /**
+     * Return whether name analysis found errors.
+     */
+    public boolean nameErrors() {
+        return nameErrors;
+    }
+
+    /**
+     * fnHeader
+     * Declare a function and enter its scope, with its formals declared
+     * (see FnDeclNode.nameAnalysis); return its FnSym, null if it is
+     * multiply declared.
+     */
+    private FnSym fnHeader(FnDeclNode fn) {
+        FnSym sym = fn.declare(symTab);
+
+        symTab.addScope();
+        List<Type> typeList = fn.formalsList().nameAnalysis(symTab);
+        if (sym != null) {
+            sym.addFormals(typeList);
+        }
+        return sym;
+    }
+
+    /**
+     * fnBody
+     * Process the body of a function, in the scope of its formals (see
+     * FnDeclNode.nameAnalysis and FnDeclNode.typeCheck).
+     */
+    private void fnBody(FnDeclNode fn, FnSym sym) {
+        Type retType = fn.typeNode().type();
+        FnBodyNode body = fn.body();
+        int offset = declList(body.declList(), -8);
+        offset = stmtList(body.stmtList(), offset, retType);
+        if (sym != null) {
+            sym.setLocalSize(-8 - offset);
+        }
+    }
+
+    /**
+     * FnTask
+     * Process the body of one function in parallel mode.
+     */
+    private static class FnTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        final ErrBuffer nameErrs = new ErrBuffer();
+        final ErrBuffer typeErrs = new ErrBuffer();
+        private final Compilation compilation = Compilation.current();
+        private final FnDeclNode fn;
+        private final FnSym sym;
+        private final SymTable symTab;
+
+        FnTask(FnDeclNode fn, FnSym sym, SymTable symTab) {
+            this.fn = fn;
+            this.sym = sym;
+            this.symTab = symTab;
+        }
+
+        protected void compute() {
+            SemanticPass pass = new SemanticPass(false);
+            pass.symTab = symTab;
+            pass.typeErrs = typeErrs;
+            long[] mark = compilation.stats.taskBegin();
+            Compilation prev = Compilation.enter(compilation);
+            ErrBuffer prevErrs = ErrMsg.redirect(nameErrs);
+            try {
+                pass.fnBody(fn, sym);
+            } finally {
+                ErrMsg.redirect(prevErrs);
+                Compilation.enter(prev);
+                compilation.stats.taskEnd(mark);
+            }
+        }
+    }
+
+    /**
+     * declList
+     * Process the local decls in a list, the first at the given offset;
+     * return the offset after the last one.
+     */
+    private int declList(DeclListNode list, int offset) {
+        for (DeclNode decl : list.decls()) {
+            if (decl.kind() == NodeKind.VAR_DECL) {
+                ((VarDeclNode)decl).nameAnalysis(symTab, symTab, offset);
+                offset -= 4;
+            } else {
+                decl.nameAnalysis(symTab);
+            }
+        }
+        return offset;
+    }
+
+    /**
+     * stmtList
+     * Process the stmts in a list, in a function with the given return
+     * type; return the offset after the last local declared in them.
+     */
+    private int stmtList(StmtListNode list, int offset, Type retType) {
+        for (StmtNode stmt : list.stmts()) {
+            offset = stmt(stmt, offset, retType);
+        }
+        return offset;
+    }
+
+    /**
+     * block
+     * Process the decls and stmts of a nested block in a new scope.
+     */
+    private int block(DeclListNode decls, StmtListNode stmts, int offset,
+                      Type retType) {
+        symTab.addScope();
+        offset = declList(decls, offset);
+        offset = stmtList(stmts, offset, retType);
+        removeScope();
+        return offset;
+    }
+
+    private int stmt(StmtNode stmt, int offset, Type retType) {
+        switch (stmt.kind()) {
+        case ASSIGN_STMT:
+            exp(((AssignStmtNode)stmt).assign());
+            break;
+        case POST_INC_STMT: {
+            ExpNode e = ((PostIncStmtNode)stmt).exp();
+            Semantics.incDec(exp(e), e.lineNum(), e.charNum(), typeErrs);
+            break;
+        }
+        case POST_DEC_STMT: {
+            ExpNode e = ((PostDecStmtNode)stmt).exp();
+            Semantics.incDec(exp(e), e.lineNum(), e.charNum(), typeErrs);
+            break;
+        }
+        case READ_STMT: {
+            ExpNode e = ((ReadStmtNode)stmt).exp();
+            Semantics.read(exp(e), e.lineNum(), e.charNum(), typeErrs);
+            break;
+        }
+        case WRITE_STMT: {
+            ExpNode e = ((WriteStmtNode)stmt).exp();
+            Semantics.write(exp(e), e.lineNum(), e.charNum(), typeErrs);
+            break;
+        }
+        case IF_STMT: {
+            IfStmtNode node = (IfStmtNode)stmt;
+            ExpNode e = node.exp();
+            Semantics.ifCondition(exp(e), e.lineNum(), e.charNum(),
+                                  typeErrs);
+            offset = block(node.declList(), node.stmtList(), offset, retType);
+            break;
+        }
+        case IF_ELSE_STMT: {
+            IfElseStmtNode node = (IfElseStmtNode)stmt;
+            ExpNode e = node.exp();
+            Semantics.ifCondition(exp(e), e.lineNum(), e.charNum(),
+                                  typeErrs);
+            offset = block(node.thenDeclList(), node.thenStmtList(), offset,
+                           retType);
+            offset = block(node.elseDeclList(), node.elseStmtList(), offset,
+                           retType);
+            break;
+        }
+        case WHILE_STMT: {
+            WhileStmtNode node = (WhileStmtNode)stmt;
+            ExpNode e = node.exp();
+            Semantics.whileCondition(exp(e), e.lineNum(), e.charNum(),
+                                     typeErrs);
+            offset = block(node.declList(), node.stmtList(), offset, retType);
+            break;
+        }
+        case REPEAT_STMT: {
+            RepeatStmtNode node = (RepeatStmtNode)stmt;
+            ExpNode e = node.exp();
+            Semantics.repeatClause(exp(e), e.lineNum(), e.charNum(),
+                                   typeErrs);
+            offset = block(node.declList(), node.stmtList(), offset, retType);
+            break;
+        }
+        case CALL_STMT:
+            exp(((CallStmtNode)stmt).call());
+            break;
+        case RETURN_STMT: {
+            ExpNode e = ((ReturnStmtNode)stmt).exp();
+            if (e != null) {
+                Semantics.returnStmt(exp(e), retType, e.lineNum(),
+                                     e.charNum(), typeErrs);
+            } else {
+                Semantics.returnStmt(null, retType, 0, 0, typeErrs);
+            }
+            break;
+        }
+        default:
+            throw new IllegalStateException("Unexpected " + stmt.kind() +
+                                            " in SemanticPass.stmt");
+        }
+        return offset;
+    }
+
+    /**
+     * exp
+     * Process an expression; return its type.
+     */
+    private Type exp(ExpNode exp) {
+        switch (exp.kind()) {
+        case INT_LIT:
+            return Type.INT;
+        case STRING_LIT:
+            exp.isString = true;
+            return Type.STRING;
+        case TRUE:
+        case FALSE:
+            return Type.BOOL;
+        case ID: {
+            IdNode id = (IdNode)exp;
+            id.nameAnalysis(symTab);
+            return symType(id);
+        }
+        case DOT_ACCESS:
+            exp.nameAnalysis(symTab);
+            return symType(((DotAccessExpNode)exp).idNode());
+        case ASSIGN: {
+            AssignNode node = (AssignNode)exp;
+            Type typeLhs = exp(node.lhs());
+            return Semantics.assign(typeLhs, exp(node.exp()), node.lineNum(),
+                                    node.charNum(), typeErrs);
+        }
+        case CALL_EXP:
+            return call((CallExpNode)exp);
+        case UNARY_MINUS: {
+            UnaryMinusNode node = (UnaryMinusNode)exp;
+            return Semantics.unaryMinus(exp(node.exp()), node.lineNum(),
+                                        node.charNum(), typeErrs);
+        }
+        case NOT: {
+            NotNode node = (NotNode)exp;
+            return Semantics.not(exp(node.exp()), node.lineNum(),
+                                 node.charNum(), typeErrs);
+        }
+        case PLUS:
+        case MINUS:
+        case TIMES:
+        case DIVIDE: {
+            ArithmeticExpNode node = (ArithmeticExpNode)exp;
+            ExpNode exp1 = node.exp1();
+            ExpNode exp2 = node.exp2();
+            Type type1 = exp(exp1);
+            return Semantics.arithmetic(type1, exp1.lineNum(), exp1.charNum(),
+                                        exp(exp2), exp2.lineNum(), exp2.charNum(),
+                                        typeErrs);
+        }
+        case AND:
+        case OR: {
+            LogicalExpNode node = (LogicalExpNode)exp;
+            ExpNode exp1 = node.exp1();
+            ExpNode exp2 = node.exp2();
+            Type type1 = exp(exp1);
+            return Semantics.logical(type1, exp1.lineNum(), exp1.charNum(),
+                                     exp(exp2), exp2.lineNum(), exp2.charNum(),
+                                     typeErrs);
+        }
+        case EQUALS:
+        case NOT_EQUALS: {
+            EqualityExpNode node = (EqualityExpNode)exp;
+            Type type1 = exp(node.exp1());
+            return Semantics.equality(type1, exp(node.exp2()), node.lineNum(),
+                                      node.charNum(), typeErrs);
+        }
+        case LESS:
+        case GREATER:
+        case LESS_EQ:
+        case GREATER_EQ: {
+            RelationalExpNode node = (RelationalExpNode)exp;
+            ExpNode exp1 = node.exp1();
+            ExpNode exp2 = node.exp2();
+            Type type1 = exp(exp1);
+            return Semantics.relational(type1, exp1.lineNum(), exp1.charNum(),
+                                        exp(exp2), exp2.lineNum(), exp2.charNum(),
+                                        typeErrs);
+        }
+        default:
+            throw new IllegalStateException("Unexpected " + exp.kind() +
+                                            " in SemanticPass.exp");
+        }
+    }
+
+    /**
+     * call
+     * Process a function call (see CallExpNode.typeCheck).  The actuals
+     * of a call that is already in error are still analyzed for names,
+     * but their type errors are dropped, as typeCheck never visits them.
+     */
+    private Type call(CallExpNode call) {
+        IdNode id = call.idNode();
+        id.nameAnalysis(symTab);
+        List<ExpNode> actuals = call.expList().itExp();
+
+        if (!Semantics.callee(symType(id), id.lineNum(), id.charNum(),
+                              typeErrs)) {
+            actuals(actuals, ErrBuffer.NONE);
+            return Type.ERROR;
+        }
+        FnSym fnSym = (FnSym)id.sym();
+        if (!Semantics.numArgs(actuals.size(), fnSym, id.lineNum(),
+                               id.charNum(), typeErrs)) {
+            actuals(actuals, ErrBuffer.NONE);
+            return fnSym.getReturnType();
+        }
+
+        // a formal with a name error has no type; skip its actual's check
+        List<Type> formalTypes = fnSym.getParamTypes();
+        int k = 0;
+        for (ExpNode actual : actuals) {
+            Type actualType = exp(actual);
+            if (k < formalTypes.size()) {
+                Semantics.actual(actualType, formalTypes.get(k),
+                                 actual.lineNum(), actual.charNum(), typeErrs);
+            }
+            k++;
+        }
+        return call.checkedCall();
+    }
+
+    /**
+     * actuals
+     * Process the actuals of a call, sending their type errors to errs.
+     */
+    private void actuals(List<ExpNode> actuals, ErrBuffer errs) {
+        ErrBuffer saved = typeErrs;
+        typeErrs = errs;
+        for (ExpNode actual : actuals) {
+            exp(actual);
+        }
+        typeErrs = saved;
+    }
+
+    private static Type symType(IdNode id) {
+        if (id.sym() == null) {
+            return Type.ERROR;
+        }
+        return id.sym().getType();
+    }
+
+    private void removeScope() {
+        try {
+            symTab.removeScope();
+        } catch (EmptySymTableException ex) {
+            throw new IllegalStateException(
+                "Unexpected EmptySymTableException in SemanticPass.removeScope",
+                ex);
+        }
+    }
+}
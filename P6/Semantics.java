@@ -0,0 +1,429 @@
+/**
+ * Semantics
+ *
+ * The name analysis and type checking rules of the language, with their
+ * messages, in one place for every pass that applies them: the
+ * nameAnalysis and typeCheck methods of the ASTnode classes, SemanticPass
+ * over the same nodes, and FlatPass over a FlatAst.  A pass walks its own
+ * representation, finds the names, types and positions, and hands them
+ * to these methods, so the passes cannot drift apart.
+ *
+ * A type rule takes the types it checks, the line and char number of each
+ * message it may report, and the ErrBuffer the messages go to; a rule for
+ * an expression returns its type (Type.ERROR if there was an error in it).
+ * Name errors are reported through ErrMsg as soon as they are found.
+ */
+class Semantics {
+
+    // **********************************************************************
+    // name analysis
+    // **********************************************************************
+
+    /**
+     * declare
+     * Declare the name nameId as sym in the innermost scope of symTab,
+     * unless it is already declared there (a "Multiply declared
+     * identifier" error at lineNum, charNum); return whether it was
+     * declared.
+     */
+    static boolean declare(SymTable symTab, int nameId, Sym sym,
+                           int lineNum, int charNum) {
+        try {
+            if (symTab.declare(nameId, sym) != null) {
+                ErrMsg.fatal(lineNum, charNum, "Multiply declared identifier");
+                return false;
+            }
+        } catch (EmptySymTableException ex) {
+            System.err.println("Unexpected EmptySymTableException " +
+                               " in Semantics.declare");
+            System.exit(-1);
+        } catch (WrongArgumentException ex) {
+            System.err.println("Unexpected WrongArgumentException " +
+                               " in Semantics.declare");
+            System.exit(-1);
+        }
+        return true;
+    }
+
+    /**
+     * declared
+     * For a declaration that is not entered in symTab: report a "Multiply
+     * declared identifier" error at lineNum, charNum if the name nameId is
+     * already declared in the innermost scope; return whether it is.
+     */
+    static boolean declared(SymTable symTab, int nameId,
+                            int lineNum, int charNum) {
+        if (symTab.lookupLocal(nameId) != null) {
+            ErrMsg.fatal(lineNum, charNum, "Multiply declared identifier");
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * declaredVoid
+     * Report a variable or formal declared void.
+     */
+    static void declaredVoid(int lineNum, int charNum) {
+        ErrMsg.fatal(lineNum, charNum, "Non-function declared void");
+    }
+
+    /**
+     * structType
+     * Look up the name nameId of the struct type of a declaration in
+     * globalTab; return its StructDefSym, or null if it does not name a
+     * struct (an "Invalid name of struct type" error).
+     */
+    static StructDefSym structType(SymTable globalTab, int nameId,
+                                   int lineNum, int charNum) {
+        Sym sym = globalTab.lookupGlobal(nameId);
+        if (sym == null || !(sym instanceof StructDefSym)) {
+            ErrMsg.fatal(lineNum, charNum, "Invalid name of struct type");
+            return null;
+        }
+        return (StructDefSym)sym;
+    }
+
+    /**
+     * use
+     * Look up a use of the name nameId in symTab; return its Sym, or null
+     * if it is undeclared (an error).
+     */
+    static Sym use(SymTable symTab, int nameId, int lineNum, int charNum) {
+        Sym sym = symTab.lookupGlobal(nameId);
+        if (sym == null) {
+            ErrMsg.fatal(lineNum, charNum, "Undeclared identifier");
+        }
+        return sym;
+    }
+
+    /**
+     * nonStructAccess
+     * Report the left side of a dot-access that is not of a struct type.
+     */
+    static void nonStructAccess(int lineNum, int charNum) {
+        ErrMsg.fatal(lineNum, charNum, "Dot-access of non-struct type");
+    }
+
+    /**
+     * field
+     * Look up the right side nameId of a dot-access in the layout of the
+     * struct on its left; return the index of the field, or -1 if there is
+     * no such field (an error).
+     */
+    static int field(StructLayout layout, int nameId,
+                     int lineNum, int charNum) {
+        int field = layout.fieldIndex(nameId);
+        if (field < 0) {
+            ErrMsg.fatal(lineNum, charNum, "Invalid struct field name");
+        }
+        return field;
+    }
+
+    /**
+     * program
+     * Report a program without a main function.
+     */
+    static void program(boolean main) {
+        if (!main) {
+            ErrMsg.fatal(0, 0, "No main function");
+        }
+    }
+
+    // **********************************************************************
+    // statements
+    // **********************************************************************
+
+    /**
+     * incDec
+     * The operand of ++ or -- must be an int.
+     */
+    static void incDec(Type type, int lineNum, int charNum, ErrBuffer errs) {
+        if (!type.isErrorType() && !type.isIntType()) {
+            errs.fatal(lineNum, charNum,
+                       "Arithmetic operator applied to non-numeric operand");
+        }
+    }
+
+    /**
+     * read
+     * A function, a struct name or a struct variable cannot be read.
+     */
+    static void read(Type type, int lineNum, int charNum, ErrBuffer errs) {
+        readWrite("read", type, lineNum, charNum, errs);
+    }
+
+    /**
+     * write
+     * A function, a struct name, a struct variable or void cannot be
+     * written.
+     */
+    static void write(Type type, int lineNum, int charNum, ErrBuffer errs) {
+        readWrite("write", type, lineNum, charNum, errs);
+        if (type.isVoidType()) {
+            errs.fatal(lineNum, charNum, "Attempt to write void");
+        }
+    }
+
+    private static void readWrite(String verb, Type type,
+                                  int lineNum, int charNum, ErrBuffer errs) {
+        if (type.isFnType()) {
+            errs.fatal(lineNum, charNum, "Attempt to " + verb + " a function");
+        }
+        if (type.isStructDefType()) {
+            errs.fatal(lineNum, charNum,
+                       "Attempt to " + verb + " a struct name");
+        }
+        if (type.isStructType()) {
+            errs.fatal(lineNum, charNum,
+                       "Attempt to " + verb + " a struct variable");
+        }
+    }
+
+    /**
+     * ifCondition, whileCondition, repeatClause
+     * The condition of an if or a while must be a bool, the clause of a
+     * repeat an int.
+     */
+    static void ifCondition(Type type, int lineNum, int charNum,
+                            ErrBuffer errs) {
+        if (!type.isErrorType() && !type.isBoolType()) {
+            errs.fatal(lineNum, charNum,
+                       "Non-bool expression used as an if condition");
+        }
+    }
+
+    static void whileCondition(Type type, int lineNum, int charNum,
+                               ErrBuffer errs) {
+        if (!type.isErrorType() && !type.isBoolType()) {
+            errs.fatal(lineNum, charNum,
+                       "Non-bool expression used as a while condition");
+        }
+    }
+
+    static void repeatClause(Type type, int lineNum, int charNum,
+                             ErrBuffer errs) {
+        if (!type.isErrorType() && !type.isIntType()) {
+            errs.fatal(lineNum, charNum,
+                       "Non-integer expression used as a repeat clause");
+        }
+    }
+
+    /**
+     * returnStmt
+     * Given the type of the returned expression (null if there is none)
+     * and the return type of the function: a void function cannot return
+     * a value, and any other function must return a value of its type.
+     * A missing value is reported at 0, 0.
+     */
+    static void returnStmt(Type type, Type retType, int lineNum, int charNum,
+                           ErrBuffer errs) {
+        if (type != null) {  // return value given
+            if (retType.isVoidType()) {
+                errs.fatal(lineNum, charNum,
+                           "Return with a value in a void function");
+            }
+            else if (!retType.isErrorType() && !type.isErrorType()
+                     && !retType.equals(type)) {
+                errs.fatal(lineNum, charNum, "Bad return value");
+            }
+        }
+        else {  // no return value given -- ok if this is a void function
+            if (!retType.isVoidType()) {
+                errs.fatal(0, 0, "Missing return value");
+            }
+        }
+    }
+
+    // **********************************************************************
+    // expressions
+    // **********************************************************************
+
+    /**
+     * assign
+     * The two sides of an assignment must have the same type, which cannot
+     * be a function, a struct name or a struct; the errors are reported at
+     * the left side.
+     */
+    static Type assign(Type typeLhs, Type typeExp, int lineNum, int charNum,
+                       ErrBuffer errs) {
+        Type retType = typeLhs;
+
+        if (typeLhs.isFnType() && typeExp.isFnType()) {
+            errs.fatal(lineNum, charNum, "Function assignment");
+            retType = Type.ERROR;
+        }
+        if (typeLhs.isStructDefType() && typeExp.isStructDefType()) {
+            errs.fatal(lineNum, charNum, "Struct name assignment");
+            retType = Type.ERROR;
+        }
+        if (typeLhs.isStructType() && typeExp.isStructType()) {
+            errs.fatal(lineNum, charNum, "Struct variable assignment");
+            retType = Type.ERROR;
+        }
+        if (!typeLhs.equals(typeExp) && !typeLhs.isErrorType()
+            && !typeExp.isErrorType()) {
+            errs.fatal(lineNum, charNum, "Type mismatch");
+            retType = Type.ERROR;
+        }
+        if (typeLhs.isErrorType() || typeExp.isErrorType()) {
+            retType = Type.ERROR;
+        }
+        return retType;
+    }
+
+    /**
+     * unaryMinus, not
+     * The operand of unary minus must be an int, that of not a bool.
+     */
+    static Type unaryMinus(Type type, int lineNum, int charNum,
+                           ErrBuffer errs) {
+        return operand(type, Type.INT, Type.INT, lineNum, charNum, errs,
+                       "Arithmetic operator applied to non-numeric operand");
+    }
+
+    static Type not(Type type, int lineNum, int charNum, ErrBuffer errs) {
+        return operand(type, Type.BOOL, Type.BOOL, lineNum, charNum, errs,
+                       "Logical operator applied to non-bool operand");
+    }
+
+    /**
+     * arithmetic, logical, relational
+     * Both operands of an arithmetic or relational operator must be ints,
+     * those of a logical operator bools; each is reported at its own
+     * position (lineNum1, charNum1 for the left, lineNum2, charNum2 for
+     * the right).
+     */
+    static Type arithmetic(Type type1, int lineNum1, int charNum1,
+                           Type type2, int lineNum2, int charNum2,
+                           ErrBuffer errs) {
+        String msg = "Arithmetic operator applied to non-numeric operand";
+        Type retType = operand(type1, Type.INT, Type.INT,
+                               lineNum1, charNum1, errs, msg);
+        return both(retType, operand(type2, Type.INT, Type.INT,
+                                     lineNum2, charNum2, errs, msg));
+    }
+
+    static Type logical(Type type1, int lineNum1, int charNum1,
+                        Type type2, int lineNum2, int charNum2,
+                        ErrBuffer errs) {
+        String msg = "Logical operator applied to non-bool operand";
+        Type retType = operand(type1, Type.BOOL, Type.BOOL,
+                               lineNum1, charNum1, errs, msg);
+        return both(retType, operand(type2, Type.BOOL, Type.BOOL,
+                                     lineNum2, charNum2, errs, msg));
+    }
+
+    static Type relational(Type type1, int lineNum1, int charNum1,
+                           Type type2, int lineNum2, int charNum2,
+                           ErrBuffer errs) {
+        String msg = "Relational operator applied to non-numeric operand";
+        Type retType = operand(type1, Type.INT, Type.BOOL,
+                               lineNum1, charNum1, errs, msg);
+        return both(retType, operand(type2, Type.INT, Type.BOOL,
+                                     lineNum2, charNum2, errs, msg));
+    }
+
+    /**
+     * operand
+     * Report msg if type is neither operandType nor Type.ERROR; return
+     * resultType if it is operandType, Type.ERROR otherwise.
+     */
+    private static Type operand(Type type, Type operandType, Type resultType,
+                                int lineNum, int charNum, ErrBuffer errs,
+                                String msg) {
+        if (type.isErrorType()) {
+            return Type.ERROR;
+        }
+        if (!type.equals(operandType)) {
+            errs.fatal(lineNum, charNum, msg);
+            return Type.ERROR;
+        }
+        return resultType;
+    }
+
+    private static Type both(Type type1, Type type2) {
+        return type1.isErrorType() ? type1 : type2;
+    }
+
+    /**
+     * equality
+     * The operands of == and != must have the same type, which cannot be
+     * void, a function, a struct name or a struct; the errors are reported
+     * at the left operand.
+     */
+    static Type equality(Type type1, Type type2, int lineNum, int charNum,
+                         ErrBuffer errs) {
+        Type retType = Type.BOOL;
+
+        if (type1.isVoidType() && type2.isVoidType()) {
+            errs.fatal(lineNum, charNum,
+                       "Equality operator applied to void functions");
+            retType = Type.ERROR;
+        }
+        if (type1.isFnType() && type2.isFnType()) {
+            errs.fatal(lineNum, charNum,
+                       "Equality operator applied to functions");
+            retType = Type.ERROR;
+        }
+        if (type1.isStructDefType() && type2.isStructDefType()) {
+            errs.fatal(lineNum, charNum,
+                       "Equality operator applied to struct names");
+            retType = Type.ERROR;
+        }
+        if (type1.isStructType() && type2.isStructType()) {
+            errs.fatal(lineNum, charNum,
+                       "Equality operator applied to struct variables");
+            retType = Type.ERROR;
+        }
+        if (!type1.equals(type2) && !type1.isErrorType()
+            && !type2.isErrorType()) {
+            errs.fatal(lineNum, charNum, "Type mismatch");
+            retType = Type.ERROR;
+        }
+        if (type1.isErrorType() || type2.isErrorType()) {
+            retType = Type.ERROR;
+        }
+        return retType;
+    }
+
+    /**
+     * callee
+     * Only a function can be called; return whether type is one.
+     */
+    static boolean callee(Type type, int lineNum, int charNum,
+                          ErrBuffer errs) {
+        if (!type.isFnType()) {
+            errs.fatal(lineNum, charNum, "Attempt to call a non-function");
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * numArgs
+     * A call of the function sym must have as many actuals as it has
+     * formals; return whether numActuals is right.
+     */
+    static boolean numArgs(int numActuals, FnSym sym,
+                           int lineNum, int charNum, ErrBuffer errs) {
+        if (numActuals != sym.getNumParams()) {
+            errs.fatal(lineNum, charNum,
+                       "Function call with wrong number of args");
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * actual
+     * An actual must have the type of its formal.
+     */
+    static void actual(Type actualType, Type formalType,
+                       int lineNum, int charNum, ErrBuffer errs) {
+        if (!actualType.isErrorType() && !formalType.equals(actualType)) {
+            errs.fatal(lineNum, charNum,
+                       "Type of actual does not match type of formal");
+        }
+    }
+}
@@ -0,0 +1,267 @@
+import java.io.*;
+import java.lang.management.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.*;
+
+import java_cup.runtime.*;
+
+/**
+ * Stats
+ *
+ * The --stats report of a Compilation.  The driver brackets each phase
+ * of the compilation with begin and end; for each phase we record its
+ * wall time, its CPU time and the bytes it allocated, and how many tokens
+ * were scanned, AST nodes built, symbols declared, symbol table lookups
+ * made (by the number of scopes in the table at the time) and MIPS
+ * instructions emitted while it ran.  report writes the phases as JSON.
+ *
+ * CPU time and allocation are those of the thread the phases run on,
+ * plus those of the fork-join tasks that work for this compilation on
+ * other threads (the function bodies of --passes=parallel, the chunks of
+ * --scan=parallel), which each task measures itself with taskBegin and
+ * taskEnd.  The other compilations of a batch or of the server, running
+ * on other threads at the same time, are not included.
+ *
+ * Nothing is recorded unless enable() has been called.  Tokens, symbols
+ * and lookups are counted by wrappers (counted) that are only put in
+ * place then; AST nodes are counted as they are built once countNodes is
+ * set (by the first enable() in the JVM), and instructions all the time.
+ */
+class Stats {
+	// lookups in tables of MAX_DEPTH or more scopes are counted together
+	static final int MAX_DEPTH = 32;
+
+	private boolean enabled = false;
+
+	// whether the ASTnode constructor counts nodes: set once any
+	// compilation turns stats on, so that it does not look up the current
+	// compilation for every node otherwise
+	static volatile boolean countNodes = false;
+
+	// counters
+	long astNodes;
+	long instructions;
+	private long tokens;
+	private final LongAdder symbols = new LongAdder();
+	private final AtomicLongArray lookups = new AtomicLongArray(MAX_DEPTH + 1);
+
+	private static final com.sun.management.ThreadMXBean threads =
+		(com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+
+	// the thread the phases run on, and the CPU time and bytes of the
+	// tasks that ran on other threads
+	private volatile Thread owner;
+	private final LongAdder taskCpu = new LongAdder();
+	private final LongAdder taskBytes = new LongAdder();
+
+	// finished phases, and the counters at the start of the current one
+	private final List<long[]> phases = new ArrayList<long[]>();
+	private final List<String> names = new ArrayList<String>();
+	private long[] start;
+
+	// the values recorded for a phase, in this order
+	private static final String[] FIELDS = {
+		"wallNanos", "cpuNanos", "allocatedBytes", "tokens", "astNodes",
+		"symbolsDeclared", "mipsInstructions"
+	};
+	private static final int LOOKUPS = FIELDS.length;  // then lookups by depth
+
+	/**
+	 * Turns stats on.
+	 */
+	void enable() {
+		if (!threads.isThreadCpuTimeEnabled()) {
+			threads.setThreadCpuTimeEnabled(true);
+		}
+		if (!threads.isThreadAllocatedMemoryEnabled()) {
+			threads.setThreadAllocatedMemoryEnabled(true);
+		}
+		enabled = true;
+		countNodes = true;
+	}
+
+	boolean enabled() {
+		return enabled;
+	}
+
+	/**
+	 * Starts a phase.
+	 */
+	void begin(String name) {
+		if (!enabled) {
+			return;
+		}
+		owner = Thread.currentThread();
+		names.add(name);
+		start = sample();
+	}
+
+	/**
+	 * Ends the current phase.
+	 */
+	void end() {
+		if (!enabled) {
+			return;
+		}
+		long[] now = sample();
+		for (int i = 0; i < now.length; i++) {
+			now[i] -= start[i];
+		}
+		phases.add(now);
+	}
+
+	/**
+	 * Called by a fork-join task of this compilation when it starts:
+	 * returns a mark to pass to taskEnd, null if there is nothing to
+	 * measure (stats are off, or the task runs on the thread of the
+	 * phases, whose time is counted already).
+	 */
+	long[] taskBegin() {
+		if (!enabled || Thread.currentThread() == owner) {
+			return null;
+		}
+		return new long[] { cpuTime(), allocatedBytes() };
+	}
+
+	/**
+	 * Called by the task when it is done, on the same thread: adds its
+	 * CPU time and allocation to the current phase.
+	 */
+	void taskEnd(long[] mark) {
+		if (mark == null) {
+			return;
+		}
+		taskCpu.add(cpuTime() - mark[0]);
+		taskBytes.add(allocatedBytes() - mark[1]);
+	}
+
+	/**
+	 * Returns scanner, counting its tokens if stats are on.
+	 */
+	Scanner counted(final Scanner scanner) {
+		if (!enabled) {
+			return scanner;
+		}
+		return new Scanner() {
+			public Symbol next_token() throws Exception {
+				tokens++;
+				return scanner.next_token();
+			}
+		};
+	}
+
+	/**
+	 * Returns table, which has depth scopes, counting its declarations and
+	 * lookups if stats are on.
+	 */
+	SymTable counted(SymTable table, int depth) {
+		if (!enabled) {
+			return table;
+		}
+		return new CountingSymTable(table, depth, this);
+	}
+
+	/**
+	 * Counts n tokens scanned in batch mode.
+	 */
+	void scanned(int n) {
+		tokens += n;
+	}
+
+	void declared() {
+		symbols.increment();
+	}
+
+	void lookedUp(int depth) {
+		lookups.incrementAndGet(Math.min(depth, MAX_DEPTH));
+	}
+
+	/**
+	 * Writes the phases, and their total, as a JSON object.
+	 * @param file the file compiled
+	 * @param result the result code of P6.process
+	 */
+	void report(PrintStream out, String file, int result) {
+		long[] total = new long[LOOKUPS + MAX_DEPTH + 1];
+		out.println("{");
+		out.println("  \"file\": " + quote(file) + ",");
+		out.println("  \"result\": " + result + ",");
+		out.println("  \"phases\": [");
+		for (int i = 0; i < phases.size(); i++) {
+			long[] phase = phases.get(i);
+			for (int k = 0; k < total.length; k++) {
+				total[k] += phase[k];
+			}
+			out.print("    {\"name\": " + quote(names.get(i)) + ", ");
+			printValues(out, phase);
+			out.println((i < phases.size() - 1) ? "}," : "}");
+		}
+		out.println("  ],");
+		out.print("  \"total\": {");
+		printValues(out, total);
+		out.println("}");
+		out.println("}");
+		out.flush();
+	}
+
+	private static void printValues(PrintStream out, long[] values) {
+		for (int k = 0; k < FIELDS.length; k++) {
+			out.print("\"" + FIELDS[k] + "\": " + values[k] + ", ");
+		}
+		long all = 0;
+		StringBuilder byDepth = new StringBuilder();
+		for (int d = 0; d <= MAX_DEPTH; d++) {
+			long n = values[LOOKUPS + d];
+			if (n != 0) {
+				all += n;
+				byDepth.append(byDepth.length() == 0 ? "" : ", ");
+				byDepth.append("\"" + d + "\": " + n);
+			}
+		}
+		out.print("\"lookups\": " + all + ", ");
+		out.print("\"lookupsByDepth\": {" + byDepth + "}");
+	}
+
+	/**
+	 * Returns the current value of each counter.
+	 */
+	private long[] sample() {
+		long[] s = new long[LOOKUPS + MAX_DEPTH + 1];
+		s[0] = System.nanoTime();
+		s[1] = cpuTime() + taskCpu.sum();
+		s[2] = allocatedBytes() + taskBytes.sum();
+		s[3] = tokens;
+		s[4] = astNodes;
+		s[5] = symbols.sum();
+		s[6] = instructions;
+		for (int d = 0; d <= MAX_DEPTH; d++) {
+			s[LOOKUPS + d] = lookups.get(d);
+		}
+		return s;
+	}
+
+	// of the current thread
+	private static long cpuTime() {
+		return threads.getCurrentThreadCpuTime();
+	}
+
+	private static long allocatedBytes() {
+		return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	private static String quote(String s) {
+		StringBuilder b = new StringBuilder("\"");
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if (c == '"' || c == '\\') {
+				b.append('\\').append(c);
+			} else if (c < ' ') {
+				b.append(String.format("\\u%04x", (int)c));
+			} else {
+				b.append(c);
+			}
+		}
+		return b.append('"').toString();
+	}
+}
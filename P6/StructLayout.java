@@ -0,0 +1,159 @@
+import java.util.*;
+
+/**
+ * StructLayout
+ *
+ * The layout of a struct type, computed once when the struct definition
+ * is analyzed.  Fields are kept in declaration order in parallel arrays:
+ * IdPool id of the name, Sym, byte offset, size and alignment.  The struct
+ * itself has a size and an alignment, with each field placed at the next
+ * offset that is a multiple of its alignment.
+ *
+ * Field names are found with a perfect hash over the ids of this struct's
+ * field names, built with the layout: one multiply, one table read and one
+ * int compare, so a.b.c resolves by indexing instead of by symbol table
+ * lookups.
+ */
+class StructLayout {
+    // size and alignment of int and bool fields
+    public static final int WORD = 4;
+
+    // fields, in declaration order
+    private final int[] nameIds;
+    private final Sym[] syms;
+    private final int[] offsets;
+    private final int[] sizes;
+    private final int[] aligns;
+
+    private final int size;
+    private final int align;
+
+    // the names of the compilation that lays out the struct
+    private final IdPool ids = Compilation.current().ids;
+
+    // perfect hash: slot(id) = (id * seed) >>> shift, and slots[slot(id)]
+    // is the index of the field named id (or -1 if no field hashes there)
+    private final int seed;
+    private final int shift;
+    private final int[] slots;
+
+    /**
+     * Builds the layout of a struct whose fields are the given IDs, in
+     * declaration order.  Each ID must be linked to the Sym of its field.
+     */
+    public StructLayout(List<IdNode> fields) {
+        this(nameIds(fields), syms(fields));
+    }
+
+    /**
+     * Builds the layout of a struct whose fields have the given names
+     * (IdPool ids) and Syms, in declaration order.
+     */
+    public StructLayout(int[] nameIds, Sym[] syms) {
+        int n = nameIds.length;
+        this.nameIds = nameIds;
+        this.syms = syms;
+        offsets = new int[n];
+        sizes = new int[n];
+        aligns = new int[n];
+
+        int offset = 0;
+        int maxAlign = WORD;
+        for (int i = 0; i < n; i++) {
+            sizes[i] = WORD;
+            aligns[i] = WORD;
+            if (syms[i] instanceof StructSym) {
+                StructDefSym def = ((StructSym)syms[i]).getStructDef();
+                StructLayout nested = def.getLayout();
+                sizes[i] = nested.size();
+                aligns[i] = nested.align();
+            }
+            offset = alignUp(offset, aligns[i]);
+            offsets[i] = offset;
+            offset += sizes[i];
+            maxAlign = Math.max(maxAlign, aligns[i]);
+        }
+        align = maxAlign;
+        size = alignUp(offset, align);
+
+        // find a multiplier that puts every name in its own slot of a
+        // table at least twice as big as the number of fields
+        int bits = 1;
+        while ((1 << bits) < 2 * n) {
+            bits++;
+        }
+        Random rand = new Random(n);
+        int[] table;
+        int mult;
+        for (;;) {
+            table = new int[1 << bits];
+            mult = rand.nextInt() | 1;
+            if (fill(table, mult, 32 - bits)) {
+                break;
+            }
+            if (rand.nextInt(16) == 0) {
+                bits++;  // crowded; give up on this size now and then
+            }
+        }
+        seed = mult;
+        shift = 32 - bits;
+        slots = table;
+    }
+
+    private static int[] nameIds(List<IdNode> fields) {
+        int[] ids = new int[fields.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = fields.get(i).nameId();
+        }
+        return ids;
+    }
+
+    private static Sym[] syms(List<IdNode> fields) {
+        Sym[] syms = new Sym[fields.size()];
+        for (int i = 0; i < syms.length; i++) {
+            syms[i] = fields.get(i).sym();
+        }
+        return syms;
+    }
+
+    private boolean fill(int[] table, int mult, int shift) {
+        Arrays.fill(table, -1);
+        for (int i = 0; i < nameIds.length; i++) {
+            int slot = (nameIds[i] * mult) >>> shift;
+            if (table[slot] != -1) {
+                return false;
+            }
+            table[slot] = i;
+        }
+        return true;
+    }
+
+    private static int alignUp(int offset, int align) {
+        return (offset + align - 1) / align * align;
+    }
+
+    /**
+     * Returns the index of the field whose name has the given IdPool id,
+     * or -1 if there is no such field.
+     */
+    public int fieldIndex(int nameId) {
+        int i = slots[(nameId * seed) >>> shift];
+        return (i >= 0 && nameIds[i] == nameId) ? i : -1;
+    }
+
+    public int numFields() { return nameIds.length; }
+
+    public Sym fieldSym(int i) { return syms[i]; }
+
+    public String fieldName(int i) { return ids.name(nameIds[i]); }
+
+    public int fieldOffset(int i) { return offsets[i]; }
+
+    public int fieldSize(int i) { return sizes[i]; }
+
+    public int fieldAlign(int i) { return aligns[i]; }
+
+    public int size() { return size; }
+
+    public int align() { return align; }
+}
@@ -45,7 +45,7 @@ class FnSym extends Sym {
     private int localSize;
     
     public FnSym(Type type, int numparams) {
-        super(new FnType());
+        super(Type.FN);
         returnType = type;
         numParams = numparams;
         localSize = 0;
@@ -93,39 +93,46 @@ class FnSym extends Sym {
 /**
  * The StructSym class is a subclass of the Sym class just for variables 
  * declared to be a struct type. 
- * Each StructSym contains a symbol table to hold information about its 
- * fields.
+ * Each StructSym holds the StructDefSym of its struct type, where the
+ * layout of its fields is.
  */
 class StructSym extends Sym {
     // new fields
-    private IdNode structType;  // name of the struct type
+    private StructDefSym structDef;  // definition of the struct type
     
-    public StructSym(IdNode id) {
-        super(new StructType(id));
-        structType = id;
+    public StructSym(StructDefSym def) {
+        super(def.getStructType());
+        structDef = def;
     }
 
-    public IdNode getStructType() {
-        return structType;
+    public StructDefSym getStructDef() {
+        return structDef;
     }    
 }
 
 /**
  * The StructDefSym class is a subclass of the Sym class just for the 
  * definition of a struct type. 
- * Each StructDefSym contains a symbol table to hold information about its 
- * fields.
+ * Each StructDefSym contains a StructLayout that holds its fields, their
+ * offsets, and the size of the struct, and the one StructType of the
+ * struct.
  */
 class StructDefSym extends Sym {
     // new fields
-    private SymTable symTab;
+    private StructLayout layout;
+    private StructType structType;
     
-    public StructDefSym(SymTable table) {
-        super(new StructDefType());
-        symTab = table;
+    public StructDefSym(String name, StructLayout layout) {
+        super(Type.STRUCT_DEF);
+        this.layout = layout;
+        structType = new StructType(name);
+    }
+
+    public StructType getStructType() {
+        return structType;
     }
 
-    public SymTable getSymTable() {
-        return symTab;
+    public StructLayout getLayout() {
+        return layout;
     }
 }
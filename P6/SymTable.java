@@ -1,15 +1,95 @@
-import java.util.*;
+/**
+ * SymTable
+ *
+ * The operations every symbol table provides, over a stack of scopes
+ * whose innermost scope is first.  The engines (ListSymTable, FlatSymTable,
+ * IdSymTable, PersistentSymTable) are the representations of the scopes;
+ * use create() to get a table of the engine selected with setEngine().
+ */
+public abstract class SymTable {
+    // the names of the compilation that creates the table
+    protected final IdPool ids = Compilation.current().ids;
 
-public class SymTable {
-    private List<HashMap<String, Sym>> list;
-    
-    public SymTable() {
-        list = new LinkedList<HashMap<String, Sym>>();
-        list.add(new HashMap<String, Sym>());
+    /**
+     * Selects the engine returned by create(): "list" (ListSymTable),
+     * "flat" (FlatSymTable), "id" (IdSymTable) or "persistent"
+     * (PersistentSymTable).  Returns false if the name is unknown.
+     */
+    public static boolean setEngine(String name) {
+        return setEngine(Compilation.current(), name);
+    }
+
+    /**
+     * Selects the engine used by create() in compilation c.
+     */
+    static boolean setEngine(Compilation c, String name) {
+        if (!name.equals("list") && !name.equals("flat") && !name.equals("id")
+            && !name.equals("persistent"))
+            return false;
+        c.engine = name;
+        return true;
+    }
+
+    /**
+     * Returns a new, one-scope symbol table of the selected engine
+     * (wrapped in a CountingSymTable while stats are on).
+     */
+    public static SymTable create() {
+        return Compilation.current().stats.counted(createEngine(), 1);
+    }
+
+    private static SymTable createEngine() {
+        String engine = Compilation.current().engine;
+        if (engine.equals("flat"))
+            return new FlatSymTable();
+        if (engine.equals("id"))
+            return new IdSymTable();
+        if (engine.equals("persistent"))
+            return new PersistentSymTable();
+        return new ListSymTable();
     }
     
     public void addDecl(String name, Sym sym) 
 	throws DuplicateSymException, EmptySymTableException, WrongArgumentException {
+        if (declare(name, sym) != null)
+            throw new DuplicateSymException();
+    }
+
+    public void addDecl(int id, Sym sym) 
+	throws DuplicateSymException, EmptySymTableException, WrongArgumentException {
+        if (declare(id, sym) != null)
+            throw new DuplicateSymException();
+    }
+
+    /**
+     * Adds sym to the innermost scope unless name is already declared
+     * there.  Returns null if sym was added, or the Sym already declared
+     * under name in the innermost scope (the table is left unchanged).
+     * Unlike lookupLocal followed by addDecl, this probes the scope once.
+     */
+    public abstract Sym declare(String name, Sym sym)
+	throws EmptySymTableException, WrongArgumentException;
+
+    /**
+     * Versions of declare, lookupLocal and lookupGlobal that take the
+     * IdPool id of the name.  Here they just look up the name; IdSymTable
+     * indexes its scopes by id directly.
+     */
+    public Sym declare(int id, Sym sym)
+	throws EmptySymTableException, WrongArgumentException {
+        return declare(ids.name(id), sym);
+    }
+
+    public Sym lookupLocal(int id) {
+        return lookupLocal(ids.name(id));
+    }
+
+    public Sym lookupGlobal(int id) {
+        return lookupGlobal(ids.name(id));
+    }
+
+    protected static void checkArgs(String name, Sym sym)
+	throws WrongArgumentException {
 	if (name == null && sym == null) {
 	    throw new WrongArgumentException("Arguments name and sym are null.");
 	}
@@ -19,53 +99,15 @@ public class SymTable {
 	else if (sym == null) {
 	    throw new WrongArgumentException("Argument sym is null.");
 	}
-               
-        if (list.isEmpty()) {
-            throw new EmptySymTableException();
-        }
-	
-        HashMap<String, Sym> symTab = list.get(0);
-        if (symTab.containsKey(name))
-            throw new DuplicateSymException();
-        
-        symTab.put(name, sym);
     }
     
-    public void addScope() {
-        list.add(0, new HashMap<String, Sym>());
-    }
+    public abstract void addScope();
     
-    public Sym lookupLocal(String name) {
-        if (list.isEmpty())
-            return null;
-        
-        HashMap<String, Sym> symTab = list.get(0); 
-        return symTab.get(name);
-    }
+    public abstract Sym lookupLocal(String name);
     
-    public Sym lookupGlobal(String name) {
-        if (list.isEmpty())
-            return null;
-        
-        for (HashMap<String, Sym> symTab : list) {
-            Sym sym = symTab.get(name);
-            if (sym != null)
-                return sym;
-        }
-        return null;
-    }
+    public abstract Sym lookupGlobal(String name);
     
-    public void removeScope() throws EmptySymTableException {
-        if (list.isEmpty())
-            throw new EmptySymTableException();
-        list.remove(0);
-    }
+    public abstract void removeScope() throws EmptySymTableException;
     
-    public void print() {
-        System.out.print("\n=== Sym Table ===\n");
-        for (HashMap<String, Sym> symTab : list) {
-            System.out.println(symTab.toString());
-        }
-        System.out.println();
-    }
+    public abstract void print();
 }
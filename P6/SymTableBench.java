@@ -0,0 +1,404 @@
+import java.lang.management.*;
+import java.util.*;
+
+/**
+ * SymTableBench
+ *
+ * Microbenchmarks for the SymTable engines (see SymTable.setEngine).
+ * Every scenario is run against every engine named on the command line
+ * (all of them by default); the struct-layout scenario, which does not
+ * use a SymTable, is run once.  A run is a number of warmup iterations
+ * followed by measured ones, each lasting about ITERATION_MS; for the
+ * measured iterations we report operations per second (mean and standard
+ * deviation) and bytes allocated per operation, as counted by the JVM for
+ * the benchmark thread.
+ *
+ * Lookups go through the id versions of lookupLocal/lookupGlobal, as name
+ * analysis does.
+ *
+ * Usage: java -cp ./deps:. SymTableBench [list] [flat] [id] [persistent]
+ */
+public class SymTableBench {
+    private static final String[] ENGINES = {"list", "flat", "id", "persistent"};
+    private static final int[] DEPTHS = {1, 4, 16, 64};
+    private static final int WARMUP_ITERATIONS = 3;
+    private static final int ITERATIONS = 5;
+    private static final long ITERATION_MS = 200;
+    private static final int LOOKUPS = 1024;    // lookups per call
+
+    // results of lookups are folded in here so they are not optimized away
+    private static volatile int sink;
+
+    /**
+     * A benchmark: setUp builds the state for one engine, run does
+     * opsPerRun() operations on it.
+     */
+    private static abstract class Scenario {
+        final String name;
+        final int param;
+        boolean usesEngine = true;
+
+        Scenario(String name, int param) {
+            this.name = name;
+            this.param = param;
+        }
+
+        abstract void setUp() throws Exception;
+        abstract int run() throws Exception;
+        abstract int opsPerRun();
+    }
+
+    public static void main(String[] args) throws Exception {
+        String[] engines = (args.length == 0) ? ENGINES : args;
+        for (String engine : engines) {
+            if (!SymTable.setEngine(engine)) {
+                System.err.println("unknown symbol table engine: " + engine);
+                System.exit(-1);
+            }
+        }
+
+        List<Scenario> scenarios = new ArrayList<Scenario>();
+        for (int d : DEPTHS) {
+            scenarios.add(nestedLookup(d));
+        }
+        for (int d : DEPTHS) {
+            scenarios.add(scopeChurn(d));
+        }
+        scenarios.add(shadowedLookup(16));
+        scenarios.add(missingLookup(16));
+        scenarios.add(globals(100000));
+        scenarios.add(structFields(4));
+        scenarios.add(structFields(32));
+        scenarios.add(structLayout(4));
+        scenarios.add(structLayout(32));
+
+        System.out.printf("%-16s %6s %-11s %14s %12s %12s%n", "scenario", "param",
+                          "engine", "ops/s", "+-", "bytes/op");
+        for (Scenario s : scenarios) {
+            if (!s.usesEngine) {
+                s.setUp();
+                measure(s, "-");
+                continue;
+            }
+            for (String engine : engines) {
+                SymTable.setEngine(engine);
+                s.setUp();
+                measure(s, engine);
+            }
+        }
+    }
+
+    private static void measure(Scenario s, String engine) throws Exception {
+        com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        double[] rates = new double[ITERATIONS];
+        long bytes = 0;
+        long ops = 0;
+
+        for (int i = 0; i < WARMUP_ITERATIONS + ITERATIONS; i++) {
+            long bytesBefore = threads.getThreadAllocatedBytes(thread);
+            long start = System.nanoTime();
+            long deadline = start + ITERATION_MS * 1000000L;
+            long n = 0;
+            long now;
+            do {
+                sink += s.run();
+                n += s.opsPerRun();
+                now = System.nanoTime();
+            } while (now < deadline);
+            long allocated = threads.getThreadAllocatedBytes(thread) - bytesBefore;
+
+            if (i >= WARMUP_ITERATIONS) {
+                rates[i - WARMUP_ITERATIONS] = n * 1e9 / (now - start);
+                bytes += allocated;
+                ops += n;
+            }
+        }
+
+        double mean = 0;
+        for (double r : rates) {
+            mean += r / rates.length;
+        }
+        double var = 0;
+        for (double r : rates) {
+            var += (r - mean) * (r - mean) / rates.length;
+        }
+        System.out.printf("%-16s %6d %-11s %14.0f %12.0f %12.1f%n", s.name, s.param,
+                          engine, mean, Math.sqrt(var), (double)bytes / ops);
+    }
+
+    /**
+     * Returns LOOKUPS ids drawn from names, in a fixed pseudo-random order.
+     */
+    private static int[] lookupOrder(int[] names) {
+        Random rand = new Random(536);
+        int[] order = new int[LOOKUPS];
+        for (int i = 0; i < LOOKUPS; i++) {
+            order[i] = names[rand.nextInt(names.length)];
+        }
+        return order;
+    }
+
+    private static int[] intern(String prefix, int n) {
+        int[] ids = new int[n];
+        for (int i = 0; i < n; i++) {
+            ids[i] = Compilation.current().ids.intern(prefix + i);
+        }
+        return ids;
+    }
+
+    /**
+     * depth scopes of 8 names each; lookupGlobal from the innermost scope
+     * of names spread evenly over all the scopes.
+     */
+    private static Scenario nestedLookup(final int depth) {
+        return new Scenario("nested-lookup", depth) {
+            SymTable table;
+            int[] order;
+
+            void setUp() throws Exception {
+                table = SymTable.create();
+                int[] all = new int[depth * 8];
+                for (int d = 0; d < depth; d++) {
+                    if (d > 0) {
+                        table.addScope();
+                    }
+                    int[] ids = intern("n" + d + "_", 8);
+                    for (int j = 0; j < 8; j++) {
+                        table.declare(ids[j], new Sym(Type.INT));
+                        all[d * 8 + j] = ids[j];
+                    }
+                }
+                order = lookupOrder(all);
+            }
+
+            int run() {
+                int found = 0;
+                for (int id : order) {
+                    if (table.lookupGlobal(id) != null) {
+                        found++;
+                    }
+                }
+                return found;
+            }
+
+            int opsPerRun() { return LOOKUPS; }
+        };
+    }
+
+    /**
+     * Enter depth nested scopes, declaring 4 names and looking up a local
+     * and a global in each, then leave them all; one op is one scope.
+     */
+    private static Scenario scopeChurn(final int depth) {
+        return new Scenario("scope-churn", depth) {
+            SymTable table;
+            int[] locals;
+            int global;
+            Sym sym = new Sym(Type.INT);
+
+            void setUp() throws Exception {
+                table = SymTable.create();
+                global = Compilation.current().ids.intern("churnGlobal");
+                table.declare(global, sym);
+                locals = intern("churn", 4);
+            }
+
+            int run() throws Exception {
+                int found = 0;
+                for (int d = 0; d < depth; d++) {
+                    table.addScope();
+                    for (int id : locals) {
+                        table.declare(id, sym);
+                    }
+                    if (table.lookupLocal(locals[d & 3]) != null) {
+                        found++;
+                    }
+                    if (table.lookupGlobal(global) != null) {
+                        found++;
+                    }
+                }
+                for (int d = 0; d < depth; d++) {
+                    table.removeScope();
+                }
+                return found;
+            }
+
+            int opsPerRun() { return depth; }
+        };
+    }
+
+    /**
+     * depth scopes that all declare the same 8 names; every lookup finds
+     * the innermost declaration.
+     */
+    private static Scenario shadowedLookup(final int depth) {
+        return new Scenario("shadowed-lookup", depth) {
+            SymTable table;
+            int[] order;
+
+            void setUp() throws Exception {
+                table = SymTable.create();
+                int[] ids = intern("shadowed", 8);
+                for (int d = 0; d < depth; d++) {
+                    if (d > 0) {
+                        table.addScope();
+                    }
+                    for (int id : ids) {
+                        table.declare(id, new Sym(Type.INT));
+                    }
+                }
+                order = lookupOrder(ids);
+            }
+
+            int run() {
+                int found = 0;
+                for (int id : order) {
+                    if (table.lookupGlobal(id) != null) {
+                        found++;
+                    }
+                }
+                return found;
+            }
+
+            int opsPerRun() { return LOOKUPS; }
+        };
+    }
+
+    /**
+     * depth scopes of 8 names each; every lookup is for a name that is
+     * interned but declared in none of them, so it searches every scope.
+     */
+    private static Scenario missingLookup(final int depth) {
+        return new Scenario("missing-lookup", depth) {
+            SymTable table;
+            int[] order;
+
+            void setUp() throws Exception {
+                table = SymTable.create();
+                for (int d = 0; d < depth; d++) {
+                    if (d > 0) {
+                        table.addScope();
+                    }
+                    for (int id : intern("present" + d + "_", 8)) {
+                        table.declare(id, new Sym(Type.INT));
+                    }
+                }
+                order = lookupOrder(intern("missing", 64));
+            }
+
+            int run() {
+                int found = 0;
+                for (int id : order) {
+                    if (table.lookupGlobal(id) == null) {
+                        found++;
+                    }
+                }
+                return found;
+            }
+
+            int opsPerRun() { return LOOKUPS; }
+        };
+    }
+
+    /**
+     * A program with only global declarations: declare n functions in a
+     * new table, then look each one up once.  One op is one declare or
+     * one lookup.
+     */
+    private static Scenario globals(final int n) {
+        return new Scenario("globals", n) {
+            int[] ids;
+            Sym sym = new FnSym(Type.INT, 0);
+
+            void setUp() {
+                ids = intern("fn", n);
+            }
+
+            int run() throws Exception {
+                SymTable table = SymTable.create();
+                for (int id : ids) {
+                    table.declare(id, sym);
+                }
+                int found = 0;
+                for (int id : ids) {
+                    if (table.lookupGlobal(id) != null) {
+                        found++;
+                    }
+                }
+                return found;
+            }
+
+            int opsPerRun() { return 2 * n; }
+        };
+    }
+
+    /**
+     * A struct with n fields kept in a SymTable of their own; look fields
+     * up in it.
+     */
+    private static Scenario structFields(final int n) {
+        return new Scenario("struct-fields", n) {
+            SymTable fields;
+            int[] order;
+
+            void setUp() throws Exception {
+                fields = SymTable.create();
+                int[] ids = intern("field", n);
+                for (int id : ids) {
+                    fields.declare(id, new Sym(Type.INT));
+                }
+                order = lookupOrder(ids);
+            }
+
+            int run() {
+                int found = 0;
+                for (int id : order) {
+                    if (fields.lookupGlobal(id) != null) {
+                        found++;
+                    }
+                }
+                return found;
+            }
+
+            int opsPerRun() { return LOOKUPS; }
+        };
+    }
+
+    /**
+     * The same struct as struct-fields, but looked up through the
+     * StructLayout of its StructDefSym, as DotAccessExpNode does.
+     */
+    private static Scenario structLayout(final int n) {
+        Scenario s = new Scenario("struct-layout", n) {
+            StructDefSym struct;
+            int[] order;
+
+            void setUp() {
+                int[] ids = intern("field", n);
+                Sym[] syms = new Sym[n];
+                for (int i = 0; i < n; i++) {
+                    syms[i] = new Sym(Type.INT);
+                }
+                struct = new StructDefSym("S",
+                                          new StructLayout(ids.clone(), syms));
+                order = lookupOrder(ids);
+            }
+
+            int run() {
+                int found = 0;
+                for (int id : order) {
+                    if (struct.getLayout().fieldIndex(id) >= 0) {
+                        found++;
+                    }
+                }
+                return found;
+            }
+
+            int opsPerRun() { return LOOKUPS; }
+        };
+        s.usesEngine = false;
+        return s;
+    }
+}
@@ -0,0 +1,198 @@
+import java.util.*;
+
+/**
+ * TokenBuffer
+ *
+ * The tokens of a whole source file, as filled in by the scanner in batch
+ * mode (Yylex.scanAll) and read by TokenParser, kept in parallel arrays
+ * instead of one Symbol and one TokenVal per token.  Token i has
+ *     a kind             (a sym constant; the last token is sym.EOF)
+ *     a start and length (its offset in the source, in chars, and length)
+ *     an int value       (the IdPool id of an ID, the value of an int
+ *                         literal, the index of the text of a string
+ *                         literal (see string); 0 otherwise)
+ *
+ * The line and character number of a token are worked out from its start
+ * when they are asked for, with the line-start index of the scanner.  A
+ * buffer filled by ParallelScanner holds the tokens of several scanners,
+ * one for each chunk of the source; each chunk is a segment of the buffer.
+ *
+ * The scanner's messages are held back in messages() while it runs.  For
+ * each token we note how many there were when the token was complete, so
+ * that the parser can report just the ones that the streaming scanner
+ * would have reported before the parser stopped at that token.
+ */
+class TokenBuffer {
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private int[] kinds = new int[INITIAL_CAPACITY];
+    private int[] starts = new int[INITIAL_CAPACITY];
+    private int[] lengths = new int[INITIAL_CAPACITY];
+    private int[] values = new int[INITIAL_CAPACITY];
+    private int[] msgMarks = new int[INITIAL_CAPACITY];
+    private int size = 0;
+
+    private final List<String> strings = new ArrayList<String>();
+    private final ErrBuffer messages = new ErrBuffer();
+
+    // segment k, from token segTokens[k] on, was scanned by scanners[k]
+    // from the chunk of the source at offset segStarts[k], which starts
+    // line segLines[k]+1
+    private Yylex[] scanners = new Yylex[1];
+    private int[] segTokens = new int[1];
+    private int[] segStarts = new int[1];
+    private int[] segLines = new int[1];
+    private int segments = 0;
+
+    /**
+     * Sets the scanner that fills the buffer, for the line numbers.
+     */
+    void setScanner(Yylex scanner) {
+        addSegment(scanner, 0, 0);
+    }
+
+    /**
+     * Adds the tokens of chunk, scanned from the part of the source that
+     * starts at offset start, at the start of line lineBase+1, and moves
+     * its messages here.  The last token of chunk, sym.EOF, is left out.
+     * @param idMap the id in our IdPool of each id in the IdPool that
+     *              chunk was scanned with
+     */
+    void append(TokenBuffer chunk, int start, int lineBase, int[] idMap) {
+        addSegment(chunk.scanners[0], start, lineBase);
+        int marks = messages.size();
+        chunk.messages.flush(messages, lineBase);
+        for (int i = 0; i < chunk.size - 1; i++) {
+            if (size == kinds.length) {
+                grow();
+            }
+            int kind = chunk.kinds[i];
+            int value = chunk.values[i];
+            if (kind == sym.ID) {
+                value = idMap[value];
+            } else if (kind == sym.STRINGLITERAL) {
+                value = addString(chunk.strings.get(value));
+            }
+            kinds[size] = kind;
+            starts[size] = start + chunk.starts[i];
+            lengths[size] = chunk.lengths[i];
+            values[size] = value;
+            msgMarks[size] = marks + chunk.msgMarks[i];
+            size++;
+        }
+    }
+
+    private void addSegment(Yylex scanner, int start, int lineBase) {
+        if (segments == scanners.length) {
+            int n = segments * 2;
+            scanners = Arrays.copyOf(scanners, n);
+            segTokens = Arrays.copyOf(segTokens, n);
+            segStarts = Arrays.copyOf(segStarts, n);
+            segLines = Arrays.copyOf(segLines, n);
+        }
+        scanners[segments] = scanner;
+        segTokens[segments] = size;
+        segStarts[segments] = start;
+        segLines[segments] = lineBase;
+        segments++;
+    }
+
+    // the segment that holds token i: the last one that starts at or
+    // before it
+    private int segment(int i) {
+        int lo = 0;
+        int hi = segments - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (segTokens[mid] <= i) {
+                lo = mid;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Adds a token.
+     */
+    void add(int kind, int start, int length, int value) {
+        if (size == kinds.length) {
+            grow();
+        }
+        kinds[size] = kind;
+        starts[size] = start;
+        lengths[size] = length;
+        values[size] = value;
+        msgMarks[size] = messages.size();
+        size++;
+    }
+
+    /**
+     * Keeps the text of a string literal; returns the value for its token.
+     */
+    int addString(String strVal) {
+        strings.add(strVal);
+        return strings.size() - 1;
+    }
+
+    private void grow() {
+        int n = size * 2;
+        kinds = Arrays.copyOf(kinds, n);
+        starts = Arrays.copyOf(starts, n);
+        lengths = Arrays.copyOf(lengths, n);
+        values = Arrays.copyOf(values, n);
+        msgMarks = Arrays.copyOf(msgMarks, n);
+    }
+
+    int size() {
+        return size;
+    }
+
+    int kind(int i) {
+        return kinds[i];
+    }
+
+    int lineNum(int i) {
+        int k = segment(i);
+        return segLines[k] + scanners[k].yylineof(starts[i] - segStarts[k]) + 1;
+    }
+
+    int charNum(int i) {
+        int k = segment(i);
+        return scanners[k].yycolumnof(starts[i] - segStarts[k]) + 1;
+    }
+
+    int start(int i) {
+        return starts[i];
+    }
+
+    int length(int i) {
+        return lengths[i];
+    }
+
+    int value(int i) {
+        return values[i];
+    }
+
+    /**
+     * The text of the string literal token i.
+     */
+    String string(int i) {
+        return strings.get(values[i]);
+    }
+
+    /**
+     * Where the scanner's messages go while it fills the buffer.
+     */
+    ErrBuffer messages() {
+        return messages;
+    }
+
+    /**
+     * The number of scanner messages issued up to the end of token i.
+     */
+    int messagesBefore(int i) {
+        return msgMarks[i];
+    }
+}
@@ -0,0 +1,446 @@
+import java.util.*;
+
+/**
+ * TokenParser
+ *
+ * A recursive-descent parser for Carrot that reads its tokens from a
+ * TokenBuffer (see Yylex.scanAll) and builds the same AST as the CUP
+ * parser (Carrot.cup), without a Symbol or TokenVal per token.
+ *
+ * It accepts exactly the language of Carrot.cup.  Expressions are parsed
+ * by precedence climbing with the precedences declared there: from
+ * lowest to highest, OR, AND, the comparisons (non-associative), PLUS
+ * and MINUS, TIMES and DIVIDE.  Like the rules they come from,
+ *     - an assignment (loc ASSIGN exp) can appear wherever a term can,
+ *       and its right-hand side extends as far as possible;
+ *     - unary minus has the precedence of MINUS, so its operand is an
+ *       expression of TIMES and DIVIDE only;
+ *     - NOT binds tighter than any binary operator.
+ * Both parsers stop at the first token that cannot continue a program,
+ * so a syntax error is reported at the same token, and the scanner's
+ * messages up to that token are reported before it (see TokenBuffer).
+ *
+ * Usage: TokenParser.parse(tokens) returns the root of the AST, or null
+ * after reporting a syntax error.
+ */
+public class TokenParser {
+    // binary operator precedences
+    private static final int OR = 1;
+    private static final int AND = 2;
+    private static final int COMPARE = 3;
+    private static final int ADD = 4;
+    private static final int MULTIPLY = 5;
+
+    private final TokenBuffer toks;
+    private final IdPool ids = Compilation.current().ids;
+    private int pos = 0;    // the lookahead token
+
+    private TokenParser(TokenBuffer toks) {
+        this.toks = toks;
+    }
+
+    /**
+     * parse
+     * Parses the tokens in toks, and reports the scanner's messages.
+     */
+    public static ProgramNode parse(TokenBuffer toks) {
+        TokenParser p = new TokenParser(toks);
+        try {
+            ProgramNode program = p.program();
+            toks.messages().flush();
+            return program;
+        } catch (SyntaxError e) {
+            toks.messages().flush(toks.messagesBefore(p.pos));
+            if (toks.kind(p.pos) == sym.EOF) {
+                ErrMsg.fatal(0, 0, "Syntax error at end of file");
+            } else {
+                ErrMsg.fatal(toks.lineNum(p.pos), toks.charNum(p.pos),
+                             "Syntax error");
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Thrown at the first token that cannot continue the program.
+     */
+    private static class SyntaxError extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        SyntaxError() {
+            super(null, null, false, false);
+        }
+    }
+
+    private int peek() {
+        return toks.kind(pos);
+    }
+
+    private int peek(int k) {
+        return toks.kind(Math.min(pos + k, toks.size() - 1));
+    }
+
+    private boolean accept(int kind) {
+        if (toks.kind(pos) != kind) {
+            return false;
+        }
+        pos++;
+        return true;
+    }
+
+    private void expect(int kind) {
+        if (toks.kind(pos) != kind) {
+            throw new SyntaxError();
+        }
+        pos++;
+    }
+
+    // program ::= declList
+    private ProgramNode program() {
+        List<DeclNode> decls = new ArrayList<DeclNode>();
+        while (peek() != sym.EOF) {
+            decls.add(decl());
+        }
+        return new ProgramNode(new DeclListNode(decls));
+    }
+
+    // decl ::= varDecl | fnDecl | structDecl
+    private DeclNode decl() {
+        if (peek() == sym.STRUCT && peek(2) == sym.LCURLY) {
+            pos++;
+            IdNode id = id();
+            expect(sym.LCURLY);
+            List<DeclNode> fields = new ArrayList<DeclNode>();
+            fields.add(varDecl());
+            while (peek() != sym.RCURLY) {
+                fields.add(varDecl());
+            }
+            pos++;
+            expect(sym.SEMICOLON);
+            return new StructDeclNode(id, new DeclListNode(fields));
+        }
+        if (peek() == sym.STRUCT || peek(2) == sym.SEMICOLON) {
+            return varDecl();
+        }
+        TypeNode type = type();
+        IdNode id = id();
+        return new FnDeclNode(type, id, new FormalsListNode(formals()),
+                              fnBody());
+    }
+
+    // varDecl ::= type id SEMICOLON | STRUCT id id SEMICOLON
+    private VarDeclNode varDecl() {
+        VarDeclNode decl;
+        if (accept(sym.STRUCT)) {
+            IdNode structId = id();
+            decl = new VarDeclNode(new StructNode(structId), id(), 0);
+        } else {
+            TypeNode type = type();
+            decl = new VarDeclNode(type, id(), VarDeclNode.NOT_STRUCT);
+        }
+        expect(sym.SEMICOLON);
+        return decl;
+    }
+
+    private boolean startsVarDecl() {
+        int kind = peek();
+        return kind == sym.INT || kind == sym.BOOL || kind == sym.VOID
+            || kind == sym.STRUCT;
+    }
+
+    // formals ::= LPAREN RPAREN | LPAREN formalsList RPAREN
+    private List<FormalDeclNode> formals() {
+        List<FormalDeclNode> formals = new ArrayList<FormalDeclNode>();
+        expect(sym.LPAREN);
+        if (accept(sym.RPAREN)) {
+            return formals;
+        }
+        do {
+            TypeNode type = type();
+            formals.add(new FormalDeclNode(type, id()));
+        } while (accept(sym.COMMA));
+        expect(sym.RPAREN);
+        return formals;
+    }
+
+    // fnBody ::= LCURLY varDeclList stmtList RCURLY
+    private FnBodyNode fnBody() {
+        expect(sym.LCURLY);
+        DeclListNode decls = varDeclList();
+        return new FnBodyNode(decls, stmtList());
+    }
+
+    // varDeclList, up to the first token that cannot start a varDecl
+    private DeclListNode varDeclList() {
+        List<DeclNode> decls = new ArrayList<DeclNode>();
+        while (startsVarDecl()) {
+            decls.add(varDecl());
+        }
+        return new DeclListNode(decls);
+    }
+
+    // stmtList RCURLY
+    private StmtListNode stmtList() {
+        List<StmtNode> stmts = new ArrayList<StmtNode>();
+        while (!accept(sym.RCURLY)) {
+            stmts.add(stmt());
+        }
+        return new StmtListNode(stmts);
+    }
+
+    private StmtNode stmt() {
+        switch (peek()) {
+        case sym.CIN: {
+            pos++;
+            expect(sym.READ);
+            ExpNode loc = loc(id());
+            expect(sym.SEMICOLON);
+            return new ReadStmtNode(loc);
+        }
+        case sym.COUT: {
+            pos++;
+            expect(sym.WRITE);
+            ExpNode exp = exp(0);
+            expect(sym.SEMICOLON);
+            return new WriteStmtNode(exp);
+        }
+        case sym.IF: {
+            ExpNode exp = condition();
+            expect(sym.LCURLY);
+            DeclListNode decls = varDeclList();
+            StmtListNode stmts = stmtList();
+            if (!accept(sym.ELSE)) {
+                return new IfStmtNode(exp, decls, stmts);
+            }
+            expect(sym.LCURLY);
+            DeclListNode elseDecls = varDeclList();
+            return new IfElseStmtNode(exp, decls, stmts, elseDecls,
+                                      stmtList());
+        }
+        case sym.WHILE: {
+            ExpNode exp = condition();
+            expect(sym.LCURLY);
+            DeclListNode decls = varDeclList();
+            return new WhileStmtNode(exp, decls, stmtList());
+        }
+        case sym.REPEAT: {
+            ExpNode exp = condition();
+            expect(sym.LCURLY);
+            DeclListNode decls = varDeclList();
+            return new RepeatStmtNode(exp, decls, stmtList());
+        }
+        case sym.RETURN: {
+            pos++;
+            if (accept(sym.SEMICOLON)) {
+                return new ReturnStmtNode(null);
+            }
+            ExpNode exp = exp(0);
+            expect(sym.SEMICOLON);
+            return new ReturnStmtNode(exp);
+        }
+        case sym.ID: {
+            IdNode id = id();
+            StmtNode stmt;
+            if (peek() == sym.LPAREN) {
+                stmt = new CallStmtNode(call(id));
+            } else {
+                ExpNode loc = loc(id);
+                if (accept(sym.ASSIGN)) {
+                    stmt = new AssignStmtNode(new AssignNode(loc, exp(0)));
+                } else if (accept(sym.PLUSPLUS)) {
+                    stmt = new PostIncStmtNode(loc);
+                } else if (accept(sym.MINUSMINUS)) {
+                    stmt = new PostDecStmtNode(loc);
+                } else {
+                    throw new SyntaxError();
+                }
+            }
+            expect(sym.SEMICOLON);
+            return stmt;
+        }
+        default:
+            throw new SyntaxError();
+        }
+    }
+
+    // KEYWORD LPAREN exp RPAREN, of if, while and repeat
+    private ExpNode condition() {
+        pos++;
+        expect(sym.LPAREN);
+        ExpNode exp = exp(0);
+        expect(sym.RPAREN);
+        return exp;
+    }
+
+    /**
+     * exp
+     * An expression whose binary operators all have precedence minPrec or
+     * higher.
+     */
+    private ExpNode exp(int minPrec) {
+        ExpNode left = unary();
+        while (true) {
+            int op = peek();
+            int prec = precedence(op);
+            if (prec == 0 || prec < minPrec) {
+                return left;
+            }
+            pos++;
+            left = binary(op, left, exp(prec + 1));
+            if (prec == COMPARE && precedence(peek()) == COMPARE) {
+                throw new SyntaxError();    // non-associative
+            }
+        }
+    }
+
+    private static int precedence(int kind) {
+        switch (kind) {
+        case sym.OR:
+            return OR;
+        case sym.AND:
+            return AND;
+        case sym.EQUALS:
+        case sym.NOTEQUALS:
+        case sym.LESS:
+        case sym.GREATER:
+        case sym.LESSEQ:
+        case sym.GREATEREQ:
+            return COMPARE;
+        case sym.PLUS:
+        case sym.MINUS:
+            return ADD;
+        case sym.TIMES:
+        case sym.DIVIDE:
+            return MULTIPLY;
+        default:
+            return 0;
+        }
+    }
+
+    private static ExpNode binary(int op, ExpNode left, ExpNode right) {
+        switch (op) {
+        case sym.OR:
+            return new OrNode(left, right);
+        case sym.AND:
+            return new AndNode(left, right);
+        case sym.EQUALS:
+            return new EqualsNode(left, right);
+        case sym.NOTEQUALS:
+            return new NotEqualsNode(left, right);
+        case sym.LESS:
+            return new LessNode(left, right);
+        case sym.GREATER:
+            return new GreaterNode(left, right);
+        case sym.LESSEQ:
+            return new LessEqNode(left, right);
+        case sym.GREATEREQ:
+            return new GreaterEqNode(left, right);
+        case sym.PLUS:
+            return new PlusNode(left, right);
+        case sym.MINUS:
+            return new MinusNode(left, right);
+        case sym.TIMES:
+            return new TimesNode(left, right);
+        default:
+            return new DivideNode(left, right);
+        }
+    }
+
+    // NOT exp | MINUS exp | term, with the operands described above
+    private ExpNode unary() {
+        if (accept(sym.NOT)) {
+            return new NotNode(exp(MULTIPLY + 1));
+        }
+        if (accept(sym.MINUS)) {
+            return new UnaryMinusNode(exp(MULTIPLY));
+        }
+        return term();
+    }
+
+    // term, or assignExp
+    private ExpNode term() {
+        int t = pos;
+        switch (peek()) {
+        case sym.INTLITERAL:
+            pos++;
+            return new IntLitNode(toks.lineNum(t), toks.charNum(t),
+                                  toks.value(t));
+        case sym.STRINGLITERAL:
+            pos++;
+            return new StringLitNode(toks.lineNum(t), toks.charNum(t),
+                                     toks.string(t));
+        case sym.TRUE:
+            pos++;
+            return new TrueNode(toks.lineNum(t), toks.charNum(t));
+        case sym.FALSE:
+            pos++;
+            return new FalseNode(toks.lineNum(t), toks.charNum(t));
+        case sym.LPAREN: {
+            pos++;
+            ExpNode exp = exp(0);
+            expect(sym.RPAREN);
+            return exp;
+        }
+        case sym.ID: {
+            IdNode id = id();
+            if (peek() == sym.LPAREN) {
+                return call(id);
+            }
+            ExpNode loc = loc(id);
+            if (accept(sym.ASSIGN)) {
+                return new AssignNode(loc, exp(0));
+            }
+            return loc;
+        }
+        default:
+            throw new SyntaxError();
+        }
+    }
+
+    // fncall ::= id LPAREN RPAREN | id LPAREN actualList RPAREN
+    private CallExpNode call(IdNode id) {
+        expect(sym.LPAREN);
+        List<ExpNode> actuals = new ArrayList<ExpNode>();
+        if (!accept(sym.RPAREN)) {
+            do {
+                actuals.add(exp(0));
+            } while (accept(sym.COMMA));
+            expect(sym.RPAREN);
+        }
+        return new CallExpNode(id, new ExpListNode(actuals));
+    }
+
+    // loc ::= id | loc DOT id, given the first id
+    private ExpNode loc(IdNode id) {
+        ExpNode loc = id;
+        while (accept(sym.DOT)) {
+            loc = new DotAccessExpNode(loc, id());
+        }
+        return loc;
+    }
+
+    // type ::= INT | BOOL | VOID
+    private TypeNode type() {
+        switch (peek()) {
+        case sym.INT:
+            pos++;
+            return new IntNode();
+        case sym.BOOL:
+            pos++;
+            return new BoolNode();
+        case sym.VOID:
+            pos++;
+            return new VoidNode();
+        default:
+            throw new SyntaxError();
+        }
+    }
+
+    // id ::= ID
+    private IdNode id() {
+        int t = pos;
+        expect(sym.ID);
+        int id = toks.value(t);
+        return new IdNode(toks.lineNum(t), toks.charNum(t), id, ids.name(id));
+    }
+}
@@ -1,54 +1,69 @@
 /**
  * Type class and its subclasses: 
  * ErrorType, IntType, BoolType, VoidType, StringType, FnType, StructType,
+ *
+ * Types are canonical: there is exactly one instance of each type, so two
+ * types are equal iff they are the same object.  Use the constants below
+ * instead of creating types; the one StructType of a struct is created
+ * with its StructDefSym (see StructDefSym.getStructType).
  */
 abstract public class Type {
+    public static final Type ERROR = new ErrorType();
+    public static final Type INT = new IntType();
+    public static final Type BOOL = new BoolType();
+    public static final Type VOID = new VoidType();
+    public static final Type STRING = new StringType();
+    public static final Type FN = new FnType();
+    public static final Type STRUCT_DEF = new StructDefType();
 
     /**
      * default constructor
      */
-    public Type() {
+    Type() {
     }
 
     /**
-     * every subclass must provide a toString method and an equals method
+     * every subclass must provide a toString method
      */
     abstract public String toString();
-    abstract public boolean equals(Type t);
+
+    public final boolean equals(Type t) {
+        return this == t;
+    }
 
     /**
-     * default methods for "isXXXType"
+     * methods for "isXXXType"
      */
-    public boolean isErrorType() {
-        return false;
+    public final boolean isErrorType() {
+        return this == ERROR;
     }
 
-    public boolean isIntType() {
-        return false;
+    public final boolean isIntType() {
+        return this == INT;
     }
 
-    public boolean isBoolType() {
-        return false;
+    public final boolean isBoolType() {
+        return this == BOOL;
     }
 
-    public boolean isVoidType() {
-        return false;
+    public final boolean isVoidType() {
+        return this == VOID;
     }
     
-    public boolean isStringType() {
-        return false;
+    public final boolean isStringType() {
+        return this == STRING;
     }
 
-    public boolean isFnType() {
-        return false;
+    public final boolean isFnType() {
+        return this == FN;
     }
 
-    public boolean isStructType() {
-        return false;
+    public final boolean isStructType() {
+        return this instanceof StructType;
     }
     
-    public boolean isStructDefType() {
-        return false;
+    public final boolean isStructDefType() {
+        return this == STRUCT_DEF;
     }
 }
 
@@ -57,14 +72,6 @@ abstract public class Type {
 // **********************************************************************
 class ErrorType extends Type {
 
-    public boolean isErrorType() {
-        return true;
-    }
-
-    public boolean equals(Type t) {
-        return t.isErrorType();
-    }
-
     public String toString() {
         return "error";
     }
@@ -75,14 +82,6 @@ class ErrorType extends Type {
 // **********************************************************************
 class IntType extends Type {
 
-    public boolean isIntType() {
-        return true;
-    }
-
-    public boolean equals(Type t) {
-        return t.isIntType();
-    }
-
     public String toString() {
         return "int";
     }
@@ -93,14 +92,6 @@ class IntType extends Type {
 // **********************************************************************
 class BoolType extends Type {
 
-    public boolean isBoolType() {
-        return true;
-    }
-
-    public boolean equals(Type t) {
-        return t.isBoolType();
-    }
-
     public String toString() {
         return "bool";
     }
@@ -111,14 +102,6 @@ class BoolType extends Type {
 // **********************************************************************
 class VoidType extends Type {
 
-    public boolean isVoidType() {
-        return true;
-    }
-
-    public boolean equals(Type t) {
-        return t.isVoidType();
-    }
-
     public String toString() {
         return "void";
     }
@@ -129,14 +112,6 @@ class VoidType extends Type {
 // **********************************************************************
 class StringType extends Type {
 
-    public boolean isStringType() {
-        return true;
-    }
-
-    public boolean equals(Type t) {
-        return t.isStringType();
-    }
-
     public String toString() {
         return "String";
     }
@@ -147,14 +122,6 @@ class StringType extends Type {
 // **********************************************************************
 class FnType extends Type {
 
-    public boolean isFnType() {
-        return true;
-    }
-
-    public boolean equals(Type t) {
-        return t.isFnType();
-    }
-
     public String toString() {
         return "function";
     }
@@ -164,22 +131,15 @@ class FnType extends Type {
 // StructType
 // **********************************************************************
 class StructType extends Type {
-    private IdNode myId;
+    private String myName;
     
-    public StructType(IdNode id) {
-        myId = id;
-    }
-    
-    public boolean isStructType() {
-        return true;
-    }
-
-    public boolean equals(Type t) {
-        return t.isStructType();
+    // created only by StructDefSym, one per struct definition
+    StructType(String name) {
+        myName = name;
     }
 
     public String toString() {
-        return myId.name();
+        return myName;
     }
 }
 
@@ -188,14 +148,6 @@ class StructType extends Type {
 // **********************************************************************
 class StructDefType extends Type {
 
-    public boolean isStructDefType() {
-        return true;
-    }
-
-    public boolean equals(Type t) {
-        return t.isStructDefType();
-    }
-
     public String toString() {
         return "struct";
     }
@@ -107,6 +107,21 @@ import java.util.*;
 // **********************************************************************
 
 abstract class ASTnode { 
+    protected ASTnode(NodeKind kind) {
+        myKind = kind;
+        if (Stats.countNodes) {
+            Compilation.current().stats.astNodes++;
+        }
+    }
+
+    /**
+     * Return the kind of this node, for passes that switch on the kind
+     * instead of calling a method of the node (see SemanticPass).
+     */
+    public final NodeKind kind() {
+        return myKind;
+    }
+
     // every subclass must provide an unparse operation
     abstract public void unparse(PrintWriter p, int indent);
 
@@ -114,6 +129,8 @@ abstract class ASTnode {
     protected void addIndent(PrintWriter p, int indent) {
         for (int k=0; k<indent; k++) p.print(" ");
     }
+
+    private final NodeKind myKind;
 }
 
 // **********************************************************************
@@ -123,16 +140,21 @@ abstract class ASTnode {
 
 class ProgramNode extends ASTnode {
     public ProgramNode(DeclListNode L) {
+        super(NodeKind.PROGRAM);
         myDeclList = L;
     }
 
+    public DeclListNode declList() {
+        return myDeclList;
+    }
+
     /**
      * nameAnalysis
      * Creates an empty symbol table for the outermost scope, then processes
      * all of the globals, struct defintions, and functions in the program.
      */
     public void nameAnalysis() {
-        SymTable symTab = new SymTable();
+        SymTable symTab = SymTable.create();
         myDeclList.nameAnalysis(symTab);
     }
     
@@ -141,10 +163,10 @@ class ProgramNode extends ASTnode {
      */
     public void typeCheck() {
         main = myDeclList.typeCheck(main);
-        if (!main) { ErrMsg.fatal(0, 0, "No main function"); }
+        Semantics.program(main);
     }
 
-    public void codeGen() { myDeclList.codeGen(); }
+    public void codeGen(Codegen cg) { myDeclList.codeGen(cg); }
     
     public void unparse(PrintWriter p, int indent) {
         myDeclList.unparse(p, indent);
@@ -157,9 +179,14 @@ class ProgramNode extends ASTnode {
 
 class DeclListNode extends ASTnode {
     public DeclListNode(List<DeclNode> S) {
+        super(NodeKind.DECL_LIST);
         myDecls = S;
     }
 
+    public List<DeclNode> decls() {
+        return myDecls;
+    }
+
     /**
      * nameAnalysis
      * Given a symbol table symTab, process all of the decls in the list.
@@ -217,12 +244,30 @@ class DeclListNode extends ASTnode {
         return main;
     }
 
-    public void codeGen() {
+    /**
+     * fieldIds
+     * Return the IDs of the variable decls in this list that name analysis
+     * linked to a symbol, in order (for the fields of a struct).
+     */
+    public List<IdNode> fieldIds() {
+        List<IdNode> ids = new ArrayList<IdNode>();
         for (DeclNode node : myDecls) {
             if (node instanceof VarDeclNode) {
-                ((VarDeclNode)node).codeGen();
+                IdNode id = ((VarDeclNode)node).idNode();
+                if (id.sym() != null) {
+                    ids.add(id);
+                }
+            }
+        }
+        return ids;
+    }
+
+    public void codeGen(Codegen cg) {
+        for (DeclNode node : myDecls) {
+            if (node instanceof VarDeclNode) {
+                ((VarDeclNode)node).codeGen(cg);
             } else if (node instanceof FnDeclNode) {
-               ((FnDeclNode)node).codeGen();
+               ((FnDeclNode)node).codeGen(cg);
             }
 
         }
@@ -246,6 +291,7 @@ class DeclListNode extends ASTnode {
 
 class FormalsListNode extends ASTnode {
     public FormalsListNode(List<FormalDeclNode> S) {
+        super(NodeKind.FORMALS_LIST);
         myFormals = S;
     }
 
@@ -276,12 +322,12 @@ class FormalsListNode extends ASTnode {
         return myFormals.size();
     }
 
-    public void codeGen() {
+    public void codeGen(Codegen cg) {
         Iterator<FormalDeclNode> it = myFormals.iterator();
         if (it.hasNext()) { // if there is at least one element
-            it.next().codeGen();
+            it.next().codeGen(cg);
             while (it.hasNext()) {
-                it.next().codeGen();
+                it.next().codeGen(cg);
             }
         }
     }
@@ -303,10 +349,19 @@ class FormalsListNode extends ASTnode {
 
 class FnBodyNode extends ASTnode {
     public FnBodyNode(DeclListNode declList, StmtListNode stmtList) {
+        super(NodeKind.FN_BODY);
         myDeclList = declList;
         myStmtList = stmtList;
     }
 
+    public DeclListNode declList() {
+        return myDeclList;
+    }
+
+    public StmtListNode stmtList() {
+        return myStmtList;
+    }
+
     /**
      * nameAnalysis
      * Given a symbol table symTab, do:
@@ -327,8 +382,8 @@ class FnBodyNode extends ASTnode {
         myStmtList.typeCheck(retType);
     }
 
-    public void codeGen() {
-        myStmtList.codeGen();
+    public void codeGen(Codegen cg) {
+        myStmtList.codeGen(cg);
     }
           
     public void unparse(PrintWriter p, int indent) {
@@ -343,9 +398,14 @@ class FnBodyNode extends ASTnode {
 
 class StmtListNode extends ASTnode {
     public StmtListNode(List<StmtNode> S) {
+        super(NodeKind.STMT_LIST);
         myStmts = S;
     }
 
+    public List<StmtNode> stmts() {
+        return myStmts;
+    }
+
     /**
      * nameAnalysis
      * Given a symbol table symTab, process each statement in the list.
@@ -382,9 +442,9 @@ class StmtListNode extends ASTnode {
         }
     }
 
-    public void codeGen() {
+    public void codeGen(Codegen cg) {
         for(StmtNode node : myStmts) {
-            node.codeGen();
+            node.codeGen(cg);
         }
     }
     
@@ -401,6 +461,7 @@ class StmtListNode extends ASTnode {
 
 class ExpListNode extends ASTnode {
     public ExpListNode(List<ExpNode> S) {
+        super(NodeKind.EXP_LIST);
         myExps = S;
     }
     
@@ -426,14 +487,8 @@ class ExpListNode extends ASTnode {
         try {
             for (ExpNode node : myExps) {
                 Type actualType = node.typeCheck();     // actual type of arg
-                
-                if (!actualType.isErrorType()) {        // if this is not an error
-                    Type formalType = typeList.get(k);  // get the formal type
-                    if (!formalType.equals(actualType)) {
-                        ErrMsg.fatal(node.lineNum(), node.charNum(),
-                                     "Type of actual does not match type of formal");
-                    }
-                }
+                Semantics.actual(actualType, typeList.get(k), node.lineNum(),
+                                 node.charNum(), ErrBuffer.NOW);
                 k++;
             }
         } catch (NoSuchElementException e) {
@@ -442,12 +497,12 @@ class ExpListNode extends ASTnode {
         }
     }
 
-    public void codeGen() {
+    public void codeGen(Codegen cg) {
         Iterator<ExpNode> it = myExps.iterator();
         if (it.hasNext()) { // if there is at least one element
-            it.next().codeGen();
+            it.next().codeGen(cg);
             while (it.hasNext()) {  // print the rest of the list
-                it.next().codeGen();
+                it.next().codeGen(cg);
             }
         }
     }
@@ -475,6 +530,10 @@ class ExpListNode extends ASTnode {
 // **********************************************************************
 
 abstract class DeclNode extends ASTnode {
+    protected DeclNode(NodeKind kind) {
+        super(kind);
+    }
+
     /**
      * Note: a formal decl needs to return a sym
      */
@@ -483,11 +542,12 @@ abstract class DeclNode extends ASTnode {
     // default version of typeCheck for non-function decls
     public void typeCheck() { }
 
-    public void codeGen() { }
+    public void codeGen(Codegen cg) { }
 }
 
 class VarDeclNode extends DeclNode {
     public VarDeclNode(TypeNode type, IdNode id, int size) {
+        super(NodeKind.VAR_DECL);
         myType = type;
         myId = id;
         mySize = size;
@@ -516,72 +576,55 @@ class VarDeclNode extends DeclNode {
     
     public Sym nameAnalysis(SymTable symTab, SymTable globalTab, int offset) {
         boolean badDecl = false;
-        String name = myId.name();
-        Sym sym = null;
-        IdNode structId = null;
+        StructDefSym structSym = null;
 
         if (myType instanceof VoidNode) {  // check for void type
-            ErrMsg.fatal(myId.lineNum(), myId.charNum(), 
-                         "Non-function declared void");
+            Semantics.declaredVoid(myId.lineNum(), myId.charNum());
             badDecl = true;        
         }
         
         else if (myType instanceof StructNode) {
-            structId = ((StructNode)myType).idNode();
-            sym = globalTab.lookupGlobal(structId.name());
-            
-            // if the name for the struct type is not found, 
-            // or is not a struct type
-            if (sym == null || !(sym instanceof StructDefSym)) {
-                ErrMsg.fatal(structId.lineNum(), structId.charNum(), 
-                             "Invalid name of struct type");
+            IdNode structId = ((StructNode)myType).idNode();
+            structSym = Semantics.structType(globalTab, structId.nameId(),
+                                             structId.lineNum(),
+                                             structId.charNum());
+            if (structSym == null) {
                 badDecl = true;
             }
             else {
-                structId.link(sym);
+                structId.link(structSym);
             }
         }
         
-        if (symTab.lookupLocal(name) != null) {
-            ErrMsg.fatal(myId.lineNum(), myId.charNum(), 
-                         "Multiply declared identifier");
-            badDecl = true;            
+        if (badDecl) {
+            Semantics.declared(symTab, myId.nameId(),
+                               myId.lineNum(), myId.charNum());
+            return null;
         }
         
-        if (!badDecl) {  // insert into symbol table
-            try {
-                if (myType instanceof StructNode) {
-                    sym = new StructSym(structId);
-                }
-                else {
-                    sym = new Sym(myType.type(), offset);
-                }
-                symTab.addDecl(name, sym);
-                myId.link(sym);
-            } catch (DuplicateSymException ex) {
-                System.err.println("Unexpected DuplicateSymException " +
-                                   " in VarDeclNode.nameAnalysis");
-                System.exit(-1);
-            } catch (EmptySymTableException ex) {
-                System.err.println("Unexpected EmptySymTableException " +
-                                   " in VarDeclNode.nameAnalysis");
-                System.exit(-1);
-            } catch (WrongArgumentException ex) {
-                System.err.println("Unexpected WrongArgumentException " +
-                                   " in VarDeclNode.nameAnalysis");
-                System.exit(-1);
-            } 
+        // insert into symbol table, unless already declared there
+        Sym sym;
+        if (structSym != null) {
+            sym = new StructSym(structSym);
         }
-        
+        else {
+            sym = new Sym(myType.type(), offset);
+        }
+        if (!Semantics.declare(symTab, myId.nameId(), sym,
+                               myId.lineNum(), myId.charNum())) {
+            return null;
+        }
+        myId.link(sym);
         return sym;
     }
 
-    public void codeGen() {
+    public IdNode idNode() {
+        return myId;
+    }
+
+    public void codeGen(Codegen cg) {
         if (myId.sym().isGlobal()) {
-            Codegen.generate(".data");
-            Codegen.generate(".align", "2");
-            String label = Codegen.nextLabel();
-            Codegen.generateLabeled(label, ".space", myId.name(), "4");
+            cg.genGlobal(myId.name());
         }
     }
 
@@ -606,12 +649,29 @@ class FnDeclNode extends DeclNode {
                       IdNode id,
                       FormalsListNode formalList,
                       FnBodyNode body) {
+        super(NodeKind.FN_DECL);
         myType = type;
         myId = id;
         myFormalsList = formalList;
         myBody = body;
     }
 
+    public TypeNode typeNode() {
+        return myType;
+    }
+
+    public IdNode idNode() {
+        return myId;
+    }
+
+    public FormalsListNode formalsList() {
+        return myFormalsList;
+    }
+
+    public FnBodyNode body() {
+        return myBody;
+    }
+
     /**
      * nameAnalysis
      * Given a symbol table symTab, do:
@@ -626,33 +686,7 @@ class FnDeclNode extends DeclNode {
      *     exit scope
      */
     public Sym nameAnalysis(SymTable symTab) {
-        String name = myId.name();
-        FnSym sym = null;
-
-        if (symTab.lookupLocal(name) != null) {
-            ErrMsg.fatal(myId.lineNum(), myId.charNum(),
-                         "Multiply declared identifier");
-        }
-        
-        else { // add function name to local symbol table
-            try {
-                sym = new FnSym(myType.type(), myFormalsList.length());
-                symTab.addDecl(name, sym);
-                myId.link(sym);
-            } catch (DuplicateSymException ex) {
-                System.err.println("Unexpected DuplicateSymException " +
-                                   " in FnDeclNode.nameAnalysis");
-                System.exit(-1);
-            } catch (EmptySymTableException ex) {
-                System.err.println("Unexpected EmptySymTableException " +
-                                   " in FnDeclNode.nameAnalysis");
-                System.exit(-1);
-            } catch (WrongArgumentException ex) {
-                System.err.println("Unexpected WrongArgumentException " +
-                                   " in FnDeclNode.nameAnalysis");
-                System.exit(-1);
-            } 
-        }
+        FnSym sym = declare(symTab);
         
         symTab.addScope();  // add a new scope for locals and params
         
@@ -678,48 +712,47 @@ class FnDeclNode extends DeclNode {
         return null;
     } 
        
+    /**
+     * declare
+     * Given a symbol table symTab, do:
+     * if this name has already been declared in this scope, then error
+     *     and return null
+     * else add name to local symbol table and return its FnSym
+     */
+    public FnSym declare(SymTable symTab) {
+        // add function name to local symbol table, unless already there
+        FnSym sym = new FnSym(myType.type(), myFormalsList.length());
+        if (!Semantics.declare(symTab, myId.nameId(), sym,
+                               myId.lineNum(), myId.charNum())) {
+            return null;
+        }
+        myId.link(sym);
+        return sym;
+    }
+       
     /**
      * typeCheck
      */
     public boolean typeCheck(boolean main) { // System.out.println( myId.name());
-        if (myId.name().equals("main")) {
-            main = true;
-            myId.myLabel = "main";
-        }
-        else {
-            main = false;
-            myId.myLabel = "_" + myId.name();
-        }
+        main = setLabel();
         myBody.typeCheck(myType.type());
         return main;
     }
 
-    public void codeGen() {
-        Codegen.generate(".text");
-        if (myId.name().equals("main")) {
-            Codegen.generate(".globl", "main");
-            Codegen.genLabel("main", "METHOD ENTRY");
-            Codegen.genLabel("__start", "add __start label for main only");
-        } else {
-            Codegen.genLabel(myId.myLabel, "METHOD ENTRY");
-        }
-        Codegen.genPush(Codegen.RA);
-        Codegen.genPush(Codegen.FP);
-        Codegen.generateWithComment("addu", "set the FP", Codegen.FP, Codegen.SP, Integer.toString(((FnSym)myId.sym()).getParamSize()+8));
-        Codegen.generateWithComment("subu", "push space for locals", Codegen.SP, Codegen.SP, Integer.toString(((FnSym)myId.sym()).getLocalSize()));
-
-        myBody.codeGen();
-
-        Codegen.generateIndexed("lw", Codegen.RA, Codegen.FP, -((FnSym)myId.sym()).getParamSize(), "load return address");
-        Codegen.generateWithComment("move", "save control link", Codegen.T0, Codegen.FP);
-        Codegen.generateIndexed("lw", Codegen.FP, Codegen.FP, -(((FnSym)myId.sym()).getParamSize()+4), "restore FP");
-        Codegen.generateWithComment("move", "restore SP", Codegen.SP, Codegen.T0);
-        if (myId.name().equals("main")) {
-            Codegen.generateWithComment("li", "load exit code for syscall", Codegen.V0, "10");
-            Codegen.generateWithComment("syscall", "only do this for main");
-        } else {
-           Codegen.generateWithComment("jr", "return", Codegen.RA);
-        }
+    /**
+     * setLabel
+     * Set the label of this function; return whether it is main.
+     */
+    public boolean setLabel() {
+        myId.myLabel = Codegen.fnLabel(myId.name());
+        return myId.myLabel.equals("main");
+    }
+
+    public void codeGen(Codegen cg) {
+        FnSym sym = (FnSym)myId.sym();
+        cg.genFnEntry(myId.myLabel, sym.getParamSize(), sym.getLocalSize());
+        myBody.codeGen(cg);
+        cg.genFnExit(myId.myLabel, sym.getParamSize());
     }
 
     public void unparse(PrintWriter p, int indent) {
@@ -743,47 +776,13 @@ class FnDeclNode extends DeclNode {
 
 class FormalDeclNode extends DeclNode {
     public FormalDeclNode(TypeNode type, IdNode id) {
+        super(NodeKind.FORMAL_DECL);
         myType = type;
         myId = id;
     }
 
     public Sym nameAnalysis(SymTable symTab) {
-        String name = myId.name();
-        boolean badDecl = false;
-        Sym sym = null;
-
-        if (myType instanceof VoidNode) {
-            ErrMsg.fatal(myId.lineNum(), myId.charNum(),
-                    "Non-function declared void");
-            badDecl = true;
-        }
-
-        if (symTab.lookupLocal(name) != null) {
-            ErrMsg.fatal(myId.lineNum(), myId.charNum(),
-                    "Multiply declared identifier");
-            badDecl = true;
-        }
-
-        if (!badDecl) {  // insert into symbol table
-            try {
-                sym = new Sym(myType.type());
-                symTab.addDecl(name, sym);
-                myId.link(sym);
-            } catch (DuplicateSymException ex) {
-                System.err.println("Unexpected DuplicateSymException " +
-                        " in VarDeclNode.nameAnalysis");
-                System.exit(-1);
-            } catch (EmptySymTableException ex) {
-                System.err.println("Unexpected EmptySymTableException " +
-                        " in VarDeclNode.nameAnalysis");
-                System.exit(-1);
-            } catch (WrongArgumentException ex) {
-                System.err.println("Unexpected WrongArgumentException " +
-                        " in VarDeclNode.nameAnalysis");
-                System.exit(-1);
-            }
-        }
-        return sym;
+        return nameAnalysis(symTab, new Sym(myType.type()));
     }
 
     /**
@@ -795,46 +794,27 @@ class FormalDeclNode extends DeclNode {
      * else add a new entry to the symbol table and return that Sym
      */
     public Sym nameAnalysis(SymTable symTab, int offset) {
-        String name = myId.name();
-        boolean badDecl = false;
-        Sym sym = null;
-        
+        return nameAnalysis(symTab, new Sym(myType.type(), offset));
+    }
+
+    private Sym nameAnalysis(SymTable symTab, Sym sym) {
         if (myType instanceof VoidNode) {
-            ErrMsg.fatal(myId.lineNum(), myId.charNum(), 
-                         "Non-function declared void");
-            badDecl = true;        
+            Semantics.declaredVoid(myId.lineNum(), myId.charNum());
+            Semantics.declared(symTab, myId.nameId(),
+                               myId.lineNum(), myId.charNum());
+            return null;
         }
         
-        if (symTab.lookupLocal(name) != null) {
-            ErrMsg.fatal(myId.lineNum(), myId.charNum(), 
-                         "Multiply declared identifier");
-            badDecl = true;
+        // insert into symbol table, unless already declared there
+        if (!Semantics.declare(symTab, myId.nameId(), sym,
+                               myId.lineNum(), myId.charNum())) {
+            return null;
         }
-        
-        if (!badDecl) {  // insert into symbol table
-            try {
-                sym = new Sym(myType.type(), offset);
-                symTab.addDecl(name, sym);
-                myId.link(sym);
-            } catch (DuplicateSymException ex) {
-                System.err.println("Unexpected DuplicateSymException " +
-                                   " in VarDeclNode.nameAnalysis");
-                System.exit(-1);
-            } catch (EmptySymTableException ex) {
-                System.err.println("Unexpected EmptySymTableException " +
-                                   " in VarDeclNode.nameAnalysis");
-                System.exit(-1);
-            } catch (WrongArgumentException ex) {
-                System.err.println("Unexpected WrongArgumentException " +
-                                   " in VarDeclNode.nameAnalysis");
-                System.exit(-1);
-            }        
-	}
-        
+        myId.link(sym);
         return sym;
     }
 
-    public void codeGen() {  }
+    public void codeGen(Codegen cg) {  }
     
     public void unparse(PrintWriter p, int indent) {
         myType.unparse(p, 0);
@@ -849,6 +829,7 @@ class FormalDeclNode extends DeclNode {
 
 class StructDeclNode extends DeclNode {
     public StructDeclNode(IdNode id, DeclListNode declList) {
+        super(NodeKind.STRUCT_DECL);
         myId = id;
         myDeclList = declList;
     }
@@ -858,8 +839,9 @@ class StructDeclNode extends DeclNode {
      * Given a symbol table symTab, do:
      * if this name is already in the symbol table,
      *     then multiply declared error (don't add to symbol table)
-     * create a new symbol table for this struct definition
-     * process the decl list
+     * process the decl list, in a scratch symbol table that catches
+     *     multiply declared fields
+     * lay out the fields that were declared without error
      * if no errors
      *     add a new entry to symbol table for this struct
      */
@@ -867,21 +849,21 @@ class StructDeclNode extends DeclNode {
         String name = myId.name();
         boolean badDecl = false;
         
-        if (symTab.lookupLocal(name) != null) {
-            ErrMsg.fatal(myId.lineNum(), myId.charNum(), 
-                         "Multiply declared identifier");
+        if (Semantics.declared(symTab, myId.nameId(),
+                               myId.lineNum(), myId.charNum())) {
             badDecl = true;            
         }
 
-        SymTable structSymTab = new SymTable();
+        SymTable fieldSymTab = SymTable.create();
         
         // process the fields of the struct
-        myDeclList.nameAnalysis(structSymTab, symTab);
+        myDeclList.nameAnalysis(fieldSymTab, symTab);
+        StructLayout layout = new StructLayout(myDeclList.fieldIds());
         
         if (!badDecl) {
             try {   // add entry to symbol table
-                StructDefSym sym = new StructDefSym(structSymTab);
-                symTab.addDecl(name, sym);
+                StructDefSym sym = new StructDefSym(name, layout);
+                symTab.addDecl(myId.nameId(), sym);
                 myId.link(sym);
             } catch (DuplicateSymException ex) {
                 System.err.println("Unexpected DuplicateSymException " +
@@ -922,19 +904,24 @@ class StructDeclNode extends DeclNode {
 // **********************************************************************
 
 abstract class TypeNode extends ASTnode {
+    protected TypeNode(NodeKind kind) {
+        super(kind);
+    }
+
     /* all subclasses must provide a type method */
     abstract public Type type();
 }
 
 class IntNode extends TypeNode {
     public IntNode() {
+        super(NodeKind.INT);
     }
 
     /**
      * type
      */
     public Type type() {
-        return new IntType();
+        return Type.INT;
     }
     
     public void unparse(PrintWriter p, int indent) {
@@ -944,13 +931,14 @@ class IntNode extends TypeNode {
 
 class BoolNode extends TypeNode {
     public BoolNode() {
+        super(NodeKind.BOOL);
     }
 
     /**
      * type
      */
     public Type type() {
-        return new BoolType();
+        return Type.BOOL;
     }
     
     public void unparse(PrintWriter p, int indent) {
@@ -960,13 +948,14 @@ class BoolNode extends TypeNode {
 
 class VoidNode extends TypeNode {
     public VoidNode() {
+        super(NodeKind.VOID);
     }
     
     /**
      * type
      */
     public Type type() {
-        return new VoidType();
+        return Type.VOID;
     }
     
     public void unparse(PrintWriter p, int indent) {
@@ -976,6 +965,7 @@ class VoidNode extends TypeNode {
 
 class StructNode extends TypeNode {
     public StructNode(IdNode id) {
+        super(NodeKind.STRUCT);
         myId = id;
     }
 
@@ -985,9 +975,14 @@ class StructNode extends TypeNode {
     
     /**
      * type
+     * The StructType of the struct named by myId; valid only after name
+     * analysis has linked myId to its StructDefSym.
      */
     public Type type() {
-        return new StructType(myId);
+        if (!(myId.sym() instanceof StructDefSym)) {
+            return Type.ERROR;
+        }
+        return ((StructDefSym)myId.sym()).getStructType();
     }
     
     public void unparse(PrintWriter p, int indent) {
@@ -1004,16 +999,25 @@ class StructNode extends TypeNode {
 // **********************************************************************
 
 abstract class StmtNode extends ASTnode {
+    protected StmtNode(NodeKind kind) {
+        super(kind);
+    }
+
     abstract public void nameAnalysis(SymTable symTab);
     abstract public void typeCheck(Type retType);
-    abstract public void codeGen();
+    abstract public void codeGen(Codegen cg);
 }
 
 class AssignStmtNode extends StmtNode {
     public AssignStmtNode(AssignNode assign) {
+        super(NodeKind.ASSIGN_STMT);
         myAssign = assign;
     }
 
+    public AssignNode assign() {
+        return myAssign;
+    }
+
     /**
      * nameAnalysis
      * Given a symbol table symTab, perform name analysis on this node's child
@@ -1029,8 +1033,8 @@ class AssignStmtNode extends StmtNode {
         myAssign.typeCheck();
     }
 
-    public void codeGen() {
-        myAssign.codeGen();
+    public void codeGen(Codegen cg) {
+        myAssign.codeGen(cg);
     }
         
     public void unparse(PrintWriter p, int indent) {
@@ -1045,8 +1049,13 @@ class AssignStmtNode extends StmtNode {
 
 class PostIncStmtNode extends StmtNode {
     public PostIncStmtNode(ExpNode exp) {
+        super(NodeKind.POST_INC_STMT);
         myExp = exp;
     }
+
+    public ExpNode exp() {
+        return myExp;
+    }
     
     /**
      * nameAnalysis
@@ -1060,15 +1069,11 @@ class PostIncStmtNode extends StmtNode {
      * typeCheck
      */
     public void typeCheck(Type retType) {
-        Type type = myExp.typeCheck();
-        
-        if (!type.isErrorType() && !type.isIntType()) {
-            ErrMsg.fatal(myExp.lineNum(), myExp.charNum(),
-                         "Arithmetic operator applied to non-numeric operand");
-        }
+        Semantics.incDec(myExp.typeCheck(), myExp.lineNum(), myExp.charNum(),
+                         ErrBuffer.NOW);
     }
 
-    public void codeGen() {  }
+    public void codeGen(Codegen cg) {  }
         
     public void unparse(PrintWriter p, int indent) {
         addIndent(p, indent);
@@ -1082,9 +1087,14 @@ class PostIncStmtNode extends StmtNode {
 
 class PostDecStmtNode extends StmtNode {
     public PostDecStmtNode(ExpNode exp) {
+        super(NodeKind.POST_DEC_STMT);
         myExp = exp;
     }
 
+    public ExpNode exp() {
+        return myExp;
+    }
+
     /**
      * nameAnalysis
      * Given a symbol table symTab, perform name analysis on this node's child
@@ -1097,15 +1107,11 @@ class PostDecStmtNode extends StmtNode {
      * typeCheck
      */
     public void typeCheck(Type retType) {
-        Type type = myExp.typeCheck();
-        
-        if (!type.isErrorType() && !type.isIntType()) {
-            ErrMsg.fatal(myExp.lineNum(), myExp.charNum(),
-                         "Arithmetic operator applied to non-numeric operand");
-        }
+        Semantics.incDec(myExp.typeCheck(), myExp.lineNum(), myExp.charNum(),
+                         ErrBuffer.NOW);
     }
 
-    public void codeGen() {  }
+    public void codeGen(Codegen cg) {  }
         
     public void unparse(PrintWriter p, int indent) {
         addIndent(p, indent);
@@ -1119,9 +1125,14 @@ class PostDecStmtNode extends StmtNode {
 
 class ReadStmtNode extends StmtNode {
     public ReadStmtNode(ExpNode e) {
+        super(NodeKind.READ_STMT);
         myExp = e;
     }
 
+    public ExpNode exp() {
+        return myExp;
+    }
+
     /**
      * nameAnalysis
      * Given a symbol table symTab, perform name analysis on this node's child
@@ -1134,25 +1145,11 @@ class ReadStmtNode extends StmtNode {
      * typeCheck
      */
     public void typeCheck(Type retType) {
-        Type type = myExp.typeCheck();
-        
-        if (type.isFnType()) {
-            ErrMsg.fatal(myExp.lineNum(), myExp.charNum(),
-                         "Attempt to read a function");
-        }
-        
-        if (type.isStructDefType()) {
-            ErrMsg.fatal(myExp.lineNum(), myExp.charNum(),
-                         "Attempt to read a struct name");
-        }
-        
-        if (type.isStructType()) {
-            ErrMsg.fatal(myExp.lineNum(), myExp.charNum(),
-                         "Attempt to read a struct variable");
-        }
+        Semantics.read(myExp.typeCheck(), myExp.lineNum(), myExp.charNum(),
+                       ErrBuffer.NOW);
     }
 
-    public void codeGen() {  }
+    public void codeGen(Codegen cg) {  }
     
     public void unparse(PrintWriter p, int indent) {
         addIndent(p, indent);
@@ -1167,9 +1164,14 @@ class ReadStmtNode extends StmtNode {
 
 class WriteStmtNode extends StmtNode {
     public WriteStmtNode(ExpNode exp) {
+        super(NodeKind.WRITE_STMT);
         myExp = exp;
     }
 
+    public ExpNode exp() {
+        return myExp;
+    }
+
     /**
      * nameAnalysis
      * Given a symbol table symTab, perform name analysis on this node's child
@@ -1182,44 +1184,15 @@ class WriteStmtNode extends StmtNode {
      * typeCheck
      */
     public void typeCheck(Type retType) {
-        Type type = myExp.typeCheck();
-        
-        if (type.isFnType()) {
-            ErrMsg.fatal(myExp.lineNum(), myExp.charNum(),
-                         "Attempt to write a function");
-        }
-        
-        if (type.isStructDefType()) {
-            ErrMsg.fatal(myExp.lineNum(), myExp.charNum(),
-                         "Attempt to write a struct name");
-        }
-        
-        if (type.isStructType()) {
-            ErrMsg.fatal(myExp.lineNum(), myExp.charNum(),
-                         "Attempt to write a struct variable");
-        }
-        
-        if (type.isVoidType()) {
-            ErrMsg.fatal(myExp.lineNum(), myExp.charNum(),
-                         "Attempt to write void");
-        }
-
-        writingType = type;
+        writingType = myExp.typeCheck();
+        Semantics.write(writingType, myExp.lineNum(), myExp.charNum(),
+                        ErrBuffer.NOW);
     }
 
-    public void codeGen() {
+    public void codeGen(Codegen cg) {
         // put exp in reg
-        int li = 1;
-        myExp.codeGen();
-        if (myExp.isString) {
-            Codegen.generateWithComment("la", " [string] for write", Codegen.A0, myExp.myLabel);
-            li = 4;
-        } else {
-            Codegen.generateIndexed("lw", Codegen.A0, Codegen.SP, 4, " load content for write");
-        }
-        Codegen.generateWithComment("li", " system call number", Codegen.V0, Integer.toString(li));
-        Codegen.generate("syscall");
-
+        myExp.codeGen(cg);
+        cg.genWrite(myExp.isString ? myExp.myLabel : null);
     }
         
     public void unparse(PrintWriter p, int indent) {
@@ -1236,10 +1209,23 @@ class WriteStmtNode extends StmtNode {
 
 class IfStmtNode extends StmtNode {
     public IfStmtNode(ExpNode exp, DeclListNode dlist, StmtListNode slist) {
+        super(NodeKind.IF_STMT);
         myDeclList = dlist;
         myExp = exp;
         myStmtList = slist;
     }
+
+    public ExpNode exp() {
+        return myExp;
+    }
+
+    public DeclListNode declList() {
+        return myDeclList;
+    }
+
+    public StmtListNode stmtList() {
+        return myStmtList;
+    }
     
     /**
      * nameAnalysis
@@ -1282,28 +1268,21 @@ class IfStmtNode extends StmtNode {
      * typeCheck
      */
     public void typeCheck(Type retType) {
-        Type type = myExp.typeCheck();
-        
-        if (!type.isErrorType() && !type.isBoolType()) {
-            ErrMsg.fatal(myExp.lineNum(), myExp.charNum(),
-                         "Non-bool expression used as an if condition");        
-        }
-        
+        Semantics.ifCondition(myExp.typeCheck(), myExp.lineNum(),
+                              myExp.charNum(), ErrBuffer.NOW);
         myStmtList.typeCheck(retType);
     }
 
-    public void codeGen() {
-        String l_entry = Codegen.nextLabel() + "_Entry";
-        String l_true = Codegen.nextLabel() + "_True";
-        String l_exit = Codegen.nextLabel() + "_Exit";
-        Codegen.genLabel(l_entry);
-        myExp.codeGen();
-        Codegen.generateIndexed("lw", Codegen.T1, Codegen.SP, 4, "get condition result in $t1");
-        Codegen.generate("li", Codegen.T0, "0");
-        Codegen.generate("beq", Codegen.T1, Codegen.T0, l_exit);
-        Codegen.genLabel(l_true);
-        myStmtList.codeGen();
-        Codegen.genLabel(l_exit);
+    public void codeGen(Codegen cg) {
+        String l_entry = cg.nextLabel() + "_Entry";
+        String l_true = cg.nextLabel() + "_True";
+        String l_exit = cg.nextLabel() + "_Exit";
+        cg.genLabel(l_entry);
+        myExp.codeGen(cg);
+        cg.genBranchIfFalse(l_exit);
+        cg.genLabel(l_true);
+        myStmtList.codeGen(cg);
+        cg.genLabel(l_exit);
     }
        
     public void unparse(PrintWriter p, int indent) {
@@ -1327,12 +1306,33 @@ class IfElseStmtNode extends StmtNode {
     public IfElseStmtNode(ExpNode exp, DeclListNode dlist1,
                           StmtListNode slist1, DeclListNode dlist2,
                           StmtListNode slist2) {
+        super(NodeKind.IF_ELSE_STMT);
         myExp = exp;
         myThenDeclList = dlist1;
         myThenStmtList = slist1;
         myElseDeclList = dlist2;
         myElseStmtList = slist2;
     }
+
+    public ExpNode exp() {
+        return myExp;
+    }
+
+    public DeclListNode thenDeclList() {
+        return myThenDeclList;
+    }
+
+    public StmtListNode thenStmtList() {
+        return myThenStmtList;
+    }
+
+    public DeclListNode elseDeclList() {
+        return myElseDeclList;
+    }
+
+    public StmtListNode elseStmtList() {
+        return myElseStmtList;
+    }
     
     /**
      * nameAnalysis
@@ -1398,30 +1398,23 @@ class IfElseStmtNode extends StmtNode {
      * typeCheck
      */
     public void typeCheck(Type retType) {
-        Type type = myExp.typeCheck();
-        
-        if (!type.isErrorType() && !type.isBoolType()) {
-            ErrMsg.fatal(myExp.lineNum(), myExp.charNum(),
-                         "Non-bool expression used as an if condition");        
-        }
-        
+        Semantics.ifCondition(myExp.typeCheck(), myExp.lineNum(),
+                              myExp.charNum(), ErrBuffer.NOW);
         myThenStmtList.typeCheck(retType);
         myElseStmtList.typeCheck(retType);
     }
 
-    public void codeGen() {
-        String l_entry = Codegen.nextLabel() + "_Entry";
-        String l_if = Codegen.nextLabel() + "_If";
-        String l_else = Codegen.nextLabel() + "_Else";
-        Codegen.genLabel(l_entry);
-        myExp.codeGen();
-        Codegen.generateIndexed("lw", Codegen.T1, Codegen.SP, 4, "get condition result in $t1");
-        Codegen.generate("li", Codegen.T0, "0");
-        Codegen.generate("beq", Codegen.T1, Codegen.T0, l_else);
-        Codegen.genLabel(l_if);
-        myThenStmtList.codeGen();
-        Codegen.genLabel(l_else);
-        myElseStmtList.codeGen();
+    public void codeGen(Codegen cg) {
+        String l_entry = cg.nextLabel() + "_Entry";
+        String l_if = cg.nextLabel() + "_If";
+        String l_else = cg.nextLabel() + "_Else";
+        cg.genLabel(l_entry);
+        myExp.codeGen(cg);
+        cg.genBranchIfFalse(l_else);
+        cg.genLabel(l_if);
+        myThenStmtList.codeGen(cg);
+        cg.genLabel(l_else);
+        myElseStmtList.codeGen(cg);
     }
         
     public void unparse(PrintWriter p, int indent) {
@@ -1451,10 +1444,23 @@ class IfElseStmtNode extends StmtNode {
 
 class WhileStmtNode extends StmtNode {
     public WhileStmtNode(ExpNode exp, DeclListNode dlist, StmtListNode slist) {
+        super(NodeKind.WHILE_STMT);
         myExp = exp;
         myDeclList = dlist;
         myStmtList = slist;
     }
+
+    public ExpNode exp() {
+        return myExp;
+    }
+
+    public DeclListNode declList() {
+        return myDeclList;
+    }
+
+    public StmtListNode stmtList() {
+        return myStmtList;
+    }
     
     /**
      * nameAnalysis
@@ -1497,28 +1503,21 @@ class WhileStmtNode extends StmtNode {
      * typeCheck
      */
     public void typeCheck(Type retType) {
-        Type type = myExp.typeCheck();
-        
-        if (!type.isErrorType() && !type.isBoolType()) {
-            ErrMsg.fatal(myExp.lineNum(), myExp.charNum(),
-                         "Non-bool expression used as a while condition");        
-        }
-        
+        Semantics.whileCondition(myExp.typeCheck(), myExp.lineNum(),
+                                 myExp.charNum(), ErrBuffer.NOW);
         myStmtList.typeCheck(retType);
     }
 
-    public void codeGen() {
-        String l_entry = Codegen.nextLabel() + "_Entry";
-        String l_loop = Codegen.nextLabel() + "_Loop";
-        String l_exit = Codegen.nextLabel() + "_exit";
-        Codegen.genLabel(l_entry);
-        myExp.codeGen();
-        Codegen.generateIndexed("lw", Codegen.T1, Codegen.SP, 4, "get condition result in $t1");
-        Codegen.generate("li", Codegen.T0, "0");
-        Codegen.generate("beq", Codegen.T1, Codegen.T0, l_exit);
-        Codegen.genLabel(l_loop);
-        myStmtList.codeGen();
-        Codegen.genLabel(l_exit);
+    public void codeGen(Codegen cg) {
+        String l_entry = cg.nextLabel() + "_Entry";
+        String l_loop = cg.nextLabel() + "_Loop";
+        String l_exit = cg.nextLabel() + "_exit";
+        cg.genLabel(l_entry);
+        myExp.codeGen(cg);
+        cg.genBranchIfFalse(l_exit);
+        cg.genLabel(l_loop);
+        myStmtList.codeGen(cg);
+        cg.genLabel(l_exit);
     }
         
     public void unparse(PrintWriter p, int indent) {
@@ -1540,10 +1539,23 @@ class WhileStmtNode extends StmtNode {
 
 class RepeatStmtNode extends StmtNode {
     public RepeatStmtNode(ExpNode exp, DeclListNode dlist, StmtListNode slist) {
+        super(NodeKind.REPEAT_STMT);
         myExp = exp;
         myDeclList = dlist;
         myStmtList = slist;
     }
+
+    public ExpNode exp() {
+        return myExp;
+    }
+
+    public DeclListNode declList() {
+        return myDeclList;
+    }
+
+    public StmtListNode stmtList() {
+        return myStmtList;
+    }
     
     /**
      * nameAnalysis
@@ -1586,28 +1598,21 @@ class RepeatStmtNode extends StmtNode {
      * typeCheck
      */
     public void typeCheck(Type retType) {
-        Type type = myExp.typeCheck();
-        
-        if (!type.isErrorType() && !type.isIntType()) {
-            ErrMsg.fatal(myExp.lineNum(), myExp.charNum(),
-                         "Non-integer expression used as a repeat clause");        
-        }
-        
+        Semantics.repeatClause(myExp.typeCheck(), myExp.lineNum(),
+                               myExp.charNum(), ErrBuffer.NOW);
         myStmtList.typeCheck(retType);
     }
 
-    public void codeGen() {
-        String l_entry = Codegen.nextLabel() + "_Entry";
-        String l_loop = Codegen.nextLabel() + "_Loop";
-        String l_exit = Codegen.nextLabel() + "_exit";
-        Codegen.genLabel(l_entry);
-        myExp.codeGen();
-        Codegen.generateIndexed("lw", Codegen.T1, Codegen.SP, 4, "get condition result in $t1");
-        Codegen.generate("li", Codegen.T0, "0");
-        Codegen.generate("beq", Codegen.T1, Codegen.T0, l_exit);
-        Codegen.genLabel(l_loop);
-        myStmtList.codeGen();
-        Codegen.genLabel(l_exit);
+    public void codeGen(Codegen cg) {
+        String l_entry = cg.nextLabel() + "_Entry";
+        String l_loop = cg.nextLabel() + "_Loop";
+        String l_exit = cg.nextLabel() + "_exit";
+        cg.genLabel(l_entry);
+        myExp.codeGen(cg);
+        cg.genBranchIfFalse(l_exit);
+        cg.genLabel(l_loop);
+        myStmtList.codeGen(cg);
+        cg.genLabel(l_exit);
     }
         
     public void unparse(PrintWriter p, int indent) {
@@ -1629,8 +1634,13 @@ class RepeatStmtNode extends StmtNode {
 
 class CallStmtNode extends StmtNode {
     public CallStmtNode(CallExpNode call) {
+        super(NodeKind.CALL_STMT);
         myCall = call;
     }
+
+    public CallExpNode call() {
+        return myCall;
+    }
     
     /**
      * nameAnalysis
@@ -1647,8 +1657,8 @@ class CallStmtNode extends StmtNode {
         myCall.typeCheck();
     }
 
-    public void codeGen() {
-        myCall.codeGen();
+    public void codeGen(Codegen cg) {
+        myCall.codeGen(cg);
     }
     
     public void unparse(PrintWriter p, int indent) {
@@ -1663,8 +1673,13 @@ class CallStmtNode extends StmtNode {
 
 class ReturnStmtNode extends StmtNode {
     public ReturnStmtNode(ExpNode exp) {
+        super(NodeKind.RETURN_STMT);
         myExp = exp;
     }
+
+    public ExpNode exp() {
+        return myExp;
+    }
     
     /**
      * nameAnalysis
@@ -1681,32 +1696,18 @@ class ReturnStmtNode extends StmtNode {
      * typeCheck
      */
     public void typeCheck(Type retType) {
-        if (myExp != null) {  // return value given
-            Type type = myExp.typeCheck();
-            
-            if (retType.isVoidType()) {
-                ErrMsg.fatal(myExp.lineNum(), myExp.charNum(),
-                             "Return with a value in a void function");                
-            }
-            
-            else if (!retType.isErrorType() && !type.isErrorType() && !retType.equals(type)){
-                ErrMsg.fatal(myExp.lineNum(), myExp.charNum(),
-                             "Bad return value");
-            }
+        if (myExp != null) {
+            Semantics.returnStmt(myExp.typeCheck(), retType, myExp.lineNum(),
+                                 myExp.charNum(), ErrBuffer.NOW);
         }
-        
-        else {  // no return value given -- ok if this is a void function
-            if (!retType.isVoidType()) {
-                ErrMsg.fatal(0, 0, "Missing return value");                
-            }
+        else {
+            Semantics.returnStmt(null, retType, 0, 0, ErrBuffer.NOW);
         }
-        
     }
 
-    public void codeGen() {
-        myExp.codeGen();
-        Codegen.generateIndexed("lw", Codegen.V0, Codegen.SP, 4, "save return value");
-        Codegen.generate("addu", Codegen.SP, Codegen.SP, 4);
+    public void codeGen(Codegen cg) {
+        myExp.codeGen(cg);
+        cg.genReturn();
     }
     
     public void unparse(PrintWriter p, int indent) {
@@ -1728,14 +1729,18 @@ class ReturnStmtNode extends StmtNode {
 // **********************************************************************
 
 abstract class ExpNode extends ASTnode {
+    protected ExpNode(NodeKind kind) {
+        super(kind);
+    }
+
     /**
      * Default version for nodes with no names
      */
     public void nameAnalysis(SymTable symTab) { }
     
     abstract public Type typeCheck();
-    abstract public void codeGen();
-    public void codeGen(int op) {};
+    abstract public void codeGen(Codegen cg);
+    public void codeGen(Codegen cg, int op) {};
     abstract public int lineNum();
     abstract public int charNum();
 
@@ -1745,6 +1750,7 @@ abstract class ExpNode extends ASTnode {
 
 class IntLitNode extends ExpNode {
     public IntLitNode(int lineNum, int charNum, int intVal) {
+        super(NodeKind.INT_LIT);
         myLineNum = lineNum;
         myCharNum = charNum;
         myIntVal = intVal;
@@ -1768,13 +1774,11 @@ class IntLitNode extends ExpNode {
      * typeCheck
      */
     public Type typeCheck() {
-        return new IntType();
+        return Type.INT;
     }
 
-    public void codeGen() {
-        Codegen.generateWithComment("li", "load integer value", Codegen.T0, Integer.toString(myIntVal));
-        Codegen.generateIndexed("sw", Codegen.T0, Codegen.SP, 0);
-        Codegen.generate("subu", Codegen.SP, Codegen.SP, "4");
+    public void codeGen(Codegen cg) {
+        cg.genLoad(Integer.toString(myIntVal));
     }
     
     public void unparse(PrintWriter p, int indent) {
@@ -1788,6 +1792,7 @@ class IntLitNode extends ExpNode {
 
 class StringLitNode extends ExpNode {
     public StringLitNode(int lineNum, int charNum, String strVal) {
+        super(NodeKind.STRING_LIT);
         myLineNum = lineNum;
         myCharNum = charNum;
         myStrVal = strVal;
@@ -1812,14 +1817,11 @@ class StringLitNode extends ExpNode {
      */
     public Type typeCheck() {
         isString = true;
-        return new StringType();
+        return Type.STRING;
     }
 
-    public void codeGen() {  // need to first put string as static data
-        myLabel = Codegen.nextLabel();
-        Codegen.generate(".data");
-        // Codegen.generate(".align", "2");
-        Codegen.generateLabeled(myLabel, ".asciiz", myStrVal);
+    public void codeGen(Codegen cg) {  // need to first put string as static data
+        myLabel = cg.genStringLit(myStrVal);
     }
         
     public void unparse(PrintWriter p, int indent) {
@@ -1833,6 +1835,7 @@ class StringLitNode extends ExpNode {
 
 class TrueNode extends ExpNode {
     public TrueNode(int lineNum, int charNum) {
+        super(NodeKind.TRUE);
         myLineNum = lineNum;
         myCharNum = charNum;
     }
@@ -1855,13 +1858,11 @@ class TrueNode extends ExpNode {
      * typeCheck
      */
     public Type typeCheck() {
-        return new BoolType();
+        return Type.BOOL;
     }
 
-    public void codeGen() {
-        Codegen.generateWithComment("li", "load integer value", Codegen.T0, Codegen.TRUE);
-        Codegen.generateIndexed("sw", Codegen.T0, Codegen.SP, 0);
-        Codegen.generate("subu", Codegen.SP, Codegen.SP, "4");
+    public void codeGen(Codegen cg) {
+        cg.genLoad(Codegen.TRUE);
     }
         
     public void unparse(PrintWriter p, int indent) {
@@ -1874,6 +1875,7 @@ class TrueNode extends ExpNode {
 
 class FalseNode extends ExpNode {
     public FalseNode(int lineNum, int charNum) {
+        super(NodeKind.FALSE);
         myLineNum = lineNum;
         myCharNum = charNum;
     }
@@ -1896,13 +1898,11 @@ class FalseNode extends ExpNode {
      * typeCheck
      */
     public Type typeCheck() {
-        return new BoolType();
+        return Type.BOOL;
     }
 
-    public void codeGen() {
-        Codegen.generateWithComment("li", "load integer value", Codegen.T0, Codegen.FALSE);
-        Codegen.generateIndexed("sw", Codegen.T0, Codegen.SP, 0);
-        Codegen.generate("subu", Codegen.SP, Codegen.SP, "4");
+    public void codeGen(Codegen cg) {
+        cg.genLoad(Codegen.FALSE);
     }
         
     public void unparse(PrintWriter p, int indent) {
@@ -1914,10 +1914,12 @@ class FalseNode extends ExpNode {
 }
 
 class IdNode extends ExpNode {
-    public IdNode(int lineNum, int charNum, String strVal) {
+    public IdNode(int lineNum, int charNum, int nameId, String name) {
+        super(NodeKind.ID);
         myLineNum = lineNum;
         myCharNum = charNum;
-        myStrVal = strVal;
+        myNameId = nameId;
+        myStrVal = name;
     }
 
     /**
@@ -1933,6 +1935,13 @@ class IdNode extends ExpNode {
     public String name() {
         return myStrVal;
     }
+
+    /**
+     * Return the IdPool id of this ID's name.
+     */
+    public int nameId() {
+        return myNameId;
+    }
     
     /**
      * Return the symbol associated with this ID.
@@ -1962,10 +1971,8 @@ class IdNode extends ExpNode {
      * - if ok, link to symbol table entry
      */
     public void nameAnalysis(SymTable symTab) {
-        Sym sym = symTab.lookupGlobal(myStrVal);
-        if (sym == null) {
-            ErrMsg.fatal(myLineNum, myCharNum, "Undeclared identifier");
-        } else {
+        Sym sym = Semantics.use(symTab, myNameId, myLineNum, myCharNum);
+        if (sym != null) {
             link(sym);
         }
     }
@@ -1984,23 +1991,12 @@ class IdNode extends ExpNode {
         return null;
     }
 
-    public void codeGen() {
-        if (myOp == VALUE) {
-            if (mySym.isGlobal())
-                Codegen.generateWithComment("lw", "load value of Id", Codegen.T0, myStrVal);
-            else
-                Codegen.generateIndexed("lw", Codegen.T0, Codegen.FP, mySym.getOffset(), "load value of Id");
-        }
-        else { // load addr of Id
-            Codegen.generateIndexed("la", Codegen.T0, Codegen.FP, mySym.getOffset(), "load addr of Id");
-        }
-
-        Codegen.generateIndexed("sw", Codegen.T0, Codegen.SP, 0);
-        Codegen.generate("subu", Codegen.SP, Codegen.SP, "4");
+    public void codeGen(Codegen cg) {
+        cg.genId(mySym, myStrVal, myOp == ADDR);
     }
-    public void codeGen(int op) {
+    public void codeGen(Codegen cg, int op) {
         myOp = op;
-        codeGen();
+        codeGen(cg);
     }
            
     public void unparse(PrintWriter p, int indent) {
@@ -2013,6 +2009,7 @@ class IdNode extends ExpNode {
     private int myLineNum;
     private int myCharNum;
     private String myStrVal;
+    private int myNameId;
     private Sym mySym;
     private int myOp = 0;
     public static int VALUE = 0;
@@ -2021,11 +2018,16 @@ class IdNode extends ExpNode {
 
 class DotAccessExpNode extends ExpNode {
     public DotAccessExpNode(ExpNode loc, IdNode id) {
+        super(NodeKind.DOT_ACCESS);
         myLoc = loc;    
         myId = id;
         mySym = null;
     }
 
+    public IdNode idNode() {
+        return myId;
+    }
+
     /**
      * Return the symbol associated with this dot-access node.
      */
@@ -2055,12 +2057,12 @@ class DotAccessExpNode extends ExpNode {
      * - process the LHS of the dot-access
      * - process the RHS of the dot-access
      * - if the RHS is of a struct type, set the sym for this node so that
-     *   a dot-access "higher up" in the AST can get access to the symbol
-     *   table for the appropriate struct definition
+     *   a dot-access "higher up" in the AST can get access to the layout
+     *   of the appropriate struct definition
      */
     public void nameAnalysis(SymTable symTab) {
         badAccess = false;
-        SymTable structSymTab = null; // to lookup RHS of dot-access
+        StructLayout layout = null; // to lookup RHS of dot-access
         Sym sym = null;
         
         myLoc.nameAnalysis(symTab);  // do name analysis on LHS
@@ -2076,13 +2078,11 @@ class DotAccessExpNode extends ExpNode {
                 badAccess = true;
             }
             else if (sym instanceof StructSym) { 
-                // get symbol table for struct type
-                Sym tempSym = ((StructSym)sym).getStructType().sym();
-                structSymTab = ((StructDefSym)tempSym).getSymTable();
+                // get layout for struct type
+                layout = ((StructSym)sym).getStructDef().getLayout();
             } 
             else {  // LHS is not a struct type
-                ErrMsg.fatal(id.lineNum(), id.charNum(), 
-                             "Dot-access of non-struct type");
+                Semantics.nonStructAccess(id.lineNum(), id.charNum());
                 badAccess = true;
             }
         }
@@ -2101,13 +2101,12 @@ class DotAccessExpNode extends ExpNode {
                 sym = loc.sym();
 
                 if (sym == null) {  // no struct in which to look up RHS
-                    ErrMsg.fatal(loc.lineNum(), loc.charNum(), 
-                                 "Dot-access of non-struct type");
+                    Semantics.nonStructAccess(loc.lineNum(), loc.charNum());
                     badAccess = true;
                 }
-                else {  // get the struct's symbol table in which to lookup RHS
+                else {  // get the struct's layout in which to lookup RHS
                     if (sym instanceof StructDefSym) {
-                        structSymTab = ((StructDefSym)sym).getSymTable();
+                        layout = ((StructDefSym)sym).getLayout();
                     }
                     else {
                         System.err.println("Unexpected Sym type in DotAccessExpNode");
@@ -2123,22 +2122,22 @@ class DotAccessExpNode extends ExpNode {
             System.exit(-1);
         }
         
-        // do name analysis on RHS of dot-access in the struct's symbol table
+        // do name analysis on RHS of dot-access in the struct's layout
         if (!badAccess) {
         
-            sym = structSymTab.lookupGlobal(myId.name()); // lookup
-            if (sym == null) { // not found - RHS is not a valid field name
-                ErrMsg.fatal(myId.lineNum(), myId.charNum(), 
-                             "Invalid struct field name");
+            int field = Semantics.field(layout, myId.nameId(), // lookup
+                                        myId.lineNum(), myId.charNum());
+            if (field < 0) { // not found - RHS is not a valid field name
                 badAccess = true;
             }
             
             else {
+                sym = layout.fieldSym(field);
                 myId.link(sym);  // link the symbol
                 // if RHS is itself as struct type, link the symbol for its struct 
                 // type to this dot-access node (to allow chained dot-access)
                 if (sym instanceof StructSym) {
-                    mySym = ((StructSym)sym).getStructType().sym();
+                    mySym = ((StructSym)sym).getStructDef();
                 }
             }
         }
@@ -2151,7 +2150,7 @@ class DotAccessExpNode extends ExpNode {
         return myId.typeCheck();
     }
 
-    public void codeGen() {  }
+    public void codeGen(Codegen cg) {  }
     
     public void unparse(PrintWriter p, int indent) {
         myLoc.unparse(p, 0);
@@ -2168,9 +2167,18 @@ class DotAccessExpNode extends ExpNode {
 
 class AssignNode extends ExpNode {
     public AssignNode(ExpNode lhs, ExpNode exp) {
+        super(NodeKind.ASSIGN);
         myLhs = lhs;
         myExp = exp;
     }
+
+    public ExpNode lhs() {
+        return myLhs;
+    }
+
+    public ExpNode exp() {
+        return myExp;
+    }
     
     /**
      * Return the line number for this assignment node. 
@@ -2203,49 +2211,17 @@ class AssignNode extends ExpNode {
      */
     public Type typeCheck() {
         Type typeLhs = myLhs.typeCheck();
-        Type typeExp = myExp.typeCheck();
-        Type retType = typeLhs;
-        
-        if (typeLhs.isFnType() && typeExp.isFnType()) {
-            ErrMsg.fatal(lineNum(), charNum(), "Function assignment");
-            retType = new ErrorType();
-        }
-        
-        if (typeLhs.isStructDefType() && typeExp.isStructDefType()) {
-            ErrMsg.fatal(lineNum(), charNum(), "Struct name assignment");
-            retType = new ErrorType();
-        }
-        
-        if (typeLhs.isStructType() && typeExp.isStructType()) {
-            ErrMsg.fatal(lineNum(), charNum(), "Struct variable assignment");
-            retType = new ErrorType();
-        }        
-        
-        if (!typeLhs.equals(typeExp) && !typeLhs.isErrorType() && !typeExp.isErrorType()) {
-            ErrMsg.fatal(lineNum(), charNum(), "Type mismatch");
-            retType = new ErrorType();
-        }
-        
-        if (typeLhs.isErrorType() || typeExp.isErrorType()) {
-            retType = new ErrorType();
-        }
-        
-        return retType;
+        return Semantics.assign(typeLhs, myExp.typeCheck(),
+                                lineNum(), charNum(), ErrBuffer.NOW);
     }
 
-    public void codeGen() {
+    public void codeGen(Codegen cg) {
         // compute RHS on stack and LHS on stack
-        myExp.codeGen();
-        myLhs.codeGen(IdNode.ADDR);
-
-        // pop LHS into $t1, RHS into $t0
-        Codegen.generateIndexed("lw", Codegen.T1, Codegen.SP, 4, "pop LHS into $t1");
-        Codegen.generate("addu", Codegen.SP, Codegen.SP, "4");
-        Codegen.generateIndexed("lw", Codegen.T0, Codegen.SP, 4, "pop RHS into $t0");
-        Codegen.generate("addu", Codegen.SP, Codegen.SP, "4");
+        myExp.codeGen(cg);
+        myLhs.codeGen(cg, IdNode.ADDR);
 
-        // do assign
-        Codegen.generateIndexed("sw", Codegen.T0, Codegen.T1, 0, "Store value $t0 at address $t1");
+        // pop LHS into $t1, RHS into $t0, and do assign
+        cg.genAssign();
     }
     
     public void unparse(PrintWriter p, int indent) {
@@ -2263,15 +2239,25 @@ class AssignNode extends ExpNode {
 
 class CallExpNode extends ExpNode {
     public CallExpNode(IdNode name, ExpListNode elist) {
+        super(NodeKind.CALL_EXP);
         myId = name; // System.out.println("3" + name.myLabel);
         myExpList = elist;
     }
 
     public CallExpNode(IdNode name) {
+        super(NodeKind.CALL_EXP);
         myId = name; //System.out.println("2" + name.myLabel);
         myExpList = new ExpListNode(new LinkedList<ExpNode>());
     }
 
+    public IdNode idNode() {
+        return myId;
+    }
+
+    public ExpListNode expList() {
+        return myExpList;
+    }
+
     /**
      * Return the line number for this call node. 
      * The line number is the one corresponding to the function name.
@@ -2302,10 +2288,9 @@ class CallExpNode extends ExpNode {
      * typeCheck
      */
     public Type typeCheck() {
-        if (!myId.typeCheck().isFnType()) {  
-            ErrMsg.fatal(myId.lineNum(), myId.charNum(), 
-                         "Attempt to call a non-function");
-            return new ErrorType();
+        if (!Semantics.callee(myId.typeCheck(), myId.lineNum(),
+                              myId.charNum(), ErrBuffer.NOW)) {
+            return Type.ERROR;
         }
         
         FnSym fnSym = (FnSym)(myId.sym());
@@ -2315,32 +2300,34 @@ class CallExpNode extends ExpNode {
             System.exit(-1);
         }
         
-        if (myExpList.size() != fnSym.getNumParams()) {
-            ErrMsg.fatal(myId.lineNum(), myId.charNum(), 
-                         "Function call with wrong number of args");
+        if (!Semantics.numArgs(myExpList.size(), fnSym, myId.lineNum(),
+                               myId.charNum(), ErrBuffer.NOW)) {
             return fnSym.getReturnType();
         }
         
         myExpList.typeCheck(fnSym.getParamTypes());
 
-        if (myId.name().equals("main")) {
-            myId.myLabel = "main";
-        }
-        else {
-            myId.myLabel = "_" + myId.name();
-        }
+        return checkedCall();
+    }
 
-        return fnSym.getReturnType();
+    /**
+     * checkedCall
+     * For a call whose actuals have been checked, set the label to jump
+     * to and return the type of the call.
+     */
+    public Type checkedCall() {
+        myId.myLabel = Codegen.fnLabel(myId.name());
+        return ((FnSym)myId.sym()).getReturnType();
     }
 
-    public void codeGen() {
+    public void codeGen(Codegen cg) {
         // put argument values on the stack
         List<ExpNode> myExp = myExpList.itExp();
         for (int i = myExp.size();i-->0;) { // load in $t0
-            myExp.get(i).codeGen();
+            myExp.get(i).codeGen(cg);
         }
         // jump to the callee preamble label
-        Codegen.generateWithComment("jal", "jump into function", myId.myLabel);
+        cg.genCall(myId.myLabel);
     }
         
     // ** unparse **
@@ -2359,9 +2346,14 @@ class CallExpNode extends ExpNode {
 }
 
 abstract class UnaryExpNode extends ExpNode {
-    public UnaryExpNode(ExpNode exp) {
+    public UnaryExpNode(NodeKind kind, ExpNode exp) {
+        super(kind);
         myExp = exp;
     }
+
+    public ExpNode exp() {
+        return myExp;
+    }
     
     /**
      * Return the line number for this unary expression node. 
@@ -2387,17 +2379,26 @@ abstract class UnaryExpNode extends ExpNode {
         myExp.nameAnalysis(symTab);
     }
 
-    public void codeGen() {  }
+    public void codeGen(Codegen cg) {  }
     
     // one child
     protected ExpNode myExp;
 }
 
 abstract class BinaryExpNode extends ExpNode {
-    public BinaryExpNode(ExpNode exp1, ExpNode exp2) {
+    public BinaryExpNode(NodeKind kind, ExpNode exp1, ExpNode exp2) {
+        super(kind);
         myExp1 = exp1;
         myExp2 = exp2;
     }
+
+    public ExpNode exp1() {
+        return myExp1;
+    }
+
+    public ExpNode exp2() {
+        return myExp2;
+    }
     
     /**
      * Return the line number for this binary expression node. 
@@ -2425,7 +2426,16 @@ abstract class BinaryExpNode extends ExpNode {
         myExp2.nameAnalysis(symTab);
     }
 
-    public void codeGen() {  }
+    /**
+     * codeGen
+     * For an arithmetic, equality or relational operator: push the right
+     * operand, then the left, then apply the operator
+     */
+    public void codeGen(Codegen cg) {
+        myExp2.codeGen(cg);
+        myExp1.codeGen(cg);
+        cg.genBinary(kind());
+    }
 
     // two kids
     protected ExpNode myExp1;
@@ -2438,39 +2448,20 @@ abstract class BinaryExpNode extends ExpNode {
 
 class UnaryMinusNode extends UnaryExpNode {
     public UnaryMinusNode(ExpNode exp) {
-        super(exp);
+        super(NodeKind.UNARY_MINUS, exp);
     }
 
     /**
      * typeCheck
      */
     public Type typeCheck() {
-        Type type = myExp.typeCheck();
-        Type retType = new IntType();
-        
-        if (!type.isErrorType() && !type.isIntType()) {
-            ErrMsg.fatal(lineNum(), charNum(),
-                         "Arithmetic operator applied to non-numeric operand");
-            retType = new ErrorType();
-        }
-        
-        if (type.isErrorType()) {
-            retType = new ErrorType();
-        }
-        
-        return retType;
+        return Semantics.unaryMinus(myExp.typeCheck(), lineNum(), charNum(),
+                                    ErrBuffer.NOW);
     }
 
-    public void codeGen() {
-        // load
-        myExp.codeGen();
-        // pop exp to $t1
-        Codegen.generateIndexed("lw", Codegen.T1, Codegen.SP, 4, "[neg] pop exp into $t1");
-        Codegen.generate("addu", Codegen.SP, Codegen.SP, "4");
-        // push negative on stack
-        Codegen.generate("neg", Codegen.T1, Codegen.T1);
-        Codegen.generateIndexed("sw", Codegen.T1, Codegen.SP, 0, "save result on stack");
-        Codegen.generate("subu", Codegen.SP, Codegen.SP, "4");
+    public void codeGen(Codegen cg) {
+        myExp.codeGen(cg);
+        cg.genUnary(kind());
     }
 
     public void unparse(PrintWriter p, int indent) {
@@ -2482,39 +2473,20 @@ class UnaryMinusNode extends UnaryExpNode {
 
 class NotNode extends UnaryExpNode {
     public NotNode(ExpNode exp) {
-        super(exp);
+        super(NodeKind.NOT, exp);
     }
 
     /**
      * typeCheck
      */
     public Type typeCheck() {
-        Type type = myExp.typeCheck();
-        Type retType = new BoolType();
-        
-        if (!type.isErrorType() && !type.isBoolType()) {
-            ErrMsg.fatal(lineNum(), charNum(),
-                         "Logical operator applied to non-bool operand");
-            retType = new ErrorType();
-        }
-        
-        if (type.isErrorType()) {
-            retType = new ErrorType();
-        }
-        
-        return retType;
+        return Semantics.not(myExp.typeCheck(), lineNum(), charNum(),
+                             ErrBuffer.NOW);
     }
 
-    public void codeGen() {
-        // load
-        myExp.codeGen();
-        // pop exp to $t1
-        Codegen.generateIndexed("lw", Codegen.T1, Codegen.SP, 4, "[not] pop exp into $t1");
-        Codegen.generate("addu", Codegen.SP, Codegen.SP, "4");
-        // push negative on stack
-        Codegen.generate("not", Codegen.T1, Codegen.T1);
-        Codegen.generateIndexed("sw", Codegen.T1, Codegen.SP, 0, "save result on stack");
-        Codegen.generate("subu", Codegen.SP, Codegen.SP, "4");
+    public void codeGen(Codegen cg) {
+        myExp.codeGen(cg);
+        cg.genUnary(kind());
     }
 
     public void unparse(PrintWriter p, int indent) {
@@ -2529,8 +2501,8 @@ class NotNode extends UnaryExpNode {
 // **********************************************************************
 
 abstract class ArithmeticExpNode extends BinaryExpNode {
-    public ArithmeticExpNode(ExpNode exp1, ExpNode exp2) {
-        super(exp1, exp2);
+    public ArithmeticExpNode(NodeKind kind, ExpNode exp1, ExpNode exp2) {
+        super(kind, exp1, exp2);
     }
     
     /**
@@ -2538,32 +2510,15 @@ abstract class ArithmeticExpNode extends BinaryExpNode {
      */
     public Type typeCheck() {
         Type type1 = myExp1.typeCheck();
-        Type type2 = myExp2.typeCheck();
-        Type retType = new IntType();
-        
-        if (!type1.isErrorType() && !type1.isIntType()) {
-            ErrMsg.fatal(myExp1.lineNum(), myExp1.charNum(),
-                         "Arithmetic operator applied to non-numeric operand");
-            retType = new ErrorType();
-        }
-        
-        if (!type2.isErrorType() && !type2.isIntType()) {
-            ErrMsg.fatal(myExp2.lineNum(), myExp2.charNum(),
-                         "Arithmetic operator applied to non-numeric operand");
-            retType = new ErrorType();
-        }
-        
-        if (type1.isErrorType() || type2.isErrorType()) {
-            retType = new ErrorType();
-        }
-        
-        return retType;
+        return Semantics.arithmetic(type1, myExp1.lineNum(), myExp1.charNum(),
+                                    myExp2.typeCheck(), myExp2.lineNum(),
+                                    myExp2.charNum(), ErrBuffer.NOW);
     }
 }
 
 abstract class LogicalExpNode extends BinaryExpNode {
-    public LogicalExpNode(ExpNode exp1, ExpNode exp2) {
-        super(exp1, exp2);
+    public LogicalExpNode(NodeKind kind, ExpNode exp1, ExpNode exp2) {
+        super(kind, exp1, exp2);
     }
     
     /**
@@ -2571,32 +2526,15 @@ abstract class LogicalExpNode extends BinaryExpNode {
      */
     public Type typeCheck() {
         Type type1 = myExp1.typeCheck();
-        Type type2 = myExp2.typeCheck();
-        Type retType = new BoolType();
-        
-        if (!type1.isErrorType() && !type1.isBoolType()) {
-            ErrMsg.fatal(myExp1.lineNum(), myExp1.charNum(),
-                         "Logical operator applied to non-bool operand");
-            retType = new ErrorType();
-        }
-        
-        if (!type2.isErrorType() && !type2.isBoolType()) {
-            ErrMsg.fatal(myExp2.lineNum(), myExp2.charNum(),
-                         "Logical operator applied to non-bool operand");
-            retType = new ErrorType();
-        }
-        
-        if (type1.isErrorType() || type2.isErrorType()) {
-            retType = new ErrorType();
-        }
-        
-        return retType;
+        return Semantics.logical(type1, myExp1.lineNum(), myExp1.charNum(),
+                                 myExp2.typeCheck(), myExp2.lineNum(),
+                                 myExp2.charNum(), ErrBuffer.NOW);
     }
 }
 
 abstract class EqualityExpNode extends BinaryExpNode {
-    public EqualityExpNode(ExpNode exp1, ExpNode exp2) {
-        super(exp1, exp2);
+    public EqualityExpNode(NodeKind kind, ExpNode exp1, ExpNode exp2) {
+        super(kind, exp1, exp2);
     }
     
     /**
@@ -2604,50 +2542,14 @@ abstract class EqualityExpNode extends BinaryExpNode {
      */
     public Type typeCheck() {
         Type type1 = myExp1.typeCheck();
-        Type type2 = myExp2.typeCheck();
-        Type retType = new BoolType();
-        
-        if (type1.isVoidType() && type2.isVoidType()) {
-            ErrMsg.fatal(lineNum(), charNum(),
-                         "Equality operator applied to void functions");
-            retType = new ErrorType();
-        }
-        
-        if (type1.isFnType() && type2.isFnType()) {
-            ErrMsg.fatal(lineNum(), charNum(),
-                         "Equality operator applied to functions");
-            retType = new ErrorType();
-        }
-        
-        if (type1.isStructDefType() && type2.isStructDefType()) {
-            ErrMsg.fatal(lineNum(), charNum(),
-                         "Equality operator applied to struct names");
-            retType = new ErrorType();
-        }
-        
-        if (type1.isStructType() && type2.isStructType()) {
-            ErrMsg.fatal(lineNum(), charNum(),
-                         "Equality operator applied to struct variables");
-            retType = new ErrorType();
-        }        
-        
-        if (!type1.equals(type2) && !type1.isErrorType() && !type2.isErrorType()) {
-            ErrMsg.fatal(lineNum(), charNum(),
-                         "Type mismatch");
-            retType = new ErrorType();
-        }
-        
-        if (type1.isErrorType() || type2.isErrorType()) {
-            retType = new ErrorType();
-        }
-        
-        return retType;
+        return Semantics.equality(type1, myExp2.typeCheck(),
+                                  lineNum(), charNum(), ErrBuffer.NOW);
     }
 }
 
 abstract class RelationalExpNode extends BinaryExpNode {
-    public RelationalExpNode(ExpNode exp1, ExpNode exp2) {
-        super(exp1, exp2);
+    public RelationalExpNode(NodeKind kind, ExpNode exp1, ExpNode exp2) {
+        super(kind, exp1, exp2);
     }
     
     /**
@@ -2655,49 +2557,17 @@ abstract class RelationalExpNode extends BinaryExpNode {
      */
     public Type typeCheck() {
         Type type1 = myExp1.typeCheck();
-        Type type2 = myExp2.typeCheck();
-        Type retType = new BoolType();
-        
-        if (!type1.isErrorType() && !type1.isIntType()) {
-            ErrMsg.fatal(myExp1.lineNum(), myExp1.charNum(),
-                         "Relational operator applied to non-numeric operand");
-            retType = new ErrorType();
-        }
-        
-        if (!type2.isErrorType() && !type2.isIntType()) {
-            ErrMsg.fatal(myExp2.lineNum(), myExp2.charNum(),
-                         "Relational operator applied to non-numeric operand");
-            retType = new ErrorType();
-        }
-        
-        if (type1.isErrorType() || type2.isErrorType()) {
-            retType = new ErrorType();
-        }
-        
-        return retType;
+        return Semantics.relational(type1, myExp1.lineNum(), myExp1.charNum(),
+                                    myExp2.typeCheck(), myExp2.lineNum(),
+                                    myExp2.charNum(), ErrBuffer.NOW);
     }
 }
 
 class PlusNode extends ArithmeticExpNode {
     public PlusNode(ExpNode exp1, ExpNode exp2) {
-        super(exp1, exp2);
+        super(NodeKind.PLUS, exp1, exp2);
     }
 
-    public void codeGen() {
-        // push exp2 on stack, push exp1 on stack;
-        myExp2.codeGen();
-        myExp1.codeGen();
-        // pop exp1 to $t1, exp2 to $t0
-        Codegen.generateIndexed("lw", Codegen.T1, Codegen.SP, 4, "pop exp1 into $t1");
-        Codegen.generate("addu", Codegen.SP, Codegen.SP, "4");
-        Codegen.generateIndexed("lw", Codegen.T0, Codegen.SP, 4, "pop exp2 into $t0");
-        Codegen.generate("addu", Codegen.SP, Codegen.SP, "4");
-        // do plus operation, push on stack
-        Codegen.generate("add", Codegen.T1, Codegen.T1, Codegen.T0);
-        Codegen.generateIndexed("sw", Codegen.T1, Codegen.SP, 0, "save result on stack");
-        Codegen.generate("subu", Codegen.SP, Codegen.SP, "4");
-    }
-    
     public void unparse(PrintWriter p, int indent) {
         p.print("(");
         myExp1.unparse(p, 0);
@@ -2709,24 +2579,9 @@ class PlusNode extends ArithmeticExpNode {
 
 class MinusNode extends ArithmeticExpNode {
     public MinusNode(ExpNode exp1, ExpNode exp2) {
-        super(exp1, exp2);
+        super(NodeKind.MINUS, exp1, exp2);
     }
 
-    public void codeGen() {
-        // push exp2 on stack, push exp1 on stack;
-        myExp2.codeGen();
-        myExp1.codeGen();
-        // pop exp1 to $t1, exp2 to $t0
-        Codegen.generateIndexed("lw", Codegen.T1, Codegen.SP, 4, "pop exp1 into $t1");
-        Codegen.generate("addu", Codegen.SP, Codegen.SP, "4");
-        Codegen.generateIndexed("lw", Codegen.T0, Codegen.SP, 4, "pop exp2 into $t0");
-        Codegen.generate("addu", Codegen.SP, Codegen.SP, "4");
-        // do operation, push on stack
-        Codegen.generate("sub", Codegen.T1, Codegen.T1, Codegen.T0);
-        Codegen.generateIndexed("sw", Codegen.T1, Codegen.SP, 0, "save result on stack");
-        Codegen.generate("subu", Codegen.SP, Codegen.SP, "4");
-    }
-    
     public void unparse(PrintWriter p, int indent) {
         p.print("(");
         myExp1.unparse(p, 0);
@@ -2738,22 +2593,7 @@ class MinusNode extends ArithmeticExpNode {
 
 class TimesNode extends ArithmeticExpNode {
     public TimesNode(ExpNode exp1, ExpNode exp2) {
-        super(exp1, exp2);
-    }
-
-    public void codeGen() {
-        // push exp2 on stack, push exp1 on stack;
-        myExp2.codeGen();
-        myExp1.codeGen();
-        // pop exp1 to $t1, exp2 to $t0
-        Codegen.generateIndexed("lw", Codegen.T1, Codegen.SP, 4, "pop exp1 into $t1");
-        Codegen.generate("addu", Codegen.SP, Codegen.SP, "4");
-        Codegen.generateIndexed("lw", Codegen.T0, Codegen.SP, 4, "pop exp2 into $t0");
-        Codegen.generate("addu", Codegen.SP, Codegen.SP, "4");
-        // do operation, push on stack
-        Codegen.generate("mult", Codegen.T1, Codegen.T0);
-        Codegen.generateIndexed("sw", Codegen.T1, Codegen.SP, 0, "save result on stack");
-        Codegen.generate("subu", Codegen.SP, Codegen.SP, "4");
+        super(NodeKind.TIMES, exp1, exp2);
     }
 
     public void unparse(PrintWriter p, int indent) {
@@ -2767,24 +2607,9 @@ class TimesNode extends ArithmeticExpNode {
 
 class DivideNode extends ArithmeticExpNode {
     public DivideNode(ExpNode exp1, ExpNode exp2) {
-        super(exp1, exp2);
+        super(NodeKind.DIVIDE, exp1, exp2);
     }
 
-    public void codeGen() {
-        // push exp2 on stack, push exp1 on stack;
-        myExp2.codeGen();
-        myExp1.codeGen();
-        // pop exp1 to $t1, exp2 to $t0
-        Codegen.generateIndexed("lw", Codegen.T1, Codegen.SP, 4, "pop exp1 into $t1");
-        Codegen.generate("addu", Codegen.SP, Codegen.SP, "4");
-        Codegen.generateIndexed("lw", Codegen.T0, Codegen.SP, 4, "pop exp2 into $t0");
-        Codegen.generate("addu", Codegen.SP, Codegen.SP, "4");
-        // do operation, push on stack
-        Codegen.generate("div", Codegen.T1, Codegen.T0);
-        Codegen.generateIndexed("sw", Codegen.T1, Codegen.SP, 0, "save result on stack");
-        Codegen.generate("subu", Codegen.SP, Codegen.SP, "4");
-    }
-    
     public void unparse(PrintWriter p, int indent) {
         p.print("(");
         myExp1.unparse(p, 0);
@@ -2796,30 +2621,21 @@ class DivideNode extends ArithmeticExpNode {
 
 class AndNode extends LogicalExpNode {
     public AndNode(ExpNode exp1, ExpNode exp2) {
-        super(exp1, exp2);
+        super(NodeKind.AND, exp1, exp2);
     }
 
-    public void codeGen() {
-        String l_first = Codegen.nextLabel() + "_First";
-        String l_second = Codegen.nextLabel() + "_Second";
-        String l_exit = Codegen.nextLabel() + "_Exit";
-
-        Codegen.genLabel(l_first);
-        myExp1.codeGen();
-        Codegen.generateIndexed("lw", Codegen.T1, Codegen.SP, 4, "pop exp1 into $t1");
-        Codegen.generate("addu", Codegen.SP, Codegen.SP, "4");
-        Codegen.generate("li", Codegen.T0, "0");
-        Codegen.generate("beq", Codegen.T1, Codegen.T0, l_exit);
+    public void codeGen(Codegen cg) {
+        String l_first = cg.nextLabel() + "_First";
+        String l_second = cg.nextLabel() + "_Second";
+        String l_exit = cg.nextLabel() + "_Exit";
 
-        Codegen.genLabel(l_second);
-        myExp2.codeGen();
-        Codegen.generateIndexed("lw", Codegen.T0, Codegen.SP, 4, "pop exp2 into $t0");
-        Codegen.generate("addu", Codegen.SP, Codegen.SP, "4");
-        Codegen.generate("and", Codegen.T1, Codegen.T1, Codegen.T0);
+        cg.genLabel(l_first);
+        myExp1.codeGen(cg);
+        cg.genLogicalLeft(kind(), l_exit);
 
-        Codegen.genLabel(l_exit);
-        Codegen.generateIndexed("sw", Codegen.T1, Codegen.SP, 0, "save result on stack");
-        Codegen.generate("subu", Codegen.SP, Codegen.SP, "4");
+        cg.genLabel(l_second);
+        myExp2.codeGen(cg);
+        cg.genLogicalRight(kind(), l_exit);
     }
     
     public void unparse(PrintWriter p, int indent) {
@@ -2833,30 +2649,21 @@ class AndNode extends LogicalExpNode {
 
 class OrNode extends LogicalExpNode {
     public OrNode(ExpNode exp1, ExpNode exp2) {
-        super(exp1, exp2);
+        super(NodeKind.OR, exp1, exp2);
     }
 
-    public void codeGen() {
-        String l_first = Codegen.nextLabel() + "_First";
-        String l_second = Codegen.nextLabel() + "_Second";
-        String l_exit = Codegen.nextLabel() + "_Exit";
+    public void codeGen(Codegen cg) {
+        String l_first = cg.nextLabel() + "_First";
+        String l_second = cg.nextLabel() + "_Second";
+        String l_exit = cg.nextLabel() + "_Exit";
 
-        Codegen.genLabel(l_first);
-        myExp1.codeGen();
-        Codegen.generateIndexed("lw", Codegen.T1, Codegen.SP, 4, "pop exp1 into $t1");
-        Codegen.generate("addu", Codegen.SP, Codegen.SP, "4");
-        Codegen.generate("li", Codegen.T0, "1");
-        Codegen.generate("beq", Codegen.T1, Codegen.T0, l_exit);
+        cg.genLabel(l_first);
+        myExp1.codeGen(cg);
+        cg.genLogicalLeft(kind(), l_exit);
 
-        Codegen.genLabel(l_second);
-        myExp2.codeGen();
-        Codegen.generateIndexed("lw", Codegen.T0, Codegen.SP, 4, "pop exp2 into $t0");
-        Codegen.generate("addu", Codegen.SP, Codegen.SP, "4");
-        Codegen.generate("or", Codegen.T1, Codegen.T1, Codegen.T0);
-
-        Codegen.genLabel(l_exit);
-        Codegen.generateIndexed("sw", Codegen.T1, Codegen.SP, 0, "save result on stack");
-        Codegen.generate("subu", Codegen.SP, Codegen.SP, "4");
+        cg.genLabel(l_second);
+        myExp2.codeGen(cg);
+        cg.genLogicalRight(kind(), l_exit);
     }
     
     public void unparse(PrintWriter p, int indent) {
@@ -2870,24 +2677,9 @@ class OrNode extends LogicalExpNode {
 
 class EqualsNode extends EqualityExpNode {
     public EqualsNode(ExpNode exp1, ExpNode exp2) {
-        super(exp1, exp2);
+        super(NodeKind.EQUALS, exp1, exp2);
     }
 
-    public void codeGen() {
-        // push exp2 on stack, push exp1 on stack;
-        myExp2.codeGen();
-        myExp1.codeGen();
-        // pop exp1 to $t1, exp2 to $t0
-        Codegen.generateIndexed("lw", Codegen.T1, Codegen.SP, 4, "pop exp1 into $t1");
-        Codegen.generate("addu", Codegen.SP, Codegen.SP, "4");
-        Codegen.generateIndexed("lw", Codegen.T0, Codegen.SP, 4, "pop exp2 into $t0");
-        Codegen.generate("addu", Codegen.SP, Codegen.SP, "4");
-        // do operation, push on stack
-        Codegen.generate("seq", Codegen.T1, Codegen.T1, Codegen.T0);
-        Codegen.generateIndexed("sw", Codegen.T1, Codegen.SP, 0, "save result on stack");
-        Codegen.generate("subu", Codegen.SP, Codegen.SP, "4");
-    }
-    
     public void unparse(PrintWriter p, int indent) {
         p.print("(");
         myExp1.unparse(p, 0);
@@ -2899,24 +2691,9 @@ class EqualsNode extends EqualityExpNode {
 
 class NotEqualsNode extends EqualityExpNode {
     public NotEqualsNode(ExpNode exp1, ExpNode exp2) {
-        super(exp1, exp2);
+        super(NodeKind.NOT_EQUALS, exp1, exp2);
     }
 
-    public void codeGen() {
-        // push exp2 on stack, push exp1 on stack;
-        myExp2.codeGen();
-        myExp1.codeGen();
-        // pop exp1 to $t1, exp2 to $t0
-        Codegen.generateIndexed("lw", Codegen.T1, Codegen.SP, 4, "pop exp1 into $t1");
-        Codegen.generate("addu", Codegen.SP, Codegen.SP, "4");
-        Codegen.generateIndexed("lw", Codegen.T0, Codegen.SP, 4, "pop exp2 into $t0");
-        Codegen.generate("addu", Codegen.SP, Codegen.SP, "4");
-        // do operation, push on stack
-        Codegen.generate("sne", Codegen.T1, Codegen.T1, Codegen.T0);
-        Codegen.generateIndexed("sw", Codegen.T1, Codegen.SP, 0, "save result on stack");
-        Codegen.generate("subu", Codegen.SP, Codegen.SP, "4");
-    }
-    
     public void unparse(PrintWriter p, int indent) {
         p.print("(");
         myExp1.unparse(p, 0);
@@ -2928,24 +2705,9 @@ class NotEqualsNode extends EqualityExpNode {
 
 class LessNode extends RelationalExpNode {
     public LessNode(ExpNode exp1, ExpNode exp2) {
-        super(exp1, exp2);
+        super(NodeKind.LESS, exp1, exp2);
     }
 
-    public void codeGen() {
-        // push exp2 on stack, push exp1 on stack;
-        myExp2.codeGen();
-        myExp1.codeGen();
-        // pop exp1 to $t1, exp2 to $t0
-        Codegen.generateIndexed("lw", Codegen.T1, Codegen.SP, 4, "pop exp1 into $t1");
-        Codegen.generate("addu", Codegen.SP, Codegen.SP, "4");
-        Codegen.generateIndexed("lw", Codegen.T0, Codegen.SP, 4, "pop exp2 into $t0");
-        Codegen.generate("addu", Codegen.SP, Codegen.SP, "4");
-        // do operation, push on stack
-        Codegen.generate("slt", Codegen.T1, Codegen.T1, Codegen.T0);
-        Codegen.generateIndexed("sw", Codegen.T1, Codegen.SP, 0, "save result on stack");
-        Codegen.generate("subu", Codegen.SP, Codegen.SP, "4");
-    }
-    
     public void unparse(PrintWriter p, int indent) {
         p.print("(");
         myExp1.unparse(p, 0);
@@ -2957,21 +2719,8 @@ class LessNode extends RelationalExpNode {
 
 class GreaterNode extends RelationalExpNode {
     public GreaterNode(ExpNode exp1, ExpNode exp2) {
-        super(exp1, exp2);
-    }
-
-    public void codeGen() { // push exp2 on stack, push exp1 on stack;
-        myExp2.codeGen();
-        myExp1.codeGen();
-        // pop exp1 to $t1, exp2 to $t0
-        Codegen.generateIndexed("lw", Codegen.T1, Codegen.SP, 4, "pop exp1 into $t1");
-        Codegen.generate("addu", Codegen.SP, Codegen.SP, "4");
-        Codegen.generateIndexed("lw", Codegen.T0, Codegen.SP, 4, "pop exp2 into $t0");
-        Codegen.generate("addu", Codegen.SP, Codegen.SP, "4");
-        // do operation, push on stack
-        Codegen.generate("sgt", Codegen.T1, Codegen.T1, Codegen.T0);
-        Codegen.generateIndexed("sw", Codegen.T1, Codegen.SP, 0, "save result on stack");
-        Codegen.generate("subu", Codegen.SP, Codegen.SP, "4"); }
+        super(NodeKind.GREATER, exp1, exp2);
+    }
 
     public void unparse(PrintWriter p, int indent) {
         p.print("(");
@@ -2984,22 +2733,7 @@ class GreaterNode extends RelationalExpNode {
 
 class LessEqNode extends RelationalExpNode {
     public LessEqNode(ExpNode exp1, ExpNode exp2) {
-        super(exp1, exp2);
-    }
-
-    public void codeGen() {
-        // push exp2 on stack, push exp1 on stack;
-        myExp2.codeGen();
-        myExp1.codeGen();
-        // pop exp1 to $t1, exp2 to $t0
-        Codegen.generateIndexed("lw", Codegen.T1, Codegen.SP, 4, "pop exp1 into $t1");
-        Codegen.generate("addu", Codegen.SP, Codegen.SP, "4");
-        Codegen.generateIndexed("lw", Codegen.T0, Codegen.SP, 4, "pop exp2 into $t0");
-        Codegen.generate("addu", Codegen.SP, Codegen.SP, "4");
-        // do operation, push on stack
-        Codegen.generate("sle", Codegen.T1, Codegen.T1, Codegen.T0);
-        Codegen.generateIndexed("sw", Codegen.T1, Codegen.SP, 0, "save result on stack");
-        Codegen.generate("subu", Codegen.SP, Codegen.SP, "4");
+        super(NodeKind.LESS_EQ, exp1, exp2);
     }
 
     public void unparse(PrintWriter p, int indent) {
@@ -3013,22 +2747,7 @@ class LessEqNode extends RelationalExpNode {
 
 class GreaterEqNode extends RelationalExpNode {
     public GreaterEqNode(ExpNode exp1, ExpNode exp2) {
-        super(exp1, exp2);
-    }
-
-    public void codeGen() {
-        // push exp2 on stack, push exp1 on stack;
-        myExp2.codeGen();
-        myExp1.codeGen();
-        // pop exp1 to $t1, exp2 to $t0
-        Codegen.generateIndexed("lw", Codegen.T1, Codegen.SP, 4, "pop exp1 into $t1");
-        Codegen.generate("addu", Codegen.SP, Codegen.SP, "4");
-        Codegen.generateIndexed("lw", Codegen.T0, Codegen.SP, 4, "pop exp2 into $t0");
-        Codegen.generate("addu", Codegen.SP, Codegen.SP, "4");
-        // do operation, push on stack
-        Codegen.generate("gle", Codegen.T1, Codegen.T1, Codegen.T0);
-        Codegen.generateIndexed("sw", Codegen.T1, Codegen.SP, 0, "save result on stack");
-        Codegen.generate("subu", Codegen.SP, Codegen.SP, "4");
+        super(NodeKind.GREATER_EQ, exp1, exp2);
     }
 
     public void unparse(PrintWriter p, int indent) {
@@ -5,6 +5,51 @@
   See below for copyright notice, license, and disclaimer.
   New releases from http://www.cs.princeton.edu/~appel/modern/java/JLex/
 
+  Local changes for the P6 compiler:
+   Added the %buffer directive, which sets the initial size of the input
+     buffer (YY_BUFFER_SIZE, 512 by default).
+   Added scanner constructors taking a char[], a java.nio.CharBuffer or a
+     CharSequence, for input that is already in memory, with no Reader
+     and no refill.  A char[] or an array-backed CharBuffer is scanned in
+     place; any other input is first copied into a new char[].
+   Added yybuffer(), yystart() and yycharat(int), which give actions the
+     text of the token in the scanner's buffer, without a String.
+   Added the %lineindex directive: instead of counting lines char by char
+     for yyline, the scanner keeps the offsets at which lines start, and
+     yylineof(offset) and yycolumnof(offset) find the position of a token
+     (from its yychar) only when it is asked for.
+   Added the %bytes directive: the scanner also takes a java.nio.ByteBuffer
+     (a mapped file, say), and scans its bytes, each byte being the char
+     of the same value (0 to 255), with no decoding.  The bytes of a heap
+     buffer are scanned in place; those of a direct buffer are copied
+     into an array once, which is cheaper than a get() for every byte.
+   Added a second DFA minimizer, Hopcroft's algorithm over int arrays,
+     chosen with -minimize=hopcroft.  It finds the fewest states; the
+     first one can split equivalent states (see check_groups), so a spec
+     may come out a state or two smaller.  -minimize=check runs both and
+     stops unless the groups of the first lie inside those of the second.
+     The states of the minimized DFA are now numbered in order of their
+     first state, whichever minimizer made them.
+   Added a second subset construction, chosen with -subset=parallel: the
+     NFA goes into int arrays with the epsilon closure of each state as a
+     bit set, DFA states are found by a hash of their NFA set, and the
+     DFAs of the lexical states are made by a thread each and then merged
+     into the table in the same order as before.  -subset=check runs both
+     and stops unless the tables are the same.
+   The character classes are now split in time linear in the size of the
+     sets on the NFA edges rather than in that of the charset for every
+     edge, and are numbered in order of their smallest character.
+   Added the %comb directive: the transition table is packed by row
+     displacement, as in flex, into yy_base, yy_def, yy_next and
+     yy_check (see CEmit.emit_comb_table) instead of the yy_rmap and
+     yy_nxt matrix.  These tables and yy_cmap are static, of the
+     narrowest type that holds them, and are unpacked once, in a single
+     pass, from strings of one char per element.
+   Added the %switch directive: the transition table is emitted as code,
+     a function for each row that switches over the column of the
+     lookahead, called from a switch over the states in the driver (see
+     CEmit.emit_switch_table).  It takes the place of %comb when both
+     are given.
   Version 1.2.6, 2/7/03, [C. Scott Ananian]
    Renamed 'assert' function 'ASSERT' to accomodate Java 1.4's new keyword.
    Fixed a bug which certain forms of comment in the JLex directives section
@@ -287,10 +332,17 @@ class CSpec
   boolean m_yyeof;
   boolean m_count_chars;
   boolean m_count_lines;
+  boolean m_index_lines;
+  boolean m_bytes;
+  boolean m_comb;
+  boolean m_switch;
   boolean m_cup_compatible;
   boolean m_unix;
   boolean m_public;
   boolean m_ignorecase;
+  int m_buffer_size;
+  int m_minimizer;
+  int m_subset;
 
   char m_init_code[];
   int m_init_read;
@@ -367,12 +419,19 @@ class CSpec
 	m_integer_type = false;
 	m_intwrap_type = false;
 	m_count_lines = false;
+	m_index_lines = false;
+	m_bytes = false;
+	m_comb = false;
+	m_switch = false;
 	m_count_chars = false;
 	m_cup_compatible = false;
 	m_unix = true;
         m_public = false;
 	m_yyeof = false;
 	m_ignorecase = false;
+	m_buffer_size = 512;
+	m_minimizer = CMinimize.CLASSIC;
+	m_subset = CNfa2Dfa.CLASSIC;
 
 	/* Initialize variables for JLex runtime options. */
 	m_verbose = true;
@@ -428,6 +487,8 @@ class CEmit
     **************************************************************/
   private CSpec m_spec;
   private java.io.PrintWriter m_outstream;
+  private Vector m_unpackers; /* Types of the unpacking functions
+				 emitted so far. */
 
   /***************************************************************
     Constants: Anchor Types
@@ -441,6 +502,8 @@ class CEmit
     **************************************************************/
   private final boolean EDBG = true;
   private final boolean NOT_EDBG = false;
+  private static final int PACK_CHUNK = 16384; /* Chars of a packed
+						  string constant. */
 
   /***************************************************************
     Function: CEmit
@@ -463,6 +526,7 @@ class CEmit
       {
 	m_spec = null;
 	m_outstream = null;
+	m_unpackers = null;
       }
 
   /***************************************************************
@@ -483,6 +547,7 @@ class CEmit
 
 	m_spec = spec;
 	m_outstream = outstream;
+	m_unpackers = new Vector();
       }
 
   /***************************************************************
@@ -643,7 +708,8 @@ class CEmit
 	  }
 	  
 	  /* Constants */
-	  m_outstream.println("\tprivate final int YY_BUFFER_SIZE = 512;");
+	  m_outstream.println("\tprivate final int YY_BUFFER_SIZE = "
+			      + m_spec.m_buffer_size + ";");
 
 	  m_outstream.println("\tprivate final int YY_F = -1;");
 	  m_outstream.println("\tprivate final int YY_NO_STATE = -1;");
@@ -674,6 +740,11 @@ class CEmit
 	  m_outstream.println("\tprivate int yy_buffer_start;");
 	  m_outstream.println("\tprivate int yy_buffer_end;");
 	  m_outstream.println("\tprivate char yy_buffer[];");
+	  if (m_spec.m_bytes)
+	    {
+	      /* The input, if it is bytes; yy_buffer is then null. */
+	      m_outstream.println("\tprivate byte yy_bytes[];");
+	    }
 	  if (m_spec.m_count_chars)
 	    {
 	      m_outstream.println("\tprivate int yychar;");
@@ -682,6 +753,16 @@ class CEmit
 	    {
 	      m_outstream.println("\tprivate int yyline;");
 	    }
+	  if (m_spec.m_index_lines)
+	    {
+	      /* yy_line_starts[i] is the offset at which line i starts;
+		 the chars before yy_line_indexed have been indexed. */
+	      m_outstream.println("\tprivate int yy_line_starts[];");
+	      m_outstream.println("\tprivate int yy_line_count;");
+	      m_outstream.println("\tprivate int yy_line_indexed;");
+	      m_outstream.println("\tprivate int yy_line_last;");
+	      m_outstream.println("\tprivate boolean yy_index_last_cr;");
+	    }
 	  m_outstream.println("\tprivate boolean yy_at_bol;");
 	  m_outstream.println("\tprivate int yy_lexical_state;");
 	  /*if (m_spec.m_count_lines || true == m_spec.m_count_chars)
@@ -719,6 +800,7 @@ class CEmit
 				 + "stream initializer.\"));");
 	  m_outstream.println("\t\t}");
 	  m_outstream.println("\t\tyy_reader = new java.io.BufferedReader(reader);");
+	  m_outstream.println("\t\tyy_buffer = new char[YY_BUFFER_SIZE];");
 	  m_outstream.println("\t}");
 	  m_outstream.println();
 
@@ -750,6 +832,71 @@ class CEmit
 				 + "stream initializer.\"));");
 	  m_outstream.println("\t\t}");
 	  m_outstream.println("\t\tyy_reader = new java.io.BufferedReader(new java.io.InputStreamReader(instream));");
+	  m_outstream.println("\t\tyy_buffer = new char[YY_BUFFER_SIZE];");
+	  m_outstream.println("\t}");
+	  m_outstream.println();
+
+
+	  /* Functions: constructors for input already in memory, with no
+	     Reader and no refill: yy_reader stays null.  A char[] or an
+	     array-backed CharBuffer is scanned in place; a direct
+	     CharBuffer or a CharSequence (a String too) is copied once. */
+	  emit_memory_construct("char chars[]", "chars");
+	  m_outstream.println("\t\tyy_wrap(chars, 0, chars.length);");
+	  m_outstream.println("\t}");
+	  m_outstream.println();
+
+	  emit_memory_construct("java.nio.CharBuffer chars", "chars");
+	  m_outstream.println("\t\tif (chars.hasArray()) {");
+	  m_outstream.println("\t\t\tyy_wrap(chars.array(),");
+	  m_outstream.println("\t\t\t\tchars.arrayOffset() + chars.position(),");
+	  m_outstream.println("\t\t\t\tchars.remaining());");
+	  m_outstream.println("\t\t} else {");
+	  m_outstream.println("\t\t\tchar buf[] = new char[chars.remaining()];");
+	  m_outstream.println("\t\t\tchars.duplicate().get(buf);");
+	  m_outstream.println("\t\t\tyy_wrap(buf, 0, buf.length);");
+	  m_outstream.println("\t\t}");
+	  m_outstream.println("\t}");
+	  m_outstream.println();
+
+	  emit_memory_construct("java.lang.CharSequence chars", "chars");
+	  m_outstream.println("\t\tchar buf[] = new char[chars.length()];");
+	  m_outstream.println("\t\tif (chars instanceof java.lang.String) {");
+	  m_outstream.println("\t\t\t((java.lang.String) chars).getChars(0, buf.length, buf, 0);");
+	  m_outstream.println("\t\t} else {");
+	  m_outstream.println("\t\t\tfor (int i = 0; i < buf.length; ++i) {");
+	  m_outstream.println("\t\t\t\tbuf[i] = chars.charAt(i);");
+	  m_outstream.println("\t\t\t}");
+	  m_outstream.println("\t\t}");
+	  m_outstream.println("\t\tyy_wrap(buf, 0, buf.length);");
+	  m_outstream.println("\t}");
+	  m_outstream.println();
+
+	  if (m_spec.m_bytes)
+	    {
+	      /* The bytes from the position to the limit of the
+		 buffer; the buffer itself is not changed. */
+	      emit_memory_construct("java.nio.ByteBuffer bytes", "bytes");
+	      m_outstream.println("\t\tif (bytes.hasArray()) {");
+	      m_outstream.println("\t\t\tyy_bytes = bytes.array();");
+	      m_outstream.println("\t\t\tyy_wrap(null,");
+	      m_outstream.println("\t\t\t\tbytes.arrayOffset() + bytes.position(),");
+	      m_outstream.println("\t\t\t\tbytes.remaining());");
+	      m_outstream.println("\t\t} else {");
+	      m_outstream.println("\t\t\tyy_bytes = new byte[bytes.remaining()];");
+	      m_outstream.println("\t\t\tbytes.duplicate().get(yy_bytes);");
+	      m_outstream.println("\t\t\tyy_wrap(null, 0, yy_bytes.length);");
+	      m_outstream.println("\t\t}");
+	      m_outstream.println("\t}");
+	      m_outstream.println();
+	    }
+
+	  m_outstream.println("\tprivate void yy_wrap (char buf[], int offset, int length) {");
+	  m_outstream.println("\t\tyy_buffer = buf;");
+	  m_outstream.println("\t\tyy_buffer_index = offset;");
+	  m_outstream.println("\t\tyy_buffer_start = offset;");
+	  m_outstream.println("\t\tyy_buffer_end = offset;");
+	  m_outstream.println("\t\tyy_buffer_read = offset + length;");
 	  m_outstream.println("\t}");
 	  m_outstream.println();
 
@@ -772,7 +919,6 @@ class CEmit
 	      m_outstream.println(" {");
 	    }
 	  
-	  m_outstream.println("\t\tyy_buffer = new char[YY_BUFFER_SIZE];");
 	  m_outstream.println("\t\tyy_buffer_read = 0;");
 	  m_outstream.println("\t\tyy_buffer_index = 0;");
 	  m_outstream.println("\t\tyy_buffer_start = 0;");
@@ -785,6 +931,14 @@ class CEmit
 	    {
 	      m_outstream.println("\t\tyyline = 0;");
 	    }
+	  if (m_spec.m_index_lines)
+	    {
+	      m_outstream.println("\t\tyy_line_starts = new int[64];");
+	      m_outstream.println("\t\tyy_line_count = 1;");
+	      m_outstream.println("\t\tyy_line_indexed = 0;");
+	      m_outstream.println("\t\tyy_line_last = 0;");
+	      m_outstream.println("\t\tyy_index_last_cr = false;");
+	    }
 	  m_outstream.println("\t\tyy_at_bol = true;");
 	  m_outstream.println("\t\tyy_lexical_state = YYINITIAL;");
 	  /*if (m_spec.m_count_lines || true == m_spec.m_count_chars)
@@ -804,6 +958,46 @@ class CEmit
 
 	}
 
+  /***************************************************************
+    Function: emit_memory_construct
+    Description: Emits the head of a constructor for input that
+    is already in memory, up to the null check of its argument
+    arg.
+    **************************************************************/
+  private void emit_memory_construct
+    (
+     String params,
+     String arg
+     )
+      throws java.io.IOException
+	{
+	  m_outstream.print("\t");
+	  if (true == m_spec.m_public) {
+	    m_outstream.print("public ");
+	  }
+          m_outstream.print(new String(m_spec.m_class_name));
+	  m_outstream.print(" (" + params + ")");
+
+	  if (null != m_spec.m_init_throw_code)
+	    {
+	      m_outstream.println();
+	      m_outstream.print("\t\tthrows ");
+	      m_outstream.println(new String(m_spec.m_init_throw_code,0,
+						m_spec.m_init_throw_read));
+	      m_outstream.println("\t\t{");
+	    }
+	  else
+	    {
+	      m_outstream.println(" {");
+	    }
+
+	  m_outstream.println("\t\tthis ();");
+	  m_outstream.println("\t\tif (null == " + arg + ") {");
+	  m_outstream.println("\t\t\tthrow (new Error(\"Error: Bad input "
+				 + "stream initializer.\"));");
+	  m_outstream.println("\t\t}");
+	}
+
   /***************************************************************
     Function: emit_states
     Description: Emits constants that serve as lexical states,
@@ -853,6 +1047,95 @@ class CEmit
 	  m_outstream.println("\t};");
 	}
 
+  /***************************************************************
+    Function: emit_line_index
+    Description: Emits the line-start index of %lineindex, and
+    yylineof and yycolumnof, which look positions up in it.
+    The index is extended over the chars read so far when
+    a position is asked for, and before the buffer drops
+    chars, instead of counting newlines as each token is
+    matched.  The lookups are package-private, so that
+    tokens can ask for their position once the scanner has
+    moved on.  yychar is the offset of yy_buffer_start.
+    **************************************************************/
+  private void emit_line_index
+    (
+     )
+      throws java.io.IOException
+	{
+	  /* Function: yy_index_lines - indexes the line breaks
+	     in the buffer up to (not including) end. */
+	  m_outstream.println("\tprivate void yy_index_lines (int end) {");
+	  m_outstream.println("\t\tint i = yy_line_indexed - yychar + yy_buffer_start;");
+	  m_outstream.println("\t\tif (i >= end) {");
+	  m_outstream.println("\t\t\treturn;");
+	  m_outstream.println("\t\t}");
+	  m_outstream.println("\t\tfor (; i < end; ++i) {");
+	  m_outstream.println("\t\t\tif ('\\n' == " + buffer_at("i") + " && yy_index_last_cr) {");
+	  m_outstream.println("\t\t\t\tyy_line_starts[yy_line_count - 1]++;");
+	  m_outstream.println("\t\t\t} else if ('\\n' == " + buffer_at("i") + " || '\\r' == " + buffer_at("i") + ") {");
+	  m_outstream.println("\t\t\t\tif (yy_line_count == yy_line_starts.length) {");
+	  m_outstream.println("\t\t\t\t\tyy_line_starts = java.util.Arrays.copyOf(yy_line_starts,");
+	  m_outstream.println("\t\t\t\t\t\t2 * yy_line_count);");
+	  m_outstream.println("\t\t\t\t}");
+	  m_outstream.println("\t\t\t\tyy_line_starts[yy_line_count++] =");
+	  m_outstream.println("\t\t\t\t\tyychar + i + 1 - yy_buffer_start;");
+	  m_outstream.println("\t\t\t}");
+	  m_outstream.println("\t\t\tyy_index_last_cr = ('\\r' == " + buffer_at("i") + ");");
+	  m_outstream.println("\t\t}");
+	  m_outstream.println("\t\tyy_line_indexed = yychar + end - yy_buffer_start;");
+	  m_outstream.println("\t}");
+
+	  /* Function: yylineof - the line (from 0) of the char at
+	     offset, which must have been read. */
+	  m_outstream.println("\tint yylineof (int offset) {");
+	  m_outstream.println("\t\tif (offset >= yy_line_indexed) {");
+	  m_outstream.println("\t\t\tyy_index_lines(yy_buffer_read);");
+	  m_outstream.println("\t\t}");
+	  m_outstream.println("\t\tint lo = yy_line_last;");
+	  m_outstream.println("\t\tif (yy_line_starts[lo] <= offset");
+	  m_outstream.println("\t\t    && (lo + 1 == yy_line_count || offset < yy_line_starts[lo + 1])) {");
+	  m_outstream.println("\t\t\treturn lo;");
+	  m_outstream.println("\t\t}");
+	  m_outstream.println("\t\tlo = 0;");
+	  m_outstream.println("\t\tint hi = yy_line_count - 1;");
+	  m_outstream.println("\t\twhile (lo < hi) {");
+	  m_outstream.println("\t\t\tint mid = (lo + hi + 1) >>> 1;");
+	  m_outstream.println("\t\t\tif (yy_line_starts[mid] <= offset) {");
+	  m_outstream.println("\t\t\t\tlo = mid;");
+	  m_outstream.println("\t\t\t} else {");
+	  m_outstream.println("\t\t\t\thi = mid - 1;");
+	  m_outstream.println("\t\t\t}");
+	  m_outstream.println("\t\t}");
+	  m_outstream.println("\t\tyy_line_last = lo;");
+	  m_outstream.println("\t\treturn lo;");
+	  m_outstream.println("\t}");
+
+	  /* Function: yycolumnof - the column (from 0) of the char
+	     at offset. */
+	  m_outstream.println("\tint yycolumnof (int offset) {");
+	  m_outstream.println("\t\treturn offset - yy_line_starts[yylineof(offset)];");
+	  m_outstream.println("\t}");
+	}
+
+  /***************************************************************
+    Function: buffer_at
+    Description: The code for the char at index of the input:
+    an element of yy_buffer, or with %bytes, a call of yy_char,
+    since the input may be yy_bytes instead.
+    **************************************************************/
+  private String buffer_at
+    (
+     String index
+     )
+	{
+	  if (m_spec.m_bytes)
+	    {
+	      return "yy_char(" + index + ")";
+	    }
+	  return "yy_buffer[" + index + "]";
+	}
+
   /***************************************************************
     Function: emit_helpers
     Description: Emits helper functions, particularly 
@@ -913,24 +1196,25 @@ class CEmit
 	m_outstream.println("\t\tthrows java.io.IOException {");
 	/*m_outstream.println("\t\t{");*/
 	m_outstream.println("\t\tint next_read;");
-	m_outstream.println("\t\tint i;");
 	m_outstream.println("\t\tint j;");
 	m_outstream.println();
 
 	m_outstream.println("\t\tif (yy_buffer_index < yy_buffer_read) {");
-	m_outstream.println("\t\t\treturn yy_buffer[yy_buffer_index++];");
+	m_outstream.println("\t\t\treturn " + buffer_at("yy_buffer_index++") + ";");
 	/*m_outstream.println("\t\t\t++yy_buffer_index;");*/
 	m_outstream.println("\t\t}");
+	m_outstream.println("\t\tif (null == yy_reader) {");
+	m_outstream.println("\t\t\treturn YY_EOF;");
+	m_outstream.println("\t\t}");
 	m_outstream.println();
 
 	m_outstream.println("\t\tif (0 != yy_buffer_start) {");
-	m_outstream.println("\t\t\ti = yy_buffer_start;");
-	m_outstream.println("\t\t\tj = 0;");
-	m_outstream.println("\t\t\twhile (i < yy_buffer_read) {");
-	m_outstream.println("\t\t\t\tyy_buffer[j] = yy_buffer[i];");
-	m_outstream.println("\t\t\t\t++i;");
-	m_outstream.println("\t\t\t\t++j;");
-	m_outstream.println("\t\t\t}");
+	if (m_spec.m_index_lines)
+	  {
+	    m_outstream.println("\t\t\tyy_index_lines(yy_buffer_start);");
+	  }
+	m_outstream.println("\t\t\tj = yy_buffer_read - yy_buffer_start;");
+	m_outstream.println("\t\t\tSystem.arraycopy(yy_buffer, yy_buffer_start, yy_buffer, 0, j);");
 	m_outstream.println("\t\t\tyy_buffer_end = yy_buffer_end - yy_buffer_start;");
 	m_outstream.println("\t\t\tyy_buffer_start = 0;");
 	m_outstream.println("\t\t\tyy_buffer_read = j;");
@@ -958,16 +1242,16 @@ class CEmit
 	m_outstream.println("\t\t\tyy_buffer_read = yy_buffer_read + next_read;");
 	m_outstream.println("\t\t}");
 
-	m_outstream.println("\t\treturn yy_buffer[yy_buffer_index++];");
+	m_outstream.println("\t\treturn " + buffer_at("yy_buffer_index++") + ";");
 	m_outstream.println("\t}");
 	
 	/* Function: yy_move_end */
 	m_outstream.println("\tprivate void yy_move_end () {");
 	m_outstream.println("\t\tif (yy_buffer_end > yy_buffer_start &&");
-	m_outstream.println("\t\t    '\\n' == yy_buffer[yy_buffer_end-1])");
+	m_outstream.println("\t\t    '\\n' == " + buffer_at("yy_buffer_end-1") + ")");
 	m_outstream.println("\t\t\tyy_buffer_end--;");
 	m_outstream.println("\t\tif (yy_buffer_end > yy_buffer_start &&");
-	m_outstream.println("\t\t    '\\r' == yy_buffer[yy_buffer_end-1])");
+	m_outstream.println("\t\t    '\\r' == " + buffer_at("yy_buffer_end-1") + ")");
 	m_outstream.println("\t\t\tyy_buffer_end--;");
 	m_outstream.println("\t}");
 
@@ -981,10 +1265,10 @@ class CEmit
 		m_outstream.println("\t\tint i;");
 		m_outstream.println("\t\tfor (i = yy_buffer_start; " 
 				       + "i < yy_buffer_index; ++i) {");
-		m_outstream.println("\t\t\tif ('\\n' == yy_buffer[i] && !yy_last_was_cr) {");
+		m_outstream.println("\t\t\tif ('\\n' == " + buffer_at("i") + " && !yy_last_was_cr) {");
 		m_outstream.println("\t\t\t\t++yyline;");
 		m_outstream.println("\t\t\t}");
-		m_outstream.println("\t\t\tif ('\\r' == yy_buffer[i]) {");
+		m_outstream.println("\t\t\tif ('\\r' == " + buffer_at("i") + ") {");
 		m_outstream.println("\t\t\t\t++yyline;");
 		m_outstream.println("\t\t\t\tyy_last_was_cr=true;");
 		m_outstream.println("\t\t\t} else yy_last_was_cr=false;");
@@ -1010,17 +1294,27 @@ class CEmit
 	m_outstream.println("\t\tyy_at_bol = "+
 			    "(yy_buffer_end > yy_buffer_start) &&");
 	m_outstream.println("\t\t            "+
-			    "('\\r' == yy_buffer[yy_buffer_end-1] ||");
+			    "('\\r' == " + buffer_at("yy_buffer_end-1") + " ||");
 	m_outstream.println("\t\t            "+
-			    " '\\n' == yy_buffer[yy_buffer_end-1] ||");
+			    " '\\n' == " + buffer_at("yy_buffer_end-1") + " ||");
 	m_outstream.println("\t\t            "+ /* unicode LS */
-			    " 2028/*LS*/ == yy_buffer[yy_buffer_end-1] ||");
+			    " 2028/*LS*/ == " + buffer_at("yy_buffer_end-1") + " ||");
 	m_outstream.println("\t\t            "+ /* unicode PS */
-			    " 2029/*PS*/ == yy_buffer[yy_buffer_end-1]);");
+			    " 2029/*PS*/ == " + buffer_at("yy_buffer_end-1") + ");");
 	m_outstream.println("\t}");
 
 	/* Function: yytext */
 	m_outstream.println("\tprivate java.lang.String yytext () {");
+	if (m_spec.m_bytes)
+	  {
+	    m_outstream.println("\t\tif (null != yy_bytes) {");
+	    m_outstream.println("\t\t\tchar text[] = new char[yy_buffer_end - yy_buffer_start];");
+	    m_outstream.println("\t\t\tfor (int i = 0; i < text.length; ++i) {");
+	    m_outstream.println("\t\t\t\ttext[i] = yy_char(yy_buffer_start + i);");
+	    m_outstream.println("\t\t\t}");
+	    m_outstream.println("\t\t\treturn (new java.lang.String(text));");
+	    m_outstream.println("\t\t}");
+	  }
 	m_outstream.println("\t\treturn (new java.lang.String(yy_buffer,");
 	m_outstream.println("\t\t\tyy_buffer_start,");
 	m_outstream.println("\t\t\tyy_buffer_end - yy_buffer_start));");
@@ -1031,15 +1325,43 @@ class CEmit
 	m_outstream.println("\t\treturn yy_buffer_end - yy_buffer_start;");
 	m_outstream.println("\t}");
 
+	/* Functions: yybuffer, yystart, yycharat - the text of the
+	   current token without copying it into a String: it is
+	   yybuffer()[yystart()] to yybuffer()[yystart() + yylength() - 1].
+	   Valid only until the scanner reads on.  With %bytes, yybuffer()
+	   is null when the input is bytes, and the text is in yybytes()
+	   instead. */
+	m_outstream.println("\tprivate char[] yybuffer () {");
+	m_outstream.println("\t\treturn yy_buffer;");
+	m_outstream.println("\t}");
+	m_outstream.println("\tprivate int yystart () {");
+	m_outstream.println("\t\treturn yy_buffer_start;");
+	m_outstream.println("\t}");
+	if (m_spec.m_bytes)
+	  {
+	    m_outstream.println("\tprivate byte[] yybytes () {");
+	    m_outstream.println("\t\treturn yy_bytes;");
+	    m_outstream.println("\t}");
+
+	    /* Function: yy_char - the char at i of the input, from
+	       whichever of yy_buffer and yy_bytes holds it. */
+	    m_outstream.println("\tprivate char yy_char (int i) {");
+	    m_outstream.println("\t\treturn (null == yy_bytes) ? yy_buffer[i]");
+	    m_outstream.println("\t\t\t: (char) (yy_bytes[i] & 0xff);");
+	    m_outstream.println("\t}");
+	  }
+	m_outstream.println("\tprivate char yycharat (int pos) {");
+	m_outstream.println("\t\treturn " + buffer_at("yy_buffer_start + pos") + ";");
+	m_outstream.println("\t}");
+
+	if (m_spec.m_index_lines)
+	  {
+	    emit_line_index();
+	  }
+
 	/* Function: yy_double */
 	m_outstream.println("\tprivate char[] yy_double (char buf[]) {");
-	m_outstream.println("\t\tint i;");
-	m_outstream.println("\t\tchar newbuf[];");
-	m_outstream.println("\t\tnewbuf = new char[2*buf.length];");
-	m_outstream.println("\t\tfor (i = 0; i < buf.length; ++i) {");
-	m_outstream.println("\t\t\tnewbuf[i] = buf[i];");
-	m_outstream.println("\t\t}");
-	m_outstream.println("\t\treturn newbuf;");
+	m_outstream.println("\t\treturn java.util.Arrays.copyOf(buf, 2*buf.length);");
 	m_outstream.println("\t}");
 
 	/* Function: yy_error */
@@ -1068,6 +1390,14 @@ class CEmit
 	m_outstream.println("\t}");*/
 
 
+	/* The comb-packed tables of %comb, and the yy_cmap of
+	   %switch, come with their own unpacking functions (see
+	   emit_packed). */
+	if (m_spec.m_comb || m_spec.m_switch)
+	  {
+	    return;
+	  }
+
 	// Function: private int [][] unpackFromString(int size1, int size2, String st)
 	// Added 6/24/98 Raimondas Lencevicius
 	// May be made more efficient by replacing String operations
@@ -1212,6 +1542,17 @@ class CEmit
 	  }
 	m_outstream.println("\t};");
 
+	if (m_spec.m_switch)
+	  {
+	    emit_switch_table();
+	    return;
+	  }
+	if (m_spec.m_comb)
+	  {
+	    emit_comb_table();
+	    return;
+	  }
+
 	// CSA: modified yy_cmap to use string packing 9-Aug-1999
 	int[] yy_cmap = new int[m_spec.m_ccls_map.length];
 	for (i = 0; i < m_spec.m_ccls_map.length; ++i)
@@ -1331,2404 +1672,4241 @@ class CEmit
   }
 
   /***************************************************************
-    Function: emit_driver
-    Description: 
+    Function: emit_switch_table
+    Description: Emits the transition table of %switch as code.
+    yy_cmap is packed as for %comb; each row of the table that
+    goes somewhere becomes a function, yy_next<row>(col), a
+    switch over the column of the lookahead (its class in
+    yy_cmap) with a case for each next state but the most
+    common one in the row, which is the default.  The driver
+    picks the function with a switch over the states (see
+    emit_switch).  A function for each row, rather than one
+    switch for the whole table, keeps every method under the
+    64K limit of the class file, and small enough for the JIT
+    to inline the ones it runs most.
     **************************************************************/
-  private void emit_driver
+  private void emit_switch_table
     (
      )
       throws java.io.IOException
-	{
-	  if (CUtility.DEBUG)
-	    {
-	      CUtility.ASSERT(null != m_spec);
-	      CUtility.ASSERT(null != m_outstream);
-	    }
-	  
-	  emit_table();
+      {
+	int yy_cmap[];
+	int nrows;
+	int ncols;
+	int row[];
+	int count[];
+	boolean done[];
+	int def;
+	int i;
+	int r;
+	int c;
+	int d;
 
-	  if (m_spec.m_integer_type)
-	    {
-	      m_outstream.print("\tpublic int ");
-	      m_outstream.print(new String(m_spec.m_function_name));
-	      m_outstream.println(" ()");
-	    }
-	  else if (m_spec.m_intwrap_type)
-	    {
-	      m_outstream.print("\tpublic java.lang.Integer ");
-	      m_outstream.print(new String(m_spec.m_function_name));
-	      m_outstream.println(" ()");
-	    }
-	  else
-	    {
-	      m_outstream.print("\tpublic ");
-	      m_outstream.print(new String(m_spec.m_type_name));
-	      m_outstream.print(" ");
-	      m_outstream.print(new String(m_spec.m_function_name));
-	      m_outstream.println(" ()");
-	    }
+	yy_cmap = new int[m_spec.m_ccls_map.length];
+	for (i = 0; i < m_spec.m_ccls_map.length; ++i)
+	  {
+	    yy_cmap[i] = m_spec.m_col_map[m_spec.m_ccls_map[i]];
+	  }
+	emit_packed("yy_cmap",yy_cmap,yy_cmap.length);
 
-	  /*m_outstream.println("\t\tthrows java.io.IOException {");*/
-	  m_outstream.print("\t\tthrows java.io.IOException");
-	  if (null != m_spec.m_yylex_throw_code)
-	    {
-	      m_outstream.print(", "); 
-	      m_outstream.print(new String(m_spec.m_yylex_throw_code,0,
-						m_spec.m_yylex_throw_read));
-	      m_outstream.println();
-	      m_outstream.println("\t\t{");
-	    }
-	  else
-	    {
-	      m_outstream.println(" {");
-	    }
+	nrows = m_spec.m_dtrans_vector.size();
+	ncols = m_spec.m_dtrans_ncols;
+	count = new int[m_spec.m_row_map.length + 1];
+	done = new boolean[ncols];
+	for (r = 0; r < nrows; ++r)
+	  {
+	    row = ((CDTrans) m_spec.m_dtrans_vector.elementAt(r)).m_dtrans;
+	    if (row_empty(row))
+	      {
+		continue;
+	      }
+	    def = row_default(row,count);
 
-	  m_outstream.println("\t\tint yy_lookahead;");
-	  m_outstream.println("\t\tint yy_anchor = YY_NO_ANCHOR;");
-	  /*m_outstream.println("\t\tint yy_state "
-	    + "= yy_initial_dtrans(yy_lexical_state);");*/
-	  m_outstream.println("\t\tint yy_state " 
-				 + "= yy_state_dtrans[yy_lexical_state];");
-	  m_outstream.println("\t\tint yy_next_state = YY_NO_STATE;");
-	  /*m_outstream.println("\t\tint yy_prev_stave = YY_NO_STATE;");*/
-	  m_outstream.println("\t\tint yy_last_accept_state = YY_NO_STATE;");
-    	  m_outstream.println("\t\tboolean yy_initial = true;");
-	  m_outstream.println("\t\tint yy_this_accept;");
-	  m_outstream.println();
+	    m_outstream.println();
+	    m_outstream.println("\tprivate int yy_next" + r + " (int yy_col) {");
+	    m_outstream.println("\t\tswitch (yy_col) {");
+	    for (c = 0; c < ncols; ++c)
+	      {
+		done[c] = false;
+	      }
+	    for (c = 0; c < ncols; ++c)
+	      {
+		if (done[c] || row[c] == def)
+		  {
+		    continue;
+		  }
+		for (d = c; d < ncols; ++d)
+		  {
+		    if (row[d] == row[c])
+		      {
+			done[d] = true;
+			m_outstream.println("\t\tcase " + d + ":");
+		      }
+		  }
+		m_outstream.println("\t\t\treturn " + state_name(row[c]) + ";");
+	      }
+	    m_outstream.println("\t\tdefault:");
+	    m_outstream.println("\t\t\treturn " + state_name(def) + ";");
+	    m_outstream.println("\t\t}");
+	    m_outstream.println("\t}");
+	  }
+	m_outstream.println();
+      }
 
-	  m_outstream.println("\t\tyy_mark_start();");
-	  /*m_outstream.println("\t\tyy_this_accept = yy_accept(yy_state);");*/
-	  m_outstream.println("\t\tyy_this_accept = yy_acpt[yy_state];");
-	  m_outstream.println("\t\tif (YY_NOT_ACCEPT != yy_this_accept) {");
-	  m_outstream.println("\t\t\tyy_last_accept_state = yy_state;");
-	  m_outstream.println("\t\t\tyy_mark_end();");
-	  m_outstream.println("\t\t}");
+  /***************************************************************
+    Function: emit_switch
+    Description: Emits the transition of the driver for
+    %switch: a switch over the states that calls the function
+    of the state's row (see emit_switch_table).  States with the
+    same row share their case; the states whose row goes nowhere
+    have none, and keep the YY_F the driver has set.
+    **************************************************************/
+  private void emit_switch
+    (
+     String tabs
+     )
+      throws java.io.IOException
+      {
+	int nrows;
+	int nstates;
+	int r;
+	int s;
 
-	  if (NOT_EDBG)
-	    {
-	      m_outstream.println("\t\tjava.lang.System.out.println(\"Begin\");");
-	    }
+	nrows = m_spec.m_dtrans_vector.size();
+	nstates = m_spec.m_row_map.length;
 
-	  m_outstream.println("\t\twhile (true) {");
+	m_outstream.println(tabs + "switch (yy_state) {");
+	for (r = 0; r < nrows; ++r)
+	  {
+	    if (row_empty(((CDTrans) m_spec.m_dtrans_vector.elementAt(r)).m_dtrans))
+	      {
+		continue;
+	      }
+	    for (s = 0; s < nstates; ++s)
+	      {
+		if (r == m_spec.m_row_map[s])
+		  {
+		    m_outstream.println(tabs + "case " + s + ":");
+		  }
+	      }
+	    m_outstream.println(tabs + "\tyy_next_state = yy_next" + r
+				+ "(yy_cmap[yy_lookahead]);");
+	    m_outstream.println(tabs + "\tbreak;");
+	  }
+	m_outstream.println(tabs + "}");
+      }
 
-	  m_outstream.println("\t\t\tif (yy_initial && yy_at_bol) "+
-			                 "yy_lookahead = YY_BOL;");
-	  m_outstream.println("\t\t\telse yy_lookahead = yy_advance();");
-	  m_outstream.println("\t\t\tyy_next_state = YY_F;");
-	  /*m_outstream.println("\t\t\t\tyy_next_state = "
-				 + "yy_next(yy_state,yy_lookahead);");*/
-	  m_outstream.println("\t\t\tyy_next_state = "
- 	   + "yy_nxt[yy_rmap[yy_state]][yy_cmap[yy_lookahead]];");
+  /***************************************************************
+    Function: row_empty
+    Description: Whether a row of the transition table goes
+    nowhere: YY_F in every column.
+    **************************************************************/
+  private boolean row_empty
+    (
+     int row[]
+     )
+      {
+	int c;
 
-	  if (NOT_EDBG)
-	    {
-	      m_outstream.println("java.lang.System.out.println(\"Current state: \"" 
-				     + " + yy_state");
-	      m_outstream.println("+ \"\tCurrent input: \""); 
-	      m_outstream.println(" + ((char) yy_lookahead));");
-	    }
-	  if (NOT_EDBG)
+	for (c = 0; c < row.length; ++c)
+	  {
+	    if (CDTrans.F != row[c])
+	      {
+		return false;
+	      }
+	  }
+	return true;
+      }
+
+  /***************************************************************
+    Function: state_name
+    Description: The next state as emitted: its number, or YY_F.
+    **************************************************************/
+  private String state_name
+    (
+     int state
+     )
+      {
+	return (CDTrans.F == state) ? "YY_F" : String.valueOf(state);
+      }
+
+  /***************************************************************
+    Function: emit_comb_table
+    Description: Emits the transition table of %comb, packed
+    by row displacement as in flex.  Each state has a default
+    next state, the most common one in its row, and the
+    entries of the row that differ from it are laid into one
+    array, yy_next, from offset yy_base[state] on, with
+    yy_check holding yy_base[state] where they went:
+	   yy_index = yy_base[state] + yy_cmap[c]
+	   next = (yy_check[yy_index] == yy_base[state])
+		   ? yy_next[yy_index] : yy_def[state]
+    The rows are laid in, the fullest first, at the lowest
+    offset where none of their entries collides with those of
+    the rows before; rows are never given the same offset, so
+    the check tells them apart.  States with the same row
+    share it.  Each array is static, of the narrowest type its
+    values fit, and unpacked once from strings (see
+    emit_packed).
+    **************************************************************/
+  private void emit_comb_table
+    (
+     )
+      throws java.io.IOException
+      {
+	int nrows;
+	int ncols;
+	int nstates;
+	int row[];
+	int count[];
+	int order[];
+	int entries[];
+	int def[];
+	int base[];
+	int next[];
+	int check[];
+	int yy_base[];
+	int yy_def[];
+	int yy_cmap[];
+	boolean used[];
+	int size;
+	int r;
+	int c;
+	int i;
+	int k;
+	int b;
+	int n;
+	int t;
+	CDTrans dtrans;
+
+	nrows = m_spec.m_dtrans_vector.size();
+	ncols = m_spec.m_dtrans_ncols;
+	nstates = m_spec.m_row_map.length;
+
+	/* The default of each row, and the number of entries
+	   that differ from it. */
+	def = new int[nrows];
+	entries = new int[nrows];
+	count = new int[nstates + 1];
+	for (r = 0; r < nrows; ++r)
+	  {
+	    row = ((CDTrans) m_spec.m_dtrans_vector.elementAt(r)).m_dtrans;
+	    def[r] = row_default(row,count);
+	    for (c = 0; c < ncols; ++c)
+	      {
+		if (row[c] != def[r])
+		  {
+		    ++entries[r];
+		  }
+	      }
+	  }
+
+	/* Fullest rows first, in order of row otherwise. */
+	order = new int[nrows];
+	for (r = 0; r < nrows; ++r)
+	  {
+	    order[r] = r;
+	  }
+	for (i = 1; i < nrows; ++i)
+	  {
+	    t = order[i];
+	    for (k = i; k > 0 && entries[order[k - 1]] < entries[t]; --k)
+	      {
+		order[k] = order[k - 1];
+	      }
+	    order[k] = t;
+	  }
+
+	size = nrows + ncols;
+	next = new int[size];
+	check = new int[size];
+	used = new boolean[size];
+	for (i = 0; i < size; ++i)
+	  {
+	    check[i] = -1;
+	  }
+	base = new int[nrows];
+	n = 0;
+	for (i = 0; i < nrows; ++i)
+	  {
+	    r = order[i];
+	    row = ((CDTrans) m_spec.m_dtrans_vector.elementAt(r)).m_dtrans;
+	    for (b = 0; ; ++b)
+	      {
+		if (b + ncols > size)
+		  {
+		    size = 2 * size;
+		    next = grow(next,size,0);
+		    check = grow(check,size,-1);
+		    used = grow(used,size);
+		  }
+		if (used[b])
+		  {
+		    continue;
+		  }
+		for (c = 0; c < ncols; ++c)
+		  {
+		    if (row[c] != def[r] && -1 != check[b + c])
+		      {
+			break;
+		      }
+		  }
+		if (c == ncols)
+		  {
+		    break;
+		  }
+	      }
+
+	    base[r] = b;
+	    used[b] = true;
+	    for (c = 0; c < ncols; ++c)
+	      {
+		if (row[c] != def[r])
+		  {
+		    next[b + c] = row[c];
+		    check[b + c] = b;
+		  }
+	      }
+	    n = Math.max(n,b + ncols);
+	  }
+
+	yy_base = new int[nstates];
+	yy_def = new int[nstates];
+	for (i = 0; i < nstates; ++i)
+	  {
+	    yy_base[i] = base[m_spec.m_row_map[i]];
+	    yy_def[i] = def[m_spec.m_row_map[i]];
+	  }
+	yy_cmap = new int[m_spec.m_ccls_map.length];
+	for (i = 0; i < m_spec.m_ccls_map.length; ++i)
+	  {
+	    yy_cmap[i] = m_spec.m_col_map[m_spec.m_ccls_map[i]];
+	  }
+
+	emit_packed("yy_cmap",yy_cmap,yy_cmap.length);
+	emit_packed("yy_base",yy_base,nstates);
+	emit_packed("yy_def",yy_def,nstates);
+	emit_packed("yy_next",next,n);
+	emit_packed("yy_check",check,n);
+	m_outstream.println();
+      }
+
+  /***************************************************************
+    Function: row_default
+    Description: Returns the most common next state in row,
+    CDTrans.F if it is as common as any.  count has an element
+    for each state and one for CDTrans.F, all 0, and is left so.
+    **************************************************************/
+  private int row_default
+    (
+     int row[],
+     int count[]
+     )
+      {
+	int def;
+	int c;
+
+	def = CDTrans.F;
+	for (c = 0; c < row.length; ++c)
+	  {
+	    ++count[row[c] + 1];
+	    if (count[row[c] + 1] > count[def + 1])
+	      {
+		def = row[c];
+	      }
+	  }
+	for (c = 0; c < row.length; ++c)
+	  {
+	    count[row[c] + 1] = 0;
+	  }
+	return def;
+      }
+
+  /***************************************************************
+    Function: grow
+    Description: Returns a copy of a of the given size, with
+    fill in the new elements.
+    **************************************************************/
+  private int[] grow
+    (
+     int a[],
+     int size,
+     int fill
+     )
+      {
+	int b[];
+	int i;
+
+	b = new int[size];
+	System.arraycopy(a,0,b,0,a.length);
+	for (i = a.length; i < size; ++i)
+	  {
+	    b[i] = fill;
+	  }
+	return b;
+      }
+
+  private boolean[] grow
+    (
+     boolean a[],
+     int size
+     )
+      {
+	boolean b[];
+
+	b = new boolean[size];
+	System.arraycopy(a,0,b,0,a.length);
+	return b;
+      }
+
+  /***************************************************************
+    Function: emit_packed
+    Description: Emits the first size elements of values as
+    a static array, name, of the narrowest of byte, short,
+    char and int that holds them, unpacked from strings by
+    a function emitted with the first array of its type.
+    Each element is one char of the strings, its value less
+    an offset (two chars for an int), so unpacking is one
+    pass with no parsing; the strings are cut into chunks of
+    PACK_CHUNK chars, each of which fits in a class file
+    constant.
+    **************************************************************/
+  private void emit_packed
+    (
+     String name,
+     int values[],
+     int size
+     )
+      throws java.io.IOException
+      {
+	int min;
+	int max;
+	int offset;
+	int width;
+	int chars;
+	int i;
+	int v;
+	String type;
+	StringBuffer outstr;
+
+	min = 0;
+	max = 0;
+	for (i = 0; i < size; ++i)
+	  {
+	    min = Math.min(min,values[i]);
+	    max = Math.max(max,values[i]);
+	  }
+	if (Byte.MIN_VALUE <= min && max <= Byte.MAX_VALUE)
+	  {
+	    type = "byte";
+	  }
+	else if (Short.MIN_VALUE <= min && max <= Short.MAX_VALUE)
+	  {
+	    type = "short";
+	  }
+	else if (0 <= min && max <= Character.MAX_VALUE)
+	  {
+	    type = "char";
+	  }
+	else
+	  {
+	    type = "int";
+	  }
+	/* Keep the chars off 0, which takes two bytes in a
+	   class file, where the values allow. */
+	offset = (max - min < Character.MAX_VALUE) ? min - 1 : min;
+
+	if (false == m_unpackers.contains(type))
+	  {
+	    m_unpackers.addElement(type);
+	    emit_unpacker(type);
+	  }
+
+	width = type.equals("int") ? 2 : 1;
+	m_outstream.println("\tprivate static final " + type + " " + name
+			    + "[] = yy_unpack_" + type + "(" + size + ","
+			    + offset + ",new String[] {");
+	outstr = new StringBuffer("\t\t\"");
+	chars = 0;
+	for (i = 0; i < size; ++i)
+	  {
+	    if (chars + width > PACK_CHUNK)
+	      {
+		m_outstream.println(outstr + "\",");
+		outstr = new StringBuffer("\t\t\"");
+		chars = 0;
+	      }
+	    v = values[i] - offset;
+	    if (2 == width)
+	      {
+		append_packed(outstr,(char) (v >>> 16));
+	      }
+	    append_packed(outstr,(char) v);
+	    chars += width;
+	    // CSA: output in 75 character chunks.
+	    if (outstr.length() > 75)
+	      {
+		m_outstream.println(outstr + "\" +");
+		outstr = new StringBuffer("\t\t\"");
+	      }
+	  }
+	m_outstream.println(outstr + "\"});");
+      }
+
+  /***************************************************************
+    Function: append_packed
+    Description: Appends c to a string literal, escaped where
+    it must be.  Octal escapes are used below 256, since a
+    unicode escape of a line break or a quote would end the
+    literal.
+    **************************************************************/
+  private void append_packed
+    (
+     StringBuffer outstr,
+     char c
+     )
+      {
+	String digits;
+
+	if (' ' <= c && c <= '~' && '"' != c && '\\' != c)
+	  {
+	    outstr.append(c);
+	  }
+	else if (c < 256)
+	  {
+	    digits = Integer.toOctalString(c);
+	    outstr.append("\\000".substring(0,4 - digits.length()));
+	    outstr.append(digits);
+	  }
+	else
+	  {
+	    digits = Integer.toHexString(c);
+	    outstr.append("\\u0000".substring(0,6 - digits.length()));
+	    outstr.append(digits);
+	  }
+      }
+
+  /***************************************************************
+    Function: emit_unpacker
+    Description: Emits the function that unpacks the arrays
+    of emit_packed of the given type.
+    **************************************************************/
+  private void emit_unpacker
+    (
+     String type
+     )
+      throws java.io.IOException
+      {
+	m_outstream.println("\tprivate static " + type + "[] yy_unpack_" + type
+			    + " (int size, int offset, String chunks[]) {");
+	m_outstream.println("\t\t" + type + " a[] = new " + type + "[size];");
+	m_outstream.println("\t\tint i = 0;");
+	m_outstream.println("\t\tfor (int k = 0; k < chunks.length; ++k) {");
+	m_outstream.println("\t\t\tString s = chunks[k];");
+	if (type.equals("int"))
+	  {
+	    m_outstream.println("\t\t\tfor (int j = 0; j < s.length(); j += 2) {");
+	    m_outstream.println("\t\t\t\ta[i++] = ((s.charAt(j) << 16) "
+				+ "| s.charAt(j + 1)) + offset;");
+	  }
+	else
+	  {
+	    m_outstream.println("\t\t\tfor (int j = 0; j < s.length(); ++j) {");
+	    m_outstream.println("\t\t\t\ta[i++] = (" + type
+				+ ") (s.charAt(j) + offset);");
+	  }
+	m_outstream.println("\t\t\t}");
+	m_outstream.println("\t\t}");
+	m_outstream.println("\t\treturn a;");
+	m_outstream.println("\t}");
+      }
+
+  /***************************************************************
+    Function: emit_driver
+    Description: 
+    **************************************************************/
+  private void emit_driver
+    (
+     )
+      throws java.io.IOException
+	{
+	  if (CUtility.DEBUG)
 	    {
-	      m_outstream.println("\t\t\tjava.lang.System.out.println(\"State = \"" 
-				     + "+ yy_state);");
-	      m_outstream.println("\t\t\tjava.lang.System.out.println(\"Accepting status = \"" 
-				     + "+ yy_this_accept);");
-	      m_outstream.println("\t\t\tjava.lang.System.out.println(\"Last accepting state = \"" 
-				     + "+ yy_last_accept_state);");
-	      m_outstream.println("\t\t\tjava.lang.System.out.println(\"Next state = \"" 
-				     + "+ yy_next_state);");
-	      m_outstream.println("\t\t\tjava.lang.System.out.println(\"Lookahead input = \"" 
-				     + "+ ((char) yy_lookahead));");
+	      CUtility.ASSERT(null != m_spec);
+	      CUtility.ASSERT(null != m_outstream);
+	    }
+	  
+	  emit_table();
+
+	  if (m_spec.m_integer_type)
+	    {
+	      m_outstream.print("\tpublic int ");
+	      m_outstream.print(new String(m_spec.m_function_name));
+	      m_outstream.println(" ()");
+	    }
+	  else if (m_spec.m_intwrap_type)
+	    {
+	      m_outstream.print("\tpublic java.lang.Integer ");
+	      m_outstream.print(new String(m_spec.m_function_name));
+	      m_outstream.println(" ()");
+	    }
+	  else
+	    {
+	      m_outstream.print("\tpublic ");
+	      m_outstream.print(new String(m_spec.m_type_name));
+	      m_outstream.print(" ");
+	      m_outstream.print(new String(m_spec.m_function_name));
+	      m_outstream.println(" ()");
+	    }
+
+	  /*m_outstream.println("\t\tthrows java.io.IOException {");*/
+	  m_outstream.print("\t\tthrows java.io.IOException");
+	  if (null != m_spec.m_yylex_throw_code)
+	    {
+	      m_outstream.print(", "); 
+	      m_outstream.print(new String(m_spec.m_yylex_throw_code,0,
+						m_spec.m_yylex_throw_read));
+	      m_outstream.println();
+	      m_outstream.println("\t\t{");
+	    }
+	  else
+	    {
+	      m_outstream.println(" {");
 	    }
 
-	  // handle bare EOF.
-	  m_outstream.println("\t\t\tif (YY_EOF == yy_lookahead " 
-				 + "&& true == yy_initial) {");
-	  if (null != m_spec.m_eof_code)
-	    {
-	      m_outstream.println("\t\t\t\tyy_do_eof();");
-	    }
-	  if (true == m_spec.m_integer_type)
-	    {
-	      m_outstream.println("\t\t\t\treturn YYEOF;");
-	    }
-	  else if (null != m_spec.m_eof_value_code) 
-	    {
-	      m_outstream.print(new String(m_spec.m_eof_value_code,0,
-						m_spec.m_eof_value_read));
-	    }
-	  else
-	    {
-	      m_outstream.println("\t\t\t\treturn null;");
-	    }
-	  m_outstream.println("\t\t\t}");
+	  m_outstream.println("\t\tint yy_lookahead;");
+	  m_outstream.println("\t\tint yy_anchor = YY_NO_ANCHOR;");
+	  /*m_outstream.println("\t\tint yy_state "
+	    + "= yy_initial_dtrans(yy_lexical_state);");*/
+	  m_outstream.println("\t\tint yy_state " 
+				 + "= yy_state_dtrans[yy_lexical_state];");
+	  m_outstream.println("\t\tint yy_next_state = YY_NO_STATE;");
+	  /*m_outstream.println("\t\tint yy_prev_stave = YY_NO_STATE;");*/
+	  m_outstream.println("\t\tint yy_last_accept_state = YY_NO_STATE;");
+    	  m_outstream.println("\t\tboolean yy_initial = true;");
+	  m_outstream.println("\t\tint yy_this_accept;");
+	  if (m_spec.m_comb && false == m_spec.m_switch)
+	    {
+	      m_outstream.println("\t\tint yy_index;");
+	    }
+	  m_outstream.println();
+
+	  m_outstream.println("\t\tyy_mark_start();");
+	  /*m_outstream.println("\t\tyy_this_accept = yy_accept(yy_state);");*/
+	  m_outstream.println("\t\tyy_this_accept = yy_acpt[yy_state];");
+	  m_outstream.println("\t\tif (YY_NOT_ACCEPT != yy_this_accept) {");
+	  m_outstream.println("\t\t\tyy_last_accept_state = yy_state;");
+	  m_outstream.println("\t\t\tyy_mark_end();");
+	  m_outstream.println("\t\t}");
+
+	  if (NOT_EDBG)
+	    {
+	      m_outstream.println("\t\tjava.lang.System.out.println(\"Begin\");");
+	    }
+
+	  m_outstream.println("\t\twhile (true) {");
+
+	  m_outstream.println("\t\t\tif (yy_initial && yy_at_bol) "+
+			                 "yy_lookahead = YY_BOL;");
+	  m_outstream.println("\t\t\telse yy_lookahead = yy_advance();");
+	  m_outstream.println("\t\t\tyy_next_state = YY_F;");
+	  /*m_outstream.println("\t\t\t\tyy_next_state = "
+				 + "yy_next(yy_state,yy_lookahead);");*/
+	  if (m_spec.m_switch)
+	    {
+	      emit_switch("\t\t\t");
+	    }
+	  else if (m_spec.m_comb)
+	    {
+	      m_outstream.println("\t\t\tyy_index = yy_base[yy_state] "
+				  + "+ yy_cmap[yy_lookahead];");
+	      m_outstream.println("\t\t\tyy_next_state = "
+				  + "(yy_check[yy_index] == yy_base[yy_state])");
+	      m_outstream.println("\t\t\t\t? yy_next[yy_index] "
+				  + ": yy_def[yy_state];");
+	    }
+	  else
+	    {
+	      m_outstream.println("\t\t\tyy_next_state = "
+		+ "yy_nxt[yy_rmap[yy_state]][yy_cmap[yy_lookahead]];");
+	    }
+
+	  if (NOT_EDBG)
+	    {
+	      m_outstream.println("java.lang.System.out.println(\"Current state: \"" 
+				     + " + yy_state");
+	      m_outstream.println("+ \"\tCurrent input: \""); 
+	      m_outstream.println(" + ((char) yy_lookahead));");
+	    }
+	  if (NOT_EDBG)
+	    {
+	      m_outstream.println("\t\t\tjava.lang.System.out.println(\"State = \"" 
+				     + "+ yy_state);");
+	      m_outstream.println("\t\t\tjava.lang.System.out.println(\"Accepting status = \"" 
+				     + "+ yy_this_accept);");
+	      m_outstream.println("\t\t\tjava.lang.System.out.println(\"Last accepting state = \"" 
+				     + "+ yy_last_accept_state);");
+	      m_outstream.println("\t\t\tjava.lang.System.out.println(\"Next state = \"" 
+				     + "+ yy_next_state);");
+	      m_outstream.println("\t\t\tjava.lang.System.out.println(\"Lookahead input = \"" 
+				     + "+ ((char) yy_lookahead));");
+	    }
+
+	  // handle bare EOF.
+	  m_outstream.println("\t\t\tif (YY_EOF == yy_lookahead " 
+				 + "&& true == yy_initial) {");
+	  if (null != m_spec.m_eof_code)
+	    {
+	      m_outstream.println("\t\t\t\tyy_do_eof();");
+	    }
+	  if (true == m_spec.m_integer_type)
+	    {
+	      m_outstream.println("\t\t\t\treturn YYEOF;");
+	    }
+	  else if (null != m_spec.m_eof_value_code) 
+	    {
+	      m_outstream.print(new String(m_spec.m_eof_value_code,0,
+						m_spec.m_eof_value_read));
+	    }
+	  else
+	    {
+	      m_outstream.println("\t\t\t\treturn null;");
+	    }
+	  m_outstream.println("\t\t\t}");
+
+	  m_outstream.println("\t\t\tif (YY_F != yy_next_state) {");
+	  m_outstream.println("\t\t\t\tyy_state = yy_next_state;");
+     	  m_outstream.println("\t\t\t\tyy_initial = false;");
+     	  /*m_outstream.println("\t\t\t\tyy_this_accept = yy_accept(yy_state);");*/
+	  m_outstream.println("\t\t\t\tyy_this_accept = yy_acpt[yy_state];");
+	  m_outstream.println("\t\t\t\tif (YY_NOT_ACCEPT != yy_this_accept) {");
+	  m_outstream.println("\t\t\t\t\tyy_last_accept_state = yy_state;");
+	  m_outstream.println("\t\t\t\t\tyy_mark_end();");
+	  m_outstream.println("\t\t\t\t}");
+	  /*m_outstream.println("\t\t\t\tyy_prev_state = yy_state;");*/
+	  /*m_outstream.println("\t\t\t\tyy_state = yy_next_state;");*/
+	  m_outstream.println("\t\t\t}");
+
+	  m_outstream.println("\t\t\telse {");
+	  
+	  m_outstream.println("\t\t\t\tif (YY_NO_STATE == yy_last_accept_state) {");
+	  
+
+	  /*m_outstream.println("\t\t\t\t\tyy_error(YY_E_MATCH,false);");
+    	  m_outstream.println("\t\t\t\t\tyy_initial = true;");
+	  m_outstream.println("\t\t\t\t\tyy_state "
+				 + "= yy_state_dtrans[yy_lexical_state];");
+	  m_outstream.println("\t\t\t\t\tyy_next_state = YY_NO_STATE;");*/
+	  /*m_outstream.println("\t\t\t\t\tyy_prev_state = YY_NO_STATE;");*/
+	  /*m_outstream.println("\t\t\t\t\tyy_last_accept_state = YY_NO_STATE;");
+	  m_outstream.println("\t\t\t\t\tyy_mark_start();");*/
+	  /*m_outstream.println("\t\t\t\t\tyy_this_accept = yy_accept(yy_state);");*/
+	  /*m_outstream.println("\t\t\t\t\tyy_this_accept = yy_acpt[yy_state];");
+	  m_outstream.println("\t\t\t\t\tif (YY_NOT_ACCEPT != yy_this_accept) {");
+	  m_outstream.println("\t\t\t\t\t\tyy_last_accept_state = yy_state;");
+	  m_outstream.println("\t\t\t\t\t}");*/
+
+	  m_outstream.println("\t\t\t\t\tthrow (new Error(\"Lexical Error: Unmatched Input.\"));");
+	  m_outstream.println("\t\t\t\t}");
+
+	  m_outstream.println("\t\t\t\telse {");
+
+	  m_outstream.println("\t\t\t\t\tyy_anchor = yy_acpt[yy_last_accept_state];");
+	  /*m_outstream.println("\t\t\t\t\tyy_anchor " 
+	    + "= yy_accept(yy_last_accept_state);");*/
+	  m_outstream.println("\t\t\t\t\tif (0 != (YY_END & yy_anchor)) {");
+	  m_outstream.println("\t\t\t\t\t\tyy_move_end();");
+	  m_outstream.println("\t\t\t\t\t}");
+	  m_outstream.println("\t\t\t\t\tyy_to_mark();");
+
+	  m_outstream.println("\t\t\t\t\tswitch (yy_last_accept_state) {");
+
+	  emit_actions("\t\t\t\t\t");
+
+	  m_outstream.println("\t\t\t\t\tdefault:");
+	  m_outstream.println("\t\t\t\t\t\tyy_error(YY_E_INTERNAL,false);");
+	  /*m_outstream.println("\t\t\t\t\t\treturn null;");*/
+	  m_outstream.println("\t\t\t\t\tcase -1:");
+	  m_outstream.println("\t\t\t\t\t}");
+	  
+    	  m_outstream.println("\t\t\t\t\tyy_initial = true;");
+	  m_outstream.println("\t\t\t\t\tyy_state "
+				 + "= yy_state_dtrans[yy_lexical_state];");
+	  m_outstream.println("\t\t\t\t\tyy_next_state = YY_NO_STATE;");
+	  /*m_outstream.println("\t\t\t\t\tyy_prev_state = YY_NO_STATE;");*/
+	  m_outstream.println("\t\t\t\t\tyy_last_accept_state = YY_NO_STATE;");
+
+	  m_outstream.println("\t\t\t\t\tyy_mark_start();");
+
+	  /*m_outstream.println("\t\t\t\t\tyy_this_accept = yy_accept(yy_state);");*/
+	  m_outstream.println("\t\t\t\t\tyy_this_accept = yy_acpt[yy_state];");
+	  m_outstream.println("\t\t\t\t\tif (YY_NOT_ACCEPT != yy_this_accept) {");
+	  m_outstream.println("\t\t\t\t\t\tyy_last_accept_state = yy_state;");
+	  m_outstream.println("\t\t\t\t\t\tyy_mark_end();");
+	  m_outstream.println("\t\t\t\t\t}");
+
+	  m_outstream.println("\t\t\t\t}");	  
+	  m_outstream.println("\t\t\t}");
+	  m_outstream.println("\t\t}");
+	  m_outstream.println("\t}");
+
+	  /*m_outstream.println("\t\t\t\t");
+	  m_outstream.println("\t\t\t");
+	  m_outstream.println("\t\t\t");
+	  m_outstream.println("\t\t\t");
+	  m_outstream.println("\t\t\t");
+	  m_outstream.println("\t\t}");*/
+	}
+  
+  /***************************************************************
+    Function: emit_actions
+    Description:     
+    **************************************************************/
+  private void emit_actions 
+    (
+     String tabs
+     )
+      throws java.io.IOException
+	{
+	  int elem;
+	  int size;
+	  int bogus_index;
+	  CAccept accept;
+	  
+	  if (CUtility.DEBUG)
+	    {
+	      CUtility.ASSERT(m_spec.m_accept_vector.size() 
+			      == m_spec.m_anchor_array.length);
+	    }
+
+	  bogus_index = -2;
+	  size = m_spec.m_accept_vector.size();
+	  for (elem = 0; elem < size; ++elem)
+	    {
+	      accept = (CAccept) m_spec.m_accept_vector.elementAt(elem);
+	      if (null != accept) 
+		{
+		  m_outstream.println(tabs + "case " + elem 
+					 + ":");
+		  m_outstream.print(tabs + "\t");
+		  m_outstream.print(new String(accept.m_action,0,
+						    accept.m_action_read));
+		  m_outstream.println();
+		  m_outstream.println(tabs + "case " + bogus_index + ":");
+		  m_outstream.println(tabs + "\tbreak;");
+		  --bogus_index;
+		}
+	    }
+	}
+  
+  /***************************************************************
+    Function: emit_footer
+    Description:     
+    **************************************************************/
+  private void emit_footer
+    (
+     )
+      throws java.io.IOException
+      {
+	if (CUtility.DEBUG)
+	  {
+	    CUtility.ASSERT(null != m_spec);
+	    CUtility.ASSERT(null != m_outstream);
+	  }
+
+	m_outstream.println("}");
+      }
+}
+
+/***************************************************************
+  Class: CBunch
+  **************************************************************/
+class CBunch
+{
+  /***************************************************************
+    Member Variables
+    **************************************************************/
+  Vector m_nfa_set; /* Vector of CNfa states in dfa state. */
+  SparseBitSet m_nfa_bit; /* BitSet representation of CNfa labels. */
+  CAccept m_accept; /* Accepting actions, or null if nonaccepting state. */
+  int m_anchor; /* Anchors on regular expression. */
+  int m_accept_index; /* CNfa index corresponding to accepting actions. */
+
+  /***************************************************************
+    Function: CBunch
+    Description: Constructor.
+    **************************************************************/
+  CBunch
+    (
+     )
+      {
+	m_nfa_set = null;
+	m_nfa_bit = null;
+	m_accept = null;
+	m_anchor = CSpec.NONE;
+	m_accept_index = -1;
+      }
+}
+
+/***************************************************************
+  Class: CMakeNfa
+  **************************************************************/
+class CMakeNfa
+{
+  /***************************************************************
+    Member Variables
+    **************************************************************/
+  private CSpec m_spec;
+  private CLexGen m_lexGen;
+  private CInput m_input;
+
+  /***************************************************************
+    Function: CMakeNfa
+    Description: Constructor.
+    **************************************************************/
+  CMakeNfa
+    (
+     )
+      {
+	reset();
+      }
+
+  /***************************************************************
+    Function: reset
+    Description: Resets CMakeNfa member variables.
+    **************************************************************/
+  private void reset
+    (
+     )
+      {
+	m_input = null;
+	m_lexGen = null;
+	m_spec = null;
+      }
+
+  /***************************************************************
+    Function: set
+    Description: Sets CMakeNfa member variables.
+    **************************************************************/
+  private void set
+    (
+     CLexGen lexGen,
+     CSpec spec,
+     CInput input
+     )
+      {
+	if (CUtility.DEBUG)
+	  {
+	    CUtility.ASSERT(null != input);
+	    CUtility.ASSERT(null != lexGen);
+	    CUtility.ASSERT(null != spec);
+	  }
+
+	m_input = input;
+	m_lexGen = lexGen;
+	m_spec = spec;
+      }
+
+  /***************************************************************
+    Function: allocate_BOL_EOF
+    Description: Expands character class to include special BOL and
+    EOF characters.  Puts numeric index of these characters in
+    input CSpec.
+    **************************************************************/
+  void allocate_BOL_EOF
+    (
+     CSpec spec
+     )
+	{
+	  CUtility.ASSERT(CSpec.NUM_PSEUDO==2);
+	  spec.BOL = spec.m_dtrans_ncols++;
+	  spec.EOF = spec.m_dtrans_ncols++;
+	}
+
+  /***************************************************************
+    Function: thompson
+    Description: High level access function to module.
+    Deposits result in input CSpec.
+    **************************************************************/
+  void thompson
+    (
+     CLexGen lexGen,
+     CSpec spec,
+     CInput input
+     )
+      throws java.io.IOException      
+	{
+	  int i;
+	  CNfa elem;
+	  int size;
+
+	  /* Set member variables. */
+	  reset();
+	  set(lexGen,spec,input);
+
+	  size = m_spec.m_states.size();
+	  m_spec.m_state_rules = new Vector[size];
+	  for (i = 0; i < size; ++i)
+	    {
+	      m_spec.m_state_rules[i] = new Vector();
+	    }
+
+	  /* Initialize current token variable 
+	     and create nfa. */
+	  /*m_spec.m_current_token = m_lexGen.EOS;
+	  m_lexGen.advance();*/
+
+	  m_spec.m_nfa_start = machine();
+	  
+	  /* Set labels in created nfa machine. */
+	  size = m_spec.m_nfa_states.size();
+	  for (i = 0; i < size; ++i)
+	    {
+	      elem = (CNfa) m_spec.m_nfa_states.elementAt(i);
+	      elem.m_label = i;
+	    }
+
+	  /* Debugging output. */
+	  if (CUtility.DO_DEBUG)
+	    {
+	      m_lexGen.print_nfa();
+	    }
+
+	  if (m_spec.m_verbose)
+	    {
+	      System.out.println("NFA comprised of " 
+				 + (m_spec.m_nfa_states.size() + 1) 
+				 + " states.");
+	    }
+
+	  reset();
+	}
+     
+  /***************************************************************
+    Function: discardCNfa
+    Description: 
+    **************************************************************/
+  private void discardCNfa
+    (
+     CNfa nfa
+     )
+      {
+	m_spec.m_nfa_states.removeElement(nfa);
+      }
+
+  /***************************************************************
+    Function: processStates
+    Description:
+    **************************************************************/
+  private void processStates
+    (
+     SparseBitSet states,
+     CNfa current
+     )
+      {
+	int size;
+	int i;
+	
+	size = m_spec.m_states.size();
+	for (i = 0; i <  size; ++i)
+	  {
+	    if (states.get(i))
+	      {
+		m_spec.m_state_rules[i].addElement(current);
+	      }
+	  }
+      }
+
+  /***************************************************************
+    Function: machine
+    Description: Recursive descent regular expression parser.
+    **************************************************************/
+  private CNfa machine
+    (
+     )
+      throws java.io.IOException 
+      {
+	CNfa start;
+	CNfa p;
+	SparseBitSet states;
+
+	if (CUtility.DESCENT_DEBUG)
+	  {
+	    CUtility.enter("machine",m_spec.m_lexeme,m_spec.m_current_token);
+	  }
+
+	start = CAlloc.newCNfa(m_spec);
+	p = start;
+	    
+	states = m_lexGen.getStates();
+
+	/* Begin: Added for states. */
+	m_spec.m_current_token = m_lexGen.EOS;
+	m_lexGen.advance();
+	/* End: Added for states. */
+	
+	if (m_lexGen.END_OF_INPUT != m_spec.m_current_token) // CSA fix.
+	  {
+	    p.m_next = rule();
+	    
+	    processStates(states,p.m_next);
+	  }
+
+	while (m_lexGen.END_OF_INPUT != m_spec.m_current_token)
+	  {
+	    /* Make state changes HERE. */
+	    states = m_lexGen.getStates();
+	
+	    /* Begin: Added for states. */
+	    m_lexGen.advance();
+	    if (m_lexGen.END_OF_INPUT == m_spec.m_current_token)
+	      { 
+		break;
+	      }
+	    /* End: Added for states. */
+	    
+	    p.m_next2 = CAlloc.newCNfa(m_spec);
+	    p = p.m_next2;
+	    p.m_next = rule();
+	    
+	    processStates(states,p.m_next);
+	  }
+
+	// CSA: add pseudo-rules for BOL and EOF
+	SparseBitSet all_states = new SparseBitSet();
+	for (int i = 0; i < m_spec.m_states.size(); ++i)
+		all_states.set(i);
+	p.m_next2 = CAlloc.newCNfa(m_spec);
+	p = p.m_next2;
+	p.m_next = CAlloc.newCNfa(m_spec);
+	p.m_next.m_edge = CNfa.CCL;
+	p.m_next.m_next = CAlloc.newCNfa(m_spec);
+	p.m_next.m_set = new CSet();
+	p.m_next.m_set.add(m_spec.BOL);
+	p.m_next.m_set.add(m_spec.EOF);
+	p.m_next.m_next.m_accept = // do-nothing accept rule
+	    new CAccept(new char[0], 0, m_input.m_line_number+1);
+	processStates(all_states,p.m_next);
+	// CSA: done. 
+
+	if (CUtility.DESCENT_DEBUG)
+	  {
+	    CUtility.leave("machine",m_spec.m_lexeme,m_spec.m_current_token);
+	  }
+
+	return start;
+      }
+  
+  /***************************************************************
+    Function: rule
+    Description: Recursive descent regular expression parser.
+    **************************************************************/
+  private CNfa rule
+    (
+     )
+      throws java.io.IOException 
+      {
+	CNfaPair pair; 
+	CNfa p;
+	CNfa start = null;
+	CNfa end = null;
+	int anchor = CSpec.NONE;
+
+	if (CUtility.DESCENT_DEBUG)
+	  {
+	    CUtility.enter("rule",m_spec.m_lexeme,m_spec.m_current_token);
+	  }
+
+	pair = CAlloc.newCNfaPair();
+
+	if (m_lexGen.AT_BOL == m_spec.m_current_token)
+	  {
+	    anchor = anchor | CSpec.START;
+	    m_lexGen.advance();
+	    expr(pair);
+
+	    // CSA: fixed beginning-of-line operator. 8-aug-1999
+	    start = CAlloc.newCNfa(m_spec);
+	    start.m_edge = m_spec.BOL;
+	    start.m_next = pair.m_start;
+	    end = pair.m_end;
+	  }
+	else
+	  {
+	    expr(pair);
+	    start = pair.m_start;
+	    end = pair.m_end;
+	  }
+
+	if (m_lexGen.AT_EOL == m_spec.m_current_token)
+	  {
+	    m_lexGen.advance();
+	    // CSA: fixed end-of-line operator. 8-aug-1999
+	    CNfaPair nlpair = CAlloc.newNLPair(m_spec);
+	    end.m_next = CAlloc.newCNfa(m_spec);
+	    end.m_next.m_next = nlpair.m_start;
+	    end.m_next.m_next2 = CAlloc.newCNfa(m_spec);
+	    end.m_next.m_next2.m_edge = m_spec.EOF;
+	    end.m_next.m_next2.m_next = nlpair.m_end;
+	    end = nlpair.m_end;
+	    anchor = anchor | CSpec.END;
+	  }
+
+	/* Check for null rules. Charles Fischer found this bug. [CSA] */
+	if (end==null)
+	    CError.parse_error(CError.E_ZERO, m_input.m_line_number);
+
+	/* Handle end of regular expression.  See page 103. */
+	end.m_accept = m_lexGen.packAccept();
+	end.m_anchor = anchor;
+
+	/* Begin: Removed for states. */
+	/*m_lexGen.advance();*/
+	/* End: Removed for states. */
+
+	if (CUtility.DESCENT_DEBUG)
+	  {
+	    CUtility.leave("rule",m_spec.m_lexeme,m_spec.m_current_token);
+	  }
+
+	return start;
+      }
+	    
+  /***************************************************************
+    Function: expr
+    Description: Recursive descent regular expression parser.
+    **************************************************************/
+  private void expr
+    (
+     CNfaPair pair
+     )
+      throws java.io.IOException 
+      {
+	CNfaPair e2_pair;
+	CNfa p;
+	
+	if (CUtility.DESCENT_DEBUG)
+	  {
+	    CUtility.enter("expr",m_spec.m_lexeme,m_spec.m_current_token);
+	  }
+
+	if (CUtility.DEBUG)
+	  {
+	    CUtility.ASSERT(null != pair);
+	  }
+
+	e2_pair = CAlloc.newCNfaPair();
+
+	cat_expr(pair);
+	
+	while (m_lexGen.OR == m_spec.m_current_token)
+	  {
+	    m_lexGen.advance();
+	    cat_expr(e2_pair);
+
+	    p = CAlloc.newCNfa(m_spec);
+	    p.m_next2 = e2_pair.m_start;
+	    p.m_next = pair.m_start;
+	    pair.m_start = p;
+	    
+	    p = CAlloc.newCNfa(m_spec);
+	    pair.m_end.m_next = p;
+	    e2_pair.m_end.m_next = p;
+	    pair.m_end = p;
+	  }
+
+	if (CUtility.DESCENT_DEBUG)
+	  {
+	    CUtility.leave("expr",m_spec.m_lexeme,m_spec.m_current_token);
+	  }
+      }
+	    
+  /***************************************************************
+    Function: cat_expr
+    Description: Recursive descent regular expression parser.
+    **************************************************************/
+  private void cat_expr
+    (
+     CNfaPair pair
+     )
+      throws java.io.IOException 
+      {
+	CNfaPair e2_pair;
+
+	if (CUtility.DESCENT_DEBUG)
+	  {
+	    CUtility.enter("cat_expr",m_spec.m_lexeme,m_spec.m_current_token);
+	  }
+
+	if (CUtility.DEBUG)
+	  {
+	    CUtility.ASSERT(null != pair);
+	  }
+	
+	e2_pair = CAlloc.newCNfaPair();
+	
+	if (first_in_cat(m_spec.m_current_token))
+	  {
+	    factor(pair);
+	  }
+
+	while (first_in_cat(m_spec.m_current_token))
+	  {
+	    factor(e2_pair);
+
+	    /* Destroy */
+	    pair.m_end.mimic(e2_pair.m_start);
+	    discardCNfa(e2_pair.m_start);
+	    
+	    pair.m_end = e2_pair.m_end;
+	  }
+
+	if (CUtility.DESCENT_DEBUG)
+	  {
+	    CUtility.leave("cat_expr",m_spec.m_lexeme,m_spec.m_current_token);
+	  }
+      }
+  
+  /***************************************************************
+    Function: first_in_cat
+    Description: Recursive descent regular expression parser.
+    **************************************************************/
+  private boolean first_in_cat
+    (
+     int token
+     )
+      {
+	switch (token)
+	  {
+	  case CLexGen.CLOSE_PAREN:
+	  case CLexGen.AT_EOL:
+	  case CLexGen.OR:
+	  case CLexGen.EOS:
+	    return false;
+	    
+	  case CLexGen.CLOSURE:
+	  case CLexGen.PLUS_CLOSE:
+	  case CLexGen.OPTIONAL:
+	    CError.parse_error(CError.E_CLOSE,m_input.m_line_number);
+	    return false;
+
+	  case CLexGen.CCL_END:
+	    CError.parse_error(CError.E_BRACKET,m_input.m_line_number);
+	    return false;
+
+	  case CLexGen.AT_BOL:
+	    CError.parse_error(CError.E_BOL,m_input.m_line_number);
+	    return false;
 
-	  m_outstream.println("\t\t\tif (YY_F != yy_next_state) {");
-	  m_outstream.println("\t\t\t\tyy_state = yy_next_state;");
-     	  m_outstream.println("\t\t\t\tyy_initial = false;");
-     	  /*m_outstream.println("\t\t\t\tyy_this_accept = yy_accept(yy_state);");*/
-	  m_outstream.println("\t\t\t\tyy_this_accept = yy_acpt[yy_state];");
-	  m_outstream.println("\t\t\t\tif (YY_NOT_ACCEPT != yy_this_accept) {");
-	  m_outstream.println("\t\t\t\t\tyy_last_accept_state = yy_state;");
-	  m_outstream.println("\t\t\t\t\tyy_mark_end();");
-	  m_outstream.println("\t\t\t\t}");
-	  /*m_outstream.println("\t\t\t\tyy_prev_state = yy_state;");*/
-	  /*m_outstream.println("\t\t\t\tyy_state = yy_next_state;");*/
-	  m_outstream.println("\t\t\t}");
+	  default:
+	    break;
+	  }
 
-	  m_outstream.println("\t\t\telse {");
-	  
-	  m_outstream.println("\t\t\t\tif (YY_NO_STATE == yy_last_accept_state) {");
-	  
+	return true;
+      }
 
-	  /*m_outstream.println("\t\t\t\t\tyy_error(YY_E_MATCH,false);");
-    	  m_outstream.println("\t\t\t\t\tyy_initial = true;");
-	  m_outstream.println("\t\t\t\t\tyy_state "
-				 + "= yy_state_dtrans[yy_lexical_state];");
-	  m_outstream.println("\t\t\t\t\tyy_next_state = YY_NO_STATE;");*/
-	  /*m_outstream.println("\t\t\t\t\tyy_prev_state = YY_NO_STATE;");*/
-	  /*m_outstream.println("\t\t\t\t\tyy_last_accept_state = YY_NO_STATE;");
-	  m_outstream.println("\t\t\t\t\tyy_mark_start();");*/
-	  /*m_outstream.println("\t\t\t\t\tyy_this_accept = yy_accept(yy_state);");*/
-	  /*m_outstream.println("\t\t\t\t\tyy_this_accept = yy_acpt[yy_state];");
-	  m_outstream.println("\t\t\t\t\tif (YY_NOT_ACCEPT != yy_this_accept) {");
-	  m_outstream.println("\t\t\t\t\t\tyy_last_accept_state = yy_state;");
-	  m_outstream.println("\t\t\t\t\t}");*/
+  /***************************************************************
+    Function: factor
+    Description: Recursive descent regular expression parser.
+    **************************************************************/
+  private void factor
+    (
+     CNfaPair pair
+     )
+      throws java.io.IOException 
+      {
+	CNfa start = null;
+	CNfa end = null;
 
-	  m_outstream.println("\t\t\t\t\tthrow (new Error(\"Lexical Error: Unmatched Input.\"));");
-	  m_outstream.println("\t\t\t\t}");
+	if (CUtility.DESCENT_DEBUG)
+	  {
+	    CUtility.enter("factor",m_spec.m_lexeme,m_spec.m_current_token);
+	  }
 
-	  m_outstream.println("\t\t\t\telse {");
+	term(pair);
 
-	  m_outstream.println("\t\t\t\t\tyy_anchor = yy_acpt[yy_last_accept_state];");
-	  /*m_outstream.println("\t\t\t\t\tyy_anchor " 
-	    + "= yy_accept(yy_last_accept_state);");*/
-	  m_outstream.println("\t\t\t\t\tif (0 != (YY_END & yy_anchor)) {");
-	  m_outstream.println("\t\t\t\t\t\tyy_move_end();");
-	  m_outstream.println("\t\t\t\t\t}");
-	  m_outstream.println("\t\t\t\t\tyy_to_mark();");
+	if (m_lexGen.CLOSURE == m_spec.m_current_token
+	    || m_lexGen.PLUS_CLOSE == m_spec.m_current_token
+	    || m_lexGen.OPTIONAL == m_spec.m_current_token)
+	  {
+	    start = CAlloc.newCNfa(m_spec);
+	    end = CAlloc.newCNfa(m_spec);
+	    
+	    start.m_next = pair.m_start;
+	    pair.m_end.m_next = end;
 
-	  m_outstream.println("\t\t\t\t\tswitch (yy_last_accept_state) {");
+	    if (m_lexGen.CLOSURE == m_spec.m_current_token
+		|| m_lexGen.OPTIONAL == m_spec.m_current_token)
+	      {
+		start.m_next2 = end;
+	      }
+	    
+	    if (m_lexGen.CLOSURE == m_spec.m_current_token
+		|| m_lexGen.PLUS_CLOSE == m_spec.m_current_token)
+	      {
+		pair.m_end.m_next2 = pair.m_start;
+	      }
+	    
+	    pair.m_start = start;
+	    pair.m_end = end;
+	    m_lexGen.advance();
+	  }
 
-	  emit_actions("\t\t\t\t\t");
+	if (CUtility.DESCENT_DEBUG)
+	  {
+	    CUtility.leave("factor",m_spec.m_lexeme,m_spec.m_current_token);
+	  }
+      }
+      
+  /***************************************************************
+    Function: term
+    Description: Recursive descent regular expression parser.
+    **************************************************************/
+  private void term
+    (
+     CNfaPair pair
+     )
+      throws java.io.IOException 
+      {
+	CNfa start;
+	boolean isAlphaL;
+	int c;
 
-	  m_outstream.println("\t\t\t\t\tdefault:");
-	  m_outstream.println("\t\t\t\t\t\tyy_error(YY_E_INTERNAL,false);");
-	  /*m_outstream.println("\t\t\t\t\t\treturn null;");*/
-	  m_outstream.println("\t\t\t\t\tcase -1:");
-	  m_outstream.println("\t\t\t\t\t}");
-	  
-    	  m_outstream.println("\t\t\t\t\tyy_initial = true;");
-	  m_outstream.println("\t\t\t\t\tyy_state "
-				 + "= yy_state_dtrans[yy_lexical_state];");
-	  m_outstream.println("\t\t\t\t\tyy_next_state = YY_NO_STATE;");
-	  /*m_outstream.println("\t\t\t\t\tyy_prev_state = YY_NO_STATE;");*/
-	  m_outstream.println("\t\t\t\t\tyy_last_accept_state = YY_NO_STATE;");
+	if (CUtility.DESCENT_DEBUG)
+	  {
+	    CUtility.enter("term",m_spec.m_lexeme,m_spec.m_current_token);
+	  }
 
-	  m_outstream.println("\t\t\t\t\tyy_mark_start();");
+	if (m_lexGen.OPEN_PAREN == m_spec.m_current_token)
+	  {
+	    m_lexGen.advance();
+	    expr(pair);
 
-	  /*m_outstream.println("\t\t\t\t\tyy_this_accept = yy_accept(yy_state);");*/
-	  m_outstream.println("\t\t\t\t\tyy_this_accept = yy_acpt[yy_state];");
-	  m_outstream.println("\t\t\t\t\tif (YY_NOT_ACCEPT != yy_this_accept) {");
-	  m_outstream.println("\t\t\t\t\t\tyy_last_accept_state = yy_state;");
-	  m_outstream.println("\t\t\t\t\t\tyy_mark_end();");
-	  m_outstream.println("\t\t\t\t\t}");
+	    if (m_lexGen.CLOSE_PAREN == m_spec.m_current_token)
+	      {
+		m_lexGen.advance();
+	      }
+	    else
+	      {
+		CError.parse_error(CError.E_SYNTAX,m_input.m_line_number);
+	      }
+	  }
+	else
+	  {
+	    start = CAlloc.newCNfa(m_spec);
+	    pair.m_start = start;
 
-	  m_outstream.println("\t\t\t\t}");	  
-	  m_outstream.println("\t\t\t}");
-	  m_outstream.println("\t\t}");
-	  m_outstream.println("\t}");
+	    start.m_next = CAlloc.newCNfa(m_spec);
+	    pair.m_end = start.m_next;
+
+	    if (m_lexGen.L == m_spec.m_current_token &&
+		Character.isLetter(m_spec.m_lexeme)) 
+	      {
+		isAlphaL = true;
+	      } 
+	    else 
+	      {
+		isAlphaL = false;
+	      }
+	    if (false == (m_lexGen.ANY == m_spec.m_current_token
+			  || m_lexGen.CCL_START == m_spec.m_current_token
+			  || (m_spec.m_ignorecase && isAlphaL)))
+	      {
+		start.m_edge = m_spec.m_lexeme;
+		m_lexGen.advance();
+	      }
+	    else
+	      {
+		start.m_edge = CNfa.CCL;
+		
+		start.m_set = new CSet();
+
+		/* Match case-insensitive letters using character class. */
+		if (m_spec.m_ignorecase && isAlphaL) 
+		  {
+		    start.m_set.addncase(m_spec.m_lexeme);
+		  }
+		/* Match dot (.) using character class. */
+		else if (m_lexGen.ANY == m_spec.m_current_token)
+		  {
+		    start.m_set.add('\n');
+		    start.m_set.add('\r');
+		    // CSA: exclude BOL and EOF from character classes
+		    start.m_set.add(m_spec.BOL);
+		    start.m_set.add(m_spec.EOF);
+		    start.m_set.complement();
+		  }
+		else
+		  {
+		    m_lexGen.advance();
+		    if (m_lexGen.AT_BOL == m_spec.m_current_token)
+		      {
+			m_lexGen.advance();
+
+			// CSA: exclude BOL and EOF from character classes
+			start.m_set.add(m_spec.BOL);
+			start.m_set.add(m_spec.EOF);
+			start.m_set.complement();
+		      }
+		    if (false == (m_lexGen.CCL_END == m_spec.m_current_token))
+		      {
+			dodash(start.m_set);
+		      }
+		    /*else
+		      {
+			for (c = 0; c <= ' '; ++c)
+			  {
+			    start.m_set.add((byte) c);
+			  }
+		      }*/
+		  }
+		m_lexGen.advance();
+	      }
+	  }
+
+	if (CUtility.DESCENT_DEBUG)
+	  {
+	    CUtility.leave("term",m_spec.m_lexeme,m_spec.m_current_token);
+	  }
+      }
 
-	  /*m_outstream.println("\t\t\t\t");
-	  m_outstream.println("\t\t\t");
-	  m_outstream.println("\t\t\t");
-	  m_outstream.println("\t\t\t");
-	  m_outstream.println("\t\t\t");
-	  m_outstream.println("\t\t}");*/
-	}
-  
   /***************************************************************
-    Function: emit_actions
-    Description:     
+    Function: dodash
+    Description: Recursive descent regular expression parser.
     **************************************************************/
-  private void emit_actions 
+  private void dodash
     (
-     String tabs
+     CSet set
      )
-      throws java.io.IOException
+      throws java.io.IOException 
 	{
-	  int elem;
-	  int size;
-	  int bogus_index;
-	  CAccept accept;
+	  int first = -1;
 	  
-	  if (CUtility.DEBUG)
+	  if (CUtility.DESCENT_DEBUG)
 	    {
-	      CUtility.ASSERT(m_spec.m_accept_vector.size() 
-			      == m_spec.m_anchor_array.length);
+	      CUtility.enter("dodash",m_spec.m_lexeme,m_spec.m_current_token);
 	    }
-
-	  bogus_index = -2;
-	  size = m_spec.m_accept_vector.size();
-	  for (elem = 0; elem < size; ++elem)
+	  
+	  while (m_lexGen.EOS != m_spec.m_current_token 
+		 && m_lexGen.CCL_END != m_spec.m_current_token)
 	    {
-	      accept = (CAccept) m_spec.m_accept_vector.elementAt(elem);
-	      if (null != accept) 
+	      // DASH loses its special meaning if it is first in class.
+	      if (m_lexGen.DASH == m_spec.m_current_token && -1 != first)
 		{
-		  m_outstream.println(tabs + "case " + elem 
-					 + ":");
-		  m_outstream.print(tabs + "\t");
-		  m_outstream.print(new String(accept.m_action,0,
-						    accept.m_action_read));
-		  m_outstream.println();
-		  m_outstream.println(tabs + "case " + bogus_index + ":");
-		  m_outstream.println(tabs + "\tbreak;");
-		  --bogus_index;
+		  m_lexGen.advance();
+		  // DASH loses its special meaning if it is last in class.
+		  if (m_spec.m_current_token == m_lexGen.CCL_END)
+		    {
+		      // 'first' already in set.
+		      set.add('-');
+		      break;
+		    }
+		  for ( ; first <= m_spec.m_lexeme; ++first)
+		    {
+		      if (m_spec.m_ignorecase) 
+			set.addncase((char)first);
+		      else
+			set.add(first);
+		    }  
+		}
+	      else
+		{
+		  first = m_spec.m_lexeme;
+		  if (m_spec.m_ignorecase)
+		    set.addncase(m_spec.m_lexeme);
+		  else
+		    set.add(m_spec.m_lexeme);
 		}
+
+	      m_lexGen.advance();
 	    }
-	}
-  
-  /***************************************************************
-    Function: emit_footer
-    Description:     
-    **************************************************************/
-  private void emit_footer
-    (
-     )
-      throws java.io.IOException
-      {
-	if (CUtility.DEBUG)
+	  
+	if (CUtility.DESCENT_DEBUG)
 	  {
-	    CUtility.ASSERT(null != m_spec);
-	    CUtility.ASSERT(null != m_outstream);
+	    CUtility.leave("dodash",m_spec.m_lexeme,m_spec.m_current_token);
 	  }
-
-	m_outstream.println("}");
       }
 }
 
-/***************************************************************
-  Class: CBunch
-  **************************************************************/
-class CBunch
+/**
+ * Extract character classes from NFA and simplify.
+ * @author C. Scott Ananian 25-Jul-1999
+ */
+class CSimplifyNfa
 {
-  /***************************************************************
-    Member Variables
-    **************************************************************/
-  Vector m_nfa_set; /* Vector of CNfa states in dfa state. */
-  SparseBitSet m_nfa_bit; /* BitSet representation of CNfa labels. */
-  CAccept m_accept; /* Accepting actions, or null if nonaccepting state. */
-  int m_anchor; /* Anchors on regular expression. */
-  int m_accept_index; /* CNfa index corresponding to accepting actions. */
+  private int[] ccls; // character class mapping.
+  private int original_charset_size; // original charset size
+  private int mapped_charset_size; // reduced charset size
 
-  /***************************************************************
-    Function: CBunch
-    Description: Constructor.
-    **************************************************************/
-  CBunch
-    (
-     )
-      {
-	m_nfa_set = null;
-	m_nfa_bit = null;
-	m_accept = null;
-	m_anchor = CSpec.NONE;
-	m_accept_index = -1;
+  void simplify(CSpec m_spec) {
+    computeClasses(m_spec); // initialize fields.
+    
+    // now rewrite the NFA using our character class mapping.
+    for (Enumeration e=m_spec.m_nfa_states.elements(); e.hasMoreElements(); ) {
+      CNfa nfa = (CNfa) e.nextElement();
+      if (nfa.m_edge==CNfa.EMPTY || nfa.m_edge==CNfa.EPSILON)
+	continue; // no change.
+      if (nfa.m_edge==CNfa.CCL) {
+	CSet ncset = new CSet();
+	ncset.map(nfa.m_set, ccls); // map it.
+	nfa.m_set = ncset;
+      } else { // single character
+	nfa.m_edge = ccls[nfa.m_edge]; // map it.
+      }
+    }
+
+    // now update m_spec with the mapping.
+    m_spec.m_ccls_map = ccls;
+    m_spec.m_dtrans_ncols = mapped_charset_size;
+  }
+  /** Compute minimum set of character classes needed to disambiguate
+   *  edges.  We optimistically assume that every character belongs to
+   *  a single character class, and then incrementally split classes
+   *  as we see edges that require discrimination between characters in
+   *  the class. [CSA, 25-Jul-1999]
+   *  An edge splits a class when it holds some but not all of its
+   *  characters.  Splitting by a set or by its complement gives the
+   *  same classes, so an edge on a complemented CSet splits by the
+   *  characters its bit set holds, and each edge costs time in the size
+   *  of its set rather than of the charset: we count the characters of
+   *  the set in each class and move them to a new class when the count
+   *  falls short of the class size.  The classes are then numbered in
+   *  order of their smallest character. */
+  private void computeClasses(CSpec m_spec) {
+    this.original_charset_size = m_spec.m_dtrans_ncols;
+    this.ccls = new int[original_charset_size]; // initially all zero.
+    int n = original_charset_size;
+
+    int nextcls = 1;
+    int[] size = new int[n];    // characters in each class
+    int[] count = new int[n];   // characters of the edge in each class
+    int[] split = new int[n];   // new class for those characters, or -1
+    int[] touched = new int[n]; // classes with characters of the edge
+    int[] members = new int[n]; // characters of the edge
+    size[0] = n;
+    
+    System.out.print("Working on character classes.");
+    for (Enumeration e=m_spec.m_nfa_states.elements(); e.hasMoreElements(); ) {
+      CNfa nfa = (CNfa) e.nextElement();
+      if (nfa.m_edge==CNfa.EMPTY || nfa.m_edge==CNfa.EPSILON)
+	continue; // no discriminatory information.
+      int nmembers = 0;
+      if (nfa.m_edge==CNfa.CCL) {
+	for (Enumeration c=nfa.m_set.elements(); c.hasMoreElements(); ) {
+	  int i = ((Integer)c.nextElement()).intValue();
+	  if (i<n) // skip characters outside the charset
+	    members[nmembers++] = i;
+	}
+      } else if (nfa.m_edge<n) // edge labeled with a character
+	members[nmembers++] = nfa.m_edge;
+      // count the characters of the edge in each class.
+      int ntouched = 0;
+      for (int k=0; k<nmembers; k++) {
+	int cls = ccls[members[k]];
+	if (count[cls]++ == 0)
+	  touched[ntouched++] = cls;
+      }
+      // split the classes that are partly on each side of the edge.
+      boolean splitting = false;
+      for (int k=0; k<ntouched; k++) {
+	int cls = touched[k];
+	if (count[cls] < size[cls]) {
+	  split[cls] = nextcls++; // make new class
+	  splitting = true;
+	} else
+	  split[cls] = -1;
+	count[cls] = 0;
+      }
+      System.out.print(splitting?":":".");
+      if (!splitting) continue; // nothing to do.
+      for (int k=0; k<nmembers; k++) {
+	int cls = ccls[members[k]];
+	if (split[cls] != -1) {
+	  ccls[members[k]] = split[cls];
+	  size[cls]--;
+	  size[split[cls]]++;
+	}
       }
+    }
+    // number the classes in order of their smallest character.
+    int[] number = new int[nextcls];
+    java.util.Arrays.fill(number, -1);
+    int classes = 0;
+    for (int i=0; i<n; i++) {
+      if (number[ccls[i]] == -1)
+	number[ccls[i]] = classes++;
+      ccls[i] = number[ccls[i]];
+    }
+    System.out.println();
+    System.out.println("NFA has "+nextcls+" distinct character classes.");
+    
+    this.mapped_charset_size = nextcls;
+  }
 }
 
 /***************************************************************
-  Class: CMakeNfa
-  **************************************************************/
-class CMakeNfa
+  Class: CMinimize
+ **************************************************************/
+class CMinimize
 {
+  /***************************************************************
+    Constants: the minimizers (CSpec.m_minimizer)
+    **************************************************************/
+  static final int CLASSIC = 0;
+  static final int HOPCROFT = 1;
+  static final int CHECK = 2;
+
   /***************************************************************
     Member Variables
     **************************************************************/
-  private CSpec m_spec;
-  private CLexGen m_lexGen;
-  private CInput m_input;
+  CSpec m_spec;
+  Vector m_group;
+  int m_ingroup[];
 
   /***************************************************************
-    Function: CMakeNfa
+    Function: CMinimize
     Description: Constructor.
     **************************************************************/
-  CMakeNfa
+  CMinimize 
     (
      )
       {
 	reset();
       }
-
+  
   /***************************************************************
     Function: reset
-    Description: Resets CMakeNfa member variables.
+    Description: Resets member variables.
     **************************************************************/
   private void reset
     (
      )
       {
-	m_input = null;
-	m_lexGen = null;
 	m_spec = null;
+	m_group = null;
+	m_ingroup = null;
       }
 
   /***************************************************************
     Function: set
-    Description: Sets CMakeNfa member variables.
+    Description: Sets member variables.
     **************************************************************/
   private void set
     (
-     CLexGen lexGen,
-     CSpec spec,
-     CInput input
+     CSpec spec
      )
       {
 	if (CUtility.DEBUG)
 	  {
-	    CUtility.ASSERT(null != input);
-	    CUtility.ASSERT(null != lexGen);
 	    CUtility.ASSERT(null != spec);
 	  }
 
-	m_input = input;
-	m_lexGen = lexGen;
 	m_spec = spec;
+	m_group = null;
+	m_ingroup = null;
       }
 
   /***************************************************************
-    Function: allocate_BOL_EOF
-    Description: Expands character class to include special BOL and
-    EOF characters.  Puts numeric index of these characters in
-    input CSpec.
+    Function: min_dfa
+    Description: High-level access function to module.
+    **************************************************************/
+  void min_dfa
+    (
+     CSpec spec
+     )
+      {
+	set(spec);
+
+	/* Remove redundant states. */
+	minimize();
+
+	/* Column and row compression. 
+	   Save accept states in auxilary vector. */
+	reduce();
+
+	reset();
+      }
+
+  /***************************************************************
+    Function: col_copy
+    Description: Copies source column into destination column.
+    **************************************************************/
+  private void col_copy
+    (
+     int dest,
+     int src
+     )
+      {
+	int n;
+	int i;
+	CDTrans dtrans;
+
+	n = m_spec.m_dtrans_vector.size();
+	for (i = 0; i < n; ++i)
+	  {
+	    dtrans = (CDTrans) m_spec.m_dtrans_vector.elementAt(i);
+	    dtrans.m_dtrans[dest] = dtrans.m_dtrans[src]; 
+	  }
+      }	
+	
+  /***************************************************************
+    Function: trunc_col
+    Description: Truncates each column to the 'correct' length.
     **************************************************************/
-  void allocate_BOL_EOF
+  private void trunc_col
     (
-     CSpec spec
      )
-	{
-	  CUtility.ASSERT(CSpec.NUM_PSEUDO==2);
-	  spec.BOL = spec.m_dtrans_ncols++;
-	  spec.EOF = spec.m_dtrans_ncols++;
-	}
+      {
+	int n;
+	int i;
+	CDTrans dtrans;
 
+	n = m_spec.m_dtrans_vector.size();
+	for (i = 0; i < n; ++i)
+	  {
+	    int[] ndtrans = new int[m_spec.m_dtrans_ncols];
+	    dtrans = (CDTrans) m_spec.m_dtrans_vector.elementAt(i);
+	    System.arraycopy(dtrans.m_dtrans, 0, ndtrans, 0, ndtrans.length);
+	    dtrans.m_dtrans = ndtrans;
+	  }
+      }
   /***************************************************************
-    Function: thompson
-    Description: High level access function to module.
-    Deposits result in input CSpec.
+    Function: row_copy
+    Description: Copies source row into destination row.
     **************************************************************/
-  void thompson
+  private void row_copy
     (
-     CLexGen lexGen,
-     CSpec spec,
-     CInput input
+     int dest,
+     int src
      )
-      throws java.io.IOException      
-	{
-	  int i;
-	  CNfa elem;
-	  int size;
-
-	  /* Set member variables. */
-	  reset();
-	  set(lexGen,spec,input);
-
-	  size = m_spec.m_states.size();
-	  m_spec.m_state_rules = new Vector[size];
-	  for (i = 0; i < size; ++i)
-	    {
-	      m_spec.m_state_rules[i] = new Vector();
-	    }
-
-	  /* Initialize current token variable 
-	     and create nfa. */
-	  /*m_spec.m_current_token = m_lexGen.EOS;
-	  m_lexGen.advance();*/
-
-	  m_spec.m_nfa_start = machine();
-	  
-	  /* Set labels in created nfa machine. */
-	  size = m_spec.m_nfa_states.size();
-	  for (i = 0; i < size; ++i)
-	    {
-	      elem = (CNfa) m_spec.m_nfa_states.elementAt(i);
-	      elem.m_label = i;
-	    }
-
-	  /* Debugging output. */
-	  if (CUtility.DO_DEBUG)
-	    {
-	      m_lexGen.print_nfa();
-	    }
-
-	  if (m_spec.m_verbose)
-	    {
-	      System.out.println("NFA comprised of " 
-				 + (m_spec.m_nfa_states.size() + 1) 
-				 + " states.");
-	    }
+      {
+	CDTrans dtrans;
 
-	  reset();
-	}
-     
+	dtrans = (CDTrans) m_spec.m_dtrans_vector.elementAt(src);
+	m_spec.m_dtrans_vector.setElementAt(dtrans,dest); 
+      }	
+	
   /***************************************************************
-    Function: discardCNfa
+    Function: col_equiv
     Description: 
     **************************************************************/
-  private void discardCNfa
+  private boolean col_equiv
     (
-     CNfa nfa
+     int col1,
+     int col2
      )
       {
-	m_spec.m_nfa_states.removeElement(nfa);
+	int n;
+	int i;
+	CDTrans dtrans;
+
+	n = m_spec.m_dtrans_vector.size();
+	for (i = 0; i < n; ++i)
+	  {
+	    dtrans = (CDTrans) m_spec.m_dtrans_vector.elementAt(i);
+	    if (dtrans.m_dtrans[col1] != dtrans.m_dtrans[col2]) 
+	      {
+		return false;
+	      }
+	  }
+	
+	return true;
       }
 
   /***************************************************************
-    Function: processStates
-    Description:
+    Function: row_equiv
+    Description: 
     **************************************************************/
-  private void processStates
+  private boolean row_equiv
     (
-     SparseBitSet states,
-     CNfa current
+     int row1,
+     int row2
      )
       {
-	int size;
 	int i;
+	CDTrans dtrans1;
+	CDTrans dtrans2;
+
+	dtrans1 = (CDTrans) m_spec.m_dtrans_vector.elementAt(row1);
+	dtrans2 = (CDTrans) m_spec.m_dtrans_vector.elementAt(row2);
 	
-	size = m_spec.m_states.size();
-	for (i = 0; i <  size; ++i)
+	for (i = 0; i < m_spec.m_dtrans_ncols; ++i)
 	  {
-	    if (states.get(i))
+	    if (dtrans1.m_dtrans[i] != dtrans2.m_dtrans[i]) 
 	      {
-		m_spec.m_state_rules[i].addElement(current);
+		return false;
 	      }
 	  }
+	
+	return true;
       }
 
   /***************************************************************
-    Function: machine
-    Description: Recursive descent regular expression parser.
+    Function: reduce
+    Description: 
     **************************************************************/
-  private CNfa machine
+  private void reduce
     (
      )
-      throws java.io.IOException 
       {
-	CNfa start;
-	CNfa p;
-	SparseBitSet states;
+	int i;
+	int j;
+	int k;
+	int nrows;
+	int reduced_ncols;
+	int reduced_nrows;
+	SparseBitSet set;
+	CDTrans dtrans;
+	int size;
 
-	if (CUtility.DESCENT_DEBUG)
+	set = new SparseBitSet();
+	
+	/* Save accept nodes and anchor entries. */
+	size = m_spec.m_dtrans_vector.size();
+	m_spec.m_anchor_array = new int[size];
+	m_spec.m_accept_vector = new Vector();
+	for (i = 0; i < size; ++i)
 	  {
-	    CUtility.enter("machine",m_spec.m_lexeme,m_spec.m_current_token);
+	    dtrans = (CDTrans) m_spec.m_dtrans_vector.elementAt(i);
+	    m_spec.m_accept_vector.addElement(dtrans.m_accept);
+	    m_spec.m_anchor_array[i] = dtrans.m_anchor;
+	    dtrans.m_accept = null;
 	  }
-
-	start = CAlloc.newCNfa(m_spec);
-	p = start;
-	    
-	states = m_lexGen.getStates();
-
-	/* Begin: Added for states. */
-	m_spec.m_current_token = m_lexGen.EOS;
-	m_lexGen.advance();
-	/* End: Added for states. */
 	
-	if (m_lexGen.END_OF_INPUT != m_spec.m_current_token) // CSA fix.
+	/* Allocate column map. */
+	m_spec.m_col_map = new int[m_spec.m_dtrans_ncols];
+	for (i = 0; i < m_spec.m_dtrans_ncols; ++i)
 	  {
-	    p.m_next = rule();
-	    
-	    processStates(states,p.m_next);
+	    m_spec.m_col_map[i] = -1;
 	  }
 
-	while (m_lexGen.END_OF_INPUT != m_spec.m_current_token)
+	/* Process columns for reduction. */
+	for (reduced_ncols = 0; ; ++reduced_ncols)
 	  {
-	    /* Make state changes HERE. */
-	    states = m_lexGen.getStates();
-	
-	    /* Begin: Added for states. */
-	    m_lexGen.advance();
-	    if (m_lexGen.END_OF_INPUT == m_spec.m_current_token)
-	      { 
+	    if (CUtility.DEBUG)
+	      {
+		for (i = 0; i < reduced_ncols; ++i)
+		  {
+		    CUtility.ASSERT(-1 != m_spec.m_col_map[i]);
+		  }
+	      }
+
+	    for (i = reduced_ncols; i < m_spec.m_dtrans_ncols; ++i)
+	      {
+		if (-1 == m_spec.m_col_map[i])
+		  {
+		    break;
+		  }
+	      }
+
+	    if (i >= m_spec.m_dtrans_ncols)
+	      {
 		break;
 	      }
-	    /* End: Added for states. */
-	    
-	    p.m_next2 = CAlloc.newCNfa(m_spec);
-	    p = p.m_next2;
-	    p.m_next = rule();
-	    
-	    processStates(states,p.m_next);
+
+	    if (CUtility.DEBUG)
+	      {
+		CUtility.ASSERT(false == set.get(i));
+		CUtility.ASSERT(-1 == m_spec.m_col_map[i]);
+	      }
+
+	    set.set(i);
+	    
+	    m_spec.m_col_map[i] = reduced_ncols;
+	    
+	    /* UNDONE: Optimize by doing all comparisons in one batch. */
+	    for (j = i + 1; j < m_spec.m_dtrans_ncols; ++j)
+	      {
+		if (-1 == m_spec.m_col_map[j] && true == col_equiv(i,j))
+		  {
+		    m_spec.m_col_map[j] = reduced_ncols;
+		  }
+	      }
+	  }
+
+	/* Reduce columns. */
+	k = 0;
+	for (i = 0; i < m_spec.m_dtrans_ncols; ++i)
+	  {
+	    if (set.get(i))
+	      {
+		++k;
+
+		set.clear(i);
+		
+		j = m_spec.m_col_map[i];
+		
+		if (CUtility.DEBUG)
+		  {
+		    CUtility.ASSERT(j <= i);
+		  }
+		
+		if (j == i)
+		  {
+		    continue;
+		  }
+		
+		col_copy(j,i);
+	      }
 	  }
+	m_spec.m_dtrans_ncols = reduced_ncols;
+	/* truncate m_dtrans at proper length (freeing extra) */
+	trunc_col();
 
-	// CSA: add pseudo-rules for BOL and EOF
-	SparseBitSet all_states = new SparseBitSet();
-	for (int i = 0; i < m_spec.m_states.size(); ++i)
-		all_states.set(i);
-	p.m_next2 = CAlloc.newCNfa(m_spec);
-	p = p.m_next2;
-	p.m_next = CAlloc.newCNfa(m_spec);
-	p.m_next.m_edge = CNfa.CCL;
-	p.m_next.m_next = CAlloc.newCNfa(m_spec);
-	p.m_next.m_set = new CSet();
-	p.m_next.m_set.add(m_spec.BOL);
-	p.m_next.m_set.add(m_spec.EOF);
-	p.m_next.m_next.m_accept = // do-nothing accept rule
-	    new CAccept(new char[0], 0, m_input.m_line_number+1);
-	processStates(all_states,p.m_next);
-	// CSA: done. 
-
-	if (CUtility.DESCENT_DEBUG)
+	if (CUtility.DEBUG)
 	  {
-	    CUtility.leave("machine",m_spec.m_lexeme,m_spec.m_current_token);
+	    CUtility.ASSERT(k == reduced_ncols);
 	  }
 
-	return start;
-      }
-  
-  /***************************************************************
-    Function: rule
-    Description: Recursive descent regular expression parser.
-    **************************************************************/
-  private CNfa rule
-    (
-     )
-      throws java.io.IOException 
-      {
-	CNfaPair pair; 
-	CNfa p;
-	CNfa start = null;
-	CNfa end = null;
-	int anchor = CSpec.NONE;
-
-	if (CUtility.DESCENT_DEBUG)
+	/* Allocate row map. */
+	nrows = m_spec.m_dtrans_vector.size();
+	m_spec.m_row_map = new int[nrows];
+	for (i = 0; i < nrows; ++i)
 	  {
-	    CUtility.enter("rule",m_spec.m_lexeme,m_spec.m_current_token);
+	    m_spec.m_row_map[i] = -1;
 	  }
 
-	pair = CAlloc.newCNfaPair();
-
-	if (m_lexGen.AT_BOL == m_spec.m_current_token)
+	/* Process rows to reduce. */
+	for (reduced_nrows = 0; ; ++reduced_nrows)
 	  {
-	    anchor = anchor | CSpec.START;
-	    m_lexGen.advance();
-	    expr(pair);
+	    if (CUtility.DEBUG)
+	      {
+		for (i = 0; i < reduced_nrows; ++i)
+		  {
+		    CUtility.ASSERT(-1 != m_spec.m_row_map[i]);
+		  }
+	      }
 
-	    // CSA: fixed beginning-of-line operator. 8-aug-1999
-	    start = CAlloc.newCNfa(m_spec);
-	    start.m_edge = m_spec.BOL;
-	    start.m_next = pair.m_start;
-	    end = pair.m_end;
-	  }
-	else
-	  {
-	    expr(pair);
-	    start = pair.m_start;
-	    end = pair.m_end;
-	  }
+	    for (i = reduced_nrows; i < nrows; ++i)
+	      {
+		if (-1 == m_spec.m_row_map[i])
+		  {
+		    break;
+		  }
+	      }
 
-	if (m_lexGen.AT_EOL == m_spec.m_current_token)
-	  {
-	    m_lexGen.advance();
-	    // CSA: fixed end-of-line operator. 8-aug-1999
-	    CNfaPair nlpair = CAlloc.newNLPair(m_spec);
-	    end.m_next = CAlloc.newCNfa(m_spec);
-	    end.m_next.m_next = nlpair.m_start;
-	    end.m_next.m_next2 = CAlloc.newCNfa(m_spec);
-	    end.m_next.m_next2.m_edge = m_spec.EOF;
-	    end.m_next.m_next2.m_next = nlpair.m_end;
-	    end = nlpair.m_end;
-	    anchor = anchor | CSpec.END;
-	  }
+	    if (i >= nrows)
+	      {
+		break;
+	      }
 
-	/* Check for null rules. Charles Fischer found this bug. [CSA] */
-	if (end==null)
-	    CError.parse_error(CError.E_ZERO, m_input.m_line_number);
+	    if (CUtility.DEBUG)
+	      {
+		CUtility.ASSERT(false == set.get(i));
+		CUtility.ASSERT(-1 == m_spec.m_row_map[i]);
+	      }
 
-	/* Handle end of regular expression.  See page 103. */
-	end.m_accept = m_lexGen.packAccept();
-	end.m_anchor = anchor;
+	    set.set(i);
 
-	/* Begin: Removed for states. */
-	/*m_lexGen.advance();*/
-	/* End: Removed for states. */
+	    m_spec.m_row_map[i] = reduced_nrows;
+	    
+	    /* UNDONE: Optimize by doing all comparisons in one batch. */
+	    for (j = i + 1; j < nrows; ++j)
+	      {
+		if (-1 == m_spec.m_row_map[j] && true == row_equiv(i,j))
+		  {
+		    m_spec.m_row_map[j] = reduced_nrows;
+		  }
+	      }
+	  }
 
-	if (CUtility.DESCENT_DEBUG)
+	/* Reduce rows. */
+	k = 0;
+	for (i = 0; i < nrows; ++i)
 	  {
-	    CUtility.leave("rule",m_spec.m_lexeme,m_spec.m_current_token);
+	    if (set.get(i))
+	      {
+		++k;
+
+		set.clear(i);
+		
+		j = m_spec.m_row_map[i];
+		
+		if (CUtility.DEBUG)
+		  {
+		    CUtility.ASSERT(j <= i);
+		  }
+		
+		if (j == i)
+		  {
+		    continue;
+		  }
+		
+		row_copy(j,i);
+	      }
 	  }
+	m_spec.m_dtrans_vector.setSize(reduced_nrows);
 
-	return start;
+	if (CUtility.DEBUG)
+	  {
+	    /*System.out.println("k = " + k + "\nreduced_nrows = " + reduced_nrows + "");*/
+	    CUtility.ASSERT(k == reduced_nrows);
+	  }
       }
-	    
+
   /***************************************************************
-    Function: expr
-    Description: Recursive descent regular expression parser.
+    Function: fix_dtrans
+    Description: Updates CDTrans table after minimization 
+    using groups, removing redundant transition table states.
     **************************************************************/
-  private void expr
+  private void fix_dtrans
     (
-     CNfaPair pair
      )
-      throws java.io.IOException 
       {
-	CNfaPair e2_pair;
-	CNfa p;
-	
-	if (CUtility.DESCENT_DEBUG)
-	  {
-	    CUtility.enter("expr",m_spec.m_lexeme,m_spec.m_current_token);
-	  }
+	Vector new_vector;
+	int i;
+	int size;
+	Vector dtrans_group;
+	CDTrans first;
+	int c;
 
-	if (CUtility.DEBUG)
+	new_vector = new Vector();
+
+	size = m_spec.m_state_dtrans.length;
+	for (i = 0; i < size; ++i)
 	  {
-	    CUtility.ASSERT(null != pair);
+	    if (CDTrans.F != m_spec.m_state_dtrans[i])
+	      {
+		m_spec.m_state_dtrans[i] = m_ingroup[m_spec.m_state_dtrans[i]];
+	      }
 	  }
 
-	e2_pair = CAlloc.newCNfaPair();
-
-	cat_expr(pair);
-	
-	while (m_lexGen.OR == m_spec.m_current_token)
+	size = m_group.size();
+	for (i = 0; i < size; ++i)
 	  {
-	    m_lexGen.advance();
-	    cat_expr(e2_pair);
+	    dtrans_group = (Vector) m_group.elementAt(i);
+	    first = (CDTrans) dtrans_group.elementAt(0);
+	    new_vector.addElement(first);
 
-	    p = CAlloc.newCNfa(m_spec);
-	    p.m_next2 = e2_pair.m_start;
-	    p.m_next = pair.m_start;
-	    pair.m_start = p;
-	    
-	    p = CAlloc.newCNfa(m_spec);
-	    pair.m_end.m_next = p;
-	    e2_pair.m_end.m_next = p;
-	    pair.m_end = p;
+	    for (c = 0; c < m_spec.m_dtrans_ncols; ++c)
+	      {
+		if (CDTrans.F != first.m_dtrans[c])
+		  {
+		    first.m_dtrans[c] = m_ingroup[first.m_dtrans[c]];
+		  }
+	      }
 	  }
 
-	if (CUtility.DESCENT_DEBUG)
-	  {
-	    CUtility.leave("expr",m_spec.m_lexeme,m_spec.m_current_token);
-	  }
+	m_group = null;
+	m_spec.m_dtrans_vector = new_vector;
       }
-	    
+
   /***************************************************************
-    Function: cat_expr
-    Description: Recursive descent regular expression parser.
+    Function: minimize
+    Description: Removes redundant transition table states.
+    The states are grouped by the minimizer chosen with
+    m_spec.m_minimizer; with CHECK, by both, and the groups
+    of Hopcroft's algorithm are kept once check_groups has
+    checked them against the others.
     **************************************************************/
-  private void cat_expr
+  private void minimize
     (
-     CNfaPair pair
      )
-      throws java.io.IOException 
       {
-	CNfaPair e2_pair;
-
-	if (CUtility.DESCENT_DEBUG)
-	  {
-	    CUtility.enter("cat_expr",m_spec.m_lexeme,m_spec.m_current_token);
-	  }
+	Vector hopcroft_group;
+	int hopcroft_ingroup[];
 
-	if (CUtility.DEBUG)
+	if (HOPCROFT == m_spec.m_minimizer)
 	  {
-	    CUtility.ASSERT(null != pair);
+	    hopcroft_groups();
 	  }
-	
-	e2_pair = CAlloc.newCNfaPair();
-	
-	if (first_in_cat(m_spec.m_current_token))
+	else if (CHECK == m_spec.m_minimizer)
 	  {
-	    factor(pair);
+	    hopcroft_groups();
+	    sort_groups();
+	    hopcroft_group = m_group;
+	    hopcroft_ingroup = m_ingroup;
+	    minimize_groups();
+	    sort_groups();
+	    check_groups(hopcroft_ingroup);
+	    m_group = hopcroft_group;
+	    m_ingroup = hopcroft_ingroup;
 	  }
-
-	while (first_in_cat(m_spec.m_current_token))
+	else
 	  {
-	    factor(e2_pair);
-
-	    /* Destroy */
-	    pair.m_end.mimic(e2_pair.m_start);
-	    discardCNfa(e2_pair.m_start);
-	    
-	    pair.m_end = e2_pair.m_end;
+	    minimize_groups();
 	  }
+	sort_groups();
 
-	if (CUtility.DESCENT_DEBUG)
+	System.out.println(m_group.size() + " states after removal of redundant states.");
+
+	if (m_spec.m_verbose
+	    && true == CUtility.OLD_DUMP_DEBUG)
 	  {
-	    CUtility.leave("cat_expr",m_spec.m_lexeme,m_spec.m_current_token);
+	    System.out.println();
+	    System.out.println("States grouped as follows after minimization");
+	    pgroups();
 	  }
+
+	fix_dtrans();
       }
-  
+
   /***************************************************************
-    Function: first_in_cat
-    Description: Recursive descent regular expression parser.
+    Function: check_groups
+    Description: Checks the groups of hopcroft_groups, given by
+    hopcroft_ingroup, against those of minimize_groups, in
+    m_group and m_ingroup.  The groups need not be the same:
+    minimize_groups moves states to the new group of a pass
+    while it is still comparing others with them, and so it
+    may split states that are equivalent, leaving more states
+    than needed.  So each group of minimize_groups must lie
+    inside one group of hopcroft_groups, and the states of a
+    group of hopcroft_groups must all have the same accept
+    action and go to the same group on every column.
     **************************************************************/
-  private boolean first_in_cat
+  private void check_groups
     (
-     int token
+     int hopcroft_ingroup[]
      )
       {
-	switch (token)
-	  {
-	  case CLexGen.CLOSE_PAREN:
-	  case CLexGen.AT_EOL:
-	  case CLexGen.OR:
-	  case CLexGen.EOS:
-	    return false;
-	    
-	  case CLexGen.CLOSURE:
-	  case CLexGen.PLUS_CLOSE:
-	  case CLexGen.OPTIONAL:
-	    CError.parse_error(CError.E_CLOSE,m_input.m_line_number);
-	    return false;
+	int outer[];
+	int first[];
+	int size;
+	int s;
+	int c;
+	int g;
+	int goto_first;
+	int goto_next;
+	CDTrans dtrans;
+	CDTrans leader;
 
-	  case CLexGen.CCL_END:
-	    CError.parse_error(CError.E_BRACKET,m_input.m_line_number);
-	    return false;
+	size = m_ingroup.length;
+	outer = new int[m_group.size()];
+	first = new int[size];
+	for (g = 0; g < outer.length; ++g)
+	  {
+	    outer[g] = -1;
+	  }
+	for (s = 0; s < size; ++s)
+	  {
+	    first[s] = -1;
+	  }
 
-	  case CLexGen.AT_BOL:
-	    CError.parse_error(CError.E_BOL,m_input.m_line_number);
-	    return false;
+	for (s = 0; s < size; ++s)
+	  {
+	    g = m_ingroup[s];
+	    if (-1 == outer[g])
+	      {
+		outer[g] = hopcroft_ingroup[s];
+	      }
+	    else if (outer[g] != hopcroft_ingroup[s])
+	      {
+		CError.impos("Minimizers disagree on state " + s + ".");
+		throw new Error("Parse error.");
+	      }
 
-	  default:
-	    break;
+	    g = hopcroft_ingroup[s];
+	    if (-1 == first[g])
+	      {
+		first[g] = s;
+		continue;
+	      }
+	    leader = (CDTrans) m_spec.m_dtrans_vector.elementAt(first[g]);
+	    dtrans = (CDTrans) m_spec.m_dtrans_vector.elementAt(s);
+	    if (leader.m_accept != dtrans.m_accept)
+	      {
+		CError.impos("Minimizers disagree on state " + s + ".");
+		throw new Error("Parse error.");
+	      }
+	    for (c = 0; c < m_spec.m_dtrans_ncols; ++c)
+	      {
+		goto_first = leader.m_dtrans[c];
+		goto_next = dtrans.m_dtrans[c];
+		if (goto_first != goto_next
+		    && (goto_first == CDTrans.F
+			|| goto_next == CDTrans.F
+			|| hopcroft_ingroup[goto_first]
+			   != hopcroft_ingroup[goto_next]))
+		  {
+		    CError.impos("Minimizers disagree on state " + s + ".");
+		    throw new Error("Parse error.");
+		  }
+	      }
 	  }
-
-	return true;
       }
 
   /***************************************************************
-    Function: factor
-    Description: Recursive descent regular expression parser.
+    Function: minimize_groups
+    Description: Groups equivalent states, starting from one
+    group for each accept action and splitting the groups
+    until no group splits.
     **************************************************************/
-  private void factor
+  private void minimize_groups
     (
-     CNfaPair pair
      )
-      throws java.io.IOException 
       {
-	CNfa start = null;
-	CNfa end = null;
+	Vector dtrans_group;
+	Vector new_group;
+	int i;
+	int j;
+	int old_group_count;
+	int group_count;
+	CDTrans next;
+	CDTrans first;
+	int goto_first;
+	int goto_next;
+	int c;
+	int group_size;
+	boolean added;
 
-	if (CUtility.DESCENT_DEBUG)
-	  {
-	    CUtility.enter("factor",m_spec.m_lexeme,m_spec.m_current_token);
-	  }
+	init_groups();
 
-	term(pair);
+	group_count = m_group.size();
+	old_group_count = group_count - 1;
 
-	if (m_lexGen.CLOSURE == m_spec.m_current_token
-	    || m_lexGen.PLUS_CLOSE == m_spec.m_current_token
-	    || m_lexGen.OPTIONAL == m_spec.m_current_token)
+	while (old_group_count != group_count)
 	  {
-	    start = CAlloc.newCNfa(m_spec);
-	    end = CAlloc.newCNfa(m_spec);
-	    
-	    start.m_next = pair.m_start;
-	    pair.m_end.m_next = end;
+	    old_group_count = group_count;
 
-	    if (m_lexGen.CLOSURE == m_spec.m_current_token
-		|| m_lexGen.OPTIONAL == m_spec.m_current_token)
+	    if (CUtility.DEBUG)
 	      {
-		start.m_next2 = end;
+		CUtility.ASSERT(m_group.size() == group_count);
 	      }
-	    
-	    if (m_lexGen.CLOSURE == m_spec.m_current_token
-		|| m_lexGen.PLUS_CLOSE == m_spec.m_current_token)
+
+	    for (i = 0; i < group_count; ++i)
 	      {
-		pair.m_end.m_next2 = pair.m_start;
+		dtrans_group = (Vector) m_group.elementAt(i);
+
+		group_size = dtrans_group.size();
+		if (group_size <= 1)
+		  {
+		    continue;
+		  }
+
+		new_group = new Vector();
+		added = false;
+		
+		first = (CDTrans) dtrans_group.elementAt(0);
+		for (j = 1; j < group_size; ++j)
+		  {
+		    next = (CDTrans) dtrans_group.elementAt(j);
+
+		    for (c = 0; c < m_spec.m_dtrans_ncols; ++c)
+		      {
+			goto_first = first.m_dtrans[c];
+			goto_next = next.m_dtrans[c];
+
+			if (goto_first != goto_next
+			    && (goto_first == CDTrans.F
+				|| goto_next == CDTrans.F
+				|| m_ingroup[goto_next] != m_ingroup[goto_first]))
+			  {
+			    if (CUtility.DEBUG)
+			      {
+				CUtility.ASSERT(dtrans_group.elementAt(j) == next);
+			      }
+			    
+			    dtrans_group.removeElementAt(j);
+			    --j;
+			    --group_size;
+			    new_group.addElement(next);
+			    if (false == added)
+			      {
+				added = true;
+				++group_count;
+				m_group.addElement(new_group);
+			      }
+			    m_ingroup[next.m_label] = m_group.size() - 1;
+
+			    if (CUtility.DEBUG)
+			      {
+				CUtility.ASSERT(m_group.contains(new_group)
+						== true);
+				CUtility.ASSERT(m_group.contains(dtrans_group)
+						== true);
+				CUtility.ASSERT(dtrans_group.contains(first)
+						== true);
+				CUtility.ASSERT(dtrans_group.contains(next)
+						== false);
+				CUtility.ASSERT(new_group.contains(first)
+						== false);
+				CUtility.ASSERT(new_group.contains(next)
+						== true);
+				CUtility.ASSERT(dtrans_group.size() == group_size);
+				CUtility.ASSERT(i == m_ingroup[first.m_label]);
+				CUtility.ASSERT((m_group.size() - 1) 
+						== m_ingroup[next.m_label]);
+			      }
+
+			    break;
+			  }
+		      }
+		  }
 	      }
-	    
-	    pair.m_start = start;
-	    pair.m_end = end;
-	    m_lexGen.advance();
 	  }
 
-	if (CUtility.DESCENT_DEBUG)
-	  {
-	    CUtility.leave("factor",m_spec.m_lexeme,m_spec.m_current_token);
-	  }
       }
-      
+
   /***************************************************************
-    Function: term
-    Description: Recursive descent regular expression parser.
+    Function: hopcroft_groups
+    Description: Groups equivalent states with Hopcroft's
+    algorithm: O(n k log n) for n states and k columns, where
+    minimize_groups rescans the groups until none splits.  The
+    groups are the fewest there can be.  The partition is
+    kept in int arrays: the states of group g are
+    m_elems[m_first[g]] to m_elems[m_end[g] - 1].  A
+    transition to CDTrans.F goes to a dead state n of its own,
+    in a group of its own, so that no state is merged with F.
+    Builds m_group and m_ingroup from the result, in no
+    particular order.
     **************************************************************/
-  private void term
+  private void hopcroft_groups
     (
-     CNfaPair pair
      )
-      throws java.io.IOException 
       {
-	CNfa start;
-	boolean isAlphaL;
+	int n;
+	int ncols;
+	int dead;
+	int i;
+	int j;
 	int c;
+	int s;
+	int t;
+	int g;
+	int count;
+	int group_count;
+	int pred_start[];
+	int pred[];
+	int elems[];
+	int loc[];
+	int ingroup[];
+	int first[];
+	int end[];
+	int marked[];
+	boolean waiting[];
+	int work[];
+	int work_count;
+	int touched[];
+	int touched_count;
+	int splitter[];
+	int splitter_size;
+	CDTrans dtrans;
+	Hashtable accept_group;
+	Object key;
 
-	if (CUtility.DESCENT_DEBUG)
-	  {
-	    CUtility.enter("term",m_spec.m_lexeme,m_spec.m_current_token);
-	  }
+	n = m_spec.m_dtrans_vector.size();
+	ncols = m_spec.m_dtrans_ncols;
+	dead = n;
 
-	if (m_lexGen.OPEN_PAREN == m_spec.m_current_token)
+	/* Predecessors: those of state t on column c are
+	   pred[pred_start[c * (n + 1) + t]] up to the next start. */
+	pred_start = new int[ncols * (n + 1) + 1];
+	for (s = 0; s < n; ++s)
 	  {
-	    m_lexGen.advance();
-	    expr(pair);
-
-	    if (m_lexGen.CLOSE_PAREN == m_spec.m_current_token)
-	      {
-		m_lexGen.advance();
-	      }
-	    else
+	    dtrans = (CDTrans) m_spec.m_dtrans_vector.elementAt(s);
+	    for (c = 0; c < ncols; ++c)
 	      {
-		CError.parse_error(CError.E_SYNTAX,m_input.m_line_number);
+		t = dtrans.m_dtrans[c];
+		++pred_start[c * (n + 1) + ((CDTrans.F == t) ? dead : t) + 1];
 	      }
 	  }
-	else
+	for (c = 0; c < ncols; ++c)
 	  {
-	    start = CAlloc.newCNfa(m_spec);
-	    pair.m_start = start;
-
-	    start.m_next = CAlloc.newCNfa(m_spec);
-	    pair.m_end = start.m_next;
-
-	    if (m_lexGen.L == m_spec.m_current_token &&
-		Character.isLetter(m_spec.m_lexeme)) 
+	    /* the dead state goes to itself */
+	    ++pred_start[c * (n + 1) + dead + 1];
+	  }
+	for (i = 1; i < pred_start.length; ++i)
+	  {
+	    pred_start[i] += pred_start[i - 1];
+	  }
+	pred = new int[pred_start[pred_start.length - 1]];
+	int fill[] = new int[pred_start.length];
+	System.arraycopy(pred_start, 0, fill, 0, fill.length);
+	for (s = 0; s <= n; ++s)
+	  {
+	    if (s == dead)
 	      {
-		isAlphaL = true;
-	      } 
-	    else 
+		for (c = 0; c < ncols; ++c)
+		  {
+		    pred[fill[c * (n + 1) + dead]++] = dead;
+		  }
+		continue;
+	      }
+	    dtrans = (CDTrans) m_spec.m_dtrans_vector.elementAt(s);
+	    for (c = 0; c < ncols; ++c)
 	      {
-		isAlphaL = false;
+		t = dtrans.m_dtrans[c];
+		t = (CDTrans.F == t) ? dead : t;
+		pred[fill[c * (n + 1) + t]++] = s;
 	      }
-	    if (false == (m_lexGen.ANY == m_spec.m_current_token
-			  || m_lexGen.CCL_START == m_spec.m_current_token
-			  || (m_spec.m_ignorecase && isAlphaL)))
+	  }
+
+	/* Initial partition: one group for each accept action
+	   (by identity, as in init_groups), and the dead state. */
+	ingroup = new int[n + 1];
+	accept_group = new Hashtable();
+	group_count = 0;
+	int no_accept = -1;
+	for (s = 0; s < n; ++s)
+	  {
+	    dtrans = (CDTrans) m_spec.m_dtrans_vector.elementAt(s);
+	    if (null == dtrans.m_accept)
 	      {
-		start.m_edge = m_spec.m_lexeme;
-		m_lexGen.advance();
+		if (-1 == no_accept)
+		  {
+		    no_accept = group_count++;
+		  }
+		ingroup[s] = no_accept;
+		continue;
 	      }
-	    else
+	    key = accept_group.get(dtrans.m_accept);
+	    if (null == key)
 	      {
-		start.m_edge = CNfa.CCL;
-		
-		start.m_set = new CSet();
+		key = new Integer(group_count++);
+		accept_group.put(dtrans.m_accept, key);
+	      }
+	    ingroup[s] = ((Integer) key).intValue();
+	  }
+	ingroup[dead] = group_count++;
 
-		/* Match case-insensitive letters using character class. */
-		if (m_spec.m_ignorecase && isAlphaL) 
-		  {
-		    start.m_set.addncase(m_spec.m_lexeme);
-		  }
-		/* Match dot (.) using character class. */
-		else if (m_lexGen.ANY == m_spec.m_current_token)
+	/* Lay the groups out in m_elems, in order of state. */
+	first = new int[n + 1];
+	end = new int[n + 1];
+	marked = new int[n + 1];
+	for (s = 0; s <= n; ++s)
+	  {
+	    ++end[ingroup[s]];
+	  }
+	for (g = 0, count = 0; g < group_count; ++g)
+	  {
+	    first[g] = count;
+	    count += end[g];
+	    end[g] = first[g];
+	  }
+	elems = new int[n + 1];
+	loc = new int[n + 1];
+	for (s = 0; s <= n; ++s)
+	  {
+	    g = ingroup[s];
+	    loc[s] = end[g];
+	    elems[end[g]++] = s;
+	  }
+
+	/* Every group is a splitter to begin with. */
+	waiting = new boolean[n + 1];
+	work = new int[n + 1];
+	work_count = 0;
+	for (g = 0; g < group_count; ++g)
+	  {
+	    work[work_count++] = g;
+	    waiting[g] = true;
+	  }
+
+	touched = new int[n + 1];
+	splitter = new int[n + 1];
+	while (0 < work_count)
+	  {
+	    g = work[--work_count];
+	    waiting[g] = false;
+
+	    /* The splitter as it is now; it may split itself. */
+	    splitter_size = end[g] - first[g];
+	    System.arraycopy(elems, first[g], splitter, 0, splitter_size);
+
+	    for (c = 0; c < ncols; ++c)
+	      {
+		/* Mark the predecessors on c, moving each to the
+		   front of its group. */
+		touched_count = 0;
+		for (i = 0; i < splitter_size; ++i)
 		  {
-		    start.m_set.add('\n');
-		    start.m_set.add('\r');
-		    // CSA: exclude BOL and EOF from character classes
-		    start.m_set.add(m_spec.BOL);
-		    start.m_set.add(m_spec.EOF);
-		    start.m_set.complement();
+		    t = splitter[i];
+		    for (j = pred_start[c * (n + 1) + t];
+			 j < pred_start[c * (n + 1) + t + 1]; ++j)
+		      {
+			s = pred[j];
+			int h = ingroup[s];
+			int m = first[h] + marked[h];
+			if (loc[s] < m)
+			  {
+			    continue;	/* marked already */
+			  }
+			if (0 == marked[h])
+			  {
+			    touched[touched_count++] = h;
+			  }
+			int other = elems[m];
+			elems[m] = s;
+			elems[loc[s]] = other;
+			loc[other] = loc[s];
+			loc[s] = m;
+			++marked[h];
+		      }
 		  }
-		else
+
+		/* Split the touched groups: the marked states
+		   become a new group. */
+		for (i = 0; i < touched_count; ++i)
 		  {
-		    m_lexGen.advance();
-		    if (m_lexGen.AT_BOL == m_spec.m_current_token)
+		    int h = touched[i];
+		    int m = marked[h];
+		    marked[h] = 0;
+		    if (m == end[h] - first[h])
 		      {
-			m_lexGen.advance();
-
-			// CSA: exclude BOL and EOF from character classes
-			start.m_set.add(m_spec.BOL);
-			start.m_set.add(m_spec.EOF);
-			start.m_set.complement();
+			continue;
 		      }
-		    if (false == (m_lexGen.CCL_END == m_spec.m_current_token))
+		    int split = group_count++;
+		    first[split] = first[h];
+		    end[split] = first[h] + m;
+		    first[h] = first[h] + m;
+		    for (j = first[split]; j < end[split]; ++j)
 		      {
-			dodash(start.m_set);
+			ingroup[elems[j]] = split;
 		      }
-		    /*else
+		    if (waiting[h]
+			|| end[split] - first[split] <= end[h] - first[h])
 		      {
-			for (c = 0; c <= ' '; ++c)
-			  {
-			    start.m_set.add((byte) c);
-			  }
-		      }*/
+			work[work_count++] = split;
+			waiting[split] = true;
+		      }
+		    else
+		      {
+			work[work_count++] = h;
+			waiting[h] = true;
+		      }
 		  }
-		m_lexGen.advance();
 	      }
 	  }
 
-	if (CUtility.DESCENT_DEBUG)
+	/* Build m_group and m_ingroup, leaving out the dead
+	   state; each group in order of state. */
+	m_group = new Vector();
+	m_ingroup = new int[n];
+	int number[] = new int[group_count];
+	for (g = 0; g < group_count; ++g)
 	  {
-	    CUtility.leave("term",m_spec.m_lexeme,m_spec.m_current_token);
+	    number[g] = -1;
+	  }
+	for (s = 0; s < n; ++s)
+	  {
+	    g = ingroup[s];
+	    if (-1 == number[g])
+	      {
+		number[g] = m_group.size();
+		m_group.addElement(new Vector());
+	      }
+	    m_ingroup[s] = number[g];
+	    ((Vector) m_group.elementAt(number[g]))
+	      .addElement(m_spec.m_dtrans_vector.elementAt(s));
 	  }
       }
 
   /***************************************************************
-    Function: dodash
-    Description: Recursive descent regular expression parser.
+    Function: sort_groups
+    Description: Numbers the groups in order of their first
+    state, which is the state fix_dtrans keeps for the group,
+    so that the table does not depend on the order in which
+    the minimizer made the groups.
     **************************************************************/
-  private void dodash
+  private void sort_groups
     (
-     CSet set
      )
-      throws java.io.IOException 
-	{
-	  int first = -1;
-	  
-	  if (CUtility.DESCENT_DEBUG)
-	    {
-	      CUtility.enter("dodash",m_spec.m_lexeme,m_spec.m_current_token);
-	    }
-	  
-	  while (m_lexGen.EOS != m_spec.m_current_token 
-		 && m_lexGen.CCL_END != m_spec.m_current_token)
-	    {
-	      // DASH loses its special meaning if it is first in class.
-	      if (m_lexGen.DASH == m_spec.m_current_token && -1 != first)
-		{
-		  m_lexGen.advance();
-		  // DASH loses its special meaning if it is last in class.
-		  if (m_spec.m_current_token == m_lexGen.CCL_END)
-		    {
-		      // 'first' already in set.
-		      set.add('-');
-		      break;
-		    }
-		  for ( ; first <= m_spec.m_lexeme; ++first)
-		    {
-		      if (m_spec.m_ignorecase) 
-			set.addncase((char)first);
-		      else
-			set.add(first);
-		    }  
-		}
-	      else
-		{
-		  first = m_spec.m_lexeme;
-		  if (m_spec.m_ignorecase)
-		    set.addncase(m_spec.m_lexeme);
-		  else
-		    set.add(m_spec.m_lexeme);
-		}
+      {
+	int i;
+	int s;
+	int size;
+	Vector group;
+	Vector sorted;
+	int number[];
 
-	      m_lexGen.advance();
-	    }
-	  
-	if (CUtility.DESCENT_DEBUG)
+	size = m_group.size();
+	number = new int[size];
+	for (i = 0; i < size; ++i)
 	  {
-	    CUtility.leave("dodash",m_spec.m_lexeme,m_spec.m_current_token);
+	    number[i] = -1;
+	  }
+	sorted = new Vector();
+	for (s = 0; s < m_ingroup.length; ++s)
+	  {
+	    i = m_ingroup[s];
+	    if (-1 == number[i])
+	      {
+		number[i] = sorted.size();
+		group = (Vector) m_group.elementAt(i);
+		if (CUtility.DEBUG)
+		  {
+		    CUtility.ASSERT(s == ((CDTrans) group.elementAt(0)).m_label);
+		  }
+		sorted.addElement(group);
+	      }
+	    m_ingroup[s] = number[i];
 	  }
+	m_group = sorted;
       }
-}
 
-/**
- * Extract character classes from NFA and simplify.
- * @author C. Scott Ananian 25-Jul-1999
- */
-class CSimplifyNfa
-{
-  private int[] ccls; // character class mapping.
-  private int original_charset_size; // original charset size
-  private int mapped_charset_size; // reduced charset size
+  /***************************************************************
+    Function: init_groups
+    Description:
+    **************************************************************/
+  private void init_groups
+    (
+     )
+      {
+	int i;
+	int j;
+	int group_count;
+	int size;
+	CAccept accept;
+	CDTrans dtrans;
+	Vector dtrans_group;
+	CDTrans first;
+	boolean group_found;
 
-  void simplify(CSpec m_spec) {
-    computeClasses(m_spec); // initialize fields.
-    
-    // now rewrite the NFA using our character class mapping.
-    for (Enumeration e=m_spec.m_nfa_states.elements(); e.hasMoreElements(); ) {
-      CNfa nfa = (CNfa) e.nextElement();
-      if (nfa.m_edge==CNfa.EMPTY || nfa.m_edge==CNfa.EPSILON)
-	continue; // no change.
-      if (nfa.m_edge==CNfa.CCL) {
-	CSet ncset = new CSet();
-	ncset.map(nfa.m_set, ccls); // map it.
-	nfa.m_set = ncset;
-      } else { // single character
-	nfa.m_edge = ccls[nfa.m_edge]; // map it.
-      }
-    }
+	m_group = new Vector();
+	group_count = 0;
+	
+	size = m_spec.m_dtrans_vector.size();
+	m_ingroup = new int[size];
+	
+	for (i = 0; i < size; ++i)
+	  {
+	    group_found = false;
+	    dtrans = (CDTrans) m_spec.m_dtrans_vector.elementAt(i);
 
-    // now update m_spec with the mapping.
-    m_spec.m_ccls_map = ccls;
-    m_spec.m_dtrans_ncols = mapped_charset_size;
-  }
-  /** Compute minimum set of character classes needed to disambiguate
-   *  edges.  We optimistically assume that every character belongs to
-   *  a single character class, and then incrementally split classes
-   *  as we see edges that require discrimination between characters in
-   *  the class. [CSA, 25-Jul-1999] */
-  private void computeClasses(CSpec m_spec) {
-    this.original_charset_size = m_spec.m_dtrans_ncols;
-    this.ccls = new int[original_charset_size]; // initially all zero.
+	    if (CUtility.DEBUG)
+	      {
+		CUtility.ASSERT(i == dtrans.m_label);
+		CUtility.ASSERT(false == group_found);
+		CUtility.ASSERT(group_count == m_group.size());
+	      }
+	    
+	    for (j = 0; j < group_count; ++j)
+	      {
+		dtrans_group = (Vector) m_group.elementAt(j);
+		
+		if (CUtility.DEBUG)
+		  {
+		    CUtility.ASSERT(false == group_found);
+		    CUtility.ASSERT(0 < dtrans_group.size());
+		  }
 
-    int nextcls = 1;
-    SparseBitSet clsA = new SparseBitSet(), clsB = new SparseBitSet();
-    Hashtable h = new Hashtable();
-    
-    System.out.print("Working on character classes.");
-    for (Enumeration e=m_spec.m_nfa_states.elements(); e.hasMoreElements(); ) {
-      CNfa nfa = (CNfa) e.nextElement();
-      if (nfa.m_edge==CNfa.EMPTY || nfa.m_edge==CNfa.EPSILON)
-	continue; // no discriminatory information.
-      clsA.clearAll(); clsB.clearAll();
-      for (int i=0; i<ccls.length; i++)
-	if (nfa.m_edge==i || // edge labeled with a character
-	    nfa.m_edge==CNfa.CCL && nfa.m_set.contains(i)) // set of characters
-	  clsA.set(ccls[i]);
-	else
-	  clsB.set(ccls[i]);
-      // now figure out which character classes we need to split.
-      clsA.and(clsB); // split the classes which show up on both sides of edge
-      System.out.print(clsA.size()==0?".":":");
-      if (clsA.size()==0) continue; // nothing to do.
-      // and split them.
-      h.clear(); // h will map old to new class name
-      for (int i=0; i<ccls.length; i++)
-	if (clsA.get(ccls[i])) // a split class
-	  if (nfa.m_edge==i ||
-	      nfa.m_edge==CNfa.CCL && nfa.m_set.contains(i)) { // on A side
-	    Integer split = new Integer(ccls[i]);
-	    if (!h.containsKey(split))
-	      h.put(split, new Integer(nextcls++)); // make new class
-	    ccls[i] = ((Integer)h.get(split)).intValue();
-	  }
-    }
-    System.out.println();
-    System.out.println("NFA has "+nextcls+" distinct character classes.");
-    
-    this.mapped_charset_size = nextcls;
-  }
-}
+		first = (CDTrans) dtrans_group.elementAt(0);
+		
+		if (CUtility.SLOW_DEBUG)
+		  {
+		    CDTrans check;
+		    int k;
+		    int s;
+
+		    s = dtrans_group.size();
+		    CUtility.ASSERT(0 < s);
+
+		    for (k = 1; k < s; ++k)
+		      {
+			check = (CDTrans) dtrans_group.elementAt(k);
+			CUtility.ASSERT(check.m_accept == first.m_accept);
+		      }
+		  }
+
+		if (first.m_accept == dtrans.m_accept)
+		  {
+		    dtrans_group.addElement(dtrans);
+		    m_ingroup[i] = j;
+		    group_found = true;
+		    
+		    if (CUtility.DEBUG)
+		      {
+			CUtility.ASSERT(j == m_ingroup[dtrans.m_label]);
+		      }
 
-/***************************************************************
-  Class: CMinimize
- **************************************************************/
-class CMinimize
-{
-  /***************************************************************
-    Member Variables
-    **************************************************************/
-  CSpec m_spec;
-  Vector m_group;
-  int m_ingroup[];
+		    break;
+		  }
+	      }
+	    
+	    if (false == group_found)
+	      {
+		dtrans_group = new Vector();
+		dtrans_group.addElement(dtrans);
+		m_ingroup[i] = m_group.size();
+		m_group.addElement(dtrans_group);
+		++group_count;
+	      }
+	  }
+	
+	if (m_spec.m_verbose
+	    && true == CUtility.OLD_DUMP_DEBUG)
+	  {
+	    System.out.println("Initial grouping:");
+	    pgroups();
+	    System.out.println();
+	  }
+      }
 
   /***************************************************************
-    Function: CMinimize
-    Description: Constructor.
+    Function: pset
     **************************************************************/
-  CMinimize 
+  private void pset
     (
+     Vector dtrans_group
      )
       {
-	reset();
+	int i;
+	int size;
+	CDTrans dtrans;
+
+	size = dtrans_group.size();
+	for (i = 0; i < size; ++i)
+	  {
+	    dtrans = (CDTrans) dtrans_group.elementAt(i);
+	    System.out.print(dtrans.m_label + " ");
+	  }
       }
   
   /***************************************************************
-    Function: reset
-    Description: Resets member variables.
-    **************************************************************/
-  private void reset
-    (
-     )
-      {
-	m_spec = null;
-	m_group = null;
-	m_ingroup = null;
-      }
-
-  /***************************************************************
-    Function: set
-    Description: Sets member variables.
+    Function: pgroups
     **************************************************************/
-  private void set
+  private void pgroups
     (
-     CSpec spec
      )
       {
-	if (CUtility.DEBUG)
+	int i;
+	int dtrans_size;
+	int group_size;
+	
+	group_size = m_group.size();
+	for (i = 0; i < group_size; ++i)
 	  {
-	    CUtility.ASSERT(null != spec);
+	    System.out.print("\tGroup " + i + " {");
+	    pset((Vector) m_group.elementAt(i));
+	    System.out.println("}");
+	    System.out.println();
+	  }
+	
+	System.out.println();
+	dtrans_size = m_spec.m_dtrans_vector.size();
+	for (i = 0; i < dtrans_size; ++i)
+	  {
+	    System.out.println("\tstate " + i 
+			       + " is in group " 
+			       + m_ingroup[i]);
 	  }
-
-	m_spec = spec;
-	m_group = null;
-	m_ingroup = null;
       }
+}
 
+/***************************************************************
+  Class: CNfa2Dfa
+ **************************************************************/
+class CNfa2Dfa
+{
   /***************************************************************
-    Function: min_dfa
-    Description: High-level access function to module.
+    Member Variables
     **************************************************************/
-  void min_dfa
-    (
-     CSpec spec
-     )
-      {
-	set(spec);
-
-	/* Remove redundant states. */
-	minimize();
-
-	/* Column and row compression. 
-	   Save accept states in auxilary vector. */
-	reduce();
+  private CSpec m_spec;
+  private int m_unmarked_dfa;
+  private CLexGen m_lexGen;
 
-	reset();
-      }
+  /***************************************************************
+    Constants
+    **************************************************************/
+  private static final int NOT_IN_DSTATES = -1;
 
   /***************************************************************
-    Function: col_copy
-    Description: Copies source column into destination column.
+    Constants: the subset constructions (CSpec.m_subset)
     **************************************************************/
-  private void col_copy
-    (
-     int dest,
-     int src
-     )
-      {
-	int n;
-	int i;
-	CDTrans dtrans;
+  static final int CLASSIC = 0;
+  static final int PARALLEL = 1;
+  static final int CHECK = 2;
 
-	n = m_spec.m_dtrans_vector.size();
-	for (i = 0; i < n; ++i)
-	  {
-	    dtrans = (CDTrans) m_spec.m_dtrans_vector.elementAt(i);
-	    dtrans.m_dtrans[dest] = dtrans.m_dtrans[src]; 
-	  }
-      }	
-	
   /***************************************************************
-    Function: trunc_col
-    Description: Truncates each column to the 'correct' length.
+    Function: CNfa2Dfa
     **************************************************************/
-  private void trunc_col
+  CNfa2Dfa
     (
      )
       {
-	int n;
-	int i;
-	CDTrans dtrans;
-
-	n = m_spec.m_dtrans_vector.size();
-	for (i = 0; i < n; ++i)
-	  {
-	    int[] ndtrans = new int[m_spec.m_dtrans_ncols];
-	    dtrans = (CDTrans) m_spec.m_dtrans_vector.elementAt(i);
-	    System.arraycopy(dtrans.m_dtrans, 0, ndtrans, 0, ndtrans.length);
-	    dtrans.m_dtrans = ndtrans;
-	  }
+	reset();
       }
+
   /***************************************************************
-    Function: row_copy
-    Description: Copies source row into destination row.
+    Function: set 
+    Description: 
     **************************************************************/
-  private void row_copy
+  private void set
     (
-     int dest,
-     int src
+     CLexGen lexGen,
+     CSpec spec
      )
       {
-	CDTrans dtrans;
+	m_lexGen = lexGen;
+	m_spec = spec;
+	m_unmarked_dfa = 0;
+      }
 
-	dtrans = (CDTrans) m_spec.m_dtrans_vector.elementAt(src);
-	m_spec.m_dtrans_vector.setElementAt(dtrans,dest); 
-      }	
-	
   /***************************************************************
-    Function: col_equiv
+    Function: reset 
     Description: 
     **************************************************************/
-  private boolean col_equiv
+  private void reset
     (
-     int col1,
-     int col2
      )
       {
-	int n;
-	int i;
-	CDTrans dtrans;
-
-	n = m_spec.m_dtrans_vector.size();
-	for (i = 0; i < n; ++i)
-	  {
-	    dtrans = (CDTrans) m_spec.m_dtrans_vector.elementAt(i);
-	    if (dtrans.m_dtrans[col1] != dtrans.m_dtrans[col2]) 
-	      {
-		return false;
-	      }
-	  }
-	
-	return true;
+	m_lexGen = null;
+	m_spec = null;
+	m_unmarked_dfa = 0;
       }
 
   /***************************************************************
-    Function: row_equiv
-    Description: 
+    Function: make_dfa
+    Description: High-level access function to module.
     **************************************************************/
-  private boolean row_equiv
+  void make_dfa
     (
-     int row1,
-     int row2
+     CLexGen lexGen,
+     CSpec spec
      )
       {
 	int i;
-	CDTrans dtrans1;
-	CDTrans dtrans2;
 
-	dtrans1 = (CDTrans) m_spec.m_dtrans_vector.elementAt(row1);
-	dtrans2 = (CDTrans) m_spec.m_dtrans_vector.elementAt(row2);
-	
-	for (i = 0; i < m_spec.m_dtrans_ncols; ++i)
+	Vector subset_dtrans;
+	int subset_state_dtrans[];
+
+	reset();
+	set(lexGen,spec);
+
+	if (PARALLEL == m_spec.m_subset)
 	  {
-	    if (dtrans1.m_dtrans[i] != dtrans2.m_dtrans[i]) 
-	      {
-		return false;
-	      }
+	    make_dtrans_parallel();
 	  }
-	
-	return true;
-      }
+	else if (CHECK == m_spec.m_subset)
+	  {
+	    make_dtrans_parallel();
+	    subset_dtrans = m_spec.m_dtrans_vector;
+	    subset_state_dtrans = m_spec.m_state_dtrans;
+	    m_spec.m_dtrans_vector = new Vector();
+	    make_dtrans();
+	    check_dtrans(subset_dtrans,subset_state_dtrans);
+	  }
+	else
+	  {
+	    make_dtrans();
+	  }
+	free_nfa_states();
 
-  /***************************************************************
-    Function: reduce
-    Description: 
+	if (m_spec.m_verbose && true == CUtility.OLD_DUMP_DEBUG)
+	  {
+	    System.out.println(m_spec.m_dtrans_vector.size()
+			       + " DFA states in original machine.");
+	  }
+
+	free_dfa_states();
+      }     
+
+   /***************************************************************
+    Function: make_dtrans
+    Description: Creates uncompressed CDTrans transition table.
     **************************************************************/
-  private void reduce
+  private void make_dtrans
     (
      )
+     /* throws java.lang.CloneNotSupportedException*/
       {
+	CDfa next;
+	CDfa dfa;
+	CBunch bunch;
 	int i;
-	int j;
-	int k;
-	int nrows;
-	int reduced_ncols;
-	int reduced_nrows;
-	SparseBitSet set;
-	CDTrans dtrans;
+	int nextstate;
 	int size;
-
-	set = new SparseBitSet();
-	
-	/* Save accept nodes and anchor entries. */
-	size = m_spec.m_dtrans_vector.size();
-	m_spec.m_anchor_array = new int[size];
-	m_spec.m_accept_vector = new Vector();
-	for (i = 0; i < size; ++i)
-	  {
-	    dtrans = (CDTrans) m_spec.m_dtrans_vector.elementAt(i);
-	    m_spec.m_accept_vector.addElement(dtrans.m_accept);
-	    m_spec.m_anchor_array[i] = dtrans.m_anchor;
-	    dtrans.m_accept = null;
-	  }
+	CDTrans dtrans;
+	CNfa nfa;
+	int istate;
+	int nstates;
 	
-	/* Allocate column map. */
-	m_spec.m_col_map = new int[m_spec.m_dtrans_ncols];
-	for (i = 0; i < m_spec.m_dtrans_ncols; ++i)
-	  {
-	    m_spec.m_col_map[i] = -1;
-	  }
+	System.out.print("Working on DFA states.");
 
-	/* Process columns for reduction. */
-	for (reduced_ncols = 0; ; ++reduced_ncols)
-	  {
-	    if (CUtility.DEBUG)
-	      {
-		for (i = 0; i < reduced_ncols; ++i)
-		  {
-		    CUtility.ASSERT(-1 != m_spec.m_col_map[i]);
-		  }
-	      }
+	/* Reference passing type and initializations. */
+	bunch = new CBunch();
+	m_unmarked_dfa = 0;
 
-	    for (i = reduced_ncols; i < m_spec.m_dtrans_ncols; ++i)
-	      {
-		if (-1 == m_spec.m_col_map[i])
-		  {
-		    break;
-		  }
-	      }
+	/* Allocate mapping array. */
+	nstates = m_spec.m_state_rules.length;
+	m_spec.m_state_dtrans = new int[nstates];
 
-	    if (i >= m_spec.m_dtrans_ncols)
+	for (istate = 0; nstates > istate; ++istate)
+	  {
+	    /* CSA bugfix: if we skip all zero size rules, then
+	       an specification with no rules produces an illegal
+	       lexer (0 states) instead of a lexer that rejects
+	       everything (1 nonaccepting state). [27-Jul-1999]
+	    if (0 == m_spec.m_state_rules[istate].size())
 	      {
-		break;
+		m_spec.m_state_dtrans[istate] = CDTrans.F;
+		continue;
 	      }
-
-	    if (CUtility.DEBUG)
+	    */
+		
+	    /* Create start state and initialize fields. */
+	    bunch.m_nfa_set = (Vector) m_spec.m_state_rules[istate].clone();
+	    sortStates(bunch.m_nfa_set);
+	    
+	    bunch.m_nfa_bit = new SparseBitSet();
+	    
+	    /* Initialize bit set. */
+	    size = bunch.m_nfa_set.size();
+	    for (i = 0; size > i; ++i)
 	      {
-		CUtility.ASSERT(false == set.get(i));
-		CUtility.ASSERT(-1 == m_spec.m_col_map[i]);
+		nfa = (CNfa) bunch.m_nfa_set.elementAt(i);
+		bunch.m_nfa_bit.set(nfa.m_label);
 	      }
-
-	    set.set(i);
 	    
-	    m_spec.m_col_map[i] = reduced_ncols;
+	    bunch.m_accept = null;
+	    bunch.m_anchor = CSpec.NONE;
+	    bunch.m_accept_index = CUtility.INT_MAX;
 	    
-	    /* UNDONE: Optimize by doing all comparisons in one batch. */
-	    for (j = i + 1; j < m_spec.m_dtrans_ncols; ++j)
+	    e_closure(bunch);
+	    add_to_dstates(bunch);
+	    
+	    m_spec.m_state_dtrans[istate] = m_spec.m_dtrans_vector.size();
+
+	    /* Main loop of CDTrans creation. */
+	    while (null != (dfa = get_unmarked()))
 	      {
-		if (-1 == m_spec.m_col_map[j] && true == col_equiv(i,j))
+		System.out.print(".");
+		System.out.flush();
+		
+		if (CUtility.DEBUG)
 		  {
-		    m_spec.m_col_map[j] = reduced_ncols;
+		    CUtility.ASSERT(false == dfa.m_mark);
 		  }
-	      }
-	  }
-
-	/* Reduce columns. */
-	k = 0;
-	for (i = 0; i < m_spec.m_dtrans_ncols; ++i)
-	  {
-	    if (set.get(i))
-	      {
-		++k;
 
-		set.clear(i);
+		/* Get first unmarked node, then mark it. */
+		dfa.m_mark = true;
 		
-		j = m_spec.m_col_map[i];
+		/* Allocate new CDTrans, then initialize fields. */
+		dtrans = new CDTrans(m_spec.m_dtrans_vector.size(),m_spec);
+		dtrans.m_accept = dfa.m_accept;
+		dtrans.m_anchor = dfa.m_anchor;
 		
-		if (CUtility.DEBUG)
+		/* Set CDTrans array for each character transition. */
+		for (i = 0; i < m_spec.m_dtrans_ncols; ++i)
 		  {
-		    CUtility.ASSERT(j <= i);
+		    if (CUtility.DEBUG)
+		      {
+			CUtility.ASSERT(0 <= i);
+			CUtility.ASSERT(m_spec.m_dtrans_ncols > i);
+		      }
+		    
+		    /* Create new dfa set by attempting character transition. */
+		    move(dfa.m_nfa_set,dfa.m_nfa_bit,i,bunch);
+		    if (null != bunch.m_nfa_set)
+		      {
+			e_closure(bunch);
+		      }
+		    
+		    if (CUtility.DEBUG)
+		      {
+			CUtility.ASSERT((null == bunch.m_nfa_set 
+					 && null == bunch.m_nfa_bit)
+					|| (null != bunch.m_nfa_set 
+					    && null != bunch.m_nfa_bit));
+		      }
+		    
+		    /* Create new state or set state to empty. */
+		    if (null == bunch.m_nfa_set)
+		      {
+			nextstate = CDTrans.F;
+		      }
+		    else 
+		      {
+			nextstate = in_dstates(bunch);
+			
+			if (NOT_IN_DSTATES == nextstate)
+			  {
+			    nextstate = add_to_dstates(bunch);
+			  }
+		      }
+		    
+		    if (CUtility.DEBUG)
+		      {
+			CUtility.ASSERT(nextstate < m_spec.m_dfa_states.size());
+		      }
+		    
+		    dtrans.m_dtrans[i] = nextstate;
 		  }
 		
-		if (j == i)
+		if (CUtility.DEBUG)
 		  {
-		    continue;
+		    CUtility.ASSERT(m_spec.m_dtrans_vector.size() == dfa.m_label);
 		  }
 		
-		col_copy(j,i);
+		m_spec.m_dtrans_vector.addElement(dtrans);
 	      }
 	  }
-	m_spec.m_dtrans_ncols = reduced_ncols;
-	/* truncate m_dtrans at proper length (freeing extra) */
-	trunc_col();
-
-	if (CUtility.DEBUG)
-	  {
-	    CUtility.ASSERT(k == reduced_ncols);
-	  }
 
-	/* Allocate row map. */
-	nrows = m_spec.m_dtrans_vector.size();
-	m_spec.m_row_map = new int[nrows];
-	for (i = 0; i < nrows; ++i)
-	  {
-	    m_spec.m_row_map[i] = -1;
-	  }
+	System.out.println();
+      }
 
-	/* Process rows to reduce. */
-	for (reduced_nrows = 0; ; ++reduced_nrows)
-	  {
-	    if (CUtility.DEBUG)
-	      {
-		for (i = 0; i < reduced_nrows; ++i)
-		  {
-		    CUtility.ASSERT(-1 != m_spec.m_row_map[i]);
-		  }
-	      }
+  /***************************************************************
+    Function: make_dtrans_parallel
+    Description: Creates the same CDTrans transition table as
+    make_dtrans, with CSubset.  The DFA of each lexical state
+    is made on its own, by as many threads as there are
+    processors, and the DFAs are then merged in order of
+    lexical state, as make_dtrans would have made them.
+    **************************************************************/
+  private void make_dtrans_parallel
+    (
+     )
+      {
+	CSubset subset;
+	CSubsetDfa dfas[];
+	CSubsetDfa dstates;
+	int nstates;
+	int istate;
 
-	    for (i = reduced_nrows; i < nrows; ++i)
-	      {
-		if (-1 == m_spec.m_row_map[i])
-		  {
-		    break;
-		  }
-	      }
+	System.out.print("Working on DFA states.");
 
-	    if (i >= nrows)
-	      {
-		break;
-	      }
+	subset = new CSubset(m_spec);
+	dfas = subset.make_all();
 
-	    if (CUtility.DEBUG)
-	      {
-		CUtility.ASSERT(false == set.get(i));
-		CUtility.ASSERT(-1 == m_spec.m_row_map[i]);
-	      }
+	nstates = m_spec.m_state_rules.length;
+	m_spec.m_state_dtrans = new int[nstates];
+	dstates = new CSubsetDfa();
+	for (istate = 0; istate < nstates; ++istate)
+	  {
+	    m_spec.m_state_dtrans[istate] = merge(dfas[istate],dstates);
+	    dfas[istate] = null;
+	  }
 
-	    set.set(i);
+	System.out.println();
+      }
 
-	    m_spec.m_row_map[i] = reduced_nrows;
-	    
-	    /* UNDONE: Optimize by doing all comparisons in one batch. */
-	    for (j = i + 1; j < nrows; ++j)
-	      {
-		if (-1 == m_spec.m_row_map[j] && true == row_equiv(i,j))
-		  {
-		    m_spec.m_row_map[j] = reduced_nrows;
-		  }
-	      }
+  /***************************************************************
+    Function: merge
+    Description: Adds the states of dfa, the DFA of one lexical
+    state, to the transition table, in the order make_dtrans
+    would have added them: the start state always, and then
+    the states reached from it, breadth first and in order of
+    column, that are not in the table yet.  dstates holds the
+    NFA set of each state in the table, so that the states
+    of earlier lexical states are shared.  As in make_dtrans,
+    the new start state replaces any state with the same set.
+    Returns the index of the start state.
+    **************************************************************/
+  private int merge
+    (
+     CSubsetDfa dfa,
+     CSubsetDfa dstates
+     )
+      {
+	int map[];
+	int queue[];
+	int head;
+	int tail;
+	int u;
+	int v;
+	int c;
+	int next;
+	CDTrans dtrans;
+
+	map = new int[dfa.m_size];
+	for (u = 0; u < dfa.m_size; ++u)
+	  {
+	    map[u] = NOT_IN_DSTATES;
 	  }
+	queue = new int[dfa.m_size];
+	head = 0;
+	tail = 0;
 
-	/* Reduce rows. */
-	k = 0;
-	for (i = 0; i < nrows; ++i)
+	map[0] = dstates.add(dfa.m_sets[0],dfa.m_hashes[0]);
+	queue[tail++] = 0;
+
+	while (head < tail)
 	  {
-	    if (set.get(i))
+	    System.out.print(".");
+	    System.out.flush();
+
+	    u = queue[head++];
+
+	    if (CUtility.DEBUG)
 	      {
-		++k;
+		CUtility.ASSERT(m_spec.m_dtrans_vector.size() == map[u]);
+	      }
 
-		set.clear(i);
-		
-		j = m_spec.m_row_map[i];
-		
-		if (CUtility.DEBUG)
+	    dtrans = new CDTrans(map[u],m_spec);
+	    dtrans.m_accept = dfa.m_accept[u];
+	    dtrans.m_anchor = dfa.m_anchor[u];
+
+	    for (c = 0; c < m_spec.m_dtrans_ncols; ++c)
+	      {
+		v = dfa.m_rows[u][c];
+		if (CDTrans.F == v)
 		  {
-		    CUtility.ASSERT(j <= i);
+		    dtrans.m_dtrans[c] = CDTrans.F;
+		    continue;
 		  }
-		
-		if (j == i)
+
+		if (NOT_IN_DSTATES == map[v])
 		  {
-		    continue;
+		    next = dstates.find(dfa.m_sets[v],dfa.m_hashes[v]);
+		    if (NOT_IN_DSTATES == next)
+		      {
+			next = dstates.add(dfa.m_sets[v],dfa.m_hashes[v]);
+			queue[tail++] = v;
+		      }
+		    map[v] = next;
 		  }
-		
-		row_copy(j,i);
+		dtrans.m_dtrans[c] = map[v];
 	      }
-	  }
-	m_spec.m_dtrans_vector.setSize(reduced_nrows);
 
-	if (CUtility.DEBUG)
-	  {
-	    /*System.out.println("k = " + k + "\nreduced_nrows = " + reduced_nrows + "");*/
-	    CUtility.ASSERT(k == reduced_nrows);
+	    m_spec.m_dtrans_vector.addElement(dtrans);
 	  }
+
+	return map[0];
       }
 
   /***************************************************************
-    Function: fix_dtrans
-    Description: Updates CDTrans table after minimization 
-    using groups, removing redundant transition table states.
+    Function: check_dtrans
+    Description: Checks that the table made by make_dtrans,
+    in m_spec, is the one made by make_dtrans_parallel.
     **************************************************************/
-  private void fix_dtrans
+  private void check_dtrans
     (
+     Vector subset_dtrans,
+     int subset_state_dtrans[]
      )
       {
-	Vector new_vector;
-	int i;
+	CDTrans dtrans;
+	CDTrans other;
 	int size;
-	Vector dtrans_group;
-	CDTrans first;
+	int i;
 	int c;
 
-	new_vector = new Vector();
+	size = m_spec.m_dtrans_vector.size();
+	if (size != subset_dtrans.size())
+	  {
+	    CError.impos("Subset constructions disagree on the number of states.");
+	    throw new Error("Parse error.");
+	  }
 
-	size = m_spec.m_state_dtrans.length;
-	for (i = 0; i < size; ++i)
+	for (i = 0; i < m_spec.m_state_dtrans.length; ++i)
 	  {
-	    if (CDTrans.F != m_spec.m_state_dtrans[i])
+	    if (m_spec.m_state_dtrans[i] != subset_state_dtrans[i])
 	      {
-		m_spec.m_state_dtrans[i] = m_ingroup[m_spec.m_state_dtrans[i]];
+		CError.impos("Subset constructions disagree on lexical state " 
+			     + i + ".");
+		throw new Error("Parse error.");
 	      }
 	  }
 
-	size = m_group.size();
 	for (i = 0; i < size; ++i)
 	  {
-	    dtrans_group = (Vector) m_group.elementAt(i);
-	    first = (CDTrans) dtrans_group.elementAt(0);
-	    new_vector.addElement(first);
-
+	    dtrans = (CDTrans) m_spec.m_dtrans_vector.elementAt(i);
+	    other = (CDTrans) subset_dtrans.elementAt(i);
+	    if (dtrans.m_accept != other.m_accept
+		|| dtrans.m_anchor != other.m_anchor)
+	      {
+		CError.impos("Subset constructions disagree on state " + i + ".");
+		throw new Error("Parse error.");
+	      }
 	    for (c = 0; c < m_spec.m_dtrans_ncols; ++c)
 	      {
-		if (CDTrans.F != first.m_dtrans[c])
+		if (dtrans.m_dtrans[c] != other.m_dtrans[c])
 		  {
-		    first.m_dtrans[c] = m_ingroup[first.m_dtrans[c]];
+		    CError.impos("Subset constructions disagree on state " 
+				 + i + ".");
+		    throw new Error("Parse error.");
 		  }
 	      }
 	  }
+      }
 
-	m_group = null;
-	m_spec.m_dtrans_vector = new_vector;
+  /***************************************************************
+    Function: free_dfa_states
+    **************************************************************/  
+  private void free_dfa_states
+    (
+     )
+      {
+	m_spec.m_dfa_states = null;
+	m_spec.m_dfa_sets = null;
       }
 
   /***************************************************************
-    Function: minimize
-    Description: Removes redundant transition table states.
-    **************************************************************/
-  private void minimize
+    Function: free_nfa_states
+    **************************************************************/  
+  private void free_nfa_states
     (
      )
       {
-	Vector dtrans_group;
-	Vector new_group;
-	int i;
-	int j;
-	int old_group_count;
-	int group_count;
-	CDTrans next;
-	CDTrans first;
-	int goto_first;
-	int goto_next;
-	int c;
-	int group_size;
-	boolean added;
+	/* UNDONE: Remove references to nfas from within dfas. */
+	/* UNDONE: Don't free CAccepts. */
 
-	init_groups();
+	m_spec.m_nfa_states = null;
+	m_spec.m_nfa_start = null;
+	m_spec.m_state_rules = null;
+      }
 
-	group_count = m_group.size();
-	old_group_count = group_count - 1;
+  /***************************************************************
+    Function: e_closure
+    Description: Alters and returns input set.
+    **************************************************************/
+  private void e_closure
+    (
+     CBunch bunch
+     )
+      {
+	Stack nfa_stack;
+	int size;
+	int i;
+	CNfa state;
 
-	while (old_group_count != group_count)
+	/* Debug checks. */
+	if (CUtility.DEBUG)
 	  {
-	    old_group_count = group_count;
+	    CUtility.ASSERT(null != bunch);
+	    CUtility.ASSERT(null != bunch.m_nfa_set);
+	    CUtility.ASSERT(null != bunch.m_nfa_bit);
+	  }
 
+	bunch.m_accept = null;
+	bunch.m_anchor = CSpec.NONE;
+	bunch.m_accept_index = CUtility.INT_MAX;
+	
+	/* Create initial stack. */
+	nfa_stack = new Stack();
+	size = bunch.m_nfa_set.size();
+	for (i = 0; i < size; ++i)
+	  {
+	    state = (CNfa) bunch.m_nfa_set.elementAt(i);
+	    
 	    if (CUtility.DEBUG)
 	      {
-		CUtility.ASSERT(m_group.size() == group_count);
+		CUtility.ASSERT(bunch.m_nfa_bit.get(state.m_label));
 	      }
 
-	    for (i = 0; i < group_count; ++i)
+	    nfa_stack.push(state);
+	  }
+
+	/* Main loop. */
+	while (false == nfa_stack.empty())
+	  {
+	    state = (CNfa) nfa_stack.pop();
+	    
+	    if (CUtility.OLD_DUMP_DEBUG)
 	      {
-		dtrans_group = (Vector) m_group.elementAt(i);
+		if (null != state.m_accept)
+		  {
+		    System.out.println("Looking at accepting state " + state.m_label
+				       + " with <"
+				       + (new String(state.m_accept.m_action,0,
+						     state.m_accept.m_action_read))
+				       + ">");
+		  }
+	      }
 
-		group_size = dtrans_group.size();
-		if (group_size <= 1)
+	    if (null != state.m_accept 
+		&& state.m_label < bunch.m_accept_index)
+	      {
+		bunch.m_accept_index = state.m_label;
+		bunch.m_accept = state.m_accept;
+		bunch.m_anchor = state.m_anchor;
+
+		if (CUtility.OLD_DUMP_DEBUG)
 		  {
-		    continue;
+		    System.out.println("Found accepting state " + state.m_label
+				       + " with <"
+				       + (new String(state.m_accept.m_action,0,
+						     state.m_accept.m_action_read))
+				       + ">");
 		  }
 
-		new_group = new Vector();
-		added = false;
-		
-		first = (CDTrans) dtrans_group.elementAt(0);
-		for (j = 1; j < group_size; ++j)
+		if (CUtility.DEBUG)
 		  {
-		    next = (CDTrans) dtrans_group.elementAt(j);
+		    CUtility.ASSERT(null != bunch.m_accept);
+		    CUtility.ASSERT(CSpec.NONE == bunch.m_anchor
+				    || 0 != (bunch.m_anchor & CSpec.END)
+				    || 0 != (bunch.m_anchor & CSpec.START));
+		  }
+	      }
 
-		    for (c = 0; c < m_spec.m_dtrans_ncols; ++c)
+	    if (CNfa.EPSILON == state.m_edge)
+	      {
+		if (null != state.m_next)
+		  {
+		    if (false == bunch.m_nfa_set.contains(state.m_next))
 		      {
-			goto_first = first.m_dtrans[c];
-			goto_next = next.m_dtrans[c];
-
-			if (goto_first != goto_next
-			    && (goto_first == CDTrans.F
-				|| goto_next == CDTrans.F
-				|| m_ingroup[goto_next] != m_ingroup[goto_first]))
+			if (CUtility.DEBUG)
 			  {
-			    if (CUtility.DEBUG)
-			      {
-				CUtility.ASSERT(dtrans_group.elementAt(j) == next);
-			      }
-			    
-			    dtrans_group.removeElementAt(j);
-			    --j;
-			    --group_size;
-			    new_group.addElement(next);
-			    if (false == added)
-			      {
-				added = true;
-				++group_count;
-				m_group.addElement(new_group);
-			      }
-			    m_ingroup[next.m_label] = m_group.size() - 1;
-
-			    if (CUtility.DEBUG)
-			      {
-				CUtility.ASSERT(m_group.contains(new_group)
-						== true);
-				CUtility.ASSERT(m_group.contains(dtrans_group)
-						== true);
-				CUtility.ASSERT(dtrans_group.contains(first)
-						== true);
-				CUtility.ASSERT(dtrans_group.contains(next)
-						== false);
-				CUtility.ASSERT(new_group.contains(first)
-						== false);
-				CUtility.ASSERT(new_group.contains(next)
-						== true);
-				CUtility.ASSERT(dtrans_group.size() == group_size);
-				CUtility.ASSERT(i == m_ingroup[first.m_label]);
-				CUtility.ASSERT((m_group.size() - 1) 
-						== m_ingroup[next.m_label]);
-			      }
+			    CUtility.ASSERT(false == bunch.m_nfa_bit.get(state.m_next.m_label));
+			  }
+			
+			bunch.m_nfa_bit.set(state.m_next.m_label);
+			bunch.m_nfa_set.addElement(state.m_next);
+			nfa_stack.push(state.m_next);
+		      }
+		  }
 
-			    break;
+		if (null != state.m_next2)
+		  {
+		    if (false == bunch.m_nfa_set.contains(state.m_next2))
+		      {
+			if (CUtility.DEBUG)
+			  {
+			    CUtility.ASSERT(false == bunch.m_nfa_bit.get(state.m_next2.m_label));
 			  }
+			
+			bunch.m_nfa_bit.set(state.m_next2.m_label);
+			bunch.m_nfa_set.addElement(state.m_next2);
+			nfa_stack.push(state.m_next2);
 		      }
 		  }
 	      }
 	  }
 
-	System.out.println(m_group.size() + " states after removal of redundant states.");
-
-	if (m_spec.m_verbose
-	    && true == CUtility.OLD_DUMP_DEBUG)
+	if (null != bunch.m_nfa_set)
 	  {
-	    System.out.println();
-	    System.out.println("States grouped as follows after minimization");
-	    pgroups();
+	    sortStates(bunch.m_nfa_set);
 	  }
 
-	fix_dtrans();
+	return;
       }
 
   /***************************************************************
-    Function: init_groups
-    Description:
+    Function: move
+    Description: Returns null if resulting NFA set is empty.
     **************************************************************/
-  private void init_groups
+  void move
     (
+     Vector nfa_set,
+     SparseBitSet nfa_bit,
+     int b,
+     CBunch bunch
      )
       {
-	int i;
-	int j;
-	int group_count;
 	int size;
-	CAccept accept;
-	CDTrans dtrans;
-	Vector dtrans_group;
-	CDTrans first;
-	boolean group_found;
-
-	m_group = new Vector();
-	group_count = 0;
-	
-	size = m_spec.m_dtrans_vector.size();
-	m_ingroup = new int[size];
+	int index;
+	CNfa state;
 	
-	for (i = 0; i < size; ++i)
+	bunch.m_nfa_set = null;
+	bunch.m_nfa_bit = null;
+
+	size = nfa_set.size();
+	for (index = 0; index < size; ++index)
 	  {
-	    group_found = false;
-	    dtrans = (CDTrans) m_spec.m_dtrans_vector.elementAt(i);
+	    state = (CNfa) nfa_set.elementAt(index);
+	    
+	    if (b == state.m_edge
+		|| (CNfa.CCL == state.m_edge
+		    && true == state.m_set.contains(b)))
+	      {
+		if (null == bunch.m_nfa_set)
+		  {
+		    if (CUtility.DEBUG)
+		      {
+			CUtility.ASSERT(null == bunch.m_nfa_bit);
+		      }
+		    
+		    bunch.m_nfa_set = new Vector();
+		    /*bunch.m_nfa_bit 
+			= new SparseBitSet(m_spec.m_nfa_states.size());*/
+		    bunch.m_nfa_bit = new SparseBitSet();
+		  }
 
+		bunch.m_nfa_set.addElement(state.m_next);
+		/*System.out.println("Size of bitset: " + bunch.m_nfa_bit.size());
+		System.out.println("Reference index: " + state.m_next.m_label);
+		System.out.flush();*/
+		bunch.m_nfa_bit.set(state.m_next.m_label);
+	      }
+	  }
+	
+	if (null != bunch.m_nfa_set)
+	  {
 	    if (CUtility.DEBUG)
 	      {
-		CUtility.ASSERT(i == dtrans.m_label);
-		CUtility.ASSERT(false == group_found);
-		CUtility.ASSERT(group_count == m_group.size());
+		CUtility.ASSERT(null != bunch.m_nfa_bit);
 	      }
 	    
-	    for (j = 0; j < group_count; ++j)
-	      {
-		dtrans_group = (Vector) m_group.elementAt(j);
-		
-		if (CUtility.DEBUG)
-		  {
-		    CUtility.ASSERT(false == group_found);
-		    CUtility.ASSERT(0 < dtrans_group.size());
-		  }
+	    sortStates(bunch.m_nfa_set);
+	  }
 
-		first = (CDTrans) dtrans_group.elementAt(0);
-		
-		if (CUtility.SLOW_DEBUG)
-		  {
-		    CDTrans check;
-		    int k;
-		    int s;
+	return;
+      }
 
-		    s = dtrans_group.size();
-		    CUtility.ASSERT(0 < s);
+  /***************************************************************
+    Function: sortStates
+    **************************************************************/
+  private void sortStates
+    (
+     Vector nfa_set
+     )
+      {
+	CNfa elem;
+	int begin;
+	int size;
+	int index;
+	int value;
+	int smallest_index;
+	int smallest_value;
+	CNfa begin_elem;
 
-		    for (k = 1; k < s; ++k)
-		      {
-			check = (CDTrans) dtrans_group.elementAt(k);
-			CUtility.ASSERT(check.m_accept == first.m_accept);
-		      }
-		  }
+	size = nfa_set.size();
+	for (begin = 0; begin < size; ++begin)
+	  {
+	    elem = (CNfa) nfa_set.elementAt(begin);
+	    smallest_value = elem.m_label;
+	    smallest_index = begin;
 
-		if (first.m_accept == dtrans.m_accept)
-		  {
-		    dtrans_group.addElement(dtrans);
-		    m_ingroup[i] = j;
-		    group_found = true;
-		    
-		    if (CUtility.DEBUG)
-		      {
-			CUtility.ASSERT(j == m_ingroup[dtrans.m_label]);
-		      }
+	    for (index = begin + 1; index < size; ++index)
+	      {
+		elem = (CNfa) nfa_set.elementAt(index);
+		value = elem.m_label;
 
-		    break;
+		if (value < smallest_value)
+		  {
+		    smallest_index = index;
+		    smallest_value = value;
 		  }
 	      }
+
+	    begin_elem = (CNfa) nfa_set.elementAt(begin);
+	    elem = (CNfa) nfa_set.elementAt(smallest_index);
+	    nfa_set.setElementAt(elem,begin);
+	    nfa_set.setElementAt(begin_elem,smallest_index);
+	  }
+
+	if (CUtility.OLD_DEBUG)
+	  {
+	    System.out.print("NFA vector indices: ");  
 	    
-	    if (false == group_found)
+	    for (index = 0; index < size; ++index)
 	      {
-		dtrans_group = new Vector();
-		dtrans_group.addElement(dtrans);
-		m_ingroup[i] = m_group.size();
-		m_group.addElement(dtrans_group);
-		++group_count;
+		elem = (CNfa) nfa_set.elementAt(index);
+		System.out.print(elem.m_label + " ");
 	      }
-	  }
-	
-	if (m_spec.m_verbose
-	    && true == CUtility.OLD_DUMP_DEBUG)
-	  {
-	    System.out.println("Initial grouping:");
-	    pgroups();
 	    System.out.println();
-	  }
+	  }	
+
+	return;
       }
 
   /***************************************************************
-    Function: pset
+    Function: get_unmarked
+    Description: Returns next unmarked DFA state.
     **************************************************************/
-  private void pset
+  private CDfa get_unmarked
     (
-     Vector dtrans_group
      )
       {
-	int i;
 	int size;
-	CDTrans dtrans;
+	CDfa dfa;
+
+	size = m_spec.m_dfa_states.size();
+	while (m_unmarked_dfa < size)
+	  {
+	    dfa = (CDfa) m_spec.m_dfa_states.elementAt(m_unmarked_dfa);
+
+	    if (false == dfa.m_mark)
+	      {
+		if (CUtility.OLD_DUMP_DEBUG)
+		  {
+		    System.out.print("*");
+		    System.out.flush();
+		  }
+
+		if (m_spec.m_verbose && true == CUtility.OLD_DUMP_DEBUG)
+		  {
+		    System.out.println("---------------");
+		    System.out.print("working on DFA state " 
+				     + m_unmarked_dfa
+				     + " = NFA states: ");
+		    m_lexGen.print_set(dfa.m_nfa_set);
+		    System.out.println();
+		  }
+
+		return dfa;
+	      }
+
+	    ++m_unmarked_dfa;
+	  }
+
+	return null;
+      }
+  
+  /***************************************************************
+    function: add_to_dstates
+    Description: Takes as input a CBunch with details of
+    a dfa state that needs to be created.
+    1) Allocates a new dfa state and saves it in 
+    the appropriate CSpec vector.
+    2) Initializes the fields of the dfa state
+    with the information in the CBunch.
+    3) Returns index of new dfa.
+    **************************************************************/
+  private int add_to_dstates
+    (
+     CBunch bunch
+     )
+      {
+	CDfa dfa;
+	
+	if (CUtility.DEBUG)
+	  {
+	    CUtility.ASSERT(null != bunch.m_nfa_set);
+	    CUtility.ASSERT(null != bunch.m_nfa_bit);
+	    CUtility.ASSERT(null != bunch.m_accept 
+			    || CSpec.NONE == bunch.m_anchor);
+	  }
+
+	/* Allocate, passing CSpec so dfa label can be set. */
+	dfa = CAlloc.newCDfa(m_spec);
+	
+	/* Initialize fields, including the mark field. */
+	dfa.m_nfa_set = (Vector) bunch.m_nfa_set.clone();
+	dfa.m_nfa_bit = (SparseBitSet) bunch.m_nfa_bit.clone();
+	dfa.m_accept = bunch.m_accept;
+	dfa.m_anchor = bunch.m_anchor;
+	dfa.m_mark = false;
+	
+	/* Register dfa state using BitSet in CSpec Hashtable. */
+	m_spec.m_dfa_sets.put(dfa.m_nfa_bit,dfa);
+	/*registerCDfa(dfa);*/
 
-	size = dtrans_group.size();
-	for (i = 0; i < size; ++i)
+	if (CUtility.OLD_DUMP_DEBUG)
 	  {
-	    dtrans = (CDTrans) dtrans_group.elementAt(i);
-	    System.out.print(dtrans.m_label + " ");
+	    System.out.print("Registering set : ");
+	    m_lexGen.print_set(dfa.m_nfa_set);
+	    System.out.println();
 	  }
+
+	return dfa.m_label;
       }
-  
+
   /***************************************************************
-    Function: pgroups
+    Function: in_dstates
     **************************************************************/
-  private void pgroups
+  private int in_dstates
     (
+     CBunch bunch
      )
       {
-	int i;
-	int dtrans_size;
-	int group_size;
+	CDfa dfa;
 	
-	group_size = m_group.size();
-	for (i = 0; i < group_size; ++i)
+	if (CUtility.OLD_DEBUG)
 	  {
-	    System.out.print("\tGroup " + i + " {");
-	    pset((Vector) m_group.elementAt(i));
-	    System.out.println("}");
-	    System.out.println();
+	    System.out.print("Looking for set : ");
+	    m_lexGen.print_set(bunch.m_nfa_set);
 	  }
-	
-	System.out.println();
-	dtrans_size = m_spec.m_dtrans_vector.size();
-	for (i = 0; i < dtrans_size; ++i)
+
+	dfa = (CDfa) m_spec.m_dfa_sets.get(bunch.m_nfa_bit);
+
+	if (null != dfa)
 	  {
-	    System.out.println("\tstate " + i 
-			       + " is in group " 
-			       + m_ingroup[i]);
+	    if (CUtility.OLD_DUMP_DEBUG)
+	      {
+		System.out.println(" FOUND!");
+	      }
+	    
+	    return dfa.m_label;
+	  }
+
+	if (CUtility.OLD_DUMP_DEBUG)
+	  {
+	    System.out.println(" NOT FOUND!");
 	  }
+	return NOT_IN_DSTATES;
       }
+
 }
 
 /***************************************************************
-  Class: CNfa2Dfa
- **************************************************************/
-class CNfa2Dfa
+  Class: CSubset
+  Description: The subset construction of CNfa2Dfa over dense
+  arrays.  The NFA is copied into int arrays, indexed by
+  label, and the epsilon closure of every NFA state is worked
+  out once, as a bit set in a long[], so that the set reached
+  on a column is the union of the closures of the states
+  moved to.  A set of NFA states is a long[] of m_words words
+  throughout, and the DFA states are found by a hash of the
+  set (see CSubsetDfa) rather than by a Hashtable of
+  SparseBitSets.  The NFA arrays are not changed once made,
+  so the DFAs of the lexical states are made at the same
+  time, each by a thread of its own (see make_all).
+  **************************************************************/
+class CSubset implements Runnable
 {
   /***************************************************************
     Member Variables
     **************************************************************/
-  private CSpec m_spec;
-  private int m_unmarked_dfa;
-  private CLexGen m_lexGen;
-
-  /***************************************************************
-    Constants
-    **************************************************************/
-  private static final int NOT_IN_DSTATES = -1;
-
-  /***************************************************************
-    Function: CNfa2Dfa
-    **************************************************************/
-  CNfa2Dfa
-    (
-     )
-      {
-	reset();
-      }
-
-  /***************************************************************
-    Function: set 
-    Description: 
-    **************************************************************/
-  private void set
-    (
-     CLexGen lexGen,
-     CSpec spec
-     )
-      {
-	m_lexGen = lexGen;
-	m_spec = spec;
-	m_unmarked_dfa = 0;
-      }
-
-  /***************************************************************
-    Function: reset 
-    Description: 
-    **************************************************************/
-  private void reset
-    (
-     )
-      {
-	m_lexGen = null;
-	m_spec = null;
-	m_unmarked_dfa = 0;
-      }
+  private int m_words; /* Words in a set of NFA states. */
+  private int m_ncols;
+  private int m_cols[][]; /* Columns on which each NFA state moves. */
+  private int m_next[]; /* The state it moves to, or -1. */
+  private CAccept m_accept[];
+  private int m_anchor[];
+  private long m_closure[][]; /* Epsilon closure of each NFA state. */
+  private long m_start[][]; /* Start set of each lexical state. */
+
+  private CSubsetDfa m_dfas[];
+  private int m_next_state;
+  private RuntimeException m_failure;
 
   /***************************************************************
-    Function: make_dfa
-    Description: High-level access function to module.
+    Function: CSubset
+    Description: Copies the NFA of spec into arrays and works
+    out the closures.
     **************************************************************/
-  void make_dfa
+  CSubset
     (
-     CLexGen lexGen,
      CSpec spec
      )
       {
+	int nnfa;
 	int i;
-
-	reset();
-	set(lexGen,spec);
-
-	make_dtrans();
-	free_nfa_states();
-
-	if (m_spec.m_verbose && true == CUtility.OLD_DUMP_DEBUG)
-	  {
-	    System.out.println(m_spec.m_dfa_states.size()
-			       + " DFA states in original machine.");
-	  }
-
-	free_dfa_states();
-      }     
-
-   /***************************************************************
-    Function: make_dtrans
-    Description: Creates uncompressed CDTrans transition table.
-    **************************************************************/
-  private void make_dtrans
-    (
-     )
-     /* throws java.lang.CloneNotSupportedException*/
-      {
-	CDfa next;
-	CDfa dfa;
-	CBunch bunch;
-	int i;
-	int nextstate;
+	int c;
+	int count;
 	int size;
-	CDTrans dtrans;
 	CNfa nfa;
-	int istate;
-	int nstates;
-	
-	System.out.print("Working on DFA states.");
-
-	/* Reference passing type and initializations. */
-	bunch = new CBunch();
-	m_unmarked_dfa = 0;
+	CNfa start;
+	int cols[];
 
-	/* Allocate mapping array. */
-	nstates = m_spec.m_state_rules.length;
-	m_spec.m_state_dtrans = new int[nstates];
+	nnfa = spec.m_nfa_states.size();
+	m_words = (nnfa + 63) >>> 6;
+	m_ncols = spec.m_dtrans_ncols;
+	m_cols = new int[nnfa][];
+	m_next = new int[nnfa];
+	m_accept = new CAccept[nnfa];
+	m_anchor = new int[nnfa];
+	cols = new int[m_ncols];
 
-	for (istate = 0; nstates > istate; ++istate)
+	for (i = 0; i < nnfa; ++i)
 	  {
-	    /* CSA bugfix: if we skip all zero size rules, then
-	       an specification with no rules produces an illegal
-	       lexer (0 states) instead of a lexer that rejects
-	       everything (1 nonaccepting state). [27-Jul-1999]
-	    if (0 == m_spec.m_state_rules[istate].size())
-	      {
-		m_spec.m_state_dtrans[istate] = CDTrans.F;
-		continue;
-	      }
-	    */
-		
-	    /* Create start state and initialize fields. */
-	    bunch.m_nfa_set = (Vector) m_spec.m_state_rules[istate].clone();
-	    sortStates(bunch.m_nfa_set);
-	    
-	    bunch.m_nfa_bit = new SparseBitSet();
-	    
-	    /* Initialize bit set. */
-	    size = bunch.m_nfa_set.size();
-	    for (i = 0; size > i; ++i)
+	    nfa = (CNfa) spec.m_nfa_states.elementAt(i);
+
+	    if (CUtility.DEBUG)
 	      {
-		nfa = (CNfa) bunch.m_nfa_set.elementAt(i);
-		bunch.m_nfa_bit.set(nfa.m_label);
+		CUtility.ASSERT(i == nfa.m_label);
 	      }
-	    
-	    bunch.m_accept = null;
-	    bunch.m_anchor = CSpec.NONE;
-	    bunch.m_accept_index = CUtility.INT_MAX;
-	    
-	    e_closure(bunch);
-	    add_to_dstates(bunch);
-	    
-	    m_spec.m_state_dtrans[istate] = m_spec.m_dtrans_vector.size();
 
-	    /* Main loop of CDTrans creation. */
-	    while (null != (dfa = get_unmarked()))
-	      {
-		System.out.print(".");
-		System.out.flush();
-		
-		if (CUtility.DEBUG)
-		  {
-		    CUtility.ASSERT(false == dfa.m_mark);
-		  }
+	    m_accept[i] = nfa.m_accept;
+	    m_anchor[i] = nfa.m_anchor;
+	    m_next[i] = -1;
 
-		/* Get first unmarked node, then mark it. */
-		dfa.m_mark = true;
-		
-		/* Allocate new CDTrans, then initialize fields. */
-		dtrans = new CDTrans(m_spec.m_dtrans_vector.size(),m_spec);
-		dtrans.m_accept = dfa.m_accept;
-		dtrans.m_anchor = dfa.m_anchor;
-		
-		/* Set CDTrans array for each character transition. */
-		for (i = 0; i < m_spec.m_dtrans_ncols; ++i)
-		  {
-		    if (CUtility.DEBUG)
-		      {
-			CUtility.ASSERT(0 <= i);
-			CUtility.ASSERT(m_spec.m_dtrans_ncols > i);
-		      }
-		    
-		    /* Create new dfa set by attempting character transition. */
-		    move(dfa.m_nfa_set,dfa.m_nfa_bit,i,bunch);
-		    if (null != bunch.m_nfa_set)
-		      {
-			e_closure(bunch);
-		      }
-		    
-		    if (CUtility.DEBUG)
-		      {
-			CUtility.ASSERT((null == bunch.m_nfa_set 
-					 && null == bunch.m_nfa_bit)
-					|| (null != bunch.m_nfa_set 
-					    && null != bunch.m_nfa_bit));
-		      }
-		    
-		    /* Create new state or set state to empty. */
-		    if (null == bunch.m_nfa_set)
-		      {
-			nextstate = CDTrans.F;
-		      }
-		    else 
-		      {
-			nextstate = in_dstates(bunch);
-			
-			if (NOT_IN_DSTATES == nextstate)
-			  {
-			    nextstate = add_to_dstates(bunch);
-			  }
-		      }
-		    
-		    if (CUtility.DEBUG)
-		      {
-			CUtility.ASSERT(nextstate < m_spec.m_dfa_states.size());
-		      }
-		    
-		    dtrans.m_dtrans[i] = nextstate;
-		  }
-		
-		if (CUtility.DEBUG)
+	    count = 0;
+	    if (CNfa.CCL == nfa.m_edge)
+	      {
+		for (c = 0; c < m_ncols; ++c)
 		  {
-		    CUtility.ASSERT(m_spec.m_dtrans_vector.size() == dfa.m_label);
+		    if (nfa.m_set.contains(c))
+		      {
+			cols[count++] = c;
+		      }
 		  }
-		
-		m_spec.m_dtrans_vector.addElement(dtrans);
+	      }
+	    else if (0 <= nfa.m_edge)
+	      {
+		cols[count++] = nfa.m_edge;
+	      }
+	    m_cols[i] = new int[count];
+	    System.arraycopy(cols,0,m_cols[i],0,count);
+	    if (0 < count)
+	      {
+		m_next[i] = nfa.m_next.m_label;
 	      }
 	  }
 
-	System.out.println();
+	m_closure = new long[nnfa][];
+	for (i = 0; i < nnfa; ++i)
+	  {
+	    m_closure[i] = closure(spec,i);
+	  }
+
+	m_start = new long[spec.m_state_rules.length][];
+	for (i = 0; i < m_start.length; ++i)
+	  {
+	    m_start[i] = new long[m_words];
+	    size = spec.m_state_rules[i].size();
+	    for (c = 0; c < size; ++c)
+	      {
+		start = (CNfa) spec.m_state_rules[i].elementAt(c);
+		or(m_start[i],m_closure[start.m_label]);
+	      }
+	  }
       }
 
   /***************************************************************
-    Function: free_dfa_states
-    **************************************************************/  
-  private void free_dfa_states
+    Function: closure
+    Description: Returns the states reached from NFA state
+    label by epsilon edges, label among them.
+    **************************************************************/
+  private long[] closure
     (
+     CSpec spec,
+     int label
      )
       {
-	m_spec.m_dfa_states = null;
-	m_spec.m_dfa_sets = null;
+	long set[];
+	int stack[];
+	int top;
+	CNfa nfa;
+
+	set = new long[m_words];
+	stack = new int[spec.m_nfa_states.size()];
+	top = 0;
+
+	set[label >>> 6] |= 1L << label;
+	stack[top++] = label;
+	while (0 < top)
+	  {
+	    nfa = (CNfa) spec.m_nfa_states.elementAt(stack[--top]);
+	    if (CNfa.EPSILON != nfa.m_edge)
+	      {
+		continue;
+	      }
+	    top = push(set,stack,top,nfa.m_next);
+	    top = push(set,stack,top,nfa.m_next2);
+	  }
+
+	return set;
       }
 
   /***************************************************************
-    Function: free_nfa_states
-    **************************************************************/  
-  private void free_nfa_states
+    Function: push
+    Description: Adds nfa, if any, to set, and to the stack if
+    it was not in set.  Returns the new top of the stack.
+    **************************************************************/
+  private static int push
     (
+     long set[],
+     int stack[],
+     int top,
+     CNfa nfa
      )
       {
-	/* UNDONE: Remove references to nfas from within dfas. */
-	/* UNDONE: Don't free CAccepts. */
+	int label;
 
-	m_spec.m_nfa_states = null;
-	m_spec.m_nfa_start = null;
-	m_spec.m_state_rules = null;
+	if (null == nfa)
+	  {
+	    return top;
+	  }
+
+	label = nfa.m_label;
+	if (0 == (set[label >>> 6] & (1L << label)))
+	  {
+	    set[label >>> 6] |= 1L << label;
+	    stack[top++] = label;
+	  }
+	return top;
       }
 
   /***************************************************************
-    Function: e_closure
-    Description: Alters and returns input set.
+    Function: or
     **************************************************************/
-  private void e_closure
+  private static void or
     (
-     CBunch bunch
+     long set[],
+     long other[]
      )
       {
-	Stack nfa_stack;
-	int size;
-	int i;
-	CNfa state;
+	int w;
 
-	/* Debug checks. */
-	if (CUtility.DEBUG)
+	for (w = 0; w < set.length; ++w)
 	  {
-	    CUtility.ASSERT(null != bunch);
-	    CUtility.ASSERT(null != bunch.m_nfa_set);
-	    CUtility.ASSERT(null != bunch.m_nfa_bit);
+	    set[w] |= other[w];
 	  }
+      }
 
-	bunch.m_accept = null;
-	bunch.m_anchor = CSpec.NONE;
-	bunch.m_accept_index = CUtility.INT_MAX;
-	
-	/* Create initial stack. */
-	nfa_stack = new Stack();
-	size = bunch.m_nfa_set.size();
-	for (i = 0; i < size; ++i)
-	  {
-	    state = (CNfa) bunch.m_nfa_set.elementAt(i);
-	    
-	    if (CUtility.DEBUG)
-	      {
-		CUtility.ASSERT(bunch.m_nfa_bit.get(state.m_label));
-	      }
+  /***************************************************************
+    Function: make_all
+    Description: Makes the DFA of every lexical state, and
+    returns them by lexical state.  Up to one thread for each
+    processor takes the lexical states in turn.
+    **************************************************************/
+  CSubsetDfa[] make_all
+    (
+     )
+      {
+	Thread threads[];
+	int nthreads;
+	int i;
 
-	    nfa_stack.push(state);
-	  }
+	m_dfas = new CSubsetDfa[m_start.length];
+	m_next_state = 0;
+	m_failure = null;
 
-	/* Main loop. */
-	while (false == nfa_stack.empty())
+	nthreads = Math.min(Runtime.getRuntime().availableProcessors(),
+			    m_start.length);
+	if (1 >= nthreads)
 	  {
-	    state = (CNfa) nfa_stack.pop();
-	    
-	    if (CUtility.OLD_DUMP_DEBUG)
-	      {
-		if (null != state.m_accept)
-		  {
-		    System.out.println("Looking at accepting state " + state.m_label
-				       + " with <"
-				       + (new String(state.m_accept.m_action,0,
-						     state.m_accept.m_action_read))
-				       + ">");
-		  }
-	      }
-
-	    if (null != state.m_accept 
-		&& state.m_label < bunch.m_accept_index)
+	    run();
+	  }
+	else
+	  {
+	    threads = new Thread[nthreads];
+	    for (i = 0; i < nthreads; ++i)
 	      {
-		bunch.m_accept_index = state.m_label;
-		bunch.m_accept = state.m_accept;
-		bunch.m_anchor = state.m_anchor;
-
-		if (CUtility.OLD_DUMP_DEBUG)
-		  {
-		    System.out.println("Found accepting state " + state.m_label
-				       + " with <"
-				       + (new String(state.m_accept.m_action,0,
-						     state.m_accept.m_action_read))
-				       + ">");
-		  }
-
-		if (CUtility.DEBUG)
-		  {
-		    CUtility.ASSERT(null != bunch.m_accept);
-		    CUtility.ASSERT(CSpec.NONE == bunch.m_anchor
-				    || 0 != (bunch.m_anchor & CSpec.END)
-				    || 0 != (bunch.m_anchor & CSpec.START));
-		  }
+		threads[i] = new Thread(this);
+		threads[i].start();
 	      }
-
-	    if (CNfa.EPSILON == state.m_edge)
+	    for (i = 0; i < nthreads; ++i)
 	      {
-		if (null != state.m_next)
+		try
 		  {
-		    if (false == bunch.m_nfa_set.contains(state.m_next))
-		      {
-			if (CUtility.DEBUG)
-			  {
-			    CUtility.ASSERT(false == bunch.m_nfa_bit.get(state.m_next.m_label));
-			  }
-			
-			bunch.m_nfa_bit.set(state.m_next.m_label);
-			bunch.m_nfa_set.addElement(state.m_next);
-			nfa_stack.push(state.m_next);
-		      }
+		    threads[i].join();
 		  }
-
-		if (null != state.m_next2)
+		catch (InterruptedException e)
 		  {
-		    if (false == bunch.m_nfa_set.contains(state.m_next2))
-		      {
-			if (CUtility.DEBUG)
-			  {
-			    CUtility.ASSERT(false == bunch.m_nfa_bit.get(state.m_next2.m_label));
-			  }
-			
-			bunch.m_nfa_bit.set(state.m_next2.m_label);
-			bunch.m_nfa_set.addElement(state.m_next2);
-			nfa_stack.push(state.m_next2);
-		      }
+		    throw new Error("Interrupted while making the DFA.");
 		  }
 	      }
 	  }
 
-	if (null != bunch.m_nfa_set)
+	if (null != m_failure)
 	  {
-	    sortStates(bunch.m_nfa_set);
+	    throw m_failure;
 	  }
-
-	return;
+	return m_dfas;
       }
 
   /***************************************************************
-    Function: move
-    Description: Returns null if resulting NFA set is empty.
+    Function: next_state
+    Description: Returns the next lexical state to work on, or
+    -1 if there are none left.
     **************************************************************/
-  void move
+  private synchronized int next_state
     (
-     Vector nfa_set,
-     SparseBitSet nfa_bit,
-     int b,
-     CBunch bunch
      )
       {
-	int size;
-	int index;
-	CNfa state;
-	
-	bunch.m_nfa_set = null;
-	bunch.m_nfa_bit = null;
-
-	size = nfa_set.size();
-	for (index = 0; index < size; ++index)
-	  {
-	    state = (CNfa) nfa_set.elementAt(index);
-	    
-	    if (b == state.m_edge
-		|| (CNfa.CCL == state.m_edge
-		    && true == state.m_set.contains(b)))
-	      {
-		if (null == bunch.m_nfa_set)
-		  {
-		    if (CUtility.DEBUG)
-		      {
-			CUtility.ASSERT(null == bunch.m_nfa_bit);
-		      }
-		    
-		    bunch.m_nfa_set = new Vector();
-		    /*bunch.m_nfa_bit 
-			= new SparseBitSet(m_spec.m_nfa_states.size());*/
-		    bunch.m_nfa_bit = new SparseBitSet();
-		  }
-
-		bunch.m_nfa_set.addElement(state.m_next);
-		/*System.out.println("Size of bitset: " + bunch.m_nfa_bit.size());
-		System.out.println("Reference index: " + state.m_next.m_label);
-		System.out.flush();*/
-		bunch.m_nfa_bit.set(state.m_next.m_label);
-	      }
-	  }
-	
-	if (null != bunch.m_nfa_set)
+	if (m_next_state >= m_start.length || null != m_failure)
 	  {
-	    if (CUtility.DEBUG)
-	      {
-		CUtility.ASSERT(null != bunch.m_nfa_bit);
-	      }
-	    
-	    sortStates(bunch.m_nfa_set);
+	    return -1;
 	  }
-
-	return;
+	return m_next_state++;
       }
 
   /***************************************************************
-    Function: sortStates
+    Function: run
+    Description: Makes DFAs until there are no lexical states
+    left.
     **************************************************************/
-  private void sortStates
+  public void run
     (
-     Vector nfa_set
      )
       {
-	CNfa elem;
-	int begin;
-	int size;
-	int index;
-	int value;
-	int smallest_index;
-	int smallest_value;
-	CNfa begin_elem;
+	int istate;
 
-	size = nfa_set.size();
-	for (begin = 0; begin < size; ++begin)
+	try
 	  {
-	    elem = (CNfa) nfa_set.elementAt(begin);
-	    smallest_value = elem.m_label;
-	    smallest_index = begin;
-
-	    for (index = begin + 1; index < size; ++index)
+	    while (-1 != (istate = next_state()))
 	      {
-		elem = (CNfa) nfa_set.elementAt(index);
-		value = elem.m_label;
-
-		if (value < smallest_value)
-		  {
-		    smallest_index = index;
-		    smallest_value = value;
-		  }
+		m_dfas[istate] = make(istate);
 	      }
-
-	    begin_elem = (CNfa) nfa_set.elementAt(begin);
-	    elem = (CNfa) nfa_set.elementAt(smallest_index);
-	    nfa_set.setElementAt(elem,begin);
-	    nfa_set.setElementAt(begin_elem,smallest_index);
 	  }
-
-	if (CUtility.OLD_DEBUG)
+	catch (RuntimeException e)
 	  {
-	    System.out.print("NFA vector indices: ");  
-	    
-	    for (index = 0; index < size; ++index)
+	    synchronized (this)
 	      {
-		elem = (CNfa) nfa_set.elementAt(index);
-		System.out.print(elem.m_label + " ");
+		m_failure = e;
 	      }
-	    System.out.println();
-	  }	
-
-	return;
+	  }
       }
 
   /***************************************************************
-    Function: get_unmarked
-    Description: Returns next unmarked DFA state.
+    Function: make
+    Description: Makes the DFA of lexical state istate.  Its
+    states are numbered in the order they are found, and
+    m_rows holds their transitions in these numbers.
     **************************************************************/
-  private CDfa get_unmarked
+  CSubsetDfa make
     (
+     int istate
      )
       {
-	int size;
-	CDfa dfa;
+	CSubsetDfa dfa;
+	long moved[][];
+	long set[];
+	long bits;
+	boolean used[];
+	int touched[];
+	int ntouched;
+	int row[];
+	int cols[];
+	int u;
+	int w;
+	int s;
+	int k;
+	int c;
+	int v;
+	int hash;
+	int accept;
 
-	size = m_spec.m_dfa_states.size();
-	while (m_unmarked_dfa < size)
+	dfa = new CSubsetDfa();
+	moved = new long[m_ncols][m_words];
+	used = new boolean[m_ncols];
+	touched = new int[m_ncols];
+
+	dfa.add(m_start[istate],CSubsetDfa.hash(m_start[istate]));
+
+	for (u = 0; u < dfa.m_size; ++u)
 	  {
-	    dfa = (CDfa) m_spec.m_dfa_states.elementAt(m_unmarked_dfa);
+	    set = dfa.m_sets[u];
 
-	    if (false == dfa.m_mark)
+	    /* The accept of a set is that of its lowest NFA state
+	       with one, as in CNfa2Dfa.e_closure. */
+	    accept = -1;
+	    ntouched = 0;
+	    for (w = 0; w < m_words; ++w)
 	      {
-		if (CUtility.OLD_DUMP_DEBUG)
+		for (bits = set[w]; 0 != bits; bits &= bits - 1)
 		  {
-		    System.out.print("*");
-		    System.out.flush();
+		    s = (w << 6) + Long.numberOfTrailingZeros(bits);
+		    if (-1 == accept && null != m_accept[s])
+		      {
+			accept = s;
+		      }
+
+		    cols = m_cols[s];
+		    for (k = 0; k < cols.length; ++k)
+		      {
+			c = cols[k];
+			if (false == used[c])
+			  {
+			    used[c] = true;
+			    touched[ntouched++] = c;
+			    java.util.Arrays.fill(moved[c],0L);
+			  }
+			or(moved[c],m_closure[m_next[s]]);
+		      }
 		  }
+	      }
 
-		if (m_spec.m_verbose && true == CUtility.OLD_DUMP_DEBUG)
+	    row = new int[m_ncols];
+	    java.util.Arrays.fill(row,CDTrans.F);
+	    for (k = 0; k < ntouched; ++k)
+	      {
+		c = touched[k];
+		used[c] = false;
+		hash = CSubsetDfa.hash(moved[c]);
+		v = dfa.find(moved[c],hash);
+		if (-1 == v)
 		  {
-		    System.out.println("---------------");
-		    System.out.print("working on DFA state " 
-				     + m_unmarked_dfa
-				     + " = NFA states: ");
-		    m_lexGen.print_set(dfa.m_nfa_set);
-		    System.out.println();
+		    v = dfa.add((long[]) moved[c].clone(),hash);
 		  }
-
-		return dfa;
+		row[c] = v;
 	      }
 
-	    ++m_unmarked_dfa;
+	    dfa.m_rows[u] = row;
+	    if (-1 != accept)
+	      {
+		dfa.m_accept[u] = m_accept[accept];
+		dfa.m_anchor[u] = m_anchor[accept];
+	      }
 	  }
 
-	return null;
+	return dfa;
       }
-  
+}
+
+/***************************************************************
+  Class: CSubsetDfa
+  Description: A DFA made by CSubset: the set of NFA states
+  of each DFA state, with its hash, and (for the DFA of a
+  lexical state) its row of transitions and its accept.  The
+  sets are found by open addressing on their hashes in
+  m_table, which holds a state number plus one, or 0 for an
+  empty slot.
+  **************************************************************/
+class CSubsetDfa
+{
   /***************************************************************
-    function: add_to_dstates
-    Description: Takes as input a CBunch with details of
-    a dfa state that needs to be created.
-    1) Allocates a new dfa state and saves it in 
-    the appropriate CSpec vector.
-    2) Initializes the fields of the dfa state
-    with the information in the CBunch.
-    3) Returns index of new dfa.
+    Member Variables
     **************************************************************/
-  private int add_to_dstates
+  int m_size;
+  long m_sets[][];
+  int m_hashes[];
+  int m_rows[][];
+  CAccept m_accept[];
+  int m_anchor[];
+  private int m_table[];
+
+  /***************************************************************
+    Constants
+    **************************************************************/
+  private static final int INITIAL_SIZE = 64; /* A power of 2. */
+
+  /***************************************************************
+    Function: CSubsetDfa
+    **************************************************************/
+  CSubsetDfa
     (
-     CBunch bunch
      )
       {
-	CDfa dfa;
-	
-	if (CUtility.DEBUG)
+	m_size = 0;
+	m_sets = new long[INITIAL_SIZE][];
+	m_hashes = new int[INITIAL_SIZE];
+	m_rows = new int[INITIAL_SIZE][];
+	m_accept = new CAccept[INITIAL_SIZE];
+	m_anchor = new int[INITIAL_SIZE];
+	m_table = new int[2 * INITIAL_SIZE];
+      }
+
+  /***************************************************************
+    Function: hash
+    Description: Mixes every word of set into the hash, so that
+    sets that differ in any state, in any word, hash apart.
+    **************************************************************/
+  static int hash
+    (
+     long set[]
+     )
+      {
+	long h;
+	int w;
+
+	h = set.length;
+	for (w = 0; w < set.length; ++w)
 	  {
-	    CUtility.ASSERT(null != bunch.m_nfa_set);
-	    CUtility.ASSERT(null != bunch.m_nfa_bit);
-	    CUtility.ASSERT(null != bunch.m_accept 
-			    || CSpec.NONE == bunch.m_anchor);
+	    h = (h ^ set[w]) * 0x9e3779b97f4a7c15L;
+	    h ^= h >>> 29;
 	  }
+	h ^= h >>> 33;
+	h *= 0xc4ceb9fe1a85ec53L;
+	h ^= h >>> 33;
+	return (int) h;
+      }
 
-	/* Allocate, passing CSpec so dfa label can be set. */
-	dfa = CAlloc.newCDfa(m_spec);
-	
-	/* Initialize fields, including the mark field. */
-	dfa.m_nfa_set = (Vector) bunch.m_nfa_set.clone();
-	dfa.m_nfa_bit = (SparseBitSet) bunch.m_nfa_bit.clone();
-	dfa.m_accept = bunch.m_accept;
-	dfa.m_anchor = bunch.m_anchor;
-	dfa.m_mark = false;
-	
-	/* Register dfa state using BitSet in CSpec Hashtable. */
-	m_spec.m_dfa_sets.put(dfa.m_nfa_bit,dfa);
-	/*registerCDfa(dfa);*/
+  /***************************************************************
+    Function: find
+    Description: Returns the number of the state with set, or
+    -1 if there is none.
+    **************************************************************/
+  int find
+    (
+     long set[],
+     int hash
+     )
+      {
+	int mask;
+	int i;
+	int k;
 
-	if (CUtility.OLD_DUMP_DEBUG)
+	mask = m_table.length - 1;
+	for (i = hash & mask; 0 != m_table[i]; i = (i + 1) & mask)
 	  {
-	    System.out.print("Registering set : ");
-	    m_lexGen.print_set(dfa.m_nfa_set);
-	    System.out.println();
+	    k = m_table[i] - 1;
+	    if (m_hashes[k] == hash && equal(m_sets[k],set))
+	      {
+		return k;
+	      }
 	  }
-
-	return dfa.m_label;
+	return -1;
       }
 
   /***************************************************************
-    Function: in_dstates
+    Function: add
+    Description: Adds a state with set, which is kept, and
+    returns its number.  It replaces any state with the same
+    set, which find no longer finds.
     **************************************************************/
-  private int in_dstates
+  int add
     (
-     CBunch bunch
+     long set[],
+     int hash
      )
       {
-	CDfa dfa;
-	
-	if (CUtility.OLD_DEBUG)
+	int k;
+
+	if (m_size == m_sets.length)
 	  {
-	    System.out.print("Looking for set : ");
-	    m_lexGen.print_set(bunch.m_nfa_set);
+	    grow();
 	  }
+	k = m_size++;
+	m_sets[k] = set;
+	m_hashes[k] = hash;
+	m_anchor[k] = CSpec.NONE;
+	insert(k);
+	return k;
+      }
 
-	dfa = (CDfa) m_spec.m_dfa_sets.get(bunch.m_nfa_bit);
+  /***************************************************************
+    Function: insert
+    Description: Puts state k in the table, in the slot of the
+    state with the same set if there is one.
+    **************************************************************/
+  private void insert
+    (
+     int k
+     )
+      {
+	int mask;
+	int i;
+	int other;
 
-	if (null != dfa)
+	mask = m_table.length - 1;
+	for (i = m_hashes[k] & mask; 0 != m_table[i]; i = (i + 1) & mask)
 	  {
-	    if (CUtility.OLD_DUMP_DEBUG)
+	    other = m_table[i] - 1;
+	    if (m_hashes[other] == m_hashes[k]
+		&& equal(m_sets[other],m_sets[k]))
 	      {
-		System.out.println(" FOUND!");
+		break;
 	      }
-	    
-	    return dfa.m_label;
 	  }
+	m_table[i] = k + 1;
+      }
 
-	if (CUtility.OLD_DUMP_DEBUG)
-	  {
-	    System.out.println(" NOT FOUND!");
+  /***************************************************************
+    Function: grow
+    Description: Doubles the arrays and the table.  The states
+    go back in the table in order, so that a state that was
+    replaced is replaced again.
+    **************************************************************/
+  private void grow
+    (
+     )
+      {
+	long sets[][];
+	int hashes[];
+	int rows[][];
+	CAccept accept[];
+	int anchor[];
+	int n;
+	int k;
+
+	n = 2 * m_sets.length;
+	sets = new long[n][];
+	hashes = new int[n];
+	rows = new int[n][];
+	accept = new CAccept[n];
+	anchor = new int[n];
+	System.arraycopy(m_sets,0,sets,0,m_size);
+	System.arraycopy(m_hashes,0,hashes,0,m_size);
+	System.arraycopy(m_rows,0,rows,0,m_size);
+	System.arraycopy(m_accept,0,accept,0,m_size);
+	System.arraycopy(m_anchor,0,anchor,0,m_size);
+	m_sets = sets;
+	m_hashes = hashes;
+	m_rows = rows;
+	m_accept = accept;
+	m_anchor = anchor;
+
+	m_table = new int[2 * n];
+	for (k = 0; k < m_size; ++k)
+	  {
+	    insert(k);
 	  }
-	return NOT_IN_DSTATES;
       }
 
+  /***************************************************************
+    Function: equal
+    **************************************************************/
+  private static boolean equal
+    (
+     long set[],
+     long other[]
+     )
+      {
+	int w;
+
+	for (w = 0; w < set.length; ++w)
+	  {
+	    if (set[w] != other[w])
+	      {
+		return false;
+	      }
+	  }
+	return true;
+      }
 }
 
 /***************************************************************
@@ -3833,9 +6011,49 @@ public class Main
       {
 	CLexGen lg;
 
-	if (arg.length < 1)
+	int minimizer;
+	int subset;
+	int i;
+
+	minimizer = CMinimize.CLASSIC;
+	subset = CNfa2Dfa.CLASSIC;
+	for (i = 0; i < arg.length - 1; ++i)
+	  {
+	    if (arg[i].equals("-minimize=classic"))
+	      {
+		minimizer = CMinimize.CLASSIC;
+	      }
+	    else if (arg[i].equals("-minimize=hopcroft"))
+	      {
+		minimizer = CMinimize.HOPCROFT;
+	      }
+	    else if (arg[i].equals("-minimize=check"))
+	      {
+		minimizer = CMinimize.CHECK;
+	      }
+	    else if (arg[i].equals("-subset=classic"))
+	      {
+		subset = CNfa2Dfa.CLASSIC;
+	      }
+	    else if (arg[i].equals("-subset=parallel"))
+	      {
+		subset = CNfa2Dfa.PARALLEL;
+	      }
+	    else if (arg[i].equals("-subset=check"))
+	      {
+		subset = CNfa2Dfa.CHECK;
+	      }
+	    else
+	      {
+		break;
+	      }
+	  }
+
+	if (i != arg.length - 1)
 	  {
-	    System.out.println("Usage: JLex.Main <filename>");
+	    System.out.println("Usage: JLex.Main "
+			       + "[-minimize=classic|hopcroft|check] "
+			       + "[-subset=classic|parallel|check] <filename>");
 	    return;
 	  }
 
@@ -3844,7 +6062,9 @@ public class Main
 	   This gives more information. */
 	try 
 	  {	
-	    lg = new CLexGen(arg[0]);
+	    lg = new CLexGen(arg[i]);
+	    lg.set_minimizer(minimizer);
+	    lg.set_subset(subset);
 	    lg.generate();
 	  }
 	catch (Error e)
@@ -4672,6 +6892,12 @@ class CSet
 	m_set = (SparseBitSet) set.m_set.clone();
       } 
 
+  /** Enumerate the characters in the bit set: those the set holds,
+   *  or for a complemented set, those it does not. */
+  Enumeration elements() {
+    return m_set.elements();
+  }
+
   /** Map set using character classes [CSA] */
   void map(CSet set, int[] mapping) {
     m_complement = set.m_complement;
@@ -4914,6 +7140,32 @@ class CLexGen
 	m_init_flag = true;
       }
 
+  /***************************************************************
+    Function: set_minimizer
+    Description: Chooses the DFA minimizer (CMinimize.CLASSIC,
+    HOPCROFT or CHECK).
+    **************************************************************/
+  void set_minimizer
+    (
+     int minimizer
+     )
+      {
+	m_spec.m_minimizer = minimizer;
+      }
+
+  /***************************************************************
+    Function: set_subset
+    Description: Chooses the subset construction (CNfa2Dfa.CLASSIC,
+    PARALLEL or CHECK).
+    **************************************************************/
+  void set_subset
+    (
+     int subset
+     )
+      {
+	m_spec.m_subset = subset;
+      }
+
   /***************************************************************
     Function: generate
     Description: 
@@ -5085,6 +7337,33 @@ class CLexGen
 	return buffer;
       }
 
+  /***************************************************************
+    Function: getSize
+    Description: Reads the positive number that follows a
+    directive, such as %buffer.
+    **************************************************************/
+  private int getSize
+    (
+     )
+      {
+	String size = new String(getName()).trim();
+	int value = 0;
+
+	try
+	  {
+	    value = Integer.parseInt(size);
+	  }
+	catch (NumberFormatException e)
+	  {
+	  }
+	if (value <= 0)
+	  {
+	    CError.parse_error(CError.E_DIRECT,
+			       m_input.m_line_number);
+	  }
+	return value;
+      }
+
   private final int CLASS_CODE = 0;
   private final int INIT_CODE = 1;
   private final int EOF_CODE = 2;
@@ -5218,6 +7497,12 @@ class CLexGen
     '\0'
     };
   
+  private char m_switch_dir[] = {
+    '%', 's', 'w',
+    'i', 't', 'c',
+    'h', '\0'
+    };
+
   private char m_char_dir[] = { 
     '%', 'c', 'h',
     'a', 'r',
@@ -5230,6 +7515,18 @@ class CLexGen
     '\0'
     };
 
+  private char m_line_index_dir[] = { 
+    '%', 'l', 'i',
+    'n', 'e', 'i',
+    'n', 'd', 'e',
+    'x', '\0'
+    };
+
+  private char m_comb_dir[] = {
+    '%', 'c', 'o',
+    'm', 'b', '\0'
+    };
+
   private char m_cup_dir[] = { 
     '%', 'c', 'u',
     'p', 
@@ -5409,6 +7706,18 @@ class CLexGen
     'b', 'l', 'i', 
     'c', '\0'
     };
+
+  private char m_buffer_dir[] = { 
+    '%', 'b', 'u',
+    'f', 'f', 'e', 
+    'r', '\0'
+    };
+  
+  private char m_bytes_dir[] = {
+    '%', 'b', 'y',
+    't', 'e', 's',
+    '\0'
+    };
   
   /***************************************************************
     Function: userDeclare
@@ -5497,6 +7806,40 @@ class CLexGen
 					 m_input.m_line_number);
 		      break;
 
+		    case 'b':
+		      if (0 == CUtility.charncmp(m_input.m_line,
+						 0,
+						 m_buffer_dir,
+						 0,
+						 m_buffer_dir.length - 1))
+			{
+			  /* Set size of the input buffer. */
+			  m_input.m_line_index = m_buffer_dir.length;
+			  m_spec.m_buffer_size = getSize();
+			  break;
+			}
+		      else if (0 == CUtility.charncmp(m_input.m_line,
+						      0,
+						      m_bytes_dir,
+						      0,
+						      m_bytes_dir.length - 1))
+			{
+			  /* Scan bytes too: the character map must
+			     cover 0 to 255. */
+			  m_input.m_line_index = m_bytes_dir.length;
+			  m_spec.m_bytes = true;
+			  if (m_spec.m_dtrans_ncols < CUtility.MAX_EIGHT_BIT + 1)
+			    {
+			      m_spec.m_dtrans_ncols = CUtility.MAX_EIGHT_BIT + 1;
+			    }
+			  break;
+			}
+
+		      /* Bad directive. */
+		      CError.parse_error(CError.E_DIRECT,
+					 m_input.m_line_number);
+		      break;
+
 		    case 'c':
 		      if (0 == CUtility.charncmp(m_input.m_line,
 						 0,
@@ -5537,6 +7880,17 @@ class CLexGen
 			      "java_cup.runtime.Symbol".toCharArray();
 			  break;
 			}
+		      else if (0 == CUtility.charncmp(m_input.m_line,
+						      0,
+						      m_comb_dir,
+						      0,
+						      m_comb_dir.length - 1))
+			{
+			  /* Emit the transition table comb-packed. */
+			  m_input.m_line_index = m_comb_dir.length;
+			  m_spec.m_comb = true;
+			  break;
+			}
 	      
 		      /* Bad directive. */
 		      CError.parse_error(CError.E_DIRECT,
@@ -5696,9 +8050,22 @@ class CLexGen
 		    case 'l':
 		      if (0 == CUtility.charncmp(m_input.m_line,
 						 0,
-						 m_line_dir,
+						 m_line_index_dir,
 						 0,
-						 m_line_dir.length - 1))
+						 m_line_index_dir.length - 1))
+			{
+			  /* Set the line-start index to ON; it
+			     needs the offsets of yychar. */
+			  m_input.m_line_index = m_line_index_dir.length;
+			  m_spec.m_index_lines = true;
+			  m_spec.m_count_chars = true;
+			  break;
+			}
+		      else if (0 == CUtility.charncmp(m_input.m_line,
+						      0,
+						      m_line_dir,
+						      0,
+						      m_line_dir.length - 1))
 			{
 			  /* Set line counting to ON. */
 			  m_input.m_line_index = m_line_dir.length;
@@ -5759,6 +8126,17 @@ class CLexGen
 			  saveStates();
 			  break;
 			}
+		      else if (0 == CUtility.charncmp(m_input.m_line,
+						      0,
+						      m_switch_dir,
+						      0,
+						      m_switch_dir.length - 1))
+			{
+			  /* Emit the transition table as code. */
+			  m_input.m_line_index = m_switch_dir.length;
+			  m_spec.m_switch = true;
+			  break;
+			}
 
 		      /* Undefined directive. */
 		      CError.parse_error(CError.E_DIRECT,